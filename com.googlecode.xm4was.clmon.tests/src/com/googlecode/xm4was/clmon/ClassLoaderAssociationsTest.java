@@ -0,0 +1,61 @@
+package com.googlecode.xm4was.clmon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ClassLoaderAssociationsTest {
+    private static Object createInstance(ClassLoader classLoader) {
+        return Proxy.newProxyInstance(classLoader, new Class<?>[] { Runnable.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return null;
+            }
+        });
+    }
+    
+    @Test
+    public void testIsSameOrDescendant() {
+        ClassLoader cl = new URLClassLoader(new URL[0], null);
+        ClassLoader child = new URLClassLoader(new URL[0], cl);
+        assertTrue(ClassLoaderAssociations.isSameOrDescendant(cl, cl));
+        assertTrue(ClassLoaderAssociations.isSameOrDescendant(child, cl));
+        assertFalse(ClassLoaderAssociations.isSameOrDescendant(cl, child));
+        assertFalse(ClassLoaderAssociations.isSameOrDescendant(null, cl));
+    }
+    
+    @Test
+    public void testRemoveAssociatedEntries() {
+        ClassLoader cl1 = new URLClassLoader(new URL[0], null);
+        ClassLoader child = new URLClassLoader(new URL[0], cl1);
+        ClassLoader cl2 = new URLClassLoader(new URL[0], null);
+        Map<Object,Object> map = new HashMap<Object,Object>();
+        map.put(cl1, "1");
+        map.put(child, "2");
+        map.put("3", Proxy.getProxyClass(cl1, Runnable.class));
+        map.put("4", createInstance(child));
+        map.put("5", new SoftReference<ClassLoader>(cl1));
+        map.put(cl2, "6");
+        map.put("7", Proxy.getProxyClass(cl2, Runnable.class));
+        map.put("8", createInstance(cl2));
+        map.put("9", new SoftReference<ClassLoader>(cl2));
+        map.put("10", "11");
+        assertEquals(5, ClassLoaderAssociations.removeAssociatedEntries(map, cl1));
+        assertEquals(5, map.size());
+        assertTrue(map.containsKey(cl2));
+        assertTrue(map.containsKey("7"));
+        assertTrue(map.containsKey("8"));
+        assertTrue(map.containsKey("9"));
+        assertTrue(map.containsKey("10"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class ORBCacheCleanerTest {
+    private static void populate(Map<Object,Object> map, ClassLoader cl1, ClassLoader cl2) {
+        map.put(cl1, "1");
+        map.put("2", new URLClassLoader(new URL[0], cl1));
+        map.put(cl2, "3");
+        map.put("4", "5");
+    }
+
+    @Test
+    public void testRemoveAssociatedEntries() throws Exception {
+        ClassLoader cl1 = new URLClassLoader(new URL[0], null);
+        ClassLoader cl2 = new URLClassLoader(new URL[0], null);
+        List<Map<?,?>> maps = new ArrayList<Map<?,?>>();
+        Map<Object,Object> concurrentMap = new ConcurrentHashMap<Object,Object>();
+        populate(concurrentMap, cl1, cl2);
+        maps.add(concurrentMap);
+        Map<Object,Object> hashtable = new Hashtable<Object,Object>();
+        populate(hashtable, cl1, cl2);
+        maps.add(hashtable);
+        Map<Object,Object> synchronizedMap = Collections.synchronizedMap(new HashMap<Object,Object>());
+        populate(synchronizedMap, cl1, cl2);
+        maps.add(synchronizedMap);
+        ORBCacheCleaner cleaner = new ORBCacheCleaner();
+        cleaner.init();
+        assertEquals(6, cleaner.removeAssociatedEntries(maps, cl1));
+        for (Map<?,?> map : maps) {
+            assertEquals(2, map.size());
+            assertTrue(map.containsKey(cl2));
+            assertTrue(map.containsKey("4"));
+        }
+    }
+
+    @Test
+    public void testUnsynchronizedMap() throws Exception {
+        ClassLoader cl1 = new URLClassLoader(new URL[0], null);
+        ClassLoader cl2 = new URLClassLoader(new URL[0], null);
+        List<Map<?,?>> maps = new ArrayList<Map<?,?>>();
+        Map<Object,Object> concurrentMap = new ConcurrentHashMap<Object,Object>();
+        populate(concurrentMap, cl1, cl2);
+        maps.add(concurrentMap);
+        Map<Object,Object> hashMap = new HashMap<Object,Object>();
+        populate(hashMap, cl1, cl2);
+        maps.add(hashMap);
+        ORBCacheCleaner cleaner = new ORBCacheCleaner();
+        cleaner.init();
+        assertEquals(-1, cleaner.removeAssociatedEntries(maps, cl1));
+        // None of the maps must have been modified
+        assertEquals(4, concurrentMap.size());
+        assertEquals(4, hashMap.size());
+    }
+
+    @Test
+    public void testNoMaps() throws Exception {
+        ClassLoader cl = new URLClassLoader(new URL[0], null);
+        ORBCacheCleaner cleaner = new ORBCacheCleaner();
+        cleaner.init();
+        // Without any known cache map, the cleaner must fall back to clearing all caches
+        assertEquals(-1, cleaner.removeAssociatedEntries(new ArrayList<Map<?,?>>(), cl));
+    }
+}
@@ -6,5 +6,22 @@ package com.googlecode.xm4was.clmon;
  * garbage collect the class loaders after an application restart.
  */
 public interface CacheCleaner {
+    /**
+     * Clear the cache completely.
+     */
     void clearCache();
+    
+    /**
+     * Remove the cache entries associated with a given class loader, i.e. entries with keys or
+     * values that are the class loader, one of its descendants or classes and objects loaded by
+     * these class loaders (see {@link ClassLoaderAssociations}). Entries for other class loaders
+     * should be preserved. The default implementation doesn't support selective removal and
+     * clears the cache completely.
+     * 
+     * @param classLoader
+     *            the class loader of the stopped application
+     */
+    default void clearCache(ClassLoader classLoader) {
+        clearCache();
+    }
 }
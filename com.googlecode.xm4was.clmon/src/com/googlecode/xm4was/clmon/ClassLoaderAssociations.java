@@ -0,0 +1,81 @@
+package com.googlecode.xm4was.clmon;
+
+import java.lang.ref.Reference;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Utility methods for {@link CacheCleaner} implementations that need to identify the cache entries
+ * associated with a given class loader.
+ */
+public final class ClassLoaderAssociations {
+    private ClassLoaderAssociations() {}
+    
+    /**
+     * Determine whether a class loader is the same as or a descendant of another class loader.
+     * 
+     * @param candidate
+     *            the class loader to check
+     * @param classLoader
+     *            the ancestor class loader
+     * @return <code>true</code> if <code>candidate</code> is <code>classLoader</code> or one of its
+     *         descendants
+     */
+    public static boolean isSameOrDescendant(ClassLoader candidate, ClassLoader classLoader) {
+        for (ClassLoader current = candidate; current != null; current = current.getParent()) {
+            if (current == classLoader) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Determine whether an object is associated with a given class loader. This is the case if the
+     * object is the class loader or one of its descendants, a class loaded by one of these class
+     * loaders, an instance of such a class, or a {@link Reference} to any of these objects.
+     * 
+     * @param object
+     *            the object to check; may be <code>null</code>
+     * @param classLoader
+     *            the class loader
+     * @return <code>true</code> if the object is associated with the class loader
+     */
+    public static boolean isAssociated(Object object, ClassLoader classLoader) {
+        if (object instanceof Reference<?>) {
+            object = ((Reference<?>)object).get();
+        }
+        if (object == null) {
+            return false;
+        } else if (object instanceof ClassLoader) {
+            return isSameOrDescendant((ClassLoader)object, classLoader);
+        } else if (object instanceof Class<?>) {
+            return isSameOrDescendant(((Class<?>)object).getClassLoader(), classLoader);
+        } else {
+            return isSameOrDescendant(object.getClass().getClassLoader(), classLoader);
+        }
+    }
+    
+    /**
+     * Remove the entries of a map whose key or value is associated with a given class loader. The
+     * caller is responsible for synchronization: the map must either be thread safe or be locked
+     * by the caller.
+     * 
+     * @param map
+     *            the map
+     * @param classLoader
+     *            the class loader
+     * @return the number of removed entries
+     */
+    public static int removeAssociatedEntries(Map<?,?> map, ClassLoader classLoader) {
+        int count = 0;
+        for (Iterator<? extends Map.Entry<?,?>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<?,?> entry = it.next();
+            if (isAssociated(entry.getKey(), classLoader) || isAssociated(entry.getValue(), classLoader)) {
+                it.remove();
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects statistics about the effectiveness of a {@link com.googlecode.xm4was.clmon.CacheCleaner}
+ * in the automatic cleaning pipeline. A class loader is considered to be released by a given
+ * cleaner if it is garbage collected after that cleaner has been executed and before the next
+ * cleaner is executed.
+ */
+final class CacheCleanerStats {
+    private final String name;
+    private final AtomicInteger invocationCount = new AtomicInteger();
+    private final AtomicLong totalDuration = new AtomicLong();
+    private final AtomicInteger releasedCount = new AtomicInteger();
+    private final AtomicLong totalReclaimTime = new AtomicLong();
+
+    CacheCleanerStats(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Record an execution of the cleaner.
+     *
+     * @param duration
+     *            the duration of the execution in nanoseconds
+     */
+    void addInvocation(long duration) {
+        invocationCount.incrementAndGet();
+        totalDuration.addAndGet(duration);
+    }
+
+    /**
+     * Record a class loader that has been garbage collected after the execution of the cleaner.
+     *
+     * @param reclaimTime
+     *            the time (in milliseconds) between the stop of the application and the moment
+     *            the class loader has been garbage collected
+     */
+    void addReleased(long reclaimTime) {
+        releasedCount.incrementAndGet();
+        totalReclaimTime.addAndGet(reclaimTime);
+    }
+
+    int getInvocationCount() {
+        return invocationCount.get();
+    }
+
+    /**
+     * Get the average duration of an execution of the cleaner.
+     *
+     * @return the average duration in milliseconds, or 0 if the cleaner has never been executed
+     */
+    double getAverageDuration() {
+        int count = invocationCount.get();
+        return count == 0 ? 0 : totalDuration.get()/1000000.0/count;
+    }
+
+    int getReleasedCount() {
+        return releasedCount.get();
+    }
+
+    /**
+     * Get the average time between the stop of an application and the moment its class loader has
+     * been garbage collected, for the class loaders released by this cleaner.
+     *
+     * @return the average reclaim time in milliseconds, or 0 if no class loader has been released
+     */
+    long getAverageReclaimTime() {
+        int count = releasedCount.get();
+        return count == 0 ? 0 : totalReclaimTime.get()/count;
+    }
+}
@@ -0,0 +1,312 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.clmon.CacheCleaner;
+import com.googlecode.xm4was.clmon.resources.Messages;
+import com.googlecode.xm4was.commons.osgi.ServiceSet;
+import com.googlecode.xm4was.commons.osgi.ServiceVisitor;
+
+/**
+ * Verifies that the class loader of a stopped application is garbage collected and optionally
+ * executes the registered {@link CacheCleaner}s to help with that. The pipeline runs
+ * asynchronously in stages:
+ * <ol>
+ * <li>If cleaners are not executed, there is a single stage. This allows to detect class loaders
+ * that are not garbage collected.
+ * <li>If cleaners are executed, the first (i.e. cheapest) cleaner is executed as soon as the
+ * application has been stopped, so that cleaning is not delayed compared to a synchronous
+ * execution. Each subsequent stage executes one more cleaner, escalating to more expensive
+ * cleaners only if the class loader has not been garbage collected. Cleaners are executed in
+ * order of their average execution time.
+ * </ol>
+ * A stage ends when a major garbage collection has occurred and the stage has lasted for at least
+ * {@link #STAGE_MIN_DURATION}, or when it has lasted for {@link #STAGE_MAX_DURATION}. The pipeline
+ * never triggers garbage collections itself. It ends when the class loader has been garbage
+ * collected (as reported by the reference queue of the {@link ClassLoaderInfo}) or when all
+ * stages have completed. In the latter case the class loader is reported as leaked.
+ * <p>
+ * The pipeline records for each cleaner how often it was executed and how many class loaders
+ * were garbage collected after it was executed, so that operators can see which cleaners are
+ * effective.
+ */
+final class CacheCleaningPipeline {
+    private static final Logger LOGGER = Logger.getLogger(CacheCleaningPipeline.class.getName(), Messages.class.getName());
+
+    /**
+     * The interval (in milliseconds) at which the state of the class loaders is checked.
+     */
+    private static final long CHECK_INTERVAL = 5000;
+
+    private static final long STAGE_MIN_DURATION = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.clmon.CacheCleaningPipeline.STAGE_MIN_DURATION", "30000"));
+
+    private static final long STAGE_MAX_DURATION = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.clmon.CacheCleaningPipeline.STAGE_MAX_DURATION", "120000"));
+
+    /**
+     * The name used for the statistics of class loaders that have been garbage collected before
+     * any cleaner was executed.
+     */
+    private static final String NO_CLEANER = "(none)";
+
+    /**
+     * The names of the garbage collectors that only perform minor collections (HotSpot and IBM
+     * J9). Note that the G1 young collector also performs mixed collections, but these don't
+     * necessarily include the region containing a given class loader.
+     */
+    private static final Set<String> MINOR_COLLECTORS = new HashSet<String>(Arrays.asList(
+            "Copy", "ParNew", "PS Scavenge", "G1 Young Generation", "scavenge", "partial gc"));
+
+    private final class Job implements Runnable {
+        private final ClassLoaderInfo info;
+        private final long stopTime;
+        private final Set<String> executedCleaners = new HashSet<String>();
+        private CacheCleanerStats lastStats;
+        private long stageStart;
+        private long stageCollectionCount;
+
+        Job(ClassLoaderInfo info) {
+            this.info = info;
+            stopTime = System.currentTimeMillis();
+            lastStats = getStats(NO_CLEANER);
+            startStage();
+        }
+
+        private void startStage() {
+            stageStart = System.currentTimeMillis();
+            stageCollectionCount = getMajorCollectionCount();
+        }
+
+        public void run() {
+            try {
+                if (!execute()) {
+                    schedule(this);
+                    return;
+                }
+            } catch (Throwable ex) {
+                LOGGER.log(Level.SEVERE, Messages._0007E, ex);
+            }
+            activeJobs.decrementAndGet();
+        }
+
+        /**
+         * Execute a step of the job.
+         *
+         * @return <code>true</code> if the job is complete
+         */
+        private boolean execute() {
+            long now = System.currentTimeMillis();
+            if (info.isDestroyed()) {
+                long reclaimTime = info.getDestroyedTime() - stopTime;
+                lastStats.addReleased(reclaimTime);
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Class loader {0} garbage collected after {1} ms; last cleaner: {2}",
+                            new Object[] { info, reclaimTime, lastStats.getName() });
+                }
+                return true;
+            }
+            long stageDuration = now - stageStart;
+            boolean stageComplete = stageDuration >= STAGE_MAX_DURATION
+                    || stageDuration >= STAGE_MIN_DURATION && getMajorCollectionCount() != stageCollectionCount;
+            // If cleaners are enabled, the first one is executed without waiting
+            boolean firstCleaner = runCleaners && executedCleaners.isEmpty();
+            if (!stageComplete && !firstCleaner) {
+                return false;
+            }
+            ClassLoader classLoader = info.getClassLoader();
+            if (classLoader == null) {
+                // Garbage collected, but not yet retrieved from the reference queue
+                return false;
+            }
+            CacheCleaner cleaner = runCleaners ? selectNextCleaner() : null;
+            if (cleaner == null && !stageComplete) {
+                // No cleaner is registered; wait for the end of the stage
+                return false;
+            }
+            if (cleaner == null) {
+                unreleasedCount.incrementAndGet();
+                // Only warn if cache cleaning has been enabled explicitly; otherwise the leak is
+                // reported in the statistics and by the leak suspect notifier
+                if (runCleaners) {
+                    LOGGER.log(Level.WARNING, Messages._0008W, new Object[] { info.getGroup().getName(), String.valueOf((now - stopTime)/1000) });
+                } else if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Class loader {0} not garbage collected after {1} ms", new Object[] { info, now - stopTime });
+                }
+                return true;
+            }
+            String name = cleaner.getClass().getName();
+            executedCleaners.add(name);
+            lastStats = getStats(name);
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "Executing cache cleaner {0} for {1}", new Object[] { name, info });
+            }
+            long start = System.nanoTime();
+            cleaner.clearCache(classLoader);
+            lastStats.addInvocation(System.nanoTime() - start);
+            startStage();
+            return false;
+        }
+
+        private CacheCleaner selectNextCleaner() {
+            final List<CacheCleaner> candidates = new ArrayList<CacheCleaner>();
+            cacheCleaners.visit(new ServiceVisitor<CacheCleaner>() {
+                public void visit(CacheCleaner cacheCleaner) {
+                    if (!executedCleaners.contains(cacheCleaner.getClass().getName())) {
+                        candidates.add(cacheCleaner);
+                    }
+                }
+            });
+            CacheCleaner selected = null;
+            double selectedDuration = 0;
+            for (CacheCleaner candidate : candidates) {
+                double duration = getStats(candidate.getClass().getName()).getAverageDuration();
+                if (selected == null || duration < selectedDuration) {
+                    selected = candidate;
+                    selectedDuration = duration;
+                }
+            }
+            return selected;
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+    private final ServiceSet<CacheCleaner> cacheCleaners;
+    private final boolean runCleaners;
+    private final List<GarbageCollectorMXBean> majorCollectors;
+    private final ConcurrentMap<String,CacheCleanerStats> stats = new ConcurrentHashMap<String,CacheCleanerStats>();
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    private final AtomicInteger unreleasedCount = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param executor
+     *            the executor used to run the pipeline
+     * @param cacheCleaners
+     *            the available cache cleaners
+     * @param runCleaners
+     *            <code>true</code> if the cleaners should be executed; <code>false</code> if the
+     *            pipeline should only verify that class loaders are garbage collected
+     */
+    CacheCleaningPipeline(ScheduledExecutorService executor, ServiceSet<CacheCleaner> cacheCleaners, boolean runCleaners) {
+        this.executor = executor;
+        this.cacheCleaners = cacheCleaners;
+        this.runCleaners = runCleaners;
+        majorCollectors = getMajorCollectors();
+        getStats(NO_CLEANER);
+    }
+
+    /**
+     * Determine the garbage collectors that perform major collections, i.e. all collectors except
+     * the known minor collectors. The number of memory pools managed by a collector can't be used
+     * for this: e.g. the G1 young collector manages the same pools as the old collector.
+     */
+    private static List<GarbageCollectorMXBean> getMajorCollectors() {
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        List<GarbageCollectorMXBean> result = new ArrayList<GarbageCollectorMXBean>();
+        for (GarbageCollectorMXBean collector : collectors) {
+            if (!MINOR_COLLECTORS.contains(collector.getName())) {
+                result.add(collector);
+            }
+        }
+        if (result.isEmpty()) {
+            // Unknown configuration; better detect too many major collections than none
+            result.addAll(collectors);
+        }
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            List<String> names = new ArrayList<String>();
+            for (GarbageCollectorMXBean collector : result) {
+                names.add(collector.getName());
+            }
+            LOGGER.log(Level.FINEST, "Major garbage collectors: {0}", names);
+        }
+        return result;
+    }
+
+    private long getMajorCollectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : majorCollectors) {
+            count += collector.getCollectionCount();
+        }
+        return count;
+    }
+
+    private CacheCleanerStats getStats(String name) {
+        CacheCleanerStats result = stats.get(name);
+        if (result == null) {
+            CacheCleanerStats newStats = new CacheCleanerStats(name);
+            result = stats.putIfAbsent(name, newStats);
+            if (result == null) {
+                result = newStats;
+            }
+        }
+        return result;
+    }
+
+    private void schedule(Job job) {
+        schedule(job, CHECK_INTERVAL);
+    }
+
+    private void schedule(Job job, long delay) {
+        try {
+            executor.schedule(job, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // The executor has been shut down
+        }
+    }
+
+    /**
+     * Start the pipeline for a class loader that has been stopped.
+     *
+     * @param info
+     *            the class loader
+     */
+    void classLoaderStopped(ClassLoaderInfo info) {
+        activeJobs.incrementAndGet();
+        schedule(new Job(info), runCleaners ? 0 : CHECK_INTERVAL);
+    }
+
+    /**
+     * Produce a report with the statistics of the pipeline.
+     *
+     * @return the report
+     */
+    String dumpStats() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("Cleaners executed: ");
+        buffer.append(runCleaners);
+        buffer.append("\nActive jobs: ");
+        buffer.append(activeJobs.get());
+        buffer.append("\nClass loaders not released: ");
+        buffer.append(unreleasedCount.get());
+        for (CacheCleanerStats s : stats.values()) {
+            buffer.append("\n");
+            buffer.append(s.getName());
+            buffer.append(": invocations=");
+            buffer.append(s.getInvocationCount());
+            buffer.append(", averageDuration=");
+            buffer.append(String.format("%.1f", s.getAverageDuration()));
+            buffer.append(" ms, released=");
+            buffer.append(s.getReleasedCount());
+            buffer.append(", averageReclaimTime=");
+            buffer.append(s.getAverageReclaimTime()/1000);
+            buffer.append(" s");
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.veithen.rbeans.RBeanFactory;
+import com.github.veithen.rbeans.RBeanFactoryException;
+import com.googlecode.xm4was.clmon.resources.Messages;
+
+/**
+ * Determines the classes defined by a class loader. This relies on the private <tt>classes</tt>
+ * field of {@link ClassLoader}, which is maintained by HotSpot based JVMs, but not by IBM J9
+ * (which is the JVM shipped with WebSphere). Features that depend on this information should use
+ * {@link #isSupported()} to detect that it is not available and report that to the user instead
+ * of producing empty results.
+ */
+final class ClassLoaderClasses {
+    private static final Logger LOGGER = Logger.getLogger(ClassLoaderClasses.class.getName(), Messages.class.getName());
+
+    private static final RBeanFactory rbf;
+    private static final boolean supported;
+
+    static {
+        RBeanFactory _rbf;
+        try {
+            _rbf = new RBeanFactory(ClassLoaderRBean.class);
+        } catch (RBeanFactoryException ex) {
+            LOGGER.log(Level.SEVERE, Messages._0006E, ex);
+            _rbf = null;
+        }
+        rbf = _rbf;
+        supported = rbf != null && rbf.createRBean(ClassLoaderRBean.class, ClassLoaderClasses.class.getClassLoader()).getClasses() != null;
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Classes defined by a class loader can be determined: {0}", supported);
+        }
+    }
+
+    private ClassLoaderClasses() {}
+
+    /**
+     * Determine if the classes defined by a class loader can be determined on this JVM.
+     *
+     * @return <code>true</code> if {@link #getClasses(ClassLoader)} is supported
+     */
+    static boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Get a snapshot of the classes defined by a class loader.
+     *
+     * @param classLoader
+     *            the class loader
+     * @return the classes, or <code>null</code> if they can't be determined on this JVM
+     */
+    static Class<?>[] getClasses(ClassLoader classLoader) {
+        if (!supported) {
+            return null;
+        }
+        Vector<Class<?>> classes = rbf.createRBean(ClassLoaderRBean.class, classLoader).getClasses();
+        // Vector#toArray is synchronized on the vector, i.e. on the lock used to add new classes
+        return classes == null ? null : classes.toArray(new Class<?>[0]);
+    }
+}
@@ -1,5 +1,12 @@
 package com.googlecode.xm4was.clmon.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -7,18 +14,30 @@ import com.github.veithen.rbeans.RBeanFactory;
 import com.github.veithen.rbeans.RBeanFactoryException;
 import com.googlecode.xm4was.clmon.resources.Messages;
 import com.googlecode.xm4was.commons.rbeans.HashMapRBean;
+import com.googlecode.xm4was.commons.rbeans.HashMapSampler;
 
 /**
  * Represents a group of class loaders. These class loaders may still exist or may have been garbage
  * collected. A group usually corresponds to a given application or module. Each instance of this
  * class collects statistics about the number of created, leaked and destroyed class loaders and
- * exposes them via PMI.
+ * exposes them via PMI. Instances of this class are thread safe and don't use locks (except for
+ * the access to the resource request cache, which is synchronized by WebSphere).
  */
 public class ClassLoaderGroup implements ClassLoaderGroupMBean {
     private static final Logger LOGGER = Logger.getLogger(ClassLoaderGroup.class.getName(), Messages.class.getName());
     
     private static final RBeanFactory rbf;
     
+    private static final class ResourceRequestCache {
+        final Object mutex;
+        final HashMapRBean<?,?> map;
+        
+        ResourceRequestCache(Object mutex, HashMapRBean<?,?> map) {
+            this.mutex = mutex;
+            this.map = map;
+        }
+    }
+    
     static {
         RBeanFactory _rbf;
         try {
@@ -33,12 +52,17 @@ public class ClassLoaderGroup implements ClassLoaderGroupMBean {
     private final String applicationName;
     private final String moduleName;
     private final String name;
-    private int createCount;
-    private int stopCount;
-    private int destroyedCount;
-    private Object mutex;
-    private HashMapRBean<?,?> resourceRequestCache;
-    private int unmanagedThreadCount;
+    private final AtomicInteger createCount = new AtomicInteger();
+    private final AtomicInteger stopCount = new AtomicInteger();
+    private final AtomicInteger destroyedCount = new AtomicInteger();
+    private volatile ResourceRequestCache resourceRequestCache;
+    private final AtomicInteger unmanagedThreadCount = new AtomicInteger();
+    private volatile int loadedClassCount = -1;
+    private volatile long classMetadataSize = -1;
+    private volatile long staticFieldsSize = -1;
+    private long lastResourceRequestCacheSampleTime;
+    private int lastResourceRequestCacheSize = -1;
+    private volatile int resourceRequestCacheGrowthRate;
     
     public ClassLoaderGroup(String applicationName, String moduleName) {
         this.applicationName = applicationName;
@@ -62,18 +86,17 @@ public class ClassLoaderGroup implements ClassLoaderGroupMBean {
         return name;
     }
 
-    public synchronized void classLoaderCreated(ClassLoader classLoader) {
-        createCount++;
+    public void classLoaderCreated(ClassLoader classLoader) {
+        int count = createCount.incrementAndGet();
         if (LOGGER.isLoggable(Level.FINEST)) {
-            LOGGER.log(Level.FINEST, "Incremented createCount; new value: {0}", createCount);
+            LOGGER.log(Level.FINEST, "Incremented createCount; new value: {0}", count);
         }
         if (rbf != null) {
             SynchronizedMapRBean<?,?> synchronizedMap = (SynchronizedMapRBean<?,?>)rbf.createRBean(CompoundClassLoaderRBean.class, classLoader).getResourceRequestCache();
             if (synchronizedMap == null) {
                 LOGGER.log(Level.FINEST, "Resource request cache not available in this WAS version");
             } else {
-                mutex = synchronizedMap.getMutex();
-                resourceRequestCache = (HashMapRBean<?,?>)synchronizedMap.getTargetMap();
+                resourceRequestCache = new ResourceRequestCache(synchronizedMap.getMutex(), (HashMapRBean<?,?>)synchronizedMap.getTargetMap());
                 LOGGER.log(Level.FINEST, "Extracted resource request cache reference from class loader");
             }
         } else {
@@ -81,58 +104,151 @@ public class ClassLoaderGroup implements ClassLoaderGroupMBean {
         }
     }
     
-    public synchronized void classLoaderStopped() {
-        stopCount++;
+    public void classLoaderStopped() {
+        int count = stopCount.incrementAndGet();
         if (LOGGER.isLoggable(Level.FINEST)) {
-            LOGGER.log(Level.FINEST, "Incremented stopCount; new value: {0}", stopCount);
+            LOGGER.log(Level.FINEST, "Incremented stopCount; new value: {0}", count);
         }
         // Release references to avoid class loader leak
-        mutex = null;
         resourceRequestCache = null;
     }
     
-    public synchronized void classLoaderDestroyed() {
-        destroyedCount++;
+    public void classLoaderDestroyed() {
+        int count = destroyedCount.incrementAndGet();
         if (LOGGER.isLoggable(Level.FINEST)) {
-            LOGGER.log(Level.FINEST, "Incremented destroyedCount; new value: {0}", destroyedCount);
+            LOGGER.log(Level.FINEST, "Incremented destroyedCount; new value: {0}", count);
         }
     }
     
-    public synchronized void threadCreated() {
-        unmanagedThreadCount++;
+    public void threadCreated() {
+        unmanagedThreadCount.incrementAndGet();
     }
     
-    public synchronized void threadDestroyed() {
-        unmanagedThreadCount--;
+    public void threadDestroyed() {
+        unmanagedThreadCount.decrementAndGet();
     }
     
-    public synchronized int getCreateCount() {
-        return createCount;
+    public int getCreateCount() {
+        return createCount.get();
     }
 
-    public synchronized int getStopCount() {
-        return stopCount;
+    public int getStopCount() {
+        return stopCount.get();
     }
 
-    public synchronized int getDestroyedCount() {
-        return destroyedCount;
+    public int getDestroyedCount() {
+        return destroyedCount.get();
     }
 
-    public synchronized int getLeakedCount() {
-        return stopCount - destroyedCount;
+    public int getLeakedCount() {
+        // Read destroyedCount first: a class loader is always stopped before it is destroyed, so
+        // this order ensures that the result is never negative
+        int destroyed = destroyedCount.get();
+        return stopCount.get() - destroyed;
     }
 
     public int getResourceRequestCacheModCount() {
+        ResourceRequestCache resourceRequestCache = this.resourceRequestCache;
         if (resourceRequestCache != null) {
-            synchronized (mutex) {
-                return resourceRequestCache.getModCount();
+            synchronized (resourceRequestCache.mutex) {
+                return resourceRequestCache.map.getModCount();
             }
         } else {
             return -1;
         }
     }
 
-    public synchronized int getUnmanagedThreadCount() {
-        return unmanagedThreadCount;
+    public int getResourceRequestCacheSize() {
+        ResourceRequestCache resourceRequestCache = this.resourceRequestCache;
+        // Read the field directly without acquiring the mutex; an approximate value is good enough
+        return resourceRequestCache == null ? -1 : resourceRequestCache.map.getSize();
+    }
+
+    public int getResourceRequestCacheGrowthRate() {
+        return resourceRequestCacheGrowthRate;
+    }
+
+    /**
+     * Update the growth rate of the resource request cache. This method is called periodically
+     * and must not be called concurrently.
+     */
+    void sampleResourceRequestCache() {
+        long timestamp = System.currentTimeMillis();
+        int size = getResourceRequestCacheSize();
+        if (size == -1) {
+            resourceRequestCacheGrowthRate = 0;
+        } else if (lastResourceRequestCacheSize != -1 && timestamp > lastResourceRequestCacheSampleTime) {
+            resourceRequestCacheGrowthRate = (int)((size - lastResourceRequestCacheSize)*60000L/(timestamp - lastResourceRequestCacheSampleTime));
+        }
+        lastResourceRequestCacheSize = size;
+        lastResourceRequestCacheSampleTime = timestamp;
+    }
+
+    /**
+     * Produce a report about the content of the resource request cache. The report is based on a
+     * sample of the keys (resource names) read without acquiring the mutex of the cache. The
+     * names are grouped by directory and the directories with the largest number of entries are
+     * reported.
+     * 
+     * @param maxSampleSize
+     *            the maximum number of keys to sample
+     * @param maxDirectories
+     *            the maximum number of directories to report
+     * @return the report
+     */
+    String dumpResourceRequestCache(int maxSampleSize, int maxDirectories) {
+        ResourceRequestCache resourceRequestCache = this.resourceRequestCache;
+        if (resourceRequestCache == null) {
+            return "Resource request cache not available";
+        }
+        List<Map.Entry<Object,Object>> entries = HashMapSampler.sampleEntries(resourceRequestCache.map, maxSampleSize);
+        final Map<String,Integer> counts = new HashMap<String,Integer>();
+        for (Map.Entry<Object,Object> entry : entries) {
+            String name = String.valueOf(entry.getKey());
+            int idx = name.lastIndexOf('/');
+            String directory = idx == -1 ? "/" : name.substring(0, idx+1);
+            Integer count = counts.get(directory);
+            counts.put(directory, count == null ? 1 : count+1);
+        }
+        List<String> directories = new ArrayList<String>(counts.keySet());
+        Collections.sort(directories, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                return counts.get(o2) - counts.get(o1);
+            }
+        });
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("Size: ");
+        buffer.append(resourceRequestCache.map.getSize());
+        buffer.append("\nSampled entries: ");
+        buffer.append(entries.size());
+        for (String directory : directories.subList(0, Math.min(maxDirectories, directories.size()))) {
+            buffer.append("\n");
+            buffer.append(counts.get(directory));
+            buffer.append(" ");
+            buffer.append(directory);
+        }
+        return buffer.toString();
+    }
+
+    public int getUnmanagedThreadCount() {
+        return unmanagedThreadCount.get();
+    }
+
+    void updateFootprint(int loadedClassCount, long classMetadataSize, long staticFieldsSize) {
+        this.loadedClassCount = loadedClassCount;
+        this.classMetadataSize = classMetadataSize;
+        this.staticFieldsSize = staticFieldsSize;
+    }
+
+    public int getLoadedClassCount() {
+        return loadedClassCount;
+    }
+
+    public long getClassMetadataSize() {
+        return classMetadataSize;
+    }
+
+    public long getStaticFieldsSize() {
+        return staticFieldsSize;
     }
 }
@@ -22,4 +22,19 @@ public interface ClassLoaderGroupMBean {
     
     @Statistic(id=6)
     int getUnmanagedThreadCount();
+    
+    @Statistic(id=7)
+    int getLoadedClassCount();
+    
+    @Statistic(id=8)
+    long getClassMetadataSize();
+    
+    @Statistic(id=9)
+    long getStaticFieldsSize();
+    
+    @Statistic(id=10)
+    int getResourceRequestCacheSize();
+    
+    @Statistic(id=11)
+    int getResourceRequestCacheGrowthRate();
 }
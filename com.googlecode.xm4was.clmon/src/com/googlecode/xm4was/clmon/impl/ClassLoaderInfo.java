@@ -3,13 +3,43 @@ package com.googlecode.xm4was.clmon.impl;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 
+/**
+ * Tracks a class loader without preventing it from being garbage collected. Instances of this class
+ * can be used as keys in a concurrent map: they are compared by the identity of the class loader,
+ * and they can be looked up using a {@link Key}. After the class loader has been garbage collected,
+ * an instance is only equal to itself, so that it can still be removed from the map.
+ */
 public class ClassLoaderInfo extends WeakReference<ClassLoader> {
+    /**
+     * Key used to look up the {@link ClassLoaderInfo} for a given class loader.
+     */
+    public static final class Key {
+        private final ClassLoader classLoader;
+
+        public Key(ClassLoader classLoader) {
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ClassLoaderInfo && ((ClassLoaderInfo)obj).get() == classLoader;
+        }
+    }
+    
     private final ClassLoaderGroup group;
-    private boolean stopped;
+    private final int hashCode;
+    private volatile boolean stopped;
+    private volatile long destroyedTime;
 
     public ClassLoaderInfo(ClassLoader classLoader, ClassLoaderGroup group, ReferenceQueue<ClassLoader> queue) {
         super(classLoader, queue);
         this.group = group;
+        hashCode = System.identityHashCode(classLoader);
     }
     
     public ClassLoader getClassLoader() {
@@ -20,14 +50,52 @@ public class ClassLoaderInfo extends WeakReference<ClassLoader> {
         return group;
     }
 
-    public synchronized boolean isStopped() {
+    public boolean isStopped() {
         return stopped;
     }
 
-    public synchronized void setStopped(boolean stopped) {
+    public void setStopped(boolean stopped) {
         this.stopped = stopped;
     }
     
+    /**
+     * Determine whether the class loader has been garbage collected. This only returns
+     * <code>true</code> after the instance has been retrieved from the reference queue.
+     */
+    public boolean isDestroyed() {
+        return destroyedTime != 0;
+    }
+    
+    /**
+     * Get the time at which the instance has been retrieved from the reference queue.
+     */
+    public long getDestroyedTime() {
+        return destroyedTime;
+    }
+    
+    void setDestroyed() {
+        destroyedTime = System.currentTimeMillis();
+    }
+    
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof Key) {
+            return obj.equals(this);
+        } else if (obj instanceof ClassLoaderInfo) {
+            ClassLoader classLoader = get();
+            return classLoader != null && ((ClassLoaderInfo)obj).get() == classLoader;
+        } else {
+            return false;
+        }
+    }
+    
     @Override
     public String toString() {
         return "ClassLoaderInfo[name=" + group.getName() + ",stopped=" + stopped + ",destroyed=" + (get() == null) + "]";
@@ -1,12 +1,17 @@
 package com.googlecode.xm4was.clmon.impl;
 
 import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,6 +20,8 @@ import org.osgi.framework.BundleContext;
 
 import com.googlecode.xm4was.clmon.CacheCleaner;
 import com.googlecode.xm4was.clmon.resources.Messages;
+import com.googlecode.xm4was.commons.JmxConstants;
+import com.googlecode.xm4was.commons.NamedThreadFactory;
 import com.googlecode.xm4was.commons.deploy.ClassLoaderListener;
 import com.googlecode.xm4was.commons.osgi.Lifecycle;
 import com.googlecode.xm4was.commons.osgi.ServiceSet;
@@ -24,6 +31,7 @@ import com.googlecode.xm4was.commons.osgi.annotations.ProcessTypes;
 import com.googlecode.xm4was.commons.osgi.annotations.Services;
 import com.googlecode.xm4was.threadmon.ModuleInfo;
 import com.googlecode.xm4was.threadmon.UnmanagedThreadListener;
+import com.ibm.rmi.util.Utility;
 import com.ibm.websphere.management.AdminConstants;
 
 @ProcessTypes({AdminConstants.MANAGED_PROCESS, AdminConstants.STANDALONE_PROCESS})
@@ -46,13 +54,84 @@ public class ClassLoaderMonitor implements ClassLoaderListener, UnmanagedThreadL
      */
     private static final int STATS_MAX_DELAY = 30000;
     
+    /**
+     * The maximum number of objects visited by {@link #analyzeLeaks(String)} per class loader. This
+     * limits the amount of memory used by the analysis.
+     */
+    private static final int LEAK_ANALYSIS_MAX_OBJECTS = Integer.parseInt(System.getProperty(
+            "com.googlecode.xm4was.clmon.ClassLoaderMonitor.LEAK_ANALYSIS_MAX_OBJECTS", "500000"));
+    
+    /**
+     * The maximum length of the reference chains reported by {@link #analyzeLeaks(String)}.
+     */
+    private static final int LEAK_ANALYSIS_MAX_DEPTH = 30;
+    
+    /**
+     * The maximum number of reference chains reported per class loader.
+     */
+    private static final int LEAK_ANALYSIS_MAX_CHAINS = 5;
+    
+    /**
+     * The minimum interval (in milliseconds) between two samples of the class loader footprint
+     * statistics. A value of 0 disables these statistics. The actual interval is increased if
+     * necessary so that sampling consumes at most 1% of the time of a single CPU.
+     */
+    private static final long FOOTPRINT_SAMPLING_INTERVAL = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.clmon.ClassLoaderMonitor.FOOTPRINT_SAMPLING_INTERVAL", "300000"));
+    
+    /**
+     * The interval (in milliseconds) at which the size of the resource request caches is sampled
+     * to compute their growth rate.
+     */
+    private static final int RESOURCE_REQUEST_CACHE_SAMPLE_INTERVAL = 60000;
+    
+    private static final int RESOURCE_REQUEST_CACHE_MAX_SAMPLE_SIZE = 10000;
+    
+    private static final int RESOURCE_REQUEST_CACHE_MAX_DIRECTORIES = 20;
+    
+    /**
+     * The interval (in milliseconds) at which the conditions monitored by
+     * {@link LeakSuspectNotifier} are evaluated.
+     */
+    private static final int LEAK_SUSPECT_CHECK_INTERVAL = 30000;
+    
+    /**
+     * The maximum number of objects visited per group when estimating the size of static fields.
+     */
+    private static final int FOOTPRINT_MAX_OBJECTS = Integer.parseInt(System.getProperty(
+            "com.googlecode.xm4was.clmon.ClassLoaderMonitor.FOOTPRINT_MAX_OBJECTS", "100000"));
+    
+    /**
+     * JRE classes with static fields that are known to cause class loader leaks.
+     */
+    private static final String[] LEAK_ANALYSIS_STATIC_ROOTS = {
+        "java.sql.DriverManager",
+        "java.util.ResourceBundle",
+        "java.beans.Introspector",
+        "java.beans.ThreadGroupContext",
+        "java.lang.ApplicationShutdownHooks",
+        "java.lang.reflect.Proxy",
+        "java.security.Security",
+        "sun.security.jca.Providers",
+        "javax.management.MBeanServerFactory",
+        "javax.xml.bind.ContextFinder",
+    };
+    
     private BundleContext bundleContext;
     private ServiceSet<CacheCleaner> cacheCleaners;
     private long lastDumped;
     private final AtomicLong lastUpdated = new AtomicLong();
-    private Map<ClassLoader,ClassLoaderInfo> classLoaderInfos;
+    /**
+     * The tracked class loaders. Keys are {@link ClassLoaderInfo} instances (which are their own
+     * values); lookups use {@link ClassLoaderInfo.Key}.
+     */
+    private ConcurrentMap<Object,ClassLoaderInfo> classLoaderInfos;
     private ReferenceQueue<ClassLoader> classLoaderInfoQueue;
-    private Map<String,ClassLoaderGroup> classLoaderGroups;
+    private ConcurrentMap<String,ClassLoaderGroup> classLoaderGroups;
+    private ScheduledExecutorService executor;
+    private FootprintSampler footprintSampler;
+    private CacheCleaningPipeline cacheCleaningPipeline;
+    private LeakSuspectNotifier leakSuspectNotifier;
     
     @Init
     public void init(Lifecycle lifecycle, BundleContext bundleContext, ServiceSet<CacheCleaner> cacheCleaners) throws Exception {
@@ -65,22 +144,60 @@ public class ClassLoaderMonitor implements ClassLoaderListener, UnmanagedThreadL
             }
         });
         
-        classLoaderInfos = new WeakHashMap<ClassLoader,ClassLoaderInfo>();
+        classLoaderInfos = new ConcurrentHashMap<Object,ClassLoaderInfo>();
         classLoaderInfoQueue = new ReferenceQueue<ClassLoader>();
-        final Timer timer = new Timer("Class Loader Monitor");
+        classLoaderGroups = new ConcurrentHashMap<String,ClassLoaderGroup>();
+        // A single thread is used for all periodic tasks of the monitor; they are therefore
+        // never executed concurrently.
+        executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Class Loader Monitor", LOGGER, Messages._0007E));
         lifecycle.addStopAction(new Runnable() {
             public void run() {
-                timer.cancel();
+                executor.shutdownNow();
             }
         });
-        timer.schedule(new TimerTask() {
-            @Override
+        executor.scheduleWithFixedDelay(new Runnable() {
             public void run() {
-                updateClassLoaders();
+                try {
+                    updateClassLoaders();
+                } catch (Throwable ex) {
+                    // Exceptions would silently cancel the task
+                    LOGGER.log(Level.SEVERE, Messages._0007E, ex);
+                }
             }
-        }, 1000, 1000);
-
-        classLoaderGroups = new HashMap<String,ClassLoaderGroup>();
+        }, 1000, 1000, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    for (ClassLoaderGroup group : classLoaderGroups.values()) {
+                        group.sampleResourceRequestCache();
+                    }
+                } catch (Throwable ex) {
+                    LOGGER.log(Level.SEVERE, Messages._0007E, ex);
+                }
+            }
+        }, RESOURCE_REQUEST_CACHE_SAMPLE_INTERVAL, RESOURCE_REQUEST_CACHE_SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+        
+        leakSuspectNotifier = new LeakSuspectNotifier();
+        lifecycle.addService(LeakSuspectNotifierMBean.class, leakSuspectNotifier, null);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    leakSuspectNotifier.check(classLoaderGroups.values());
+                } catch (Throwable ex) {
+                    LOGGER.log(Level.SEVERE, Messages._0007E, ex);
+                }
+            }
+        }, LEAK_SUSPECT_CHECK_INTERVAL, LEAK_SUSPECT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        
+        cacheCleaningPipeline = new CacheCleaningPipeline(executor, cacheCleaners,
+                "true".equals(System.getProperty("com.googlecode.xm4was.clmon.autoClearCaches")));
+        
+        if (FOOTPRINT_SAMPLING_INTERVAL > 0 && !ClassLoaderClasses.isSupported()) {
+            LOGGER.log(Level.WARNING, Messages._0009W, "class loader footprint statistics");
+        } else if (FOOTPRINT_SAMPLING_INTERVAL > 0) {
+            footprintSampler = new FootprintSampler(FOOTPRINT_MAX_OBJECTS);
+            scheduleFootprintSampling(FOOTPRINT_SAMPLING_INTERVAL);
+        }
         
         LOGGER.log(Level.INFO, Messages._0001I);
     }
@@ -94,14 +211,15 @@ public class ClassLoaderMonitor implements ClassLoaderListener, UnmanagedThreadL
             if (LOGGER.isLoggable(Level.FINEST)) {
                 LOGGER.log(Level.FINEST, "Detected class loader that has been garbage collected: " + classLoaderInfo);
             }
-            // classLoaderDestroyed is synchronized
+            classLoaderInfos.remove(classLoaderInfo);
+            classLoaderInfo.setDestroyed();
             classLoaderInfo.getGroup().classLoaderDestroyed();
         }
         long timestamp = System.currentTimeMillis();
         if (isUpdated) {
             lastUpdated.set(System.currentTimeMillis());
         }
-        // This method is only called by the timer, i.e. never concurrently. Therefore unsynchronized access
+        // This method is only called by the executor, i.e. never concurrently. Therefore unsynchronized access
         // to lastDumped is safe.
         long lastUpdated = this.lastUpdated.get();
         if (lastUpdated > lastDumped && ((timestamp - lastUpdated > STATS_MIN_DELAY) || (timestamp - lastDumped > STATS_MAX_DELAY))) {
@@ -109,18 +227,62 @@ public class ClassLoaderMonitor implements ClassLoaderListener, UnmanagedThreadL
             int createCount = 0;
             int stopCount = 0;
             int destroyedCount = 0;
-            synchronized (classLoaderGroups) {
-                for (ClassLoaderGroup group : classLoaderGroups.values()) {
-                    // Getters are synchronized
-                    createCount += group.getCreateCount();
-                    stopCount += group.getStopCount();
-                    destroyedCount += group.getDestroyedCount();
-                }
+            // The groups are not locked; the counters of each group are read atomically, but the
+            // totals may reflect updates that happen concurrently
+            for (ClassLoaderGroup group : classLoaderGroups.values()) {
+                createCount += group.getCreateCount();
+                stopCount += group.getStopCount();
+                destroyedCount += group.getDestroyedCount();
             }
             LOGGER.log(Level.INFO, Messages._0003I, new Object[] { String.valueOf(createCount), String.valueOf(stopCount), String.valueOf(destroyedCount) });
         }
     }
     
+    private void scheduleFootprintSampling(long delay) {
+        try {
+            executor.schedule(new Runnable() {
+                public void run() {
+                    try {
+                        sampleFootprints();
+                    } catch (Throwable ex) {
+                        LOGGER.log(Level.SEVERE, Messages._0007E, ex);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // The executor has been shut down
+        }
+    }
+    
+    void sampleFootprints() {
+        long start = System.nanoTime();
+        Map<ClassLoaderGroup,List<ClassLoader>> classLoadersByGroup = new HashMap<ClassLoaderGroup,List<ClassLoader>>();
+        for (ClassLoaderInfo info : classLoaderInfos.values()) {
+            ClassLoader classLoader = info.getClassLoader();
+            if (classLoader != null) {
+                List<ClassLoader> classLoaders = classLoadersByGroup.get(info.getGroup());
+                if (classLoaders == null) {
+                    classLoaders = new ArrayList<ClassLoader>();
+                    classLoadersByGroup.put(info.getGroup(), classLoaders);
+                }
+                classLoaders.add(classLoader);
+            }
+        }
+        for (ClassLoaderGroup group : classLoaderGroups.values()) {
+            List<ClassLoader> classLoaders = classLoadersByGroup.remove(group);
+            if (classLoaders == null) {
+                group.updateFootprint(0, 0, 0);
+            } else if (footprintSampler.sample(classLoaders)) {
+                group.updateFootprint(footprintSampler.getClassCount(), footprintSampler.getMetadataSize(), footprintSampler.getStaticFieldsSize());
+            }
+        }
+        long elapsed = (System.nanoTime() - start)/1000000;
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Sampled class loader footprints in {0} ms", elapsed);
+        }
+        scheduleFootprintSampling(Math.max(FOOTPRINT_SAMPLING_INTERVAL, elapsed*100));
+    }
+    
     private ClassLoaderGroup getGroup(String applicationName, String moduleName) {
         String groupKey;
         if (moduleName != null) {
@@ -128,14 +290,15 @@ public class ClassLoaderMonitor implements ClassLoaderListener, UnmanagedThreadL
         } else {
             groupKey = applicationName;
         }
-        ClassLoaderGroup group;
-        synchronized (classLoaderGroups) {
-            group = classLoaderGroups.get(groupKey);
+        ClassLoaderGroup group = classLoaderGroups.get(groupKey);
+        if (group == null) {
+            ClassLoaderGroup newGroup = new ClassLoaderGroup(applicationName, moduleName);
+            group = classLoaderGroups.putIfAbsent(groupKey, newGroup);
             if (group == null) {
-                group = new ClassLoaderGroup(applicationName, moduleName);
-                classLoaderGroups.put(groupKey, group);
+                group = newGroup;
                 Properties props = new Properties();
                 props.setProperty("name", groupKey);
+                props.setProperty(JmxConstants.EXPORT_PROPERTY, "true");
                 bundleContext.registerService(ClassLoaderGroupMBean.class.getName(), group, props);
             }
         }
@@ -144,18 +307,14 @@ public class ClassLoaderMonitor implements ClassLoaderListener, UnmanagedThreadL
     
     public void classLoaderCreated(ClassLoader classLoader, String applicationName, String moduleName) {
         ClassLoaderGroup group = getGroup(applicationName, moduleName);
-        synchronized (classLoaderInfos) {
-            classLoaderInfos.put(classLoader, new ClassLoaderInfo(classLoader, group, classLoaderInfoQueue));
-        }
+        ClassLoaderInfo info = new ClassLoaderInfo(classLoader, group, classLoaderInfoQueue);
+        classLoaderInfos.put(info, info);
         group.classLoaderCreated(classLoader);
         lastUpdated.set(System.currentTimeMillis());
     }
 
     public void classLoaderReleased(ClassLoader classLoader, String applicationName, String moduleName) {
-        ClassLoaderInfo info;
-        synchronized (classLoaderInfos) {
-            info = classLoaderInfos.get(classLoader);
-        }
+        ClassLoaderInfo info = classLoaderInfos.get(new ClassLoaderInfo.Key(classLoader));
         if (info == null) {
             // We may get here if something went badly wrong during startup of the application
             LOGGER.log(Level.WARNING, Messages._0005W);
@@ -167,8 +326,8 @@ public class ClassLoaderMonitor implements ClassLoaderListener, UnmanagedThreadL
         info.setStopped(true);
         info.getGroup().classLoaderStopped();
         lastUpdated.set(System.currentTimeMillis());
-        if (moduleName == null && "true".equals(System.getProperty("com.googlecode.xm4was.clmon.autoClearCaches"))) {
-            clearCaches();
+        if (moduleName == null) {
+            cacheCleaningPipeline.classLoaderStopped(info);
         }
     }
 
@@ -186,6 +345,77 @@ public class ClassLoaderMonitor implements ClassLoaderListener, UnmanagedThreadL
         getGroup(moduleInfo.getApplicationName(), moduleInfo.getModuleName()).threadDestroyed();
     }
 
+    public String analyzeLeaks(String name) {
+        List<ClassLoaderInfo> infos = new ArrayList<ClassLoaderInfo>();
+        for (ClassLoaderInfo info : classLoaderInfos.values()) {
+            if (info.isStopped() && (name == null || name.length() == 0 || name.equals(info.getGroup().getName()))) {
+                infos.add(info);
+            }
+        }
+        final List<CacheCleaner> cleaners = new ArrayList<CacheCleaner>();
+        cacheCleaners.visit(new ServiceVisitor<CacheCleaner>() {
+            public void visit(CacheCleaner cacheCleaner) {
+                cleaners.add(cacheCleaner);
+            }
+        });
+        StringBuilder buffer = new StringBuilder();
+        for (ClassLoaderInfo info : infos) {
+            ClassLoader classLoader = info.getClassLoader();
+            if (classLoader == null) {
+                // Garbage collected in the meantime
+                continue;
+            }
+            if (buffer.length() > 0) {
+                buffer.append("\n\n");
+            }
+            buffer.append(info.getGroup().getName());
+            buffer.append(" (");
+            buffer.append(classLoader.getClass().getName());
+            buffer.append('@');
+            buffer.append(Integer.toHexString(System.identityHashCode(classLoader)));
+            buffer.append("):");
+            ReferencePathFinder finder = new ReferencePathFinder(classLoader, LEAK_ANALYSIS_MAX_OBJECTS, LEAK_ANALYSIS_MAX_DEPTH);
+            finder.addThreadRoots();
+            for (String className : LEAK_ANALYSIS_STATIC_ROOTS) {
+                finder.addStaticRoots(className);
+            }
+            finder.addRoot("class " + Utility.class.getName(), Utility.class);
+            for (CacheCleaner cleaner : cleaners) {
+                finder.addRoot("cache cleaner " + cleaner.getClass().getName(), cleaner);
+            }
+            List<String> chains = finder.findChains(LEAK_ANALYSIS_MAX_CHAINS);
+            if (chains.isEmpty()) {
+                buffer.append("\nNo reference chain found");
+            } else {
+                for (String chain : chains) {
+                    buffer.append("\n");
+                    buffer.append(chain);
+                }
+            }
+            buffer.append("\n(");
+            buffer.append(finder.getVisitedCount());
+            buffer.append(" objects visited");
+            if (finder.isTruncated()) {
+                buffer.append("; search truncated");
+            }
+            buffer.append(")");
+        }
+        return buffer.length() == 0 ? "No stopped class loaders found" : buffer.toString();
+    }
+
+    public String dumpCacheCleaningStats() {
+        return cacheCleaningPipeline.dumpStats();
+    }
+
+    public String dumpResourceRequestCache(String name) {
+        ClassLoaderGroup group = classLoaderGroups.get(name);
+        if (group == null) {
+            return "No application or module with name " + name;
+        } else {
+            return group.dumpResourceRequestCache(RESOURCE_REQUEST_CACHE_MAX_SAMPLE_SIZE, RESOURCE_REQUEST_CACHE_MAX_DIRECTORIES);
+        }
+    }
+
     public void clearCaches() {
         cacheCleaners.visit(new ServiceVisitor<CacheCleaner>() {
             public void visit(CacheCleaner cacheCleaner) {
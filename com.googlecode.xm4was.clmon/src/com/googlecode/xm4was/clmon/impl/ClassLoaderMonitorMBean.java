@@ -4,9 +4,36 @@ import javax.management.MBeanOperationInfo;
 
 import com.googlecode.xm4was.commons.jmx.annotations.MBean;
 import com.googlecode.xm4was.commons.jmx.annotations.Operation;
+import com.googlecode.xm4was.commons.jmx.annotations.Parameter;
 
 @MBean(type="ClassLoaderMonitor", description="Class Loader Monitor.")
 public interface ClassLoaderMonitorMBean {
     @Operation(description="TODO", impact=MBeanOperationInfo.ACTION, role="operator")
     void clearCaches();
+    
+    @Operation(description="Displays statistics about the automatic cache cleaning performed after " +
+            "an application is stopped, i.e. how many class loaders were garbage collected after " +
+            "the execution of each cache cleaner and how long that took. Cache cleaners are only " +
+            "executed automatically if the com.googlecode.xm4was.clmon.autoClearCaches system " +
+            "property is set to true.",
+            impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpCacheCleaningStats();
+    
+    @Operation(description="Displays the size of the resource request cache of an application or " +
+            "module class loader, together with the directories that have the largest number of " +
+            "entries. The report is based on a sample of the cache entries.",
+            impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpResourceRequestCache(
+            @Parameter(name="name", description="The name of the application or module (application#module)")
+            String name);
+    
+    @Operation(description="Searches for reference chains that prevent stopped class loaders from " +
+            "being garbage collected. The search starts from live threads, well known static caches " +
+            "in the JRE and the caches managed by the registered cache cleaners. This operation " +
+            "may take some time to complete.",
+            impact=MBeanOperationInfo.INFO, role="monitor")
+    String analyzeLeaks(
+            @Parameter(name="name", description="The name of the application or module (application#module); " +
+                    "if not specified, all stopped class loaders are analyzed")
+            String name);
 }
@@ -0,0 +1,18 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import java.util.Vector;
+
+import com.github.veithen.rbeans.Accessor;
+import com.github.veithen.rbeans.Optional;
+import com.github.veithen.rbeans.RBean;
+import com.github.veithen.rbeans.TargetClass;
+
+@TargetClass(ClassLoader.class)
+public interface ClassLoaderRBean extends RBean {
+    /**
+     * Get the classes defined by the class loader. Not all JVMs maintain this list.
+     */
+    @Optional
+    @Accessor(name="classes")
+    Vector<Class<?>> getClasses();
+}
@@ -0,0 +1,185 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the reference fields and the estimated shallow size of classes for reflective walks over
+ * the object graph. Instances of this class are not thread safe and must not be kept beyond the
+ * lifetime of a single walk: they hold strong references to the classes they have seen and would
+ * therefore pin application class loaders.
+ */
+final class FieldCache {
+    /**
+     * The estimated size of an object header. This assumes a 64-bit JVM with compressed
+     * references.
+     */
+    private static final int OBJECT_HEADER_SIZE = 12;
+
+    private static final int ARRAY_HEADER_SIZE = 16;
+
+    private static final int REFERENCE_SIZE = 4;
+
+    private static final Field[] NO_FIELDS = new Field[0];
+
+    private static final Field referentField;
+
+    static {
+        Field field;
+        try {
+            field = Reference.class.getDeclaredField("referent");
+        } catch (NoSuchFieldException ex) {
+            field = null;
+        }
+        referentField = field;
+    }
+
+    private final Map<Class<?>,Field[]> instanceFields = new HashMap<Class<?>,Field[]>();
+    private final Map<Class<?>,Field[]> staticFields = new HashMap<Class<?>,Field[]>();
+    private final Map<Class<?>,Long> shallowSizes = new HashMap<Class<?>,Long>();
+
+    /**
+     * Get the non static reference fields of a class, including the fields declared by its
+     * superclasses. The fields are accessible. Fields that can't be made accessible are skipped.
+     *
+     * @param clazz
+     *            the class
+     * @return the fields
+     */
+    Field[] getInstanceFields(Class<?> clazz) {
+        Field[] fields = instanceFields.get(clazz);
+        if (fields == null) {
+            fields = collectFields(clazz, false);
+            instanceFields.put(clazz, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Get the static reference fields declared by a class. The fields are accessible. Fields that
+     * can't be made accessible are skipped.
+     *
+     * @param clazz
+     *            the class
+     * @return the fields
+     */
+    Field[] getStaticFields(Class<?> clazz) {
+        Field[] fields = staticFields.get(clazz);
+        if (fields == null) {
+            fields = collectFields(clazz, true);
+            staticFields.put(clazz, fields);
+        }
+        return fields;
+    }
+
+    private static Field[] collectFields(Class<?> clazz, boolean isStatic) {
+        List<Field> list = new ArrayList<Field>();
+        Class<?> current = clazz;
+        do {
+            for (Field field : getDeclaredFields(current)) {
+                if (Modifier.isStatic(field.getModifiers()) == isStatic && !field.getType().isPrimitive()) {
+                    try {
+                        field.setAccessible(true);
+                        list.add(field);
+                    } catch (RuntimeException ex) {
+                        // Access denied (e.g. Java module system); skip the field
+                    }
+                }
+            }
+            current = current.getSuperclass();
+            // For static fields, only the fields declared by the class itself are relevant
+        } while (!isStatic && current != null);
+        return list.toArray(new Field[list.size()]);
+    }
+
+    private static Field[] getDeclaredFields(Class<?> clazz) {
+        try {
+            return clazz.getDeclaredFields();
+        } catch (Throwable ex) {
+            // NoClassDefFoundError if one of the field types can't be loaded
+            return NO_FIELDS;
+        }
+    }
+
+    /**
+     * Estimate the shallow size of an object, i.e. the memory used by the object itself, excluding
+     * the objects it references.
+     *
+     * @param object
+     *            the object
+     * @return the estimated size in bytes
+     */
+    long getShallowSize(Object object) {
+        Class<?> clazz = object.getClass();
+        if (clazz.isArray()) {
+            Class<?> componentType = clazz.getComponentType();
+            int elementSize = componentType.isPrimitive() ? getPrimitiveSize(componentType) : REFERENCE_SIZE;
+            return align(ARRAY_HEADER_SIZE + (long)Array.getLength(object)*elementSize);
+        }
+        Long size = shallowSizes.get(clazz);
+        if (size == null) {
+            long s = OBJECT_HEADER_SIZE;
+            for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+                for (Field field : getDeclaredFields(current)) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        Class<?> type = field.getType();
+                        s += type.isPrimitive() ? getPrimitiveSize(type) : REFERENCE_SIZE;
+                    }
+                }
+            }
+            size = align(s);
+            shallowSizes.put(clazz, size);
+        }
+        return size;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static int getPrimitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * Determine whether the given field is the referent field of {@link Reference}.
+     *
+     * @param field
+     *            the field
+     * @return <code>true</code> if the field is the referent field
+     */
+    static boolean isReferent(Field field) {
+        return field.equals(referentField);
+    }
+
+    /**
+     * Read the value of a field, returning <code>null</code> if the value can't be read.
+     *
+     * @param field
+     *            the field
+     * @param object
+     *            the object, or <code>null</code> for static fields
+     * @return the value
+     */
+    static Object getValue(Field field, Object object) {
+        try {
+            return field.get(object);
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.clmon.resources.Messages;
+
+/**
+ * Estimates the memory footprint of the classes defined by a set of class loaders. The estimate
+ * has three components:
+ * <ol>
+ * <li>The number of classes defined by the class loaders.
+ * <li>An estimate of the size of the class metadata (bytecode, constant pools, method and field
+ * descriptors), computed from the number of declared members of a subset of the classes and
+ * extrapolated to all classes. Determining the declared methods causes the JVM to create and
+ * cache reflection data, which increases the footprint being measured; the number of classes
+ * examined is therefore bounded by {@link #MAX_METADATA_SAMPLES}.
+ * <li>An estimate of the heap size retained by static fields, computed by a bounded walk over the
+ * objects reachable from the static fields of these classes. Since shared objects are counted for
+ * every group that reaches them, this is an upper bound rather than an exact retained size.
+ * </ol>
+ * The walk doesn't traverse {@link Class} objects, class loaders, threads and the referents of
+ * {@link Reference} objects. Instances of this class are not thread safe.
+ * <p>
+ * The sampler relies on {@link ClassLoaderClasses} and is not supported on JVMs that don't
+ * maintain the list of classes defined by a class loader. In particular it is not supported on
+ * IBM J9, i.e. on the JVM used by WebSphere; there the footprint statistics are not updated.
+ */
+final class FootprintSampler {
+    private static final Logger LOGGER = Logger.getLogger(FootprintSampler.class.getName(), Messages.class.getName());
+
+    private static final int CLASS_BASE_SIZE = 512;
+    private static final int METHOD_SIZE = 256;
+    private static final int FIELD_SIZE = 64;
+
+    /**
+     * The maximum number of classes per call to {@link #sample(List)} for which the metadata size
+     * is computed.
+     */
+    private static final int MAX_METADATA_SAMPLES = 200;
+
+    /**
+     * Caches the metadata size estimate for each class. Computing the estimate requires reflection,
+     * so we only do that once per class.
+     */
+    private final Map<Class<?>,Integer> metadataSizes = new WeakHashMap<Class<?>,Integer>();
+
+    private final int maxObjects;
+
+    private int classCount;
+    private long metadataSize;
+    private long staticFieldsSize;
+    private FieldCache fieldCache;
+    private Map<Object,Boolean> visited;
+    private LinkedList<Object> queue;
+
+    /**
+     * Constructor.
+     *
+     * @param maxObjects
+     *            the maximum number of objects visited when estimating the size of static fields
+     *            (per call to {@link #sample(List)})
+     */
+    FootprintSampler(int maxObjects) {
+        this.maxObjects = maxObjects;
+    }
+
+    /**
+     * Estimate the footprint of a set of class loaders. The results are available through
+     * {@link #getClassCount()}, {@link #getMetadataSize()} and {@link #getStaticFieldsSize()}.
+     *
+     * @param classLoaders
+     *            the class loaders
+     * @return <code>true</code> if the estimate has been computed, <code>false</code> if the
+     *         classes defined by a class loader can't be determined on this JVM
+     */
+    boolean sample(List<ClassLoader> classLoaders) {
+        classCount = 0;
+        metadataSize = 0;
+        staticFieldsSize = 0;
+        List<Class<?>[]> classArrays = new ArrayList<Class<?>[]>(classLoaders.size());
+        for (ClassLoader classLoader : classLoaders) {
+            Class<?>[] classes = ClassLoaderClasses.getClasses(classLoader);
+            if (classes == null) {
+                return false;
+            }
+            classArrays.add(classes);
+            classCount += classes.length;
+        }
+        // Compute the metadata size of every n-th class. The selection is deterministic so that
+        // subsequent samples mostly hit the cache.
+        int stride = Math.max(1, (classCount + MAX_METADATA_SAMPLES - 1) / MAX_METADATA_SAMPLES);
+        long sampledMetadataSize = 0;
+        int sampledCount = 0;
+        fieldCache = new FieldCache();
+        visited = new IdentityHashMap<Object,Boolean>();
+        queue = new LinkedList<Object>();
+        try {
+            int index = 0;
+            for (Class<?>[] classes : classArrays) {
+                for (Class<?> clazz : classes) {
+                    if (index++ % stride == 0) {
+                        sampledMetadataSize += getMetadataSize(clazz);
+                        sampledCount++;
+                    }
+                    for (Field field : fieldCache.getStaticFields(clazz)) {
+                        enqueue(FieldCache.getValue(field, null));
+                    }
+                }
+            }
+            if (sampledCount > 0) {
+                metadataSize = sampledMetadataSize * classCount / sampledCount;
+            }
+            Object object;
+            while ((object = queue.poll()) != null) {
+                staticFieldsSize += fieldCache.getShallowSize(object);
+                if (object instanceof Object[]) {
+                    for (Object element : (Object[])object) {
+                        enqueue(element);
+                    }
+                } else if (!(object instanceof Reference<?>)) {
+                    for (Field field : fieldCache.getInstanceFields(object.getClass())) {
+                        enqueue(FieldCache.getValue(field, object));
+                    }
+                } else {
+                    for (Field field : fieldCache.getInstanceFields(object.getClass())) {
+                        if (!FieldCache.isReferent(field)) {
+                            enqueue(FieldCache.getValue(field, object));
+                        }
+                    }
+                }
+            }
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "Visited {0} objects reachable from static fields", visited.size());
+            }
+            return true;
+        } finally {
+            // Release references to application classes and objects
+            fieldCache = null;
+            visited = null;
+            queue = null;
+        }
+    }
+
+    private void enqueue(Object object) {
+        if (object == null || object instanceof Class<?> || object instanceof ClassLoader || object instanceof Thread) {
+            return;
+        }
+        if (visited.size() < maxObjects && visited.put(object, Boolean.TRUE) == null) {
+            queue.add(object);
+        }
+    }
+
+    private int getMetadataSize(Class<?> clazz) {
+        Integer size = metadataSizes.get(clazz);
+        if (size == null) {
+            int s = CLASS_BASE_SIZE;
+            try {
+                s += (clazz.getDeclaredMethods().length + clazz.getDeclaredConstructors().length) * METHOD_SIZE;
+                s += clazz.getDeclaredFields().length * FIELD_SIZE;
+            } catch (Throwable ex) {
+                // NoClassDefFoundError if one of the types referenced by a member can't be loaded
+            }
+            size = s;
+            metadataSizes.put(clazz, size);
+        }
+        return size;
+    }
+
+    int getClassCount() {
+        return classCount;
+    }
+
+    long getMetadataSize() {
+        return metadataSize;
+    }
+
+    long getStaticFieldsSize() {
+        return staticFieldsSize;
+    }
+}
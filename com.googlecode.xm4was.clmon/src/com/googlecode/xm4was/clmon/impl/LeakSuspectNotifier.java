@@ -0,0 +1,183 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+
+import com.googlecode.xm4was.clmon.resources.Messages;
+
+/**
+ * Detects applications and modules that are suspected to leak and emits JMX notifications for
+ * them. A condition must persist for at least {@link #GRACE_PERIOD} before it is reported. The
+ * following conditions are detected:
+ * <ul>
+ * <li>The number of leaked class loaders of a group is at least {@link #LEAKED_THRESHOLD}.
+ * <li>All class loaders of a group have been stopped, but unmanaged threads created by the group
+ * are still alive.
+ * <li>The resource request cache of a group has a size of at least
+ * {@link #RESOURCE_REQUEST_CACHE_THRESHOLD} and has been growing during the whole grace period.
+ * </ul>
+ * Each condition is reported only once per group, unless it disappears and is observed again
+ * later. Suspects detected for the same type of condition are coalesced into a single
+ * notification, and at most one notification per type is sent per {@link #MIN_NOTIFICATION_INTERVAL}.
+ * Suspects detected during that interval are reported in the next notification.
+ * <p>
+ * The {@link #check(Collection)} method must not be called concurrently.
+ */
+final class LeakSuspectNotifier extends NotificationBroadcasterSupport implements LeakSuspectNotifierMBean {
+    private static final Logger LOGGER = Logger.getLogger(LeakSuspectNotifier.class.getName(), Messages.class.getName());
+    
+    static final String CLASS_LOADER_LEAK = "xm4was.clmon.leak.classLoader";
+    static final String THREAD_LEAK = "xm4was.clmon.leak.thread";
+    static final String RESOURCE_REQUEST_CACHE_GROWTH = "xm4was.clmon.leak.resourceRequestCache";
+    
+    private static final String[] TYPES = { CLASS_LOADER_LEAK, THREAD_LEAK, RESOURCE_REQUEST_CACHE_GROWTH };
+    
+    private static final String[] MESSAGES = {
+        "Class loaders not garbage collected after stop: ",
+        "Unmanaged threads still alive after stop: ",
+        "Resource request cache growing continuously: ",
+    };
+    
+    /**
+     * The time (in milliseconds) during which a condition must be observed before it is reported.
+     */
+    private static final long GRACE_PERIOD = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.clmon.LeakSuspectNotifier.GRACE_PERIOD", "300000"));
+    
+    /**
+     * The minimum interval (in milliseconds) between two notifications of the same type.
+     */
+    private static final long MIN_NOTIFICATION_INTERVAL = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.clmon.LeakSuspectNotifier.MIN_NOTIFICATION_INTERVAL", "600000"));
+    
+    private static final int LEAKED_THRESHOLD = Integer.parseInt(System.getProperty(
+            "com.googlecode.xm4was.clmon.LeakSuspectNotifier.LEAKED_THRESHOLD", "1"));
+    
+    private static final int RESOURCE_REQUEST_CACHE_THRESHOLD = Integer.parseInt(System.getProperty(
+            "com.googlecode.xm4was.clmon.LeakSuspectNotifier.RESOURCE_REQUEST_CACHE_THRESHOLD", "10000"));
+    
+    private static final class Suspect {
+        final long since;
+        boolean reported;
+        
+        Suspect(long since) {
+            this.since = since;
+        }
+    }
+    
+    /**
+     * The suspects for each type of condition, by group name. Access to these maps must be
+     * synchronized on the instance.
+     */
+    private final List<Map<String,Suspect>> suspects = new ArrayList<Map<String,Suspect>>();
+    
+    private final long[] lastNotificationTimes = new long[TYPES.length];
+    private final AtomicLong sequenceNumber = new AtomicLong();
+    
+    LeakSuspectNotifier() {
+        for (int i=0; i<TYPES.length; i++) {
+            suspects.add(new HashMap<String,Suspect>());
+        }
+    }
+    
+    /**
+     * Evaluate the conditions for the given groups and send notifications if necessary.
+     * 
+     * @param groups
+     *            the class loader groups
+     */
+    void check(Collection<ClassLoaderGroup> groups) {
+        long now = System.currentTimeMillis();
+        List<List<String>> reports = new ArrayList<List<String>>();
+        synchronized (this) {
+            for (int i=0; i<TYPES.length; i++) {
+                Map<String,Suspect> suspectsForType = suspects.get(i);
+                Map<String,Suspect> previous = new HashMap<String,Suspect>(suspectsForType);
+                suspectsForType.clear();
+                for (ClassLoaderGroup group : groups) {
+                    if (isSuspect(i, group)) {
+                        Suspect suspect = previous.get(group.getName());
+                        suspectsForType.put(group.getName(), suspect == null ? new Suspect(now) : suspect);
+                    }
+                }
+                List<String> names = new ArrayList<String>();
+                if (now - lastNotificationTimes[i] >= MIN_NOTIFICATION_INTERVAL) {
+                    for (Iterator<Map.Entry<String,Suspect>> it = suspectsForType.entrySet().iterator(); it.hasNext(); ) {
+                        Map.Entry<String,Suspect> entry = it.next();
+                        Suspect suspect = entry.getValue();
+                        if (!suspect.reported && now - suspect.since >= GRACE_PERIOD) {
+                            suspect.reported = true;
+                            names.add(entry.getKey());
+                        }
+                    }
+                    if (!names.isEmpty()) {
+                        lastNotificationTimes[i] = now;
+                    }
+                }
+                reports.add(names);
+            }
+        }
+        // Send the notifications outside of the synchronized block; listeners may be slow
+        for (int i=0; i<TYPES.length; i++) {
+            List<String> names = reports.get(i);
+            if (!names.isEmpty()) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Sending notification {0} for {1}", new Object[] { TYPES[i], names });
+                }
+                Notification notification = new Notification(TYPES[i], this, sequenceNumber.incrementAndGet(), now,
+                        MESSAGES[i] + names);
+                notification.setUserData(names.toArray(new String[names.size()]));
+                sendNotification(notification);
+            }
+        }
+    }
+    
+    private static boolean isSuspect(int type, ClassLoaderGroup group) {
+        switch (type) {
+            case 0:
+                return group.getLeakedCount() >= LEAKED_THRESHOLD;
+            case 1:
+                int createCount = group.getCreateCount();
+                return createCount > 0 && group.getStopCount() >= createCount && group.getUnmanagedThreadCount() > 0;
+            case 2:
+                return group.getResourceRequestCacheSize() >= RESOURCE_REQUEST_CACHE_THRESHOLD
+                        && group.getResourceRequestCacheGrowthRate() > 0;
+            default:
+                return false;
+        }
+    }
+    
+    public String dumpLeakSuspects() {
+        StringBuilder buffer = new StringBuilder();
+        synchronized (this) {
+            for (int i=0; i<TYPES.length; i++) {
+                for (Map.Entry<String,Suspect> entry : new TreeMap<String,Suspect>(suspects.get(i)).entrySet()) {
+                    if (buffer.length() > 0) {
+                        buffer.append("\n");
+                    }
+                    buffer.append(TYPES[i]);
+                    buffer.append(": ");
+                    buffer.append(entry.getKey());
+                    buffer.append(" since ");
+                    buffer.append(new Date(entry.getValue().since));
+                    if (entry.getValue().reported) {
+                        buffer.append(" (reported)");
+                    }
+                }
+            }
+        }
+        return buffer.length() == 0 ? "No leak suspects" : buffer.toString();
+    }
+}
@@ -0,0 +1,19 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import javax.management.MBeanOperationInfo;
+
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.NotificationInfo;
+import com.googlecode.xm4was.commons.jmx.annotations.Operation;
+
+@MBean(type="LeakSuspectNotifier", description="Emits notifications when applications or modules are suspected to leak class loaders, threads or memory",
+        notifications={
+            @NotificationInfo(types=LeakSuspectNotifier.CLASS_LOADER_LEAK, description="Class loaders of one or more stopped applications or modules have not been garbage collected within the grace period. The user data is the array of application/module names."),
+            @NotificationInfo(types=LeakSuspectNotifier.THREAD_LEAK, description="Unmanaged threads created by one or more stopped applications or modules are still alive after the grace period. The user data is the array of application/module names."),
+            @NotificationInfo(types=LeakSuspectNotifier.RESOURCE_REQUEST_CACHE_GROWTH, description="The resource request cache of one or more applications or modules has been growing continuously during the grace period. The user data is the array of application/module names."),
+        })
+public interface LeakSuspectNotifierMBean {
+    @Operation(description="Displays the applications and modules that are currently suspected to leak, together with the time since when the condition has been observed",
+            impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpLeakSuspects();
+}
@@ -1,19 +1,129 @@
 package com.googlecode.xm4was.clmon.impl;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.github.veithen.rbeans.RBeanFactory;
+import com.github.veithen.rbeans.RBeanFactoryException;
 import com.googlecode.xm4was.clmon.CacheCleaner;
+import com.googlecode.xm4was.clmon.ClassLoaderAssociations;
 import com.googlecode.xm4was.clmon.resources.Messages;
+import com.googlecode.xm4was.commons.osgi.annotations.Init;
 import com.googlecode.xm4was.commons.osgi.annotations.Services;
 import com.ibm.rmi.util.Utility;
 
 @Services(CacheCleaner.class)
 public class ORBCacheCleaner implements CacheCleaner {
     private static final Logger LOGGER = Logger.getLogger(ORBCacheCleaner.class.getName(), Messages.class.getName());
-    
+
+    private RBeanFactory rbf;
+
+    /**
+     * The static fields of {@link Utility} that contain maps. If there are no such fields (e.g.
+     * because the ORB implementation stores its caches differently) or if one of these maps can't
+     * be safely modified from outside, {@link #clearCache(ClassLoader)} clears all caches.
+     */
+    private List<Field> cacheFields;
+
+    @Init
+    public void init() throws RBeanFactoryException {
+        rbf = new RBeanFactory(SynchronizedMapRBean.class);
+        List<Field> fields = new ArrayList<Field>();
+        for (Field field : Utility.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && Map.class.isAssignableFrom(field.getType())) {
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        cacheFields = fields;
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "ORB cache fields: {0}", fields);
+        }
+    }
+
     public void clearCache() {
         LOGGER.log(Level.INFO, Messages._0101I);
         Utility.clearCaches();
     }
+
+    public void clearCache(ClassLoader classLoader) {
+        List<Map<?,?>> maps = new ArrayList<Map<?,?>>();
+        try {
+            for (Field field : cacheFields) {
+                Map<?,?> map = (Map<?,?>)field.get(null);
+                if (map != null) {
+                    maps.add(map);
+                }
+            }
+        } catch (IllegalAccessException ex) {
+            // We called setAccessible, so this should never happen
+            clearCache();
+            return;
+        }
+        int count = removeAssociatedEntries(maps, classLoader);
+        if (count == -1) {
+            clearCache();
+        } else {
+            LOGGER.log(Level.INFO, Messages._0102I, String.valueOf(count));
+        }
+    }
+
+    /**
+     * Remove the entries associated with a given class loader from a set of maps, using the lock
+     * of each map.
+     * 
+     * @param maps
+     *            the maps
+     * @param classLoader
+     *            the class loader
+     * @return the number of removed entries, or -1 if no maps were given or one of the maps can't
+     *         be modified safely from outside; in that case none of the maps is modified
+     */
+    int removeAssociatedEntries(List<Map<?,?>> maps, ClassLoader classLoader) {
+        if (maps.isEmpty()) {
+            // We don't know where the ORB caches its data; don't pretend that we removed anything
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "No ORB cache maps found; falling back to clearing all caches");
+            }
+            return -1;
+        }
+        List<Object> mutexes = new ArrayList<Object>();
+        for (Map<?,?> map : maps) {
+            Object mutex;
+            if (map instanceof ConcurrentMap<?,?>) {
+                mutex = null;
+            } else if (map instanceof Hashtable<?,?>) {
+                // Hashtable synchronizes on itself; we need that lock to iterate safely
+                mutex = map;
+            } else if (map.getClass().getName().equals("java.util.Collections$SynchronizedMap")) {
+                mutex = rbf.createRBean(SynchronizedMapRBean.class, map).getMutex();
+            } else {
+                // We can't safely remove entries from an unsynchronized map
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Found a map of type {0}; falling back to clearing all caches", map.getClass().getName());
+                }
+                return -1;
+            }
+            mutexes.add(mutex);
+        }
+        int count = 0;
+        for (int i=0; i<maps.size(); i++) {
+            Object mutex = mutexes.get(i);
+            if (mutex == null) {
+                count += ClassLoaderAssociations.removeAssociatedEntries(maps.get(i), classLoader);
+            } else {
+                synchronized (mutex) {
+                    count += ClassLoaderAssociations.removeAssociatedEntries(maps.get(i), classLoader);
+                }
+            }
+        }
+        return count;
+    }
 }
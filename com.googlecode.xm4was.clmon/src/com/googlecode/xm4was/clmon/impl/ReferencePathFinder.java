@@ -0,0 +1,240 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.clmon.resources.Messages;
+
+/**
+ * Searches for reference chains from a set of roots to a given class loader. The search is a
+ * breadth first traversal of the object graph using reflection, so that the chains found are the
+ * shortest ones. An object is considered to reference the class loader if it is the class loader
+ * itself, a class defined by the class loader or an instance of such a class.
+ * <p>
+ * The traversal has the following properties:
+ * <ul>
+ * <li>The referents of {@link WeakReference} and {@link PhantomReference} instances are skipped
+ * because they don't prevent the class loader from being garbage collected. The referents of
+ * {@link SoftReference} instances are followed, but the corresponding chains are flagged as soft.
+ * <li>For {@link Class} objects, the static fields of the class are followed.
+ * <li>Other class loaders are not traversed. They typically reference a large number of classes
+ * and are not the cause of a class loader leak.
+ * <li>The number of visited objects and the length of the chains are bounded, so that the memory
+ * used by the search doesn't depend on the heap size.
+ * </ul>
+ * Instances of this class are not thread safe and should be discarded after use (see
+ * {@link FieldCache}).
+ */
+final class ReferencePathFinder {
+    private static final Logger LOGGER = Logger.getLogger(ReferencePathFinder.class.getName(), Messages.class.getName());
+
+    private static final class Node {
+        final Node parent;
+        final String label;
+        final Object object;
+        final int depth;
+        final boolean soft;
+
+        Node(Node parent, String label, Object object, boolean soft) {
+            this.parent = parent;
+            this.label = label;
+            this.object = object;
+            depth = parent == null ? 0 : parent.depth+1;
+            this.soft = soft || parent != null && parent.soft;
+        }
+    }
+
+    private final ClassLoader classLoader;
+    private final int maxObjects;
+    private final int maxDepth;
+    private final List<Node> roots = new ArrayList<Node>();
+    private final FieldCache fieldCache = new FieldCache();
+    private int visitedCount;
+
+    /**
+     * Constructor.
+     *
+     * @param classLoader
+     *            the class loader to search for
+     * @param maxObjects
+     *            the maximum number of objects to visit
+     * @param maxDepth
+     *            the maximum length of a reference chain
+     */
+    ReferencePathFinder(ClassLoader classLoader, int maxObjects, int maxDepth) {
+        this.classLoader = classLoader;
+        this.maxObjects = maxObjects;
+        this.maxDepth = maxDepth;
+    }
+
+    void addRoot(String description, Object object) {
+        if (object != null) {
+            roots.add(new Node(null, description, object, false));
+        }
+    }
+
+    /**
+     * Add the static fields of the JRE class with the given name as roots. The class is loaded
+     * from the bootstrap class loader so that the bundle's import declarations don't matter.
+     * Classes that don't exist in the JRE are silently skipped.
+     *
+     * @param className
+     *            the name of the class
+     */
+    void addStaticRoots(String className) {
+        try {
+            addRoot("class " + className, Class.forName(className, false, null));
+        } catch (Throwable ex) {
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "Class " + className + " not available", ex);
+            }
+        }
+    }
+
+    /**
+     * Add all live threads as roots.
+     */
+    void addThreadRoots() {
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while (group.getParent() != null) {
+            group = group.getParent();
+        }
+        Thread[] threads;
+        int count;
+        do {
+            threads = new Thread[group.activeCount()*2+10];
+            count = group.enumerate(threads);
+        } while (count == threads.length);
+        for (int i=0; i<count; i++) {
+            addRoot("thread \"" + threads[i].getName() + "\"", threads[i]);
+        }
+    }
+
+    /**
+     * Search for reference chains.
+     *
+     * @param maxChains
+     *            the maximum number of chains to return
+     * @return the reference chains, formatted as strings (one reference per line)
+     */
+    List<String> findChains(int maxChains) {
+        List<String> chains = new ArrayList<String>();
+        Map<Object,Boolean> visited = new IdentityHashMap<Object,Boolean>();
+        LinkedList<Node> queue = new LinkedList<Node>();
+        for (Node root : roots) {
+            if (visited.put(root.object, Boolean.TRUE) == null) {
+                queue.add(root);
+            }
+        }
+        visitedCount = visited.size();
+        Node node;
+        while (chains.size() < maxChains && (node = queue.poll()) != null) {
+            if (isTarget(node.object)) {
+                chains.add(format(node));
+                continue;
+            }
+            if (node.depth == maxDepth || visitedCount >= maxObjects) {
+                continue;
+            }
+            Object object = node.object;
+            if (object instanceof Class<?>) {
+                for (Field field : fieldCache.getStaticFields((Class<?>)object)) {
+                    enqueue(queue, visited, node, "." + field.getName(), FieldCache.getValue(field, null), false);
+                }
+            } else if (object instanceof Object[]) {
+                Object[] array = (Object[])object;
+                for (int i=0; i<array.length; i++) {
+                    enqueue(queue, visited, node, "[" + i + "]", array[i], false);
+                }
+            } else if (!(object instanceof ClassLoader)) {
+                for (Field field : fieldCache.getInstanceFields(object.getClass())) {
+                    if (FieldCache.isReferent(field)) {
+                        if (object instanceof SoftReference<?>) {
+                            enqueue(queue, visited, node, ".referent", FieldCache.getValue(field, object), true);
+                        }
+                    } else {
+                        enqueue(queue, visited, node, "." + field.getName(), FieldCache.getValue(field, object), false);
+                    }
+                }
+            }
+        }
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Visited {0} objects; found {1} reference chains", new Object[] { visitedCount, chains.size() });
+        }
+        return chains;
+    }
+
+    /**
+     * Get the number of objects visited during the last search.
+     *
+     * @return the number of visited objects
+     */
+    int getVisitedCount() {
+        return visitedCount;
+    }
+
+    /**
+     * Determine whether the search has been truncated because it reached the maximum number of
+     * objects.
+     *
+     * @return <code>true</code> if the search has been truncated
+     */
+    boolean isTruncated() {
+        return visitedCount >= maxObjects;
+    }
+
+    private void enqueue(LinkedList<Node> queue, Map<Object,Boolean> visited, Node parent, String label, Object object, boolean soft) {
+        if (object == null || object instanceof String || object instanceof Number || object instanceof Boolean || object instanceof Character) {
+            return;
+        }
+        if (visitedCount < maxObjects && visited.put(object, Boolean.TRUE) == null) {
+            visitedCount++;
+            queue.add(new Node(parent, label, object, soft));
+        }
+    }
+
+    private boolean isTarget(Object object) {
+        if (object == classLoader) {
+            return true;
+        } else if (object instanceof Class<?> && ((Class<?>)object).getClassLoader() == classLoader) {
+            return true;
+        } else {
+            return object.getClass().getClassLoader() == classLoader;
+        }
+    }
+
+    private String format(Node target) {
+        LinkedList<Node> path = new LinkedList<Node>();
+        for (Node node = target; node != null; node = node.parent) {
+            path.addFirst(node);
+        }
+        StringBuilder buffer = new StringBuilder();
+        for (Node node : path) {
+            if (node.parent != null) {
+                buffer.append("\n  ");
+            }
+            buffer.append(node.label);
+            buffer.append(" -> ");
+            Object object = node.object;
+            buffer.append(object instanceof Class<?> ? "class " + ((Class<?>)object).getName() : object.getClass().getName());
+        }
+        if (target.object == classLoader) {
+            buffer.append(" (class loader)");
+        } else if (!(target.object instanceof Class<?>)) {
+            buffer.append(" (instance of application class)");
+        }
+        if (target.soft) {
+            buffer.append("\n  [soft reference]");
+        }
+        return buffer.toString();
+    }
+}
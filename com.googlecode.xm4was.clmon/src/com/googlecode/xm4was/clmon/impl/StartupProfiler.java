@@ -0,0 +1,216 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.clmon.resources.Messages;
+import com.googlecode.xm4was.commons.NamedThreadFactory;
+import com.googlecode.xm4was.commons.deploy.ClassLoaderLifecycleListener;
+import com.googlecode.xm4was.commons.deploy.ClassLoaderListener;
+import com.googlecode.xm4was.commons.osgi.Lifecycle;
+import com.googlecode.xm4was.commons.osgi.annotations.Init;
+import com.googlecode.xm4was.commons.osgi.annotations.ProcessTypes;
+import com.googlecode.xm4was.commons.osgi.annotations.Services;
+import com.ibm.websphere.management.AdminConstants;
+
+/**
+ * Measures the startup of applications. For each application, the profiler records the time
+ * between the <tt>STARTING</tt> and <tt>STARTED</tt> events of the application and its modules
+ * and the number of classes loaded by the JVM during that period. The reports for the last few
+ * startups of each application are kept so that regressions can be identified.
+ * <p>
+ * Note that the number of classes loaded by the JVM includes classes loaded by concurrent
+ * activities (such as the startup of other applications). The reports don't include per JAR
+ * statistics because there is no portable way to enumerate the classes defined by a class loader
+ * (see {@link ClassLoaderClasses}); in particular this information is not available on IBM J9.
+ */
+@ProcessTypes({AdminConstants.MANAGED_PROCESS, AdminConstants.STANDALONE_PROCESS})
+@Services({ ClassLoaderListener.class, StartupProfilerMBean.class })
+public class StartupProfiler implements ClassLoaderLifecycleListener, StartupProfilerMBean {
+    private static final Logger LOGGER = Logger.getLogger(StartupProfiler.class.getName(), Messages.class.getName());
+
+    /**
+     * The number of reports kept per application.
+     */
+    private static final int MAX_HISTORY = 10;
+
+    /**
+     * Describes a startup in progress. Modules may be started concurrently; access to the mutable
+     * state must therefore be synchronized on the instance.
+     */
+    private static final class Startup {
+        final long startTime;
+        final long startLoadedClassCount;
+        final Map<String,Long> moduleStartTimes = new HashMap<String,Long>();
+        final Map<String,Long> moduleDurations = new LinkedHashMap<String,Long>();
+
+        Startup(long startTime, long startLoadedClassCount) {
+            this.startTime = startTime;
+            this.startLoadedClassCount = startLoadedClassCount;
+        }
+    }
+
+    private final ConcurrentMap<String,Startup> startups = new ConcurrentHashMap<String,Startup>();
+
+    /**
+     * Startup reports by application name. Access to this map must be synchronized.
+     */
+    private final Map<String,LinkedList<String>> reports = new TreeMap<String,LinkedList<String>>();
+
+    /**
+     * The duration (in milliseconds) of the last startup of each application. Access to this map
+     * must be synchronized on {@link #reports}.
+     */
+    private final Map<String,Long> lastDurations = new TreeMap<String,Long>();
+
+    private ExecutorService executor;
+
+    @Init
+    public void init(Lifecycle lifecycle) {
+        executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("Startup Profiler", LOGGER, Messages._0007E));
+        lifecycle.addStopAction(new Runnable() {
+            public void run() {
+                executor.shutdownNow();
+            }
+        });
+    }
+
+    public void classLoaderCreated(ClassLoader classLoader, String applicationName, String moduleName, long timestamp, long loadedClassCount) {
+        if (moduleName == null) {
+            startups.put(applicationName, new Startup(timestamp, loadedClassCount));
+        } else {
+            Startup startup = startups.get(applicationName);
+            if (startup != null) {
+                synchronized (startup) {
+                    startup.moduleStartTimes.put(moduleName, timestamp);
+                }
+            }
+        }
+    }
+
+    public void classLoaderStarted(ClassLoader classLoader, String applicationName, String moduleName, long timestamp, long loadedClassCount) {
+        if (moduleName == null) {
+            final Startup startup = startups.remove(applicationName);
+            if (startup != null) {
+                // The timestamps and class counts are captured when the events occur, so that the
+                // delivery latency of the events doesn't affect the measurements
+                final long duration = timestamp - startup.startTime;
+                final long startupLoadedClassCount = loadedClassCount - startup.startLoadedClassCount;
+                final String name = applicationName;
+                try {
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                synchronized (startup) {
+                                    completeStartup(name, startup, duration, startupLoadedClassCount);
+                                }
+                            } catch (Throwable ex) {
+                                LOGGER.log(Level.SEVERE, Messages._0007E, ex);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    // The executor has been shut down
+                }
+            }
+        } else {
+            Startup startup = startups.get(applicationName);
+            if (startup != null) {
+                synchronized (startup) {
+                    Long moduleStartTime = startup.moduleStartTimes.remove(moduleName);
+                    if (moduleStartTime != null) {
+                        startup.moduleDurations.put(moduleName, timestamp - moduleStartTime);
+                    }
+                }
+            }
+        }
+    }
+
+    public void classLoaderReleased(ClassLoader classLoader, String applicationName, String moduleName) {
+        if (moduleName == null) {
+            // The application failed to start or has been stopped; discard the incomplete startup
+            startups.remove(applicationName);
+        }
+    }
+
+    private void completeStartup(String applicationName, Startup startup, long duration, long loadedClassCount) {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("Startup at ");
+        buffer.append(new Date(startup.startTime));
+        buffer.append("\nDuration: ");
+        buffer.append(duration);
+        buffer.append(" ms\nClasses loaded by the JVM during startup: ");
+        buffer.append(loadedClassCount);
+        for (Map.Entry<String,Long> entry : startup.moduleDurations.entrySet()) {
+            buffer.append("\nModule ");
+            buffer.append(entry.getKey());
+            buffer.append(": ");
+            buffer.append(entry.getValue());
+            buffer.append(" ms");
+        }
+        String report = buffer.toString();
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Startup report for {0}:\n{1}", new Object[] { applicationName, report });
+        }
+        synchronized (reports) {
+            LinkedList<String> history = reports.get(applicationName);
+            if (history == null) {
+                history = new LinkedList<String>();
+                reports.put(applicationName, history);
+            }
+            history.addFirst(report);
+            if (history.size() > MAX_HISTORY) {
+                history.removeLast();
+            }
+            lastDurations.put(applicationName, duration);
+        }
+    }
+
+    public String dumpStartupReports(String applicationName) {
+        List<String> history;
+        synchronized (reports) {
+            history = reports.get(applicationName);
+            history = history == null ? null : new ArrayList<String>(history);
+        }
+        if (history == null) {
+            return "No startup recorded for " + applicationName;
+        }
+        StringBuilder buffer = new StringBuilder();
+        for (String report : history) {
+            if (buffer.length() > 0) {
+                buffer.append("\n\n");
+            }
+            buffer.append(report);
+        }
+        return buffer.toString();
+    }
+
+    public String dumpStartupDurations() {
+        StringBuilder buffer = new StringBuilder();
+        synchronized (reports) {
+            for (Map.Entry<String,Long> entry : lastDurations.entrySet()) {
+                if (buffer.length() > 0) {
+                    buffer.append("\n");
+                }
+                buffer.append(entry.getKey());
+                buffer.append(": ");
+                buffer.append(entry.getValue());
+                buffer.append(" ms");
+            }
+        }
+        return buffer.toString();
+    }
+}
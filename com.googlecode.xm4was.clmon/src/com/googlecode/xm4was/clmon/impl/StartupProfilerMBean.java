@@ -0,0 +1,23 @@
+package com.googlecode.xm4was.clmon.impl;
+
+import javax.management.MBeanOperationInfo;
+
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.Operation;
+import com.googlecode.xm4was.commons.jmx.annotations.Parameter;
+
+@MBean(type="StartupProfiler", description="Collects information about the startup of applications.")
+public interface StartupProfilerMBean {
+    @Operation(description="Displays the reports for the last startups of a given application. " +
+            "Each report contains the startup duration of the application and its modules, " +
+            "the number of classes loaded by the JVM during the startup.",
+            impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpStartupReports(
+            @Parameter(name="applicationName", description="The name of the application")
+            String applicationName);
+    
+    @Operation(description="Displays the startup duration of all applications, as measured " +
+            "during their last startup.",
+            impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpStartupDurations();
+}
@@ -9,7 +9,11 @@ public class Messages extends ListResourceBundle {
     public static final String _0004E = "0004E";
     public static final String _0005W = "0005W";
     public static final String _0006E = "0006E";
+    public static final String _0007E = "0007E";
+    public static final String _0008W = "0008W";
+    public static final String _0009W = "0009W";
     public static final String _0101I = "0101I";
+    public static final String _0102I = "0102I";
     
     private static final Object[][] contents = {
         { _0001I, "XMCLM0001I: Class loader monitor started" },
@@ -18,7 +22,11 @@ public class Messages extends ListResourceBundle {
         { _0004E, "XMCLM0004E: Error creating a StatsInstance for {0}\n{1}" },
         { _0005W, "XMCLM0005W: Unexpected condition: no ClassLoaderInfo found for class loader" },
         { _0006E, "XMCLM0006E: Failed to create RBeanFactory; probably this version of XM4WAS is incompatible with your WebSphere or Java version\n{0}" },
+        { _0007E, "XMCLM0007E: An internal error occurred:\n{0}" },
+        { _0008W, "XMCLM0008W: The class loader for {0} has not been garbage collected {1} seconds after the application was stopped; use the analyzeLeaks operation of the ClassLoaderMonitor MBean to identify the cause" },
+        { _0009W, "XMCLM0009W: This JVM does not keep track of the classes defined by a class loader; the {0} are not available" },
         { _0101I, "XMCLM0101I: Clearing ORB caches" },
+        { _0102I, "XMCLM0102I: Removed {0} ORB cache entries associated with the stopped application" },
     };
 
     @Override
@@ -0,0 +1,161 @@
+package com.googlecode.xm4was.commons.event.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.xm4was.commons.event.Event;
+
+public class EventBusImplTest {
+    private static class TestEvent extends Event {
+        private final Runnable action;
+        private final boolean discardable;
+        
+        TestEvent(Runnable action, boolean discardable) {
+            this.action = action;
+            this.discardable = discardable;
+        }
+        
+        TestEvent(Runnable action) {
+            this(action, true);
+        }
+
+        @Override
+        public String getType() {
+            return "Test";
+        }
+
+        @Override
+        public boolean isDiscardable() {
+            return discardable;
+        }
+
+        @Override
+        public void dispatch() {
+            action.run();
+        }
+    }
+    
+    private EventBusImpl eventBus;
+    
+    @Before
+    public void setUp() {
+        eventBus = new EventBusImpl();
+        eventBus.start();
+    }
+    
+    @After
+    public void tearDown() {
+        eventBus.stop();
+    }
+    
+    @Test
+    public void testOrder() throws Exception {
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(1000);
+        for (int i=0; i<1000; i++) {
+            final int value = i;
+            assertTrue(eventBus.publish(new TestEvent(new Runnable() {
+                public void run() {
+                    received.add(value);
+                    latch.countDown();
+                }
+            })));
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (int i=0; i<1000; i++) {
+            assertEquals(i, received.get(i).intValue());
+        }
+    }
+    
+    @Test
+    public void testFailureDoesntStopDelivery() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        eventBus.publish(new TestEvent(new Runnable() {
+            public void run() {
+                throw new RuntimeException("Expected");
+            }
+        }));
+        eventBus.publish(new TestEvent(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(eventBus.dumpStatistics().contains("Test: published=2, discarded=0, failed=1"));
+    }
+    
+    @Test
+    public void testOverflow() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable noop = new Runnable() {
+            public void run() {
+            }
+        };
+        eventBus.publish(new TestEvent(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    // Expected on shutdown
+                }
+            }
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        int published = 0;
+        while (eventBus.publish(new TestEvent(noop))) {
+            published++;
+        }
+        assertEquals(published, eventBus.getQueueSize());
+        assertFalse(eventBus.publish(new TestEvent(noop)));
+        assertEquals(2, eventBus.getDiscardedCount());
+        release.countDown();
+    }
+    
+    @Test
+    public void testNonDiscardableEventNotDiscardedOnOverflow() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        Runnable noop = new Runnable() {
+            public void run() {
+            }
+        };
+        eventBus.publish(new TestEvent(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    // Expected on shutdown
+                }
+            }
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        while (eventBus.publish(new TestEvent(noop))) {
+            // Fill the queue
+        }
+        assertTrue(eventBus.publish(new TestEvent(new Runnable() {
+            public void run() {
+                delivered.countDown();
+            }
+        }, false)));
+        release.countDown();
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals(1, eventBus.getDiscardedCount());
+        // Once the queue has been drained, discardable events are accepted again
+        assertTrue(eventBus.publish(new TestEvent(noop)));
+    }
+}
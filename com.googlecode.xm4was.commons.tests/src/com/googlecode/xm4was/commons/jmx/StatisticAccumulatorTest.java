@@ -0,0 +1,56 @@
+package com.googlecode.xm4was.commons.jmx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StatisticAccumulatorTest {
+    @Test
+    public void testEmpty() {
+        StatisticAccumulator accumulator = new StatisticAccumulator();
+        assertEquals(0, accumulator.getCount());
+        assertEquals(0, accumulator.getTotal());
+        assertEquals(0, accumulator.getMin());
+        assertEquals(0, accumulator.getMax());
+        assertEquals(0, accumulator.getLastSampleTime());
+    }
+    
+    @Test
+    public void testAdd() {
+        StatisticAccumulator accumulator = new StatisticAccumulator();
+        accumulator.add(3);
+        accumulator.add(-1);
+        accumulator.add(5);
+        assertEquals(3, accumulator.getCount());
+        assertEquals(7, accumulator.getTotal());
+        assertEquals(-1, accumulator.getMin());
+        assertEquals(5, accumulator.getMax());
+        assertEquals(35.0, accumulator.getSumOfSquares(), 0);
+        assertTrue(accumulator.getLastSampleTime() >= accumulator.getStartTime());
+    }
+    
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final StatisticAccumulator accumulator = new StatisticAccumulator();
+        Thread[] threads = new Thread[4];
+        for (int i=0; i<threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j=1; j<=10000; j++) {
+                        accumulator.add(j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, accumulator.getCount());
+        assertEquals(4*50005000L, accumulator.getTotal());
+        assertEquals(1, accumulator.getMin());
+        assertEquals(10000, accumulator.getMax());
+    }
+}
@@ -0,0 +1,43 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.DynamicMBean;
+
+import org.junit.Test;
+
+import com.googlecode.xm4was.commons.jmx.Authorizer;
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+
+public class AccessCheckModelMBeanTest {
+    @Test
+    public void testGetAttributesChecksEachRoleOnce() throws Exception {
+        final List<String> checkedRoles = new ArrayList<String>();
+        DynamicMBean mbean = MBeanExporter.createModelMBean(SampleMBean.class, SampleMBean.class.getAnnotation(MBean.class), new Sample(), new Authorizer() {
+            public boolean checkAccess(String role) {
+                checkedRoles.add(role);
+                return true;
+            }
+        });
+        assertEquals(2, mbean.getAttributes(new String[] { "count", "name" }).size());
+        assertEquals(Arrays.asList("monitor"), checkedRoles);
+        // Outside of getAttributes, each access is checked
+        mbean.getAttribute("count");
+        mbean.getAttribute("count");
+        assertEquals(Arrays.asList("monitor", "monitor", "monitor"), checkedRoles);
+    }
+    
+    @Test
+    public void testGetAttributesAccessDenied() throws Exception {
+        DynamicMBean mbean = MBeanExporter.createModelMBean(SampleMBean.class, SampleMBean.class.getAnnotation(MBean.class), new Sample(), new Authorizer() {
+            public boolean checkAccess(String role) {
+                return false;
+            }
+        });
+        assertEquals(0, mbean.getAttributes(new String[] { "count", "name" }).size());
+    }
+}
@@ -0,0 +1,24 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MBeanExporterTest {
+    @Test
+    public void testParseSnapshotRefreshInterval() {
+        assertEquals(5000, MBeanExporter.parseSnapshotRefreshInterval("5000"));
+        assertEquals(0, MBeanExporter.parseSnapshotRefreshInterval("0"));
+    }
+
+    @Test
+    public void testParseSnapshotRefreshIntervalNotSet() {
+        assertEquals(-1, MBeanExporter.parseSnapshotRefreshInterval(null));
+    }
+
+    @Test
+    public void testParseSnapshotRefreshIntervalInvalid() {
+        assertEquals(-1, MBeanExporter.parseSnapshotRefreshInterval("-5"));
+        assertEquals(-1, MBeanExporter.parseSnapshotRefreshInterval("1s"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+
+/**
+ * Compares the throughput of {@link MethodHandleMBean} with the model MBean created by
+ * {@link MBeanExporter#createModelMBean(Class, MBean, Object, com.googlecode.xm4was.commons.jmx.Authorizer)}.
+ * This is not part of the unit tests because the results depend on the environment; run it
+ * manually using its <code>main</code> method.
+ */
+public final class MethodHandleMBeanBenchmark {
+    private static final int ITERATIONS = 200000;
+    
+    private MethodHandleMBeanBenchmark() {}
+    
+    private static long measureGetAttribute(MBeanServer mbeanServer, ObjectName name) throws Exception {
+        long start = System.nanoTime();
+        for (int i=0; i<ITERATIONS; i++) {
+            mbeanServer.getAttribute(name, "count");
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static long measureGetAttributes(MBeanServer mbeanServer, ObjectName name) throws Exception {
+        String[] attributes = { "count", "name" };
+        long start = System.nanoTime();
+        for (int i=0; i<ITERATIONS; i++) {
+            mbeanServer.getAttributes(name, attributes);
+        }
+        return System.nanoTime() - start;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        ObjectName modelMBeanName = new ObjectName("test:type=ModelMBean");
+        ObjectName methodHandleMBeanName = new ObjectName("test:type=MethodHandleMBean");
+        mbeanServer.registerMBean(MBeanExporter.createModelMBean(SampleMBean.class, SampleMBean.class.getAnnotation(MBean.class), new Sample(), MethodHandleMBeanTest.monitorOnly), modelMBeanName);
+        mbeanServer.registerMBean(MethodHandleMBeanTest.createMBean(MethodHandleMBeanTest.monitorOnly), methodHandleMBeanName);
+        // Warm up
+        for (int i=0; i<3; i++) {
+            measureGetAttribute(mbeanServer, modelMBeanName);
+            measureGetAttribute(mbeanServer, methodHandleMBeanName);
+            measureGetAttributes(mbeanServer, modelMBeanName);
+            measureGetAttributes(mbeanServer, methodHandleMBeanName);
+        }
+        System.out.println("getAttribute (ns/call): model MBean " + measureGetAttribute(mbeanServer, modelMBeanName)/ITERATIONS
+                + ", method handle MBean " + measureGetAttribute(mbeanServer, methodHandleMBeanName)/ITERATIONS);
+        System.out.println("getAttributes (ns/call): model MBean " + measureGetAttributes(mbeanServer, modelMBeanName)/ITERATIONS
+                + ", method handle MBean " + measureGetAttributes(mbeanServer, methodHandleMBeanName)/ITERATIONS);
+    }
+}
@@ -0,0 +1,88 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+
+import org.junit.Test;
+
+import com.googlecode.xm4was.commons.jmx.Authorizer;
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+
+public class MethodHandleMBeanTest {
+    static final Authorizer monitorOnly = new Authorizer() {
+        public boolean checkAccess(String role) {
+            return role.equals("monitor");
+        }
+    };
+    
+    static MethodHandleMBean createMBean(Authorizer authorizer) throws IllegalAccessException {
+        return MethodHandleMBean.create(SampleMBean.class, SampleMBean.class.getAnnotation(MBean.class),
+                Sample.class.getName(), new Sample(), authorizer);
+    }
+    
+    @Test
+    public void testAttributesAndOperations() throws Exception {
+        MethodHandleMBean mbean = createMBean(new Authorizer() {
+            public boolean checkAccess(String role) {
+                return true;
+            }
+        });
+        assertEquals(2, mbean.getMBeanInfo().getAttributes().length);
+        assertEquals(1, mbean.getMBeanInfo().getOperations().length);
+        assertEquals(1, mbean.getAttribute("count"));
+        mbean.setAttribute(new Attribute("name", "foo"));
+        assertEquals("foo", mbean.getAttribute("name"));
+        assertEquals(4, mbean.invoke("add", new Object[] { 3 }, new String[] { "int" }));
+        AttributeList attributes = mbean.getAttributes(new String[] { "count", "name", "unknown" });
+        assertEquals(2, attributes.size());
+        assertEquals(4, ((Attribute)attributes.get(0)).getValue());
+    }
+    
+    @Test
+    public void testAccessDenied() throws Exception {
+        MethodHandleMBean mbean = createMBean(monitorOnly);
+        assertEquals("test", mbean.getAttribute("name"));
+        try {
+            mbean.setAttribute(new Attribute("name", "foo"));
+            fail("Expected SecurityException");
+        } catch (SecurityException ex) {
+            // Expected
+        }
+        try {
+            mbean.invoke("add", new Object[] { 1 }, new String[] { "int" });
+            fail("Expected SecurityException");
+        } catch (SecurityException ex) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void testGetAttributesChecksEachRoleOnce() throws Exception {
+        final List<String> checkedRoles = new ArrayList<String>();
+        MethodHandleMBean mbean = createMBean(new Authorizer() {
+            public boolean checkAccess(String role) {
+                checkedRoles.add(role);
+                return true;
+            }
+        });
+        assertEquals(2, mbean.getAttributes(new String[] { "count", "name" }).size());
+        assertEquals(Arrays.asList("monitor"), checkedRoles);
+    }
+    
+    @Test(expected=IllegalAccessException.class)
+    public void testNonPublicInterface() throws Exception {
+        MethodHandleMBean.create(NonPublicSampleMBean.class, NonPublicSampleMBean.class.getAnnotation(MBean.class),
+                NonPublicSampleMBean.class.getName(), new NonPublicSampleMBean() {
+                    public int getCount() {
+                        return 1;
+                    }
+                }, monitorOnly);
+    }
+}
@@ -0,0 +1,10 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import com.googlecode.xm4was.commons.jmx.annotations.Attribute;
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+
+@MBean(type="NonPublicSample", description="Sample MBean with an interface that is not public")
+interface NonPublicSampleMBean {
+    @Attribute(description="Counter", readRole="monitor")
+    int getCount();
+}
@@ -0,0 +1,22 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+public class Sample implements SampleMBean {
+    private int count = 1;
+    private String name = "test";
+    
+    public int getCount() {
+        return count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int add(int value) {
+        return count += value;
+    }
+}
@@ -0,0 +1,22 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import javax.management.MBeanOperationInfo;
+
+import com.googlecode.xm4was.commons.jmx.annotations.Attribute;
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.Operation;
+import com.googlecode.xm4was.commons.jmx.annotations.Parameter;
+
+@MBean(type="Sample", description="Sample MBean")
+public interface SampleMBean {
+    @Attribute(description="Counter", readRole="monitor")
+    int getCount();
+    
+    @Attribute(description="Name", readRole="monitor", writeRole="configurator")
+    String getName();
+    
+    void setName(String name);
+    
+    @Operation(description="Add a value to the counter", impact=MBeanOperationInfo.ACTION, role="operator")
+    int add(@Parameter(name="value", description="The value to add") int value);
+}
@@ -0,0 +1,102 @@
+package com.googlecode.xm4was.commons.jmx.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.ibm.websphere.management.authorizer.AdminAuthorizer;
+
+public class AuthorizerImplTest {
+    private static final class TestAdminAuthorizer implements AdminAuthorizer {
+        final Set<String> roles = new HashSet<String>();
+        int checkCount;
+        
+        public boolean checkAccess(String resource, String role) {
+            checkCount++;
+            return roles.contains(role);
+        }
+    }
+    
+    private static final class TestAuthorizer extends AuthorizerImpl {
+        AdminAuthorizer adminAuthorizer;
+        String principal = "user";
+        
+        TestAuthorizer(long cacheTtl) {
+            super("/", cacheTtl);
+        }
+
+        @Override
+        AdminAuthorizer getCurrentAdminAuthorizer() {
+            return adminAuthorizer;
+        }
+
+        @Override
+        String getCallerPrincipal() {
+            return principal;
+        }
+    }
+    
+    @Test
+    public void testCache() {
+        TestAdminAuthorizer adminAuthorizer = new TestAdminAuthorizer();
+        adminAuthorizer.roles.add("monitor");
+        TestAuthorizer authorizer = new TestAuthorizer(60000);
+        authorizer.adminAuthorizer = adminAuthorizer;
+        assertTrue(authorizer.checkAccess("monitor"));
+        assertTrue(authorizer.checkAccess("monitor"));
+        assertFalse(authorizer.checkAccess("operator"));
+        assertEquals(2, adminAuthorizer.checkCount);
+        // Decisions are cached per principal
+        authorizer.principal = "other";
+        assertTrue(authorizer.checkAccess("monitor"));
+        assertEquals(3, adminAuthorizer.checkCount);
+    }
+    
+    @Test
+    public void testInvalidationOnAdminAuthorizerChange() {
+        TestAdminAuthorizer adminAuthorizer = new TestAdminAuthorizer();
+        adminAuthorizer.roles.add("monitor");
+        TestAuthorizer authorizer = new TestAuthorizer(60000);
+        authorizer.adminAuthorizer = adminAuthorizer;
+        assertTrue(authorizer.checkAccess("monitor"));
+        // Simulate a reload of the security configuration that revokes the role
+        TestAdminAuthorizer newAdminAuthorizer = new TestAdminAuthorizer();
+        authorizer.adminAuthorizer = newAdminAuthorizer;
+        assertFalse(authorizer.checkAccess("monitor"));
+        assertEquals(1, newAdminAuthorizer.checkCount);
+    }
+    
+    @Test
+    public void testExpiry() throws Exception {
+        TestAdminAuthorizer adminAuthorizer = new TestAdminAuthorizer();
+        adminAuthorizer.roles.add("monitor");
+        TestAuthorizer authorizer = new TestAuthorizer(50);
+        authorizer.adminAuthorizer = adminAuthorizer;
+        assertTrue(authorizer.checkAccess("monitor"));
+        adminAuthorizer.roles.clear();
+        Thread.sleep(100);
+        assertFalse(authorizer.checkAccess("monitor"));
+        assertEquals(2, adminAuthorizer.checkCount);
+    }
+    
+    @Test
+    public void testCacheDisabled() {
+        TestAdminAuthorizer adminAuthorizer = new TestAdminAuthorizer();
+        adminAuthorizer.roles.add("monitor");
+        TestAuthorizer authorizer = new TestAuthorizer(0);
+        authorizer.adminAuthorizer = adminAuthorizer;
+        assertTrue(authorizer.checkAccess("monitor"));
+        assertTrue(authorizer.checkAccess("monitor"));
+        assertEquals(2, adminAuthorizer.checkCount);
+    }
+    
+    @Test(expected=SecurityException.class)
+    public void testSecurityNotInitialized() {
+        new TestAuthorizer(60000).checkAccess("monitor");
+    }
+}
@@ -0,0 +1,120 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.metrics.MetricRegistry;
+
+public class MetricHistoryTest {
+    @Test
+    public void testRing() {
+        MetricRegistryImpl registry = new MetricRegistryImpl();
+        final AtomicLong counter = new AtomicLong();
+        registry.registerCounter("test_requests", "Test", Collections.singletonMap("instance", "x"), new MetricRegistry.LongValue() {
+            public long get() {
+                return counter.get();
+            }
+        });
+        MetricHistory history = new MetricHistory(registry, 10000, 3);
+        for (int i=0; i<5; i++) {
+            counter.set(i*10);
+            history.takeSample();
+        }
+        assertEquals("test_requests_total{instance=\"x\"}: 3 samples", history.dumpSeries());
+        // Only the last 3 samples are kept
+        String result = history.dumpHistory("test_requests_total{instance=\"x\"}", 3600);
+        String[] lines = result.split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].endsWith(" 20"));
+        assertTrue(lines[2].endsWith(" 40"));
+        assertTrue(lines[3].startsWith("min=20, max=40, delta=20"));
+    }
+    
+    @Test
+    public void testSeriesLifecycle() {
+        MetricRegistryImpl registry = new MetricRegistryImpl();
+        MetricHistory history = new MetricHistory(registry, 10000, 10);
+        history.takeSample();
+        final StatisticAccumulator accumulator = new StatisticAccumulator();
+        Runnable unregisterAction = registry.registerSummary("test_duration", "Test", Collections.<String,String>emptyMap(), new MetricRegistry.AccumulatorValue() {
+            public StatisticAccumulator get() {
+                return accumulator;
+            }
+        });
+        accumulator.add(4);
+        history.takeSample();
+        accumulator.add(6);
+        history.takeSample();
+        // The series only includes the samples taken after the metric was registered
+        assertEquals("test_duration_count: min=1, max=2, delta=1\ntest_duration_sum: min=4, max=10, delta=6",
+                history.dumpStatistics(3600).replaceAll(", rate=[^\n]*", ""));
+        unregisterAction.run();
+        history.takeSample();
+        assertEquals("", history.dumpSeries());
+    }
+    
+    @Test
+    public void testMissingValues() {
+        MetricRegistryImpl registry = new MetricRegistryImpl();
+        final AtomicLong value = new AtomicLong(7);
+        registry.registerGauge("test_gauge", "Test", Collections.<String,String>emptyMap(), new MetricRegistry.LongValue() {
+            public long get() throws Exception {
+                if (value.get() < 0) {
+                    throw new Exception();
+                }
+                return value.get();
+            }
+        });
+        MetricHistory history = new MetricHistory(registry, 10000, 10);
+        history.takeSample();
+        value.set(-1);
+        history.takeSample();
+        String[] lines = history.dumpHistory("test_gauge", 3600).split("\n");
+        assertTrue(lines[0].endsWith(" 7"));
+        assertTrue(lines[1].endsWith(" -"));
+        assertTrue(lines[2].startsWith("min=7, max=7, delta=0"));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new MetricHistory(new MetricRegistryImpl(), 10000, 0);
+    }
+    
+    @Test
+    public void testSlowMetricDoesNotBlockReaders() throws Exception {
+        MetricRegistryImpl registry = new MetricRegistryImpl();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        registry.registerGauge("test_gauge", "Test", Collections.<String,String>emptyMap(), new MetricRegistry.LongValue() {
+            public long get() throws Exception {
+                entered.countDown();
+                release.await();
+                return 1;
+            }
+        });
+        final MetricHistory history = new MetricHistory(registry, 10000, 10);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                history.takeSample();
+            }
+        });
+        thread.start();
+        try {
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            // The history can be read while the metric is being sampled
+            assertEquals("", history.dumpSeries());
+        } finally {
+            release.countDown();
+        }
+        thread.join();
+        assertEquals("test_gauge: 1 samples", history.dumpSeries());
+    }
+}
@@ -0,0 +1,229 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.metrics.MetricRegistry;
+
+public class OpenMetricsServerTest {
+    private static final long REQUEST_TIMEOUT = 2000;
+    
+    private static final int MAX_CONNECTIONS = 2;
+    
+    private MetricRegistryImpl registry;
+    private OpenMetricsServer server;
+    
+    @Before
+    public void setUp() throws Exception {
+        registry = new MetricRegistryImpl();
+        server = new OpenMetricsServer(registry, new InetSocketAddress("127.0.0.1", 0), REQUEST_TIMEOUT, MAX_CONNECTIONS);
+        server.start();
+    }
+    
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+    
+    private HttpURLConnection connect(String path) throws Exception {
+        InetSocketAddress address = server.getAddress();
+        return (HttpURLConnection)new URL("http", address.getHostName(), address.getPort(), path).openConnection();
+    }
+    
+    private String scrape() throws Exception {
+        HttpURLConnection connection = connect("/metrics");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("application/openmetrics-text; version=1.0.0; charset=utf-8", connection.getContentType());
+        InputStream in = connection.getInputStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int c;
+            while ((c = in.read(buffer)) != -1) {
+                out.write(buffer, 0, c);
+            }
+            return new String(out.toByteArray(), "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+    
+    @Test
+    public void testScrape() throws Exception {
+        final AtomicLong requests = new AtomicLong(42);
+        registry.registerCounter("test_requests", "Number of \"requests\"", Collections.singletonMap("instance", "a\"b"), new MetricRegistry.LongValue() {
+            public long get() {
+                return requests.get();
+            }
+        });
+        registry.registerGauge("test_active", "Active requests", Collections.<String,String>emptyMap(), new MetricRegistry.LongValue() {
+            public long get() {
+                return -3;
+            }
+        });
+        final StatisticAccumulator accumulator = new StatisticAccumulator();
+        accumulator.add(5);
+        accumulator.add(7);
+        registry.registerSummary("test_duration", "Request duration", Collections.<String,String>emptyMap(), new MetricRegistry.AccumulatorValue() {
+            public StatisticAccumulator get() {
+                return accumulator;
+            }
+        });
+        registry.registerGauge("test_broken", "Always fails", Collections.<String,String>emptyMap(), new MetricRegistry.LongValue() {
+            public long get() throws Exception {
+                throw new Exception();
+            }
+        });
+        assertEquals(
+                "# TYPE test_active gauge\n" +
+                "# HELP test_active Active requests\n" +
+                "test_active -3\n" +
+                "# TYPE test_broken gauge\n" +
+                "# HELP test_broken Always fails\n" +
+                "# TYPE test_duration summary\n" +
+                "# HELP test_duration Request duration\n" +
+                "test_duration_count 2\n" +
+                "test_duration_sum 12\n" +
+                "# TYPE test_requests counter\n" +
+                "# HELP test_requests Number of \\\"requests\\\"\n" +
+                "test_requests_total{instance=\"a\\\"b\"} 42\n" +
+                "# EOF\n", scrape());
+        // Values are read on every scrape
+        requests.set(Long.MAX_VALUE);
+        String result = scrape();
+        assertEquals(true, result.contains("test_requests_total{instance=\"a\\\"b\"} " + Long.MAX_VALUE + "\n"));
+    }
+    
+    @Test
+    public void testUnregister() throws Exception {
+        Runnable unregisterAction = registry.registerGauge("test_gauge", "Test", Collections.<String,String>emptyMap(), new MetricRegistry.LongValue() {
+            public long get() {
+                return 1;
+            }
+        });
+        unregisterAction.run();
+        assertEquals("# EOF\n", scrape());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testTypeMismatch() {
+        MetricRegistry.LongValue value = new MetricRegistry.LongValue() {
+            public long get() {
+                return 1;
+            }
+        };
+        registry.registerGauge("test_metric", "Test", Collections.<String,String>emptyMap(), value);
+        registry.registerCounter("test_metric", "Test", Collections.singletonMap("instance", "x"), value);
+    }
+    
+    @Test
+    public void testNotFound() throws Exception {
+        assertEquals(404, connect("/other").getResponseCode());
+    }
+    
+    private Socket openIdleConnection() throws Exception {
+        InetSocketAddress address = server.getAddress();
+        Socket socket = new Socket(address.getAddress(), address.getPort());
+        socket.setSoTimeout((int)REQUEST_TIMEOUT*5);
+        return socket;
+    }
+    
+    @Test
+    public void testIdleConnectionClosed() throws Exception {
+        Socket socket = openIdleConnection();
+        try {
+            long start = System.currentTimeMillis();
+            assertEquals(-1, socket.getInputStream().read());
+            assertTrue(System.currentTimeMillis() - start >= REQUEST_TIMEOUT/2);
+        } finally {
+            socket.close();
+        }
+    }
+    
+    @Test
+    public void testMaxConnections() throws Exception {
+        Socket[] sockets = new Socket[MAX_CONNECTIONS];
+        for (int i=0; i<MAX_CONNECTIONS; i++) {
+            sockets[i] = openIdleConnection();
+        }
+        // Let the server accept the connections
+        Thread.sleep(200);
+        Socket rejected = openIdleConnection();
+        try {
+            long start = System.currentTimeMillis();
+            assertEquals(-1, rejected.getInputStream().read());
+            assertTrue(System.currentTimeMillis() - start < REQUEST_TIMEOUT/2);
+        } finally {
+            rejected.close();
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        // Let the server detect that the connections have been closed
+        Thread.sleep(200);
+        assertEquals("# EOF\n", scrape());
+    }
+    
+    @Test
+    public void testSlowMetric() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        registry.registerGauge("test_slow", "Slow gauge", Collections.<String,String>emptyMap(), new MetricRegistry.LongValue() {
+            public long get() throws Exception {
+                latch.await();
+                return 1;
+            }
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> result = executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return scrape();
+                }
+            });
+            // The endpoint must still respond while the metrics are being rendered
+            long start = System.currentTimeMillis();
+            assertEquals(404, connect("/other").getResponseCode());
+            assertTrue(System.currentTimeMillis() - start < REQUEST_TIMEOUT/2);
+            latch.countDown();
+            assertTrue(result.get(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS).contains("test_slow 1\n"));
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testLargeOutput() throws Exception {
+        for (int i=0; i<2000; i++) {
+            final long value = i;
+            registry.registerGauge("test_gauge_" + i, "Test gauge " + i, Collections.<String,String>emptyMap(), new MetricRegistry.LongValue() {
+                public long get() {
+                    return value;
+                }
+            });
+        }
+        String result = scrape();
+        assertEquals(true, result.contains("test_gauge_1999 1999\n"));
+        assertEquals(true, result.endsWith("# EOF\n"));
+    }
+}
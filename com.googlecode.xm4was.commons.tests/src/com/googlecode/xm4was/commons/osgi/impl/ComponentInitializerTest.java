@@ -0,0 +1,117 @@
+package com.googlecode.xm4was.commons.osgi.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.googlecode.xm4was.commons.osgi.annotations.Init;
+
+public class ComponentInitializerTest {
+    public static class TestComponent {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger initCount = new AtomicInteger();
+        volatile Thread initThread;
+        
+        @Init
+        public void init() throws Exception {
+            initThread = Thread.currentThread();
+            initCount.incrementAndGet();
+            await();
+        }
+        
+        void await() throws Exception {
+            release.await(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    public static class BarrierComponent extends TestComponent {
+        private final CyclicBarrier barrier;
+        
+        BarrierComponent(CyclicBarrier barrier) {
+            this.barrier = barrier;
+        }
+        
+        @Override
+        void await() throws Exception {
+            barrier.await(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    private static LifecycleManager createManager(ComponentInitializer initializer, Object component) {
+        return new LifecycleManager(null, initializer, null, null, component, null);
+    }
+    
+    @Test
+    public void testSynchronous() throws Exception {
+        ComponentInitializer initializer = new ComponentInitializer(0);
+        TestComponent component = new TestComponent();
+        component.release.countDown();
+        createManager(initializer, component).start();
+        assertSame(Thread.currentThread(), component.initThread);
+        assertTrue(initializer.awaitCompletion(0));
+        assertTrue(initializer.getInitTimes().containsKey(TestComponent.class.getName()));
+    }
+    
+    @Test
+    public void testConcurrent() throws Exception {
+        ComponentInitializer initializer = new ComponentInitializer(2);
+        try {
+            // Each init method waits for the other one; this only succeeds if they are executed
+            // concurrently
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            BarrierComponent component1 = new BarrierComponent(barrier);
+            BarrierComponent component2 = new BarrierComponent(barrier);
+            createManager(initializer, component1).start();
+            createManager(initializer, component2).start();
+            assertTrue(initializer.awaitCompletion(10000));
+            assertFalse(barrier.isBroken());
+            assertTrue(component1.initThread != component2.initThread);
+        } finally {
+            initializer.shutdown();
+        }
+    }
+    
+    @Test
+    public void testAwaitCompletionTimeout() throws Exception {
+        ComponentInitializer initializer = new ComponentInitializer(1);
+        try {
+            TestComponent component = new TestComponent();
+            createManager(initializer, component).start();
+            assertFalse(initializer.awaitCompletion(100));
+            component.release.countDown();
+            assertTrue(initializer.awaitCompletion(10000));
+            assertEquals(1, component.initCount.get());
+            assertTrue(initializer.getInitTimes().containsKey(TestComponent.class.getName()));
+        } finally {
+            initializer.shutdown();
+        }
+    }
+    
+    @Test
+    public void testStopBeforeInit() throws Exception {
+        ComponentInitializer initializer = new ComponentInitializer(1);
+        try {
+            // Occupy the only initializer thread
+            TestComponent blocking = new TestComponent();
+            createManager(initializer, blocking).start();
+            TestComponent component = new TestComponent();
+            component.release.countDown();
+            LifecycleManager manager = createManager(initializer, component);
+            manager.start();
+            manager.stop();
+            blocking.release.countDown();
+            assertTrue(initializer.awaitCompletion(10000));
+            assertEquals(0, component.initCount.get());
+        } finally {
+            initializer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.googlecode.xm4was.commons.osgi.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.osgi.ServiceVisitor;
+
+public class ServiceDispatcherTest {
+    private ServiceDispatcher dispatcher;
+    
+    @Before
+    public void setUp() {
+        dispatcher = new ServiceDispatcher();
+    }
+    
+    @After
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+    
+    @Test
+    public void testOrder() throws Exception {
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        ServiceDispatcher.Queue<List<Integer>> queue = dispatcher.createQueue(received);
+        final CountDownLatch latch = new CountDownLatch(100);
+        for (int i=0; i<100; i++) {
+            final int value = i;
+            queue.add(new ServiceVisitor<List<Integer>>() {
+                public void visit(List<Integer> service) {
+                    service.add(value);
+                    latch.countDown();
+                }
+            }, 10000);
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (int i=0; i<100; i++) {
+            assertEquals(i, received.get(i).intValue());
+        }
+        // The latency is recorded after the visit returns; wait until the last one is available
+        StatisticAccumulator latency = dispatcher.getLatencies().get(received.getClass().getName());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (latency.getCount() < 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(100, latency.getCount());
+    }
+    
+    @Test
+    public void testTimeout() throws Exception {
+        ServiceDispatcher.Queue<Object> queue = dispatcher.createQueue(new Object());
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final CountDownLatch next = new CountDownLatch(1);
+        queue.add(new ServiceVisitor<Object>() {
+            public void visit(Object service) {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                }
+            }
+        }, 100);
+        queue.add(new ServiceVisitor<Object>() {
+            public void visit(Object service) {
+                // The interrupt status must not leak into subsequent visits
+                if (!Thread.currentThread().isInterrupted()) {
+                    next.countDown();
+                }
+            }
+        }, 10000);
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(next.await(10, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testSlowServiceDoesntBlockOthers() throws Exception {
+        ServiceDispatcher.Queue<Object> slowQueue = dispatcher.createQueue(new Object());
+        ServiceDispatcher.Queue<String> fastQueue = dispatcher.createQueue("fast");
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fast = new CountDownLatch(1);
+        slowQueue.add(new ServiceVisitor<Object>() {
+            public void visit(Object service) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    // Expected on shutdown
+                }
+            }
+        }, 60000);
+        fastQueue.add(new ServiceVisitor<String>() {
+            public void visit(String service) {
+                fast.countDown();
+            }
+        }, 10000);
+        try {
+            assertTrue(fast.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}
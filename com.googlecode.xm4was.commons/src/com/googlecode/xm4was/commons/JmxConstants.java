@@ -4,4 +4,13 @@ public final class JmxConstants {
     private JmxConstants() {}
     
     public static final String DOMAIN = "XM4WAS";
+    
+    /**
+     * Service property that marks services registered by XM4WAS components. The MBean exporter only
+     * tracks services having this property set to <tt>true</tt>, so that it doesn't need to
+     * inspect every service in the framework. The property is added automatically to services
+     * registered through the component framework; components that register services directly with
+     * the {@link org.osgi.framework.BundleContext} must set it explicitly.
+     */
+    public static final String EXPORT_PROPERTY = "xm4was.export";
 }
@@ -0,0 +1,48 @@
+package com.googlecode.xm4was.commons;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thread factory for the executors used by XM4WAS components. Threads are named after the given
+ * prefix and uncaught exceptions are logged using the logger and message key of the component
+ * that owns the executor.
+ */
+public final class NamedThreadFactory implements ThreadFactory, Thread.UncaughtExceptionHandler {
+    private final ThreadGroup group;
+    private final String namePrefix;
+    private final Logger logger;
+    private final String message;
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    /**
+     * Constructor.
+     * 
+     * @param namePrefix
+     *            the prefix of the thread names
+     * @param logger
+     *            the logger used to report uncaught exceptions
+     * @param message
+     *            the key of the message used to report uncaught exceptions; the message is
+     *            expected to have a single parameter, namely the exception
+     */
+    public NamedThreadFactory(String namePrefix, Logger logger, String message) {
+        group = Thread.currentThread().getThreadGroup();
+        this.namePrefix = namePrefix;
+        this.logger = logger;
+        this.message = message;
+    }
+
+    public Thread newThread(final Runnable runnable) {
+        Thread t = new Thread(group, runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+        t.setDaemon(false);
+        t.setUncaughtExceptionHandler(this);
+        return t;
+    }
+
+    public void uncaughtException(Thread thread, Throwable ex) {
+        logger.log(Level.SEVERE, message, ex);
+    }
+}
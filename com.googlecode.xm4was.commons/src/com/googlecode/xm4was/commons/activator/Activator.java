@@ -1,21 +1,36 @@
 package com.googlecode.xm4was.commons.activator;
 
+import java.util.Properties;
+
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.util.tracker.ServiceTracker;
 
+import com.googlecode.xm4was.commons.JmxConstants;
+import com.googlecode.xm4was.commons.event.EventBus;
+import com.googlecode.xm4was.commons.event.impl.EventBusImpl;
+import com.googlecode.xm4was.commons.event.impl.EventBusMBean;
 import com.ibm.ws.runtime.service.ApplicationMgr;
 
 public class Activator implements BundleActivator {
     private static BundleContext bundleContext;
     
+    private EventBusImpl eventBus;
+    private ServiceRegistration eventBusRegistration;
     private ServiceTracker appMgrTracker;
     
     public void start(final BundleContext bundleContext) throws Exception {
         Activator.bundleContext = bundleContext;
         
+        eventBus = new EventBusImpl();
+        eventBus.start();
+        Properties props = new Properties();
+        props.setProperty(JmxConstants.EXPORT_PROPERTY, "true");
+        eventBusRegistration = bundleContext.registerService(new String[] { EventBus.class.getName(), EventBusMBean.class.getName() }, eventBus, props);
+        
         appMgrTracker = new ServiceTracker(bundleContext, ApplicationMgr.class.getName(),
-                new ApplicationMgrListener(bundleContext));
+                new ApplicationMgrListener(bundleContext, eventBus));
         appMgrTracker.open();
     }
 
@@ -25,5 +40,7 @@ public class Activator implements BundleActivator {
 
     public void stop(BundleContext bundleContext) throws Exception {
         appMgrTracker.close();
+        eventBusRegistration.unregister();
+        eventBus.stop();
     }
 }
@@ -6,19 +6,22 @@ import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
 
 import com.googlecode.xm4was.commons.deploy.ClassLoaderListener;
+import com.googlecode.xm4was.commons.event.EventBus;
 import com.ibm.ws.runtime.service.ApplicationMgr;
 
 class ApplicationMgrListener implements ServiceTrackerCustomizer {
     private final BundleContext bundleContext;
+    private final EventBus eventBus;
     
-    ApplicationMgrListener(BundleContext bundleContext) {
+    ApplicationMgrListener(BundleContext bundleContext, EventBus eventBus) {
         this.bundleContext = bundleContext;
+        this.eventBus = eventBus;
     }
 
     public Object addingService(ServiceReference reference) {
         ApplicationMgr applicationMgr = (ApplicationMgr)bundleContext.getService(reference);
         ServiceTracker listenerTracker = new ServiceTracker(bundleContext, ClassLoaderListener.class.getName(),
-                new ClassLoaderListenerRegistrar(bundleContext, applicationMgr));
+                new ClassLoaderListenerRegistrar(bundleContext, applicationMgr, eventBus));
         listenerTracker.open();
         return listenerTracker;
     }
@@ -0,0 +1,65 @@
+package com.googlecode.xm4was.commons.activator;
+
+import java.lang.management.ManagementFactory;
+
+import com.googlecode.xm4was.commons.deploy.ClassLoaderLifecycleListener;
+import com.googlecode.xm4was.commons.deploy.ClassLoaderListener;
+import com.googlecode.xm4was.commons.event.Event;
+
+/**
+ * Event that delivers a class loader lifecycle notification to a {@link ClassLoaderListener}.
+ * These events are never discarded: listeners use them to maintain references to class loaders,
+ * and a lost event would cause a leak or leave a listener in an inconsistent state.
+ */
+final class ClassLoaderEvent extends Event {
+    enum Kind { CREATED, STARTED, RELEASED };
+    
+    private final ClassLoaderListener listener;
+    private final Kind kind;
+    private final ClassLoader classLoader;
+    private final String applicationName;
+    private final String moduleName;
+    
+    /**
+     * The total number of classes loaded by the JVM when the event was created, or -1 if the
+     * listener doesn't need that information.
+     */
+    private final long loadedClassCount;
+    
+    ClassLoaderEvent(ClassLoaderListener listener, Kind kind, ClassLoader classLoader, String applicationName, String moduleName) {
+        this.listener = listener;
+        this.kind = kind;
+        this.classLoader = classLoader;
+        this.applicationName = applicationName;
+        this.moduleName = moduleName;
+        loadedClassCount = listener instanceof ClassLoaderLifecycleListener
+                ? ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount() : -1;
+    }
+
+    @Override
+    public String getType() {
+        switch (kind) {
+            case CREATED: return "ClassLoaderCreated";
+            case STARTED: return "ClassLoaderStarted";
+            default: return "ClassLoaderReleased";
+        }
+    }
+
+    @Override
+    public void dispatch() {
+        switch (kind) {
+            case CREATED:
+                if (listener instanceof ClassLoaderLifecycleListener) {
+                    ((ClassLoaderLifecycleListener)listener).classLoaderCreated(classLoader, applicationName, moduleName, getTimestamp(), loadedClassCount);
+                } else {
+                    listener.classLoaderCreated(classLoader, applicationName, moduleName);
+                }
+                break;
+            case STARTED:
+                ((ClassLoaderLifecycleListener)listener).classLoaderStarted(classLoader, applicationName, moduleName, getTimestamp(), loadedClassCount);
+                break;
+            case RELEASED:
+                listener.classLoaderReleased(classLoader, applicationName, moduleName);
+        }
+    }
+}
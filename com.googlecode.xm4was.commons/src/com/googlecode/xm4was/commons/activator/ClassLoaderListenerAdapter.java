@@ -3,7 +3,10 @@ package com.googlecode.xm4was.commons.activator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.googlecode.xm4was.commons.deploy.ClassLoaderLifecycleListener;
 import com.googlecode.xm4was.commons.deploy.ClassLoaderListener;
+import com.googlecode.xm4was.commons.deploy.SynchronousClassLoaderListener;
+import com.googlecode.xm4was.commons.event.EventBus;
 import com.googlecode.xm4was.commons.resources.Messages;
 import com.ibm.ws.exception.RuntimeError;
 import com.ibm.ws.exception.RuntimeWarning;
@@ -15,15 +18,19 @@ import com.ibm.ws.runtime.deploy.DeployedObjectListener;
 
 /**
  * {@link DeployedObjectListener} that processes {@link DeployedObjectEvent} events and forwards
- * them to a {@link ClassLoaderListener}.
+ * them to a {@link ClassLoaderListener}. The events are delivered through the {@link EventBus}, so
+ * that listeners don't extend the time needed to start or stop applications, except for
+ * {@link SynchronousClassLoaderListener} instances which are notified directly.
  */
 class ClassLoaderListenerAdapter implements DeployedObjectListener {
     private static final Logger LOGGER = Logger.getLogger(ClassLoaderListenerAdapter.class.getName(), Messages.class.getName());
     
     private final ClassLoaderListener listener;
+    private final EventBus eventBus;
 
-    ClassLoaderListenerAdapter(ClassLoaderListener listener) {
+    ClassLoaderListenerAdapter(ClassLoaderListener listener, EventBus eventBus) {
         this.listener = listener;
+        this.eventBus = eventBus;
     }
 
     public void stateChanged(DeployedObjectEvent event) throws RuntimeError, RuntimeWarning {
@@ -51,10 +58,27 @@ class ClassLoaderListenerAdapter implements DeployedObjectListener {
                 applicationName = deployedObject.getName();
                 moduleName = null;
             }
+            ClassLoaderEvent.Kind kind;
             if (state.equals("STARTING")) {
-                listener.classLoaderCreated(classLoader, applicationName, moduleName);
+                kind = ClassLoaderEvent.Kind.CREATED;
+            } else if (state.equals("STARTED") && listener instanceof ClassLoaderLifecycleListener) {
+                kind = ClassLoaderEvent.Kind.STARTED;
             } else if (state.equals("DESTROYED")) {
-                listener.classLoaderReleased(classLoader, applicationName, moduleName);
+                kind = ClassLoaderEvent.Kind.RELEASED;
+            } else {
+                kind = null;
+            }
+            if (kind != null) {
+                ClassLoaderEvent classLoaderEvent = new ClassLoaderEvent(listener, kind, classLoader, applicationName, moduleName);
+                if (listener instanceof SynchronousClassLoaderListener) {
+                    try {
+                        classLoaderEvent.dispatch();
+                    } catch (Throwable ex) {
+                        LOGGER.log(Level.SEVERE, Messages._0030E, new Object[] { classLoaderEvent.getType(), ex });
+                    }
+                } else {
+                    eventBus.publish(classLoaderEvent);
+                }
             }
         }
     }
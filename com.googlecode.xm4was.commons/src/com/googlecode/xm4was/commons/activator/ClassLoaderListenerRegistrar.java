@@ -5,20 +5,23 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
 
 import com.googlecode.xm4was.commons.deploy.ClassLoaderListener;
+import com.googlecode.xm4was.commons.event.EventBus;
 import com.ibm.ws.runtime.service.ApplicationMgr;
 
 class ClassLoaderListenerRegistrar implements ServiceTrackerCustomizer {
     private final BundleContext bundleContext;
     private final ApplicationMgr applicationMgr;
+    private final EventBus eventBus;
 
-    ClassLoaderListenerRegistrar(BundleContext bundleContext, ApplicationMgr applicationMgr) {
+    ClassLoaderListenerRegistrar(BundleContext bundleContext, ApplicationMgr applicationMgr, EventBus eventBus) {
         this.bundleContext = bundleContext;
         this.applicationMgr = applicationMgr;
+        this.eventBus = eventBus;
     }
 
     public Object addingService(ServiceReference reference) {
         ClassLoaderListener listener = (ClassLoaderListener)bundleContext.getService(reference);
-        ClassLoaderListenerAdapter adapter = new ClassLoaderListenerAdapter(listener);
+        ClassLoaderListenerAdapter adapter = new ClassLoaderListenerAdapter(listener, eventBus);
         applicationMgr.addDeployedObjectListener(adapter);
         return adapter;
     }
@@ -0,0 +1,64 @@
+package com.googlecode.xm4was.commons.deploy;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Extension of {@link ClassLoaderListener} for listeners that also want to be notified when the
+ * application or module using a class loader has completed its startup. Implementations are
+ * registered as {@link ClassLoaderListener} services.
+ * <p>
+ * Since the events are delivered asynchronously, the time at which they occurred and the number
+ * of classes loaded by the JVM at that time are passed to the listener. Listeners implementing
+ * this interface receive
+ * {@link #classLoaderCreated(ClassLoader, String, String, long, long)} instead of
+ * {@link ClassLoaderListener#classLoaderCreated(ClassLoader, String, String)}.
+ */
+public interface ClassLoaderLifecycleListener extends ClassLoaderListener {
+    /**
+     * Invoked when a new class loader has been created.
+     * 
+     * @param classLoader
+     *            the class loader; never <code>null</code>
+     * @param applicationName
+     *            the name of the application; never <code>null</code>
+     * @param moduleName
+     *            the module name, or <code>null</code> if the event is related to the class loader
+     *            of the application
+     * @param timestamp
+     *            the time at which the class loader has been created, in milliseconds since the
+     *            epoch
+     * @param loadedClassCount
+     *            the total number of classes loaded by the JVM at that time
+     */
+    void classLoaderCreated(ClassLoader classLoader, String applicationName, String moduleName, long timestamp, long loadedClassCount);
+    
+    /**
+     * Invoked when the application or module using a class loader has been started successfully.
+     * This event is always preceded by a call to
+     * {@link #classLoaderCreated(ClassLoader, String, String, long, long)} for the same class
+     * loader.
+     * 
+     * @param classLoader
+     *            the class loader; never <code>null</code>
+     * @param applicationName
+     *            the name of the application; never <code>null</code>
+     * @param moduleName
+     *            the module name, or <code>null</code> if the event is related to the class loader
+     *            of the application
+     * @param timestamp
+     *            the time at which the startup has completed, in milliseconds since the epoch
+     * @param loadedClassCount
+     *            the total number of classes loaded by the JVM at that time
+     */
+    void classLoaderStarted(ClassLoader classLoader, String applicationName, String moduleName, long timestamp, long loadedClassCount);
+    
+    /**
+     * Forwards the notification to
+     * {@link #classLoaderCreated(ClassLoader, String, String, long, long)} using the current time
+     * and number of loaded classes.
+     */
+    default void classLoaderCreated(ClassLoader classLoader, String applicationName, String moduleName) {
+        classLoaderCreated(classLoader, applicationName, moduleName, System.currentTimeMillis(),
+                ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+    }
+}
@@ -0,0 +1,11 @@
+package com.googlecode.xm4was.commons.deploy;
+
+/**
+ * Marker interface for {@link ClassLoaderListener} implementations that need to be notified
+ * synchronously, i.e. on the thread that starts or stops the application, before the application
+ * code is executed. Other listeners are notified asynchronously. This is intended for listeners
+ * that maintain state other code relies on while the application is running (e.g. to link
+ * threads to applications). Implementations must return quickly and must not block.
+ */
+public interface SynchronousClassLoaderListener extends ClassLoaderListener {
+}
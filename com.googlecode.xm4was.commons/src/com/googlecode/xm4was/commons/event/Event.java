@@ -0,0 +1,43 @@
+package com.googlecode.xm4was.commons.event;
+
+/**
+ * An event published to the {@link EventBus}. The event knows how to deliver itself to its
+ * listeners; this keeps the bus independent of the listener interfaces defined by the different
+ * XM4WAS bundles.
+ */
+public abstract class Event {
+    private final long timestamp = System.currentTimeMillis();
+    
+    /**
+     * Get the time at which the event was created.
+     * 
+     * @return the time in milliseconds since the epoch
+     */
+    public final long getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * Get the type of the event. The bus maintains its statistics per event type.
+     * 
+     * @return the event type
+     */
+    public abstract String getType();
+    
+    /**
+     * Determine whether the event may be discarded if the queue of the bus is full. Events that
+     * listeners rely on to maintain their state (such as the creation and release of a class
+     * loader) must never be discarded.
+     * 
+     * @return <code>true</code> if the event may be discarded; the default implementation returns
+     *         <code>false</code>
+     */
+    public boolean isDiscardable() {
+        return false;
+    }
+    
+    /**
+     * Deliver the event to its listeners. This method is invoked on the thread of the event bus.
+     */
+    public abstract void dispatch();
+}
@@ -0,0 +1,26 @@
+package com.googlecode.xm4was.commons.event;
+
+/**
+ * Delivers events asynchronously. Events are delivered by a single thread in the order in which
+ * they have been published. Publishing an event never blocks. This ensures that monitoring code
+ * never extends the time spent in the code that generates the events (e.g. application startup)
+ * or the time during which that code holds locks. The number of queued events that are
+ * {@link Event#isDiscardable() discardable} is bounded; if the limit is reached, further
+ * discardable events are discarded. Other events are always queued; they are expected to be
+ * published at a low rate.
+ * <p>
+ * Since events are delivered asynchronously, listeners must not assume that the state that
+ * triggered the event still exists when the event is delivered.
+ */
+public interface EventBus {
+    /**
+     * Publish an event.
+     * 
+     * @param event
+     *            the event
+     * @return <code>true</code> if the event has been queued; <code>false</code> if it has been
+     *         discarded because the queue is full (for discardable events) or the bus has been
+     *         stopped
+     */
+    boolean publish(Event event);
+}
@@ -0,0 +1,217 @@
+package com.googlecode.xm4was.commons.event.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.commons.event.Event;
+import com.googlecode.xm4was.commons.event.EventBus;
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.resources.Messages;
+
+/**
+ * {@link EventBus} implementation. Events are stored in a queue and delivered by a single consumer
+ * thread. The queue itself is unbounded, but the number of queued discardable events is limited.
+ * The consumer removes the queued events in batches so that it only needs to acquire the lock of
+ * the queue once per batch.
+ */
+public final class EventBusImpl implements EventBus, EventBusMBean, Runnable {
+    private static final Logger LOGGER = Logger.getLogger(EventBusImpl.class.getName(), Messages.class.getName());
+    
+    /**
+     * The maximum number of queued discardable events.
+     */
+    private static final int CAPACITY = Integer.parseInt(System.getProperty(
+            "com.googlecode.xm4was.commons.event.impl.EventBusImpl.CAPACITY", "10000"));
+    
+    /**
+     * The maximum number of events removed from the queue at once.
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+    
+    private static final class TypeStats {
+        final LongAdder published = new LongAdder();
+        final LongAdder discarded = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        /**
+         * The time (in milliseconds) between the creation and the delivery of the events.
+         */
+        final StatisticAccumulator latency = new StatisticAccumulator();
+    }
+    
+    private final BlockingQueue<Event> queue = new LinkedBlockingQueue<Event>();
+    
+    /**
+     * The number of discardable events in the queue.
+     */
+    private final AtomicInteger discardableCount = new AtomicInteger();
+    private final ConcurrentMap<String,TypeStats> stats = new ConcurrentHashMap<String,TypeStats>();
+    private final LongAdder discardedCount = new LongAdder();
+    
+    /**
+     * Indicates that events are being discarded. Used to log the overflow only once until the
+     * queue has been drained.
+     */
+    private final AtomicBoolean overflow = new AtomicBoolean();
+    
+    /**
+     * The number of events delivered per batch.
+     */
+    private final StatisticAccumulator batchSize = new StatisticAccumulator();
+    
+    private final Thread thread;
+    private volatile boolean stopped;
+    
+    public EventBusImpl() {
+        thread = new Thread(this, "XM4WAS Event Bus");
+        thread.setDaemon(true);
+    }
+    
+    public void start() {
+        thread.start();
+    }
+    
+    /**
+     * Stop the consumer thread. Events that have not been delivered yet are discarded.
+     */
+    public void stop() {
+        stopped = true;
+        thread.interrupt();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        queue.clear();
+        discardableCount.set(0);
+    }
+    
+    private TypeStats getStats(String type) {
+        TypeStats result = stats.get(type);
+        if (result == null) {
+            TypeStats newStats = new TypeStats();
+            result = stats.putIfAbsent(type, newStats);
+            if (result == null) {
+                result = newStats;
+            }
+        }
+        return result;
+    }
+    
+    public boolean publish(Event event) {
+        TypeStats typeStats = getStats(event.getType());
+        if (!stopped && reserve(event) && queue.offer(event)) {
+            typeStats.published.increment();
+            return true;
+        } else {
+            typeStats.discarded.increment();
+            discardedCount.increment();
+            if (!stopped && overflow.compareAndSet(false, true)) {
+                LOGGER.log(Level.WARNING, Messages._0031W, new Object[] { event.getType(), String.valueOf(CAPACITY) });
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Reserve a place in the queue for the given event.
+     * 
+     * @return <code>false</code> if the event is discardable and the maximum number of queued
+     *         discardable events has been reached
+     */
+    private boolean reserve(Event event) {
+        if (!event.isDiscardable()) {
+            return true;
+        } else if (discardableCount.incrementAndGet() > CAPACITY) {
+            discardableCount.decrementAndGet();
+            return false;
+        } else {
+            return true;
+        }
+    }
+    
+    public void run() {
+        List<Event> batch = new ArrayList<Event>(MAX_BATCH_SIZE);
+        while (!stopped) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE-1);
+            batchSize.add(batch.size());
+            for (Event event : batch) {
+                if (event.isDiscardable()) {
+                    discardableCount.decrementAndGet();
+                }
+                deliver(event);
+            }
+            batch.clear();
+            if (queue.isEmpty()) {
+                overflow.set(false);
+            }
+        }
+    }
+    
+    private void deliver(Event event) {
+        TypeStats typeStats = getStats(event.getType());
+        try {
+            event.dispatch();
+        } catch (Throwable ex) {
+            typeStats.failed.increment();
+            LOGGER.log(Level.SEVERE, Messages._0030E, new Object[] { event.getType(), ex });
+        }
+        typeStats.latency.add(System.currentTimeMillis() - event.getTimestamp());
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDiscardedCount() {
+        return discardedCount.sum();
+    }
+
+    public String dumpStatistics() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("Queue size: ");
+        buffer.append(queue.size());
+        buffer.append(" (capacity ");
+        buffer.append(CAPACITY);
+        buffer.append(")\nBatches: count=");
+        long batchCount = batchSize.getCount();
+        buffer.append(batchCount);
+        buffer.append(", averageSize=");
+        buffer.append(batchCount == 0 ? 0 : batchSize.getTotal()/batchCount);
+        buffer.append(", maxSize=");
+        buffer.append(batchSize.getMax());
+        for (Map.Entry<String,TypeStats> entry : new TreeMap<String,TypeStats>(stats).entrySet()) {
+            TypeStats s = entry.getValue();
+            long delivered = s.latency.getCount();
+            buffer.append("\n");
+            buffer.append(entry.getKey());
+            buffer.append(": published=");
+            buffer.append(s.published.sum());
+            buffer.append(", discarded=");
+            buffer.append(s.discarded.sum());
+            buffer.append(", failed=");
+            buffer.append(s.failed.sum());
+            buffer.append(", averageLatency=");
+            buffer.append(delivered == 0 ? 0 : s.latency.getTotal()/delivered);
+            buffer.append(" ms, maxLatency=");
+            buffer.append(s.latency.getMax());
+            buffer.append(" ms");
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,19 @@
+package com.googlecode.xm4was.commons.event.impl;
+
+import javax.management.MBeanOperationInfo;
+
+import com.googlecode.xm4was.commons.jmx.annotations.Attribute;
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.Operation;
+
+@MBean(type="EventBus", description="Asynchronously delivers deployment and thread events to XM4WAS components")
+public interface EventBusMBean {
+    @Attribute(description="The number of events waiting to be delivered", readRole="monitor")
+    int getQueueSize();
+    
+    @Attribute(description="The number of events discarded because the queue was full", readRole="monitor")
+    long getDiscardedCount();
+    
+    @Operation(description="Display the statistics per event type", impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpStatistics();
+}
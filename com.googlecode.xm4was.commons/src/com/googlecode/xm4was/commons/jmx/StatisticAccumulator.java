@@ -0,0 +1,133 @@
+package com.googlecode.xm4was.commons.jmx;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Accumulates the count, total, minimum, maximum and sum of squares of a series of values. This is
+ * the data exposed by PMI <tt>AverageStatistic</tt> and <tt>TimeStatistic</tt> types: a method
+ * annotated with {@link com.googlecode.xm4was.commons.jmx.annotations.Statistic} that returns an
+ * instance of this class can be mapped to a statistic of one of these types.
+ * <p>
+ * The accumulator is designed to be updated on the hot path of the component: {@link #add(long)}
+ * doesn't acquire any lock and uses striped counters, so that concurrent updates don't contend on
+ * a single memory location. Readers may observe a state in which some of the aggregates already
+ * include a value that is not yet included in the others. This is acceptable for monitoring
+ * purposes.
+ */
+public final class StatisticAccumulator {
+    private static final LongBinaryOperator MIN = new LongBinaryOperator() {
+        public long applyAsLong(long left, long right) {
+            return Math.min(left, right);
+        }
+    };
+
+    private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+        public long applyAsLong(long left, long right) {
+            return Math.max(left, right);
+        }
+    };
+
+    private final long startTime = System.currentTimeMillis();
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final DoubleAdder sumOfSquares = new DoubleAdder();
+    private final LongAccumulator min = new LongAccumulator(MIN, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(MAX, Long.MIN_VALUE);
+
+    /**
+     * The count observed by the last call to {@link #getLastSampleTime()}. Access to this field
+     * must be synchronized.
+     */
+    private long observedCount;
+
+    /**
+     * The time at which {@link #getLastSampleTime()} last observed a change of the count. Access
+     * to this field must be synchronized.
+     */
+    private long lastSampleTime;
+
+    /**
+     * Add a value.
+     *
+     * @param value
+     *            the value; for a time statistic, this is the duration in milliseconds
+     */
+    public void add(long value) {
+        // Avoid the CAS if the value doesn't change the minimum or maximum (which is the common
+        // case). They are updated before the count so that getMin and getMax never return the
+        // initial values of the accumulators once the count is non zero.
+        if (value < min.get()) {
+            min.accumulate(value);
+        }
+        if (value > max.get()) {
+            max.accumulate(value);
+        }
+        count.increment();
+        total.add(value);
+        sumOfSquares.add((double)value*value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Get the minimum value.
+     *
+     * @return the minimum value, or 0 if no value has been added yet
+     */
+    public long getMin() {
+        return getCount() == 0 ? 0 : min.get();
+    }
+
+    /**
+     * Get the maximum value.
+     *
+     * @return the maximum value, or 0 if no value has been added yet
+     */
+    public long getMax() {
+        return getCount() == 0 ? 0 : max.get();
+    }
+
+    public double getSumOfSquares() {
+        return sumOfSquares.sum();
+    }
+
+    /**
+     * Get the time at which the accumulator was created.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Get the time at which the last value was added. To keep the clock out of {@link #add(long)},
+     * the time is determined when this method is called: it is the time of the first call that
+     * observed the current count. The precision is therefore limited by the frequency at which
+     * the accumulator is read, which is good enough for a PMI statistic.
+     *
+     * @return the time in milliseconds since the epoch, or 0 if no value has been added yet
+     */
+    public synchronized long getLastSampleTime() {
+        long currentCount = getCount();
+        if (currentCount != observedCount) {
+            observedCount = currentCount;
+            lastSampleTime = System.currentTimeMillis();
+        }
+        return lastSampleTime;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", total=" + getTotal() + ", min=" + getMin() + ", max=" + getMax();
+    }
+}
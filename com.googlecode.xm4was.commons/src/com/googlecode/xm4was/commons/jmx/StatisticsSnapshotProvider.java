@@ -0,0 +1,29 @@
+package com.googlecode.xm4was.commons.jmx;
+
+/**
+ * Optional contract for services annotated with
+ * {@link com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled}. If the service implements this
+ * interface, the values of the statistics are not read from the service itself, but from a
+ * snapshot created by the service. The snapshot is shared by all statistics updated during a PMI
+ * request and is refreshed at most once per
+ * {@link com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled#snapshotRefreshInterval()}. This
+ * is useful for services that need to perform expensive operations (such as I/O) to compute their
+ * statistics, and it ensures that the values of different statistics are consistent with each
+ * other.
+ * 
+ * @param <T>
+ *            the interface annotated with {@link com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled}
+ */
+public interface StatisticsSnapshotProvider<T> {
+    /**
+     * Create a snapshot of the statistics.
+     * 
+     * @return an object implementing the interface annotated with
+     *         {@link com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled}; the methods
+     *         annotated with {@link com.googlecode.xm4was.commons.jmx.annotations.Statistic} will
+     *         be invoked on that object
+     * @throws Exception
+     *             if the snapshot could not be created
+     */
+    T createStatisticsSnapshot() throws Exception;
+}
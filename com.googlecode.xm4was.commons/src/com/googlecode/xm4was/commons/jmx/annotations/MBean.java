@@ -26,4 +26,9 @@ public @interface MBean {
      * object name under which the MBean will be registered.
      */
     String[] keyProperties() default {};
+    
+    /**
+     * Describes the notifications emitted by the MBean.
+     */
+    NotificationInfo[] notifications() default {};
 }
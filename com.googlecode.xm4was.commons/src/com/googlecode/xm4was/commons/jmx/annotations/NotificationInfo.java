@@ -0,0 +1,18 @@
+package com.googlecode.xm4was.commons.jmx.annotations;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Describes the notifications emitted by an MBean. This annotation is used in
+ * {@link MBean#notifications()}. The service implementing the MBean interface must implement
+ * {@link javax.management.NotificationBroadcaster}; notifications sent by the service are forwarded
+ * to the listeners registered on the MBean, with the object name of the MBean as source.
+ */
+@Target({})
+@Retention(value=RetentionPolicy.RUNTIME)
+public @interface NotificationInfo {
+    String[] types();
+    String description();
+}
@@ -29,4 +29,13 @@ public @interface PMIEnabled {
     String groupName() default "";
     
     String statsTemplate();
+    
+    /**
+     * The minimum interval (in milliseconds) between two snapshots. This is only relevant if the
+     * service implements {@link com.googlecode.xm4was.commons.jmx.StatisticsSnapshotProvider}.
+     * The value can be overridden globally using the
+     * <tt>com.googlecode.xm4was.commons.MBeanExporter.SNAPSHOT_REFRESH_INTERVAL</tt> system
+     * property.
+     */
+    long snapshotRefreshInterval() default 1000;
 }
@@ -7,10 +7,27 @@ import java.lang.annotation.Target;
 
 /**
  * Indicates that a given bean property should be exposed as a PMI statistic. Only valid when used
- * on a JavaBean getter or setter.
+ * on a JavaBean getter or setter. The type of the statistic is defined by the stats template. The
+ * return type of the getter must be compatible with that type:
+ * <ul>
+ * <li><tt>CountStatistic</tt>, <tt>RangeStatistic</tt> and <tt>BoundedRangeStatistic</tt>: a
+ * primitive numeric type or a subclass of {@link Number}.
+ * <li><tt>AverageStatistic</tt> and <tt>TimeStatistic</tt>:
+ * {@link com.googlecode.xm4was.commons.jmx.StatisticAccumulator}.
+ * </ul>
  */
 @Target(value=ElementType.METHOD)
 @Retention(value=RetentionPolicy.RUNTIME)
 public @interface Statistic {
     int id();
+    
+    /**
+     * The lower bound of the statistic. Only used for <tt>BoundedRangeStatistic</tt>.
+     */
+    long lowerBound() default 0;
+    
+    /**
+     * The upper bound of the statistic. Only used for <tt>BoundedRangeStatistic</tt>.
+     */
+    long upperBound() default Long.MAX_VALUE;
 }
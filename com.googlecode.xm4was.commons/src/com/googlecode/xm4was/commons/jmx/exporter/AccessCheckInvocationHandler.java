@@ -3,6 +3,7 @@ package com.googlecode.xm4was.commons.jmx.exporter;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -13,6 +14,12 @@ import com.googlecode.xm4was.commons.resources.Messages;
 public class AccessCheckInvocationHandler implements InvocationHandler {
     private static final Logger LOGGER = Logger.getLogger(AccessCheckInvocationHandler.class.getName(), Messages.class.getName());
     
+    /**
+     * The access decisions made during the current bulk request (see {@link #beginBulkRequest()}),
+     * by role; <code>null</code> if no bulk request is in progress on the current thread.
+     */
+    private static final ThreadLocal<Map<String,Boolean>> bulkDecisions = new ThreadLocal<Map<String,Boolean>>();
+    
     private final Object target;
     private final Authorizer authorizer;
     private final Map<Method,String> roles;
@@ -23,12 +30,54 @@ public class AccessCheckInvocationHandler implements InvocationHandler {
         this.roles = roles;
     }
 
+    /**
+     * Start a bulk request (such as {@link javax.management.DynamicMBean#getAttributes(String[])})
+     * on the current thread. Until {@link #endBulkRequest(boolean)} is called, the authorizer is
+     * consulted only once per role.
+     * 
+     * @return <code>true</code> if a new bulk request has been started; <code>false</code> if a
+     *         bulk request was already in progress
+     */
+    static boolean beginBulkRequest() {
+        if (bulkDecisions.get() == null) {
+            bulkDecisions.set(new HashMap<String,Boolean>());
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * End a bulk request.
+     * 
+     * @param started
+     *            the value returned by {@link #beginBulkRequest()}
+     */
+    static void endBulkRequest(boolean started) {
+        if (started) {
+            bulkDecisions.remove();
+        }
+    }
+    
+    private boolean checkAccess(String role) {
+        Map<String,Boolean> decisions = bulkDecisions.get();
+        if (decisions == null) {
+            return authorizer.checkAccess(role);
+        }
+        Boolean granted = decisions.get(role);
+        if (granted == null) {
+            granted = authorizer.checkAccess(role);
+            decisions.put(role, granted);
+        }
+        return granted;
+    }
+
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         String role = roles.get(method);
         if (role == null) {
             throw new SecurityException("No role defined for method " + method.getName());
         } else {
-            if (authorizer.checkAccess(role)) {
+            if (checkAccess(role)) {
                 LOGGER.log(Level.FINEST, "Access granted by authorizer");
             } else {
                 LOGGER.log(Level.FINEST, "Access denied");
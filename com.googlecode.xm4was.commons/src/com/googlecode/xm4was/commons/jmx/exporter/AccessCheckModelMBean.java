@@ -0,0 +1,28 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import javax.management.AttributeList;
+import javax.management.MBeanException;
+import javax.management.modelmbean.ModelMBeanInfo;
+import javax.management.modelmbean.RequiredModelMBean;
+
+/**
+ * Model MBean that checks access only once per role when multiple attributes are read with a
+ * single {@link #getAttributes(String[])} call. {@link RequiredModelMBean} reads the attributes one
+ * by one from the managed resource; the access checks are performed by the
+ * {@link AccessCheckInvocationHandler} wrapping the resource.
+ */
+final class AccessCheckModelMBean extends RequiredModelMBean {
+    AccessCheckModelMBean(ModelMBeanInfo mbi) throws MBeanException {
+        super(mbi);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attrNames) {
+        boolean started = AccessCheckInvocationHandler.beginBulkRequest();
+        try {
+            return super.getAttributes(attrNames);
+        } finally {
+            AccessCheckInvocationHandler.endBulkRequest(started);
+        }
+    }
+}
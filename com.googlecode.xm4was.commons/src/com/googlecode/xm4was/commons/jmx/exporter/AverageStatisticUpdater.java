@@ -0,0 +1,28 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.ibm.wsspi.pmi.stat.SPIAverageStatistic;
+
+/**
+ * Updates an average statistic (or a time statistic) from a {@link StatisticAccumulator}.
+ */
+final class AverageStatisticUpdater extends StatisticUpdater {
+    private final Method method;
+    private final SPIAverageStatistic statistic;
+    
+    public AverageStatisticUpdater(Method method,
+            SPIAverageStatistic statistic) {
+        this.method = method;
+        this.statistic = statistic;
+    }
+
+    @Override
+    void updateStatistic(Object source) throws IllegalAccessException, InvocationTargetException {
+        StatisticAccumulator accumulator = (StatisticAccumulator)method.invoke(source);
+        statistic.set(accumulator.getCount(), accumulator.getMin(), accumulator.getMax(), accumulator.getTotal(),
+                accumulator.getSumOfSquares(), accumulator.getStartTime(), accumulator.getLastSampleTime());
+    }
+}
@@ -6,19 +6,17 @@ import java.lang.reflect.Method;
 import com.ibm.wsspi.pmi.stat.SPICountStatistic;
 
 final class CountStatisticUpdater extends StatisticUpdater {
-    private final Object target;
     private final Method method;
     private final SPICountStatistic statistic;
     
-    public CountStatisticUpdater(Object target, Method method,
+    public CountStatisticUpdater(Method method,
             SPICountStatistic statistic) {
-        this.target = target;
         this.method = method;
         this.statistic = statistic;
     }
 
     @Override
-    void updateStatistic() throws IllegalAccessException, InvocationTargetException {
-        statistic.setCount(((Number)method.invoke(target)).longValue());
+    void updateStatistic(Object source) throws IllegalAccessException, InvocationTargetException {
+        statistic.setCount(((Number)method.invoke(source)).longValue());
     }
 }
@@ -7,6 +7,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
@@ -14,11 +15,16 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.InstanceNotFoundException;
 import javax.management.JMException;
+import javax.management.ListenerNotFoundException;
 import javax.management.MBeanException;
 import javax.management.MBeanOperationInfo;
 import javax.management.MBeanParameterInfo;
 import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationBroadcaster;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
 import javax.management.modelmbean.DescriptorSupport;
 import javax.management.modelmbean.InvalidTargetObjectTypeException;
@@ -38,12 +44,15 @@ import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import com.googlecode.xm4was.commons.JmxConstants;
 import com.googlecode.xm4was.commons.jmx.Authorizer;
 import com.googlecode.xm4was.commons.jmx.ManagementService;
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
 import com.googlecode.xm4was.commons.jmx.annotations.Attribute;
 import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.NotificationInfo;
 import com.googlecode.xm4was.commons.jmx.annotations.Operation;
 import com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled;
 import com.googlecode.xm4was.commons.jmx.annotations.Parameter;
 import com.googlecode.xm4was.commons.jmx.annotations.Statistic;
+import com.googlecode.xm4was.commons.metrics.MetricRegistry;
 import com.googlecode.xm4was.commons.osgi.Lifecycle;
 import com.googlecode.xm4was.commons.osgi.annotations.Init;
 import com.googlecode.xm4was.commons.osgi.impl.BundleManager;
@@ -55,7 +64,9 @@ import com.ibm.wsspi.pmi.factory.StatsGroup;
 import com.ibm.wsspi.pmi.factory.StatsInstance;
 
 /**
- * Processes OSGi services annotated with {@link MBean} and/or {@link PMIEnabled}.
+ * Processes OSGi services annotated with {@link MBean} and/or {@link PMIEnabled}. The statistics of
+ * services annotated with {@link PMIEnabled} are also registered with the {@link MetricRegistry},
+ * even if PMI is disabled.
  */
 public class MBeanExporter implements ServiceTrackerCustomizer {
     static class StatsGroupHolder {
@@ -79,31 +90,127 @@ public class MBeanExporter implements ServiceTrackerCustomizer {
         }
     }
     
+    static class ModelMBeanMetadataHolder {
+        private final ModelMBeanMetadata metadata;
+        private int refCount;
+        
+        ModelMBeanMetadataHolder(ModelMBeanMetadata metadata) {
+            this.metadata = metadata;
+        }
+        
+        ModelMBeanMetadata getMetadata() {
+            return metadata;
+        }
+
+        void incrementRefCount() {
+            refCount++;
+        }
+        
+        int decrementRefCount() {
+            return --refCount;
+        }
+    }
+    
     private static final Logger LOGGER = Logger.getLogger(MBeanExporter.class.getName(), Messages.class.getName());
     
+    /**
+     * Determines if services are exported using {@link MethodHandleMBean} instead of
+     * {@link RequiredModelMBean}.
+     */
+    private static final boolean USE_METHOD_HANDLE_MBEANS = "true".equals(System.getProperty(
+            "com.googlecode.xm4was.commons.MBeanExporter.USE_METHOD_HANDLE_MBEANS"));
+    
+    private static final String SNAPSHOT_REFRESH_INTERVAL_PROPERTY = "com.googlecode.xm4was.commons.MBeanExporter.SNAPSHOT_REFRESH_INTERVAL";
+    
+    /**
+     * Overrides {@link PMIEnabled#snapshotRefreshInterval()} for all services if set; -1 if the
+     * property is not set or invalid.
+     */
+    private static final long SNAPSHOT_REFRESH_INTERVAL = parseSnapshotRefreshInterval(System.getProperty(SNAPSHOT_REFRESH_INTERVAL_PROPERTY));
+    
     private BundleContext bundleContext;
     private MBeanServer mbeanServer;
     private Authorizer authorizer;
     private BundleManager bundleManager;
+    private MetricRegistry metricRegistry;
     private final Map<String,StatsGroupHolder> statGroups = new HashMap<String,StatsGroupHolder>();
     
+    /**
+     * Metadata of the interfaces for which model MBeans are currently registered. Entries are
+     * removed when the last MBean using them is unregistered, so that the cache doesn't prevent
+     * bundles from being garbage collected.
+     */
+    private final Map<Class<?>,ModelMBeanMetadataHolder> modelMBeanMetadata = new HashMap<Class<?>,ModelMBeanMetadataHolder>();
+    
+    /**
+     * The time (in microseconds) spent processing the services tracked by the exporter.
+     */
+    private final StatisticAccumulator exportTime = new StatisticAccumulator();
+    
+    /**
+     * Parse the value of the {@link #SNAPSHOT_REFRESH_INTERVAL_PROPERTY} system property. This is
+     * done once, so that an invalid value doesn't prevent services from being exported.
+     * 
+     * @param value
+     *            the value of the property, or <code>null</code> if the property is not set
+     * @return the refresh interval, or -1 if the property is not set or invalid
+     */
+    static long parseSnapshotRefreshInterval(String value) {
+        if (value != null) {
+            try {
+                long interval = Long.parseLong(value);
+                if (interval >= 0) {
+                    return interval;
+                }
+            } catch (NumberFormatException ex) {
+                // Fall through
+            }
+            LOGGER.log(Level.WARNING, Messages._0035W, new Object[] { SNAPSHOT_REFRESH_INTERVAL_PROPERTY, value });
+        }
+        return -1;
+    }
+    
     @Init
-    public void init(Lifecycle lifecycle, BundleContext bundleContext, ManagementService managementService, BundleManager bundleManager) throws Exception {
+    public void init(Lifecycle lifecycle, BundleContext bundleContext, ManagementService managementService, BundleManager bundleManager, MetricRegistry metricRegistry) throws Exception {
         this.bundleContext = bundleContext;
         mbeanServer = managementService.getMBeanServer();
         authorizer = managementService.getAuthorizer();
         this.bundleManager = bundleManager;
+        this.metricRegistry = metricRegistry;
+        final Runnable unregisterExportTime = metricRegistry.registerSummary("xm4was_mbean_exporter_export_time_microseconds",
+                "The time spent processing services tracked by the MBean exporter", Collections.<String,String>emptyMap(),
+                new MetricRegistry.AccumulatorValue() {
+                    public StatisticAccumulator get() {
+                        return exportTime;
+                    }
+                });
+        // Only track services registered by XM4WAS components. Tracking all services would
+        // require loading and inspecting the classes of thousands of services during startup.
         final ServiceTracker mbeanTracker = new ServiceTracker(bundleContext,
-                bundleContext.createFilter("(objectClass=*)"), this);
+                bundleContext.createFilter("(" + JmxConstants.EXPORT_PROPERTY + "=true)"), this);
         mbeanTracker.open();
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Processed {0} services in {1} ms",
+                    new Object[] { exportTime.getCount(), exportTime.getTotal()/1000 });
+        }
         lifecycle.addStopAction(new Runnable() {
             public void run() {
                 mbeanTracker.close();
+                unregisterExportTime.run();
             }
         });
     }
     
     public Object addingService(ServiceReference reference) {
+        long start = System.nanoTime();
+        try {
+            return exportService(reference);
+        } finally {
+            exportTime.add((System.nanoTime() - start)/1000);
+        }
+    }
+    
+    private Registrations exportService(ServiceReference reference) {
         Bundle bundle = reference.getBundle();
         if (!bundleManager.isManaged(bundle)) {
             return null;
@@ -120,7 +227,7 @@ public class MBeanExporter implements ServiceTrackerCustomizer {
                 return null;
             }
             MBean atMBean = clazz.getAnnotation(MBean.class);
-            PMIEnabled atPMIEnabled = StatsFactory.isPMIEnabled() ? clazz.getAnnotation(PMIEnabled.class) : null;
+            PMIEnabled atPMIEnabled = clazz.getAnnotation(PMIEnabled.class);
             if (atMBean != null || atPMIEnabled != null) {
                 Object target = bundleContext.getService(reference);
                 registrations = new Registrations();
@@ -143,8 +250,13 @@ public class MBeanExporter implements ServiceTrackerCustomizer {
                         LOGGER.log(Level.SEVERE, Messages._0012E, ex);
                     }
                 }
+                StatisticsSource statisticsSource = null;
                 if (atPMIEnabled != null) {
-                    StatisticActions statisticActions = createStatisticsAction(clazz, target);
+                    long snapshotRefreshInterval = SNAPSHOT_REFRESH_INTERVAL == -1 ? atPMIEnabled.snapshotRefreshInterval() : SNAPSHOT_REFRESH_INTERVAL;
+                    statisticsSource = new StatisticsSource(target, snapshotRefreshInterval);
+                }
+                if (atPMIEnabled != null && StatsFactory.isPMIEnabled()) {
+                    StatisticActions statisticActions = createStatisticsAction(clazz, statisticsSource);
                     final String groupName = atPMIEnabled.groupName();
                     try {
                         if (groupName.length() > 0) {
@@ -198,17 +310,63 @@ public class MBeanExporter implements ServiceTrackerCustomizer {
                         LOGGER.log(Level.SEVERE, Messages._0015E, ex);
                     }
                 }
+                if (atPMIEnabled != null) {
+                    try {
+                        StatisticMetrics.register(metricRegistry, clazz, atPMIEnabled,
+                                atPMIEnabled.groupName().length() > 0 ? (String)reference.getProperty("name") : null,
+                                statisticsSource, registrations);
+                    } catch (Exception ex) {
+                        LOGGER.log(Level.SEVERE, Messages._0022E, new Object[] { clazz.getName(), ex });
+                    }
+                }
             }
         }
         return registrations;
     }
 
     private ObjectName registerMBean(Class<?> clazz, MBean atMBean, Hashtable<String,String> extraKeyProperties, Object target, Registrations registrations, boolean legacy) throws JMException, InvalidTargetObjectTypeException {
-        Map<Method,String> roles = new HashMap<Method,String>();
-        RequiredModelMBean mbean = assembleMBean(clazz, atMBean, target.getClass().getName(), roles);
-        Object proxy = Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] { clazz },
-                new AccessCheckInvocationHandler(target, authorizer, roles));
-        mbean.setManagedResource(proxy, "ObjectReference");
+        MethodHandleMBean methodHandleMBean = null;
+        if (USE_METHOD_HANDLE_MBEANS) {
+            try {
+                methodHandleMBean = MethodHandleMBean.create(clazz, atMBean, target.getClass().getName(), target, authorizer);
+                if (methodHandleMBean == null) {
+                    // The annotations are invalid; the error has already been logged
+                    return null;
+                }
+            } catch (IllegalAccessException ex) {
+                // Typically the MBean interface is not public; model MBeans don't have that restriction
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Unable to create a method handle MBean for " + clazz.getName() + "; falling back to a model MBean", ex);
+                }
+            }
+        }
+        Object mbean;
+        NotificationListener notificationSink;
+        if (methodHandleMBean != null) {
+            final MethodHandleMBean finalMethodHandleMBean = methodHandleMBean;
+            mbean = methodHandleMBean;
+            notificationSink = new NotificationListener() {
+                public void handleNotification(Notification notification, Object handback) {
+                    finalMethodHandleMBean.sendNotification(notification);
+                }
+            };
+        } else {
+            ModelMBeanMetadata metadata = getModelMBeanMetadata(clazz, atMBean, registrations);
+            if (metadata == null) {
+                return null;
+            }
+            final RequiredModelMBean modelMBean = createModelMBean(metadata, clazz, target.getClass().getName(), target, authorizer);
+            mbean = modelMBean;
+            notificationSink = new NotificationListener() {
+                public void handleNotification(Notification notification, Object handback) {
+                    try {
+                        modelMBean.sendNotification(notification);
+                    } catch (MBeanException ex) {
+                        LOGGER.log(Level.SEVERE, Messages._0012E, ex);
+                    }
+                }
+            };
+        }
         Hashtable<String,String> keyProperties = new Hashtable<String,String>();
         keyProperties.put("type", legacy ? "XM4WAS." + atMBean.type() : atMBean.type());
         keyProperties.putAll(extraKeyProperties);
@@ -223,12 +381,96 @@ public class MBeanExporter implements ServiceTrackerCustomizer {
                 }
             }
         });
+        if (atMBean.notifications().length > 0) {
+            if (target instanceof NotificationBroadcaster) {
+                forwardNotifications((NotificationBroadcaster)target, notificationSink, objectName, registrations);
+            } else {
+                LOGGER.log(Level.SEVERE, Messages._0017E, new Object[] { clazz.getName(), target.getClass().getName() });
+            }
+        }
         return objectName;
     }
     
-    private RequiredModelMBean assembleMBean(Class<?> clazz, MBean atMBean, String className, Map<Method,String> roles) throws MBeanException {
+    private static void forwardNotifications(final NotificationBroadcaster target, final NotificationListener sink, final ObjectName objectName, Registrations registrations) {
+        final NotificationListener listener = new NotificationListener() {
+            public void handleNotification(Notification notification, Object handback) {
+                // Create a copy because the same notification may be forwarded to multiple MBeans
+                // (if the MBean is also registered with its legacy name)
+                Notification forwarded = new Notification(notification.getType(), objectName,
+                        notification.getSequenceNumber(), notification.getTimeStamp(), notification.getMessage());
+                forwarded.setUserData(notification.getUserData());
+                sink.handleNotification(forwarded, null);
+            }
+        };
+        target.addNotificationListener(listener, null, null);
+        registrations.addStopAction(new Runnable() {
+            public void run() {
+                try {
+                    target.removeNotificationListener(listener);
+                } catch (ListenerNotFoundException ex) {
+                    // Ignore
+                }
+            }
+        });
+    }
+    
+    /**
+     * Get the metadata for a given interface, reusing the metadata of MBeans already registered
+     * with the same interface.
+     * 
+     * @return the metadata, or <code>null</code> if the annotations on the interface are invalid
+     */
+    private ModelMBeanMetadata getModelMBeanMetadata(final Class<?> clazz, MBean atMBean, Registrations registrations) {
+        synchronized (modelMBeanMetadata) {
+            ModelMBeanMetadataHolder holder = modelMBeanMetadata.get(clazz);
+            if (holder == null) {
+                ModelMBeanMetadata metadata = createModelMBeanMetadata(clazz, atMBean);
+                if (metadata == null) {
+                    return null;
+                }
+                holder = new ModelMBeanMetadataHolder(metadata);
+                modelMBeanMetadata.put(clazz, holder);
+            }
+            holder.incrementRefCount();
+            registrations.addStopAction(new Runnable() {
+                public void run() {
+                    synchronized (modelMBeanMetadata) {
+                        if (modelMBeanMetadata.get(clazz).decrementRefCount() == 0) {
+                            modelMBeanMetadata.remove(clazz);
+                        }
+                    }
+                }
+            });
+            return holder.getMetadata();
+        }
+    }
+    
+    /**
+     * Create the {@link RequiredModelMBean} for a given service. Access to the service is checked
+     * by an {@link AccessCheckInvocationHandler}.
+     */
+    static RequiredModelMBean createModelMBean(Class<?> clazz, MBean atMBean, Object target, Authorizer authorizer) throws MBeanException, InstanceNotFoundException, InvalidTargetObjectTypeException {
+        ModelMBeanMetadata metadata = createModelMBeanMetadata(clazz, atMBean);
+        return metadata == null ? null : createModelMBean(metadata, clazz, target.getClass().getName(), target, authorizer);
+    }
+    
+    private static RequiredModelMBean createModelMBean(ModelMBeanMetadata metadata, Class<?> clazz, String className, Object target, Authorizer authorizer) throws MBeanException, InstanceNotFoundException, InvalidTargetObjectTypeException {
+        RequiredModelMBean mbean = metadata.createModelMBean(className);
+        Object proxy = Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] { clazz },
+                new AccessCheckInvocationHandler(target, authorizer, metadata.getRoles()));
+        mbean.setManagedResource(proxy, "ObjectReference");
+        return mbean;
+    }
+    
+    private static ModelMBeanMetadata createModelMBeanMetadata(Class<?> clazz, MBean atMBean) {
+        Map<Method,String> roles = new HashMap<Method,String>();
         List<ModelMBeanOperationInfo> operations = new ArrayList<ModelMBeanOperationInfo>();
         List<ModelMBeanAttributeInfo> attributes = new ArrayList<ModelMBeanAttributeInfo>();
+        List<ModelMBeanNotificationInfo> notifications = new ArrayList<ModelMBeanNotificationInfo>();
+        for (NotificationInfo atNotification : atMBean.notifications()) {
+            notifications.add(new ModelMBeanNotificationInfo(atNotification.types(), Notification.class.getName(), atNotification.description()));
+        }
+        PropertyDescriptor[] pdArray = null;
         for (Method method : clazz.getMethods()) {
             Operation atOperation = method.getAnnotation(Operation.class);
             if (atOperation != null) {
@@ -256,7 +498,6 @@ public class MBeanExporter implements ServiceTrackerCustomizer {
                         atOperation.impact()));
                 roles.put(method, atOperation.role());
             }
-            PropertyDescriptor[] pdArray = null;
             Attribute atAttribute = method.getAnnotation(Attribute.class);
             if (atAttribute != null) {
                 if (pdArray == null) {
@@ -309,16 +550,15 @@ public class MBeanExporter implements ServiceTrackerCustomizer {
                         atAttribute.description(), readMethod != null, writeMethod != null, false, descriptor));
             }
         }
-        return new RequiredModelMBean(new ModelMBeanInfoSupport(className,
-                atMBean.description(),
+        return new ModelMBeanMetadata(atMBean.description(),
                 attributes.toArray(new ModelMBeanAttributeInfo[attributes.size()]),
-                new ModelMBeanConstructorInfo[0],
                 operations.toArray(new ModelMBeanOperationInfo[operations.size()]),
-                new ModelMBeanNotificationInfo[0]));
+                notifications.toArray(new ModelMBeanNotificationInfo[notifications.size()]),
+                Collections.unmodifiableMap(roles));
     }
     
-    private StatisticActions createStatisticsAction(Class<?> clazz, Object target) {
-        StatisticActionsImpl actions = new StatisticActionsImpl(target);
+    private StatisticActions createStatisticsAction(Class<?> clazz, StatisticsSource statisticsSource) {
+        StatisticActionsImpl actions = new StatisticActionsImpl(statisticsSource);
         for (Method method : clazz.getMethods()) {
             Statistic atStatistic = method.getAnnotation(Statistic.class);
             if (atStatistic != null) {
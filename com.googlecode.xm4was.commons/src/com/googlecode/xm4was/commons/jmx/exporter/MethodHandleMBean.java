@@ -0,0 +1,357 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ReflectionException;
+import javax.management.RuntimeErrorException;
+import javax.management.RuntimeMBeanException;
+
+import com.googlecode.xm4was.commons.jmx.Authorizer;
+import com.googlecode.xm4was.commons.jmx.annotations.Attribute;
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.NotificationInfo;
+import com.googlecode.xm4was.commons.jmx.annotations.Operation;
+import com.googlecode.xm4was.commons.jmx.annotations.Parameter;
+import com.googlecode.xm4was.commons.resources.Messages;
+
+/**
+ * {@link DynamicMBean} implementation that dispatches attribute accesses and operations to a
+ * service using precomputed {@link MethodHandle} tables. This is an alternative to the
+ * {@link javax.management.modelmbean.RequiredModelMBean} and {@link AccessCheckInvocationHandler}
+ * combination used by default by {@link MBeanExporter}: it avoids the descriptor lookups of the
+ * model MBean, the proxy dispatch and the reflective invocation. Attributes and operations are
+ * identified by their index in the tables; the roles required to access them are stored in arrays
+ * with the same indexes.
+ */
+final class MethodHandleMBean extends NotificationBroadcasterSupport implements DynamicMBean {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandleMBean.class.getName(), Messages.class.getName());
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class);
+    private static final MethodType OPERATION_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final MBeanInfo mbeanInfo;
+    private final Authorizer authorizer;
+    private final Map<String,Integer> attributeIndexes;
+    private final MethodHandle[] getters;
+    private final String[] readRoles;
+    private final MethodHandle[] setters;
+    private final String[] writeRoles;
+    /**
+     * Maps operation names to the indexes of the operations with that name.
+     */
+    private final Map<String,int[]> operationIndexes;
+    private final String[][] operationSignatures;
+    private final MethodHandle[] operations;
+    private final String[] operationRoles;
+
+    private MethodHandleMBean(MBeanInfo mbeanInfo, Authorizer authorizer, Map<String,Integer> attributeIndexes,
+            MethodHandle[] getters, String[] readRoles, MethodHandle[] setters, String[] writeRoles,
+            Map<String,int[]> operationIndexes, String[][] operationSignatures, MethodHandle[] operations,
+            String[] operationRoles) {
+        super(mbeanInfo.getNotifications());
+        this.mbeanInfo = mbeanInfo;
+        this.authorizer = authorizer;
+        this.attributeIndexes = attributeIndexes;
+        this.getters = getters;
+        this.readRoles = readRoles;
+        this.setters = setters;
+        this.writeRoles = writeRoles;
+        this.operationIndexes = operationIndexes;
+        this.operationSignatures = operationSignatures;
+        this.operations = operations;
+        this.operationRoles = operationRoles;
+    }
+
+    /**
+     * Create an MBean for a given service.
+     *
+     * @param clazz
+     *            the interface annotated with {@link MBean}
+     * @param atMBean
+     *            the annotation
+     * @param className
+     *            the class name reported in the {@link MBeanInfo}
+     * @param target
+     *            the service
+     * @param authorizer
+     *            the authorizer used to check access to attributes and operations
+     * @return the MBean, or <code>null</code> if the annotations on the interface are invalid
+     * @throws IllegalAccessException
+     *             if the methods of the interface are not accessible through a public lookup, e.g.
+     *             because the interface is not public
+     */
+    static MethodHandleMBean create(Class<?> clazz, MBean atMBean, String className, Object target, Authorizer authorizer) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        List<MBeanAttributeInfo> attributeInfos = new ArrayList<MBeanAttributeInfo>();
+        List<MBeanOperationInfo> operationInfos = new ArrayList<MBeanOperationInfo>();
+        Map<String,Integer> attributeIndexes = new HashMap<String,Integer>();
+        List<MethodHandle> getters = new ArrayList<MethodHandle>();
+        List<String> readRoles = new ArrayList<String>();
+        List<MethodHandle> setters = new ArrayList<MethodHandle>();
+        List<String> writeRoles = new ArrayList<String>();
+        Map<String,int[]> operationIndexes = new HashMap<String,int[]>();
+        List<String[]> operationSignatures = new ArrayList<String[]>();
+        List<MethodHandle> operations = new ArrayList<MethodHandle>();
+        List<String> operationRoles = new ArrayList<String>();
+        PropertyDescriptor[] pdArray = null;
+        try {
+            for (Method method : clazz.getMethods()) {
+                Operation atOperation = method.getAnnotation(Operation.class);
+                if (atOperation != null) {
+                    Class<?>[] parameterTypes = method.getParameterTypes();
+                    Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+                    MBeanParameterInfo[] parameters = new MBeanParameterInfo[parameterTypes.length];
+                    String[] signature = new String[parameterTypes.length];
+                    for (int i=0; i<parameterTypes.length; i++) {
+                        Parameter parameterAnnotation = null;
+                        for (Annotation a : parameterAnnotations[i]) {
+                            if (a instanceof Parameter) {
+                                parameterAnnotation = (Parameter)a;
+                                break;
+                            }
+                        }
+                        if (parameterAnnotation == null) {
+                            LOGGER.log(Level.SEVERE, Messages._0011E, method.toString());
+                            return null;
+                        }
+                        signature[i] = parameterTypes[i].getName();
+                        parameters[i] = new MBeanParameterInfo(parameterAnnotation.name(), signature[i], parameterAnnotation.description());
+                    }
+                    operationInfos.add(new MBeanOperationInfo(method.getName(),
+                            atOperation.description(),
+                            parameters,
+                            method.getReturnType().getName(),
+                            atOperation.impact()));
+                    int[] indexes = operationIndexes.get(method.getName());
+                    int[] newIndexes;
+                    if (indexes == null) {
+                        newIndexes = new int[1];
+                    } else {
+                        newIndexes = new int[indexes.length+1];
+                        System.arraycopy(indexes, 0, newIndexes, 0, indexes.length);
+                    }
+                    newIndexes[newIndexes.length-1] = operations.size();
+                    operationIndexes.put(method.getName(), newIndexes);
+                    operationSignatures.add(signature);
+                    operations.add(lookup.unreflect(method).bindTo(target).asSpreader(Object[].class, parameterTypes.length).asType(OPERATION_TYPE));
+                    operationRoles.add(atOperation.role());
+                }
+                Attribute atAttribute = method.getAnnotation(Attribute.class);
+                if (atAttribute != null) {
+                    if (pdArray == null) {
+                        pdArray = Introspector.getBeanInfo(clazz).getPropertyDescriptors();
+                    }
+                    PropertyDescriptor pd = null;
+                    for (PropertyDescriptor candidate : pdArray) {
+                        if (method.equals(candidate.getReadMethod()) || method.equals(candidate.getWriteMethod())) {
+                            pd = candidate;
+                            break;
+                        }
+                    }
+                    if (pd == null) {
+                        LOGGER.log(Level.SEVERE, Messages._0013E, method.toString());
+                        return null;
+                    }
+                    Method readMethod = pd.getReadMethod();
+                    Method writeMethod = pd.getWriteMethod();
+                    String name = atAttribute.name();
+                    if (name.length() == 0) {
+                        name = pd.getName();
+                    }
+                    attributeIndexes.put(name, getters.size());
+                    getters.add(readMethod == null ? null : lookup.unreflect(readMethod).bindTo(target).asType(GETTER_TYPE));
+                    readRoles.add(atAttribute.readRole());
+                    setters.add(writeMethod == null ? null : lookup.unreflect(writeMethod).bindTo(target).asType(SETTER_TYPE));
+                    writeRoles.add(atAttribute.writeRole());
+                    attributeInfos.add(new MBeanAttributeInfo(name, pd.getPropertyType().getName(),
+                            atAttribute.description(), readMethod != null, writeMethod != null, false));
+                }
+            }
+        } catch (IntrospectionException ex) {
+            LOGGER.log(Level.SEVERE, Messages._0012E, ex);
+            return null;
+        }
+        List<MBeanNotificationInfo> notificationInfos = new ArrayList<MBeanNotificationInfo>();
+        for (NotificationInfo atNotification : atMBean.notifications()) {
+            notificationInfos.add(new MBeanNotificationInfo(atNotification.types(), Notification.class.getName(), atNotification.description()));
+        }
+        MBeanInfo mbeanInfo = new MBeanInfo(className, atMBean.description(),
+                attributeInfos.toArray(new MBeanAttributeInfo[attributeInfos.size()]),
+                new MBeanConstructorInfo[0],
+                operationInfos.toArray(new MBeanOperationInfo[operationInfos.size()]),
+                notificationInfos.toArray(new MBeanNotificationInfo[notificationInfos.size()]));
+        return new MethodHandleMBean(mbeanInfo, authorizer, attributeIndexes,
+                getters.toArray(new MethodHandle[getters.size()]), readRoles.toArray(new String[readRoles.size()]),
+                setters.toArray(new MethodHandle[setters.size()]), writeRoles.toArray(new String[writeRoles.size()]),
+                operationIndexes, operationSignatures.toArray(new String[operationSignatures.size()][]),
+                operations.toArray(new MethodHandle[operations.size()]), operationRoles.toArray(new String[operationRoles.size()]));
+    }
+
+    private void checkAccess(String role, String name) {
+        if (authorizer.checkAccess(role)) {
+            LOGGER.log(Level.FINEST, "Access granted by authorizer");
+        } else {
+            LOGGER.log(Level.FINEST, "Access denied");
+            throw new SecurityException("Access to " + name + " requires role " + role);
+        }
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        return mbeanInfo;
+    }
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        Integer index = attributeIndexes.get(attribute);
+        MethodHandle getter = index == null ? null : getters[index];
+        if (getter == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        checkAccess(readRoles[index], "attribute " + attribute);
+        return getAttribute(getter);
+    }
+
+    private static Object getAttribute(MethodHandle getter) throws MBeanException {
+        try {
+            return (Object)getter.invokeExact();
+        } catch (RuntimeException ex) {
+            throw new RuntimeMBeanException(ex);
+        } catch (Exception ex) {
+            throw new MBeanException(ex);
+        } catch (Error ex) {
+            throw new RuntimeErrorException(ex);
+        } catch (Throwable ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Get the values of several attributes. The access check is performed once per distinct role
+     * instead of once per attribute.
+     */
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList result = new AttributeList();
+        Map<String,Boolean> decisions = new HashMap<String,Boolean>();
+        for (String attribute : attributes) {
+            Integer index = attributeIndexes.get(attribute);
+            MethodHandle getter = index == null ? null : getters[index];
+            if (getter == null) {
+                continue;
+            }
+            String role = readRoles[index];
+            Boolean granted = decisions.get(role);
+            if (granted == null) {
+                granted = authorizer.checkAccess(role);
+                decisions.put(role, granted);
+            }
+            if (!granted) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Access to attribute {0} denied", attribute);
+                }
+                continue;
+            }
+            try {
+                result.add(new javax.management.Attribute(attribute, getAttribute(getter)));
+            } catch (Exception ex) {
+                // As required by the DynamicMBean contract, attributes that can't be read are
+                // omitted from the result
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Unable to get attribute " + attribute, ex);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void setAttribute(javax.management.Attribute attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        String name = attribute.getName();
+        Integer index = attributeIndexes.get(name);
+        MethodHandle setter = index == null ? null : setters[index];
+        if (setter == null) {
+            throw new AttributeNotFoundException(name);
+        }
+        checkAccess(writeRoles[index], "attribute " + name);
+        try {
+            setter.invokeExact(attribute.getValue());
+        } catch (RuntimeException ex) {
+            throw new RuntimeMBeanException(ex);
+        } catch (Exception ex) {
+            throw new MBeanException(ex);
+        } catch (Error ex) {
+            throw new RuntimeErrorException(ex);
+        } catch (Throwable ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        AttributeList result = new AttributeList();
+        for (javax.management.Attribute attribute : attributes.asList()) {
+            try {
+                setAttribute(attribute);
+                result.add(attribute);
+            } catch (Exception ex) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Unable to set attribute " + attribute.getName(), ex);
+                }
+            }
+        }
+        return result;
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+        int[] indexes = operationIndexes.get(actionName);
+        int paramCount = params == null ? 0 : params.length;
+        int index = -1;
+        if (indexes != null) {
+            for (int candidate : indexes) {
+                String[] candidateSignature = operationSignatures[candidate];
+                if (signature == null ? candidateSignature.length == paramCount : Arrays.equals(candidateSignature, signature)) {
+                    index = candidate;
+                    break;
+                }
+            }
+        }
+        if (index == -1) {
+            throw new ReflectionException(new NoSuchMethodException(actionName), "No such operation: " + actionName);
+        }
+        checkAccess(operationRoles[index], "operation " + actionName);
+        try {
+            return (Object)operations[index].invokeExact(params == null ? new Object[0] : params);
+        } catch (RuntimeException ex) {
+            throw new RuntimeMBeanException(ex);
+        } catch (Exception ex) {
+            throw new MBeanException(ex);
+        } catch (Error ex) {
+            throw new RuntimeErrorException(ex);
+        } catch (Throwable ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import javax.management.MBeanException;
+import javax.management.modelmbean.ModelMBeanAttributeInfo;
+import javax.management.modelmbean.ModelMBeanConstructorInfo;
+import javax.management.modelmbean.ModelMBeanInfoSupport;
+import javax.management.modelmbean.ModelMBeanNotificationInfo;
+import javax.management.modelmbean.ModelMBeanOperationInfo;
+import javax.management.modelmbean.RequiredModelMBean;
+
+/**
+ * The information extracted from an interface annotated with
+ * {@link com.googlecode.xm4was.commons.jmx.annotations.MBean} that is needed to create a
+ * {@link RequiredModelMBean}. The information only depends on the interface, so that it can be
+ * shared by all services exported with the same interface. Instances are immutable.
+ */
+final class ModelMBeanMetadata {
+    private final String description;
+    private final ModelMBeanAttributeInfo[] attributes;
+    private final ModelMBeanOperationInfo[] operations;
+    private final ModelMBeanNotificationInfo[] notifications;
+    private final Map<Method,String> roles;
+    
+    ModelMBeanMetadata(String description, ModelMBeanAttributeInfo[] attributes, ModelMBeanOperationInfo[] operations,
+            ModelMBeanNotificationInfo[] notifications, Map<Method,String> roles) {
+        this.description = description;
+        this.attributes = attributes;
+        this.operations = operations;
+        this.notifications = notifications;
+        this.roles = roles;
+    }
+    
+    /**
+     * Get the roles required to invoke the methods of the interface.
+     * 
+     * @return the roles; must not be modified
+     */
+    Map<Method,String> getRoles() {
+        return roles;
+    }
+    
+    /**
+     * Create a new model MBean.
+     * 
+     * @param className
+     *            the class name reported in the MBean info
+     * @return the model MBean, without managed resource
+     */
+    RequiredModelMBean createModelMBean(String className) throws MBeanException {
+        // The model MBean may update the descriptors of its attributes and operations (e.g. to
+        // cache values). Therefore each MBean gets its own copies.
+        ModelMBeanAttributeInfo[] attributes = new ModelMBeanAttributeInfo[this.attributes.length];
+        for (int i=0; i<attributes.length; i++) {
+            attributes[i] = (ModelMBeanAttributeInfo)this.attributes[i].clone();
+        }
+        ModelMBeanOperationInfo[] operations = new ModelMBeanOperationInfo[this.operations.length];
+        for (int i=0; i<operations.length; i++) {
+            operations[i] = (ModelMBeanOperationInfo)this.operations[i].clone();
+        }
+        ModelMBeanNotificationInfo[] notifications = new ModelMBeanNotificationInfo[this.notifications.length];
+        for (int i=0; i<notifications.length; i++) {
+            notifications[i] = (ModelMBeanNotificationInfo)this.notifications[i].clone();
+        }
+        return new AccessCheckModelMBean(new ModelMBeanInfoSupport(className, description, attributes,
+                new ModelMBeanConstructorInfo[0], operations, notifications));
+    }
+}
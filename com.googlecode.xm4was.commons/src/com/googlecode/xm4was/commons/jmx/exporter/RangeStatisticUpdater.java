@@ -6,19 +6,17 @@ import java.lang.reflect.Method;
 import com.ibm.wsspi.pmi.stat.SPIRangeStatistic;
 
 final class RangeStatisticUpdater extends StatisticUpdater {
-    private final Object target;
     private final Method method;
     private final SPIRangeStatistic statistic;
     
-    public RangeStatisticUpdater(Object target, Method method,
+    public RangeStatisticUpdater(Method method,
             SPIRangeStatistic statistic) {
-        this.target = target;
         this.method = method;
         this.statistic = statistic;
     }
 
     @Override
-    void updateStatistic() throws IllegalAccessException, InvocationTargetException {
-        statistic.set(((Number)method.invoke(target)).longValue());
+    void updateStatistic(Object source) throws IllegalAccessException, InvocationTargetException {
+        statistic.set(((Number)method.invoke(source)).longValue());
     }
 }
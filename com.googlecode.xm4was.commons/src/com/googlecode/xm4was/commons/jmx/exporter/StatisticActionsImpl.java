@@ -6,8 +6,12 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.jmx.annotations.Statistic;
 import com.googlecode.xm4was.commons.resources.Messages;
 import com.ibm.wsspi.pmi.factory.StatisticActions;
+import com.ibm.wsspi.pmi.stat.SPIAverageStatistic;
+import com.ibm.wsspi.pmi.stat.SPIBoundedRangeStatistic;
 import com.ibm.wsspi.pmi.stat.SPICountStatistic;
 import com.ibm.wsspi.pmi.stat.SPIRangeStatistic;
 import com.ibm.wsspi.pmi.stat.SPIStatistic;
@@ -15,12 +19,18 @@ import com.ibm.wsspi.pmi.stat.SPIStatistic;
 final class StatisticActionsImpl extends StatisticActions {
     private static final Logger LOGGER = Logger.getLogger(StatisticActionsImpl.class.getName(), Messages.class.getName());
     
-    private final Object target;
+    private final StatisticsSource source;
     private final Map<Integer,Method> methods = new HashMap<Integer,Method>();
     private final Map<Integer,StatisticUpdater> statisticUpdaters = new HashMap<Integer,StatisticUpdater>();
 
-    public StatisticActionsImpl(Object target) {
-        this.target = target;
+    /**
+     * Constructor.
+     * 
+     * @param source
+     *            the source of the statistics
+     */
+    public StatisticActionsImpl(StatisticsSource source) {
+        this.source = source;
     }
 
     void addMethod(int id, Method method) {
@@ -33,11 +43,30 @@ final class StatisticActionsImpl extends StatisticActions {
             LOGGER.log(Level.FINEST, "Statistic created: {0}", statistic);
         }
         int id = statistic.getId();
+        Method method = methods.get(id);
+        if (method == null) {
+            // No updater is registered; updateStatisticOnRequest will silently ignore the statistic
+            LOGGER.log(Level.SEVERE, Messages._0034E, String.valueOf(id));
+            return;
+        }
         StatisticUpdater updater;
         if (statistic instanceof SPICountStatistic) {
-            updater = new CountStatisticUpdater(target, methods.get(id), (SPICountStatistic)statistic);
+            updater = new CountStatisticUpdater(method, (SPICountStatistic)statistic);
+        } else if (statistic instanceof SPIAverageStatistic) {
+            // This includes SPITimeStatistic
+            if (!StatisticAccumulator.class.isAssignableFrom(method.getReturnType())) {
+                LOGGER.log(Level.SEVERE, Messages._0018E, new Object[] { String.valueOf(id), method.toString() });
+                return;
+            }
+            updater = new AverageStatisticUpdater(method, (SPIAverageStatistic)statistic);
+        } else if (statistic instanceof SPIBoundedRangeStatistic) {
+            Statistic atStatistic = method.getAnnotation(Statistic.class);
+            SPIBoundedRangeStatistic boundedRangeStatistic = (SPIBoundedRangeStatistic)statistic;
+            boundedRangeStatistic.setLowerBound(atStatistic.lowerBound());
+            boundedRangeStatistic.setUpperBound(atStatistic.upperBound());
+            updater = new RangeStatisticUpdater(method, boundedRangeStatistic);
         } else if (statistic instanceof SPIRangeStatistic) {
-            updater = new RangeStatisticUpdater(target, methods.get(id), (SPIRangeStatistic)statistic);
+            updater = new RangeStatisticUpdater(method, (SPIRangeStatistic)statistic);
         } else {
             LOGGER.log(Level.SEVERE, Messages._0016E, statistic.getClass().getName());
             return;
@@ -50,8 +79,13 @@ final class StatisticActionsImpl extends StatisticActions {
 
     @Override
     public void updateStatisticOnRequest(int id) {
+        StatisticUpdater updater = statisticUpdaters.get(id);
+        if (updater == null) {
+            // The problem has already been logged by statisticCreated
+            return;
+        }
         try {
-            statisticUpdaters.get(id).updateStatistic();
+            updater.updateStatistic(source.get());
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, Messages._0014E, id);
         }
@@ -0,0 +1,146 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled;
+import com.googlecode.xm4was.commons.jmx.annotations.Statistic;
+import com.googlecode.xm4was.commons.metrics.MetricRegistry;
+
+/**
+ * Registers the statistics of a {@link PMIEnabled} service with the {@link MetricRegistry}. The
+ * names and types of the metrics are derived from the stats template. The getters are converted to
+ * method handles at registration time so that scrapes don't use reflection.
+ */
+final class StatisticMetrics {
+    private static final String PREFIX = "xm4was_";
+    
+    private static final MethodHandle NUMBER_LONG_VALUE;
+    
+    static {
+        try {
+            NUMBER_LONG_VALUE = MethodHandles.publicLookup().findVirtual(Number.class, "longValue", MethodType.methodType(long.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+    
+    private StatisticMetrics() {}
+    
+    /**
+     * Register the statistics of a service.
+     * 
+     * @param registry
+     *            the metric registry
+     * @param clazz
+     *            the interface annotated with {@link PMIEnabled}
+     * @param atPMIEnabled
+     *            the annotation
+     * @param instanceName
+     *            the value of the <tt>instance</tt> label, or <code>null</code> if the metrics
+     *            don't have labels
+     * @param source
+     *            the source of the statistics
+     * @param registrations
+     *            receives the actions that unregister the metrics
+     */
+    static void register(MetricRegistry registry, Class<?> clazz, PMIEnabled atPMIEnabled, String instanceName,
+            StatisticsSource source, Registrations registrations) throws Exception {
+        StatsTemplate template = StatsTemplate.load(clazz, atPMIEnabled.statsTemplate());
+        String statsType = template.getType();
+        String prefix = PREFIX + toSnakeCase(statsType.substring(statsType.lastIndexOf('.')+1)) + "_";
+        Map<String,String> labels = instanceName == null ? Collections.<String,String>emptyMap() : Collections.singletonMap("instance", instanceName);
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (Method method : clazz.getMethods()) {
+            Statistic atStatistic = method.getAnnotation(Statistic.class);
+            if (atStatistic == null) {
+                continue;
+            }
+            StatsTemplate.StatisticDefinition definition = template.getStatistic(atStatistic.id());
+            if (definition == null) {
+                continue;
+            }
+            String name = prefix + toSnakeCase(definition.getName());
+            String type = definition.getType();
+            MethodHandle getter = lookup.unreflect(method);
+            Runnable unregisterAction;
+            if (type.equals("CountStatistic")) {
+                unregisterAction = registry.registerCounter(name, definition.getDescription(), labels, createLongValue(getter, source));
+            } else if (type.equals("RangeStatistic") || type.equals("BoundedRangeStatistic")) {
+                unregisterAction = registry.registerGauge(name, definition.getDescription(), labels, createLongValue(getter, source));
+            } else if (type.equals("AverageStatistic") || type.equals("TimeStatistic")) {
+                unregisterAction = registry.registerSummary(name, definition.getDescription(), labels, createAccumulatorValue(getter, source));
+            } else {
+                continue;
+            }
+            registrations.addStopAction(unregisterAction);
+        }
+    }
+    
+    private static MetricRegistry.LongValue createLongValue(MethodHandle getter, final StatisticsSource source) {
+        final MethodHandle handle;
+        if (getter.type().returnType().isPrimitive()) {
+            handle = getter.asType(MethodType.methodType(long.class, Object.class));
+        } else {
+            handle = MethodHandles.filterReturnValue(getter.asType(MethodType.methodType(Number.class, Object.class)), NUMBER_LONG_VALUE);
+        }
+        return new MetricRegistry.LongValue() {
+            public long get() throws Exception {
+                try {
+                    return (long)handle.invokeExact(source.get());
+                } catch (Exception ex) {
+                    throw ex;
+                } catch (Error ex) {
+                    throw ex;
+                } catch (Throwable ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+    }
+    
+    private static MetricRegistry.AccumulatorValue createAccumulatorValue(MethodHandle getter, final StatisticsSource source) {
+        final MethodHandle handle = getter.asType(MethodType.methodType(StatisticAccumulator.class, Object.class));
+        return new MetricRegistry.AccumulatorValue() {
+            public StatisticAccumulator get() throws Exception {
+                try {
+                    return (StatisticAccumulator)handle.invokeExact(source.get());
+                } catch (Exception ex) {
+                    throw ex;
+                } catch (Error ex) {
+                    throw ex;
+                } catch (Throwable ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Convert a camel case name to the snake case convention used by OpenMetrics, e.g.
+     * <tt>BlockedThreadCount</tt> to <tt>blocked_thread_count</tt>.
+     */
+    static String toSnakeCase(String name) {
+        StringBuilder buffer = new StringBuilder();
+        for (int i=0; i<name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0 && (!Character.isUpperCase(name.charAt(i-1))
+                        || i+1 < name.length() && Character.isLowerCase(name.charAt(i+1)))) {
+                    buffer.append('_');
+                }
+                buffer.append(Character.toLowerCase(c));
+            } else if (Character.isLetterOrDigit(c) && c < 128) {
+                buffer.append(c);
+            } else {
+                buffer.append('_');
+            }
+        }
+        return buffer.toString();
+    }
+}
@@ -3,5 +3,12 @@ package com.googlecode.xm4was.commons.jmx.exporter;
 import java.lang.reflect.InvocationTargetException;
 
 abstract class StatisticUpdater {
-    abstract void updateStatistic() throws IllegalAccessException, InvocationTargetException;
+    /**
+     * Update the statistic.
+     * 
+     * @param source
+     *            the object from which the value is read; this is either the service or a
+     *            snapshot created by the service
+     */
+    abstract void updateStatistic(Object source) throws IllegalAccessException, InvocationTargetException;
 }
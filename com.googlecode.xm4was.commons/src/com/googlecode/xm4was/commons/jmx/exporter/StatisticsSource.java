@@ -0,0 +1,71 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.commons.jmx.StatisticsSnapshotProvider;
+import com.googlecode.xm4was.commons.resources.Messages;
+
+/**
+ * Determines the object from which the statistics of a service are read. This is shared by PMI and
+ * the metric registry so that both see the same snapshots.
+ */
+final class StatisticsSource {
+    private static final Logger LOGGER = Logger.getLogger(StatisticsSource.class.getName(), Messages.class.getName());
+    
+    private static final class Snapshot {
+        final Object value;
+        final long timestamp;
+        
+        Snapshot(Object value, long timestamp) {
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+    }
+    
+    private final Object target;
+    private final long snapshotRefreshInterval;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Constructor.
+     * 
+     * @param target
+     *            the service
+     * @param snapshotRefreshInterval
+     *            the minimum interval (in milliseconds) between two snapshots; only used if the
+     *            service implements {@link StatisticsSnapshotProvider}
+     */
+    StatisticsSource(Object target, long snapshotRefreshInterval) {
+        this.target = target;
+        this.snapshotRefreshInterval = snapshotRefreshInterval;
+    }
+
+    /**
+     * Get the object from which the statistics are read. If the service implements
+     * {@link StatisticsSnapshotProvider}, this is the current snapshot. Otherwise it is the service
+     * itself.
+     */
+    Object get() throws Exception {
+        if (!(target instanceof StatisticsSnapshotProvider<?>)) {
+            return target;
+        }
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null || System.currentTimeMillis() - snapshot.timestamp >= snapshotRefreshInterval) {
+            // Statistics are usually updated in a row by the same thread; synchronization ensures
+            // that concurrent requests don't create redundant snapshots
+            synchronized (this) {
+                snapshot = this.snapshot;
+                long now = System.currentTimeMillis();
+                if (snapshot == null || now - snapshot.timestamp >= snapshotRefreshInterval) {
+                    snapshot = new Snapshot(((StatisticsSnapshotProvider<?>)target).createStatisticsSnapshot(), now);
+                    this.snapshot = snapshot;
+                    if (LOGGER.isLoggable(Level.FINEST)) {
+                        LOGGER.log(Level.FINEST, "Created statistics snapshot for {0}", target);
+                    }
+                }
+            }
+        }
+        return snapshot.value;
+    }
+}
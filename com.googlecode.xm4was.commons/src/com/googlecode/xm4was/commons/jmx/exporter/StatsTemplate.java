@@ -0,0 +1,120 @@
+package com.googlecode.xm4was.commons.jmx.exporter;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * The parts of a PMI stats template that are relevant for the metric registry.
+ */
+final class StatsTemplate {
+    static final class StatisticDefinition {
+        private final String type;
+        private final String name;
+        private final String description;
+        
+        StatisticDefinition(String type, String name, String description) {
+            this.type = type;
+            this.name = name;
+            this.description = description;
+        }
+
+        /**
+         * Get the type of the statistic.
+         * 
+         * @return the name of the element defining the statistic, e.g. <tt>CountStatistic</tt>
+         */
+        String getType() {
+            return type;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getDescription() {
+            return description;
+        }
+    }
+    
+    private final String type;
+    private final Map<Integer,StatisticDefinition> statistics;
+    
+    private StatsTemplate(String type, Map<Integer,StatisticDefinition> statistics) {
+        this.type = type;
+        this.statistics = statistics;
+    }
+    
+    /**
+     * Load a stats template.
+     * 
+     * @param clazz
+     *            the class used to load the template
+     * @param resource
+     *            the absolute resource name of the template, as specified by
+     *            {@link com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled#statsTemplate()}
+     * @return the template
+     */
+    static StatsTemplate load(Class<?> clazz, String resource) throws IOException, ParserConfigurationException, SAXException {
+        InputStream in = clazz.getResourceAsStream(resource);
+        if (in == null) {
+            throw new FileNotFoundException(resource);
+        }
+        Element root;
+        try {
+            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            // The DTD referenced by the templates is only available inside WebSphere's PMI bundle
+            builder.setEntityResolver(new EntityResolver() {
+                public InputSource resolveEntity(String publicId, String systemId) {
+                    return new InputSource(new StringReader(""));
+                }
+            });
+            root = builder.parse(in).getDocumentElement();
+        } finally {
+            in.close();
+        }
+        Map<Integer,StatisticDefinition> statistics = new HashMap<Integer,StatisticDefinition>();
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && ((Element)child).hasAttribute("ID")) {
+                Element element = (Element)child;
+                statistics.put(Integer.valueOf(element.getAttribute("ID")), new StatisticDefinition(
+                        element.getTagName(), element.getAttribute("name"), getChildText(element, "description")));
+            }
+        }
+        return new StatsTemplate(root.getAttribute("type"), statistics);
+    }
+    
+    private static String getChildText(Element element, String name) {
+        NodeList children = element.getElementsByTagName(name);
+        // Normalize white space since descriptions may span multiple lines
+        return children.getLength() == 0 ? "" : children.item(0).getTextContent().trim().replaceAll("\\s+", " ");
+    }
+    
+    /**
+     * Get the type of the stats.
+     * 
+     * @return the value of the <tt>type</tt> attribute, e.g.
+     *         <tt>com.googlecode.xm4was.threadmon.pmi.ContentionStats</tt>
+     */
+    String getType() {
+        return type;
+    }
+    
+    StatisticDefinition getStatistic(int id) {
+        return statistics.get(id);
+    }
+}
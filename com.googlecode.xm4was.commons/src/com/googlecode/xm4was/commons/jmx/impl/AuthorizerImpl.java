@@ -1,5 +1,7 @@
 package com.googlecode.xm4was.commons.jmx.impl;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -7,28 +9,112 @@ import com.googlecode.xm4was.commons.jmx.Authorizer;
 import com.googlecode.xm4was.commons.resources.Messages;
 import com.ibm.websphere.management.authorizer.AdminAuthorizer;
 import com.ibm.websphere.management.authorizer.AdminAuthorizerFactory;
+import com.ibm.websphere.security.auth.WSSubject;
 
+/**
+ * {@link Authorizer} implementation that delegates to WebSphere's {@link AdminAuthorizer}. Access
+ * decisions are cached per caller principal and role for {@link #CACHE_TTL} milliseconds, so that
+ * monitoring agents polling many MBeans don't cause an authorization check for each request. The
+ * cache is flushed if WebSphere replaces the {@link AdminAuthorizer} instance (which happens
+ * when the security configuration is reloaded). Other changes (e.g. a role removed from a user)
+ * are not detected; they take effect after at most {@link #CACHE_TTL} milliseconds. The class
+ * doesn't use locks.
+ */
 public class AuthorizerImpl implements Authorizer {
     private static final Logger LOGGER = Logger.getLogger(AuthorizerImpl.class.getName(), Messages.class.getName());
     
+    /**
+     * The time (in milliseconds) during which an access decision is cached. This is also the
+     * maximum time during which a revoked role remains effective. A value of 0 disables caching.
+     */
+    private static final long CACHE_TTL = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.commons.AuthorizerImpl.CACHE_TTL", "1000"));
+    
+    /**
+     * The maximum number of cached decisions. When the limit is reached, the cache is flushed.
+     */
+    private static final int MAX_CACHE_SIZE = 1000;
+    
+    private static final class Decision {
+        final AdminAuthorizer adminAuthorizer;
+        final boolean granted;
+        final long expires;
+        
+        Decision(AdminAuthorizer adminAuthorizer, boolean granted, long expires) {
+            this.adminAuthorizer = adminAuthorizer;
+            this.granted = granted;
+            this.expires = expires;
+        }
+    }
+    
     private final String resource;
-    private AdminAuthorizer adminAuthorizer;
+    private final long cacheTtl;
+    private volatile AdminAuthorizer adminAuthorizer;
+    
+    /**
+     * Cached access decisions. The key is the caller principal and the role, separated by a
+     * newline character.
+     */
+    private final ConcurrentMap<String,Decision> cache = new ConcurrentHashMap<String,Decision>();
 
     public AuthorizerImpl(String resource) {
+        this(resource, CACHE_TTL);
+    }
+
+    AuthorizerImpl(String resource, long cacheTtl) {
         this.resource = resource;
+        this.cacheTtl = cacheTtl;
     }
 
-    public synchronized boolean checkAccess(String role) {
-        if (adminAuthorizer == null) {
-            adminAuthorizer = AdminAuthorizerFactory.getAdminAuthorizer();
+    /**
+     * Get the current {@link AdminAuthorizer} from WebSphere. Overridden in unit tests.
+     */
+    AdminAuthorizer getCurrentAdminAuthorizer() {
+        return AdminAuthorizerFactory.getAdminAuthorizer();
+    }
+
+    /**
+     * Get the caller principal from WebSphere. Overridden in unit tests.
+     */
+    String getCallerPrincipal() {
+        return WSSubject.getCallerPrincipal();
+    }
+
+    private AdminAuthorizer getAdminAuthorizer() {
+        AdminAuthorizer current = getCurrentAdminAuthorizer();
+        if (current != adminAuthorizer) {
+            // Concurrent threads may execute this block more than once; this is harmless
             if (LOGGER.isLoggable(Level.FINEST)) {
-                LOGGER.log(Level.FINEST, "adminAuthorizer = {0}", adminAuthorizer);
+                LOGGER.log(Level.FINEST, "adminAuthorizer = {0}", current);
             }
-            if (adminAuthorizer == null) {
-                LOGGER.log(Level.FINEST, "Security service not initialized; access denied");
-                throw new SecurityException("Security service not initialized; access denied");
+            adminAuthorizer = current;
+            cache.clear();
+        }
+        if (current == null) {
+            LOGGER.log(Level.FINEST, "Security service not initialized; access denied");
+            throw new SecurityException("Security service not initialized; access denied");
+        }
+        return current;
+    }
+
+    public boolean checkAccess(String role) {
+        AdminAuthorizer adminAuthorizer = getAdminAuthorizer();
+        String principal = cacheTtl > 0 ? getCallerPrincipal() : null;
+        if (principal == null) {
+            return adminAuthorizer.checkAccess(resource, role);
+        }
+        String key = principal + "\n" + role;
+        long now = System.currentTimeMillis();
+        Decision decision = cache.get(key);
+        if (decision == null || decision.adminAuthorizer != adminAuthorizer || decision.expires < now) {
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
             }
+            decision = new Decision(adminAuthorizer, adminAuthorizer.checkAccess(resource, role), now + cacheTtl);
+            cache.put(key, decision);
+        } else if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Using cached access decision for {0} and role {1}", new Object[] { principal, role });
         }
-        return adminAuthorizer.checkAccess(resource, role);
+        return decision.granted;
     }
 }
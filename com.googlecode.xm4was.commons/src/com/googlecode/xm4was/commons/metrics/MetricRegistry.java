@@ -0,0 +1,80 @@
+package com.googlecode.xm4was.commons.metrics;
+
+import java.util.Map;
+
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+
+/**
+ * In-process registry of metrics that are exposed in OpenMetrics text format. Services annotated
+ * with {@link com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled} are registered
+ * automatically; components may also register metrics directly.
+ * <p>
+ * Metrics with the same name form a family and must have the same type. Within a family, the
+ * individual metrics are distinguished by their labels. Names must match
+ * <tt>[a-zA-Z_:][a-zA-Z0-9_:]*</tt>. Counters are exposed with a <tt>_total</tt> suffix; the name
+ * passed to the registry must not include that suffix.
+ * <p>
+ * Names, labels and descriptions are encoded once at registration time; rendering only invokes
+ * the value sources.
+ */
+public interface MetricRegistry {
+    /**
+     * Provides the value of a counter or gauge.
+     */
+    public interface LongValue {
+        long get() throws Exception;
+    }
+    
+    /**
+     * Provides the accumulator backing a summary.
+     */
+    public interface AccumulatorValue {
+        StatisticAccumulator get() throws Exception;
+    }
+    
+    /**
+     * Register a counter.
+     * 
+     * @param name
+     *            the name of the metric family, without the <tt>_total</tt> suffix
+     * @param help
+     *            the description of the metric family
+     * @param labels
+     *            the labels of the metric; may be empty
+     * @param value
+     *            the value source
+     * @return an action that unregisters the metric
+     */
+    Runnable registerCounter(String name, String help, Map<String,String> labels, LongValue value);
+    
+    /**
+     * Register a gauge.
+     * 
+     * @param name
+     *            the name of the metric family
+     * @param help
+     *            the description of the metric family
+     * @param labels
+     *            the labels of the metric; may be empty
+     * @param value
+     *            the value source
+     * @return an action that unregisters the metric
+     */
+    Runnable registerGauge(String name, String help, Map<String,String> labels, LongValue value);
+    
+    /**
+     * Register a summary. The summary is exposed with its <tt>_count</tt> and <tt>_sum</tt>
+     * samples.
+     * 
+     * @param name
+     *            the name of the metric family
+     * @param help
+     *            the description of the metric family
+     * @param labels
+     *            the labels of the metric; may be empty
+     * @param value
+     *            the source of the accumulator
+     * @return an action that unregisters the metric
+     */
+    Runnable registerSummary(String name, String help, Map<String,String> labels, AccumulatorValue value);
+}
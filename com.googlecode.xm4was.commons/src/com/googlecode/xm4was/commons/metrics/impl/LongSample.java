@@ -0,0 +1,30 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import com.googlecode.xm4was.commons.metrics.MetricRegistry.LongValue;
+
+/**
+ * A counter or gauge.
+ */
+final class LongSample extends MetricSample {
+    private final byte[] prefix;
+    private final LongValue value;
+    
+    LongSample(String name, String labels, LongValue value) {
+        super(name + labels);
+        prefix = encodePrefix(name, labels);
+        this.value = value;
+    }
+
+    @Override
+    void readValues(long[] values) throws Exception {
+        values[0] = value.get();
+    }
+
+    @Override
+    void write(MetricWriter writer) throws Exception {
+        long value = this.value.get();
+        writer.write(prefix);
+        writer.writeLong(value);
+        writer.write((byte)'\n');
+    }
+}
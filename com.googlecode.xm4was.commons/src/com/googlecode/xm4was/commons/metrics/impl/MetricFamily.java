@@ -0,0 +1,66 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.commons.resources.Messages;
+
+/**
+ * A set of metrics with the same name and type. Metrics are registered and unregistered rarely,
+ * but are read on every scrape; they are therefore stored in a copy-on-write list.
+ */
+final class MetricFamily {
+    private static final Logger LOGGER = Logger.getLogger(MetricFamily.class.getName(), Messages.class.getName());
+    
+    private final String name;
+    private final String type;
+    private final byte[] header;
+    private final List<MetricSample> samples = new CopyOnWriteArrayList<MetricSample>();
+    
+    MetricFamily(String name, String type, String help) {
+        this.name = name;
+        this.type = type;
+        header = ("# TYPE " + name + " " + type + "\n# HELP " + name + " " + escapeHelp(help) + "\n").getBytes(MetricWriter.UTF_8);
+    }
+    
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+    
+    String getType() {
+        return type;
+    }
+    
+    void addSample(MetricSample sample) {
+        samples.add(sample);
+    }
+    
+    void removeSample(MetricSample sample) {
+        samples.remove(sample);
+    }
+    
+    List<MetricSample> getSamples() {
+        return samples;
+    }
+    
+    boolean isEmpty() {
+        return samples.isEmpty();
+    }
+    
+    void write(MetricWriter writer) {
+        writer.write(header);
+        for (MetricSample sample : samples) {
+            int mark = writer.size();
+            try {
+                sample.write(writer);
+            } catch (Exception ex) {
+                writer.truncate(mark);
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Failed to read a metric of family " + name, ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.commons.resources.Messages;
+
+/**
+ * Periodically samples all metrics in a {@link MetricRegistryImpl} and keeps the last samples of
+ * each series in a ring buffer. All series are sampled at the same instants, so that the
+ * timestamps are stored only once. The values are stored in primitive arrays allocated when a
+ * series first appears; sampling therefore doesn't allocate memory in the steady state (except
+ * for the map that tracks the series). The metrics are read before acquiring the lock, so that
+ * slow metrics don't block the operations that read the history.
+ * <p>
+ * The history of a metric is discarded when the metric is unregistered.
+ */
+final class MetricHistory implements MetricHistoryMBean {
+    private static final Logger LOGGER = Logger.getLogger(MetricHistory.class.getName(), Messages.class.getName());
+    
+    /**
+     * Marks a sample for which the value of the metric could not be determined.
+     */
+    private static final long MISSING = Long.MIN_VALUE;
+    
+    private static final class Series {
+        final String name;
+        final long[] values;
+        
+        /**
+         * The index of the first sample recorded for this series.
+         */
+        final long firstSample;
+        
+        Series(String name, int size, long firstSample) {
+            this.name = name;
+            values = new long[size];
+            this.firstSample = firstSample;
+        }
+    }
+    
+    /**
+     * Statistics of a series over a time window.
+     */
+    private static final class WindowStats {
+        int count;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long firstValue;
+        long firstTimestamp;
+        long lastValue;
+        long lastTimestamp;
+        
+        void add(long timestamp, long value) {
+            if (count == 0) {
+                firstValue = value;
+                firstTimestamp = timestamp;
+            }
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            lastValue = value;
+            lastTimestamp = timestamp;
+        }
+        
+        void append(StringBuilder buffer) {
+            if (count == 0) {
+                buffer.append("no samples");
+                return;
+            }
+            buffer.append("min=");
+            buffer.append(min);
+            buffer.append(", max=");
+            buffer.append(max);
+            buffer.append(", delta=");
+            buffer.append(lastValue - firstValue);
+            if (lastTimestamp > firstTimestamp) {
+                buffer.append(", rate=");
+                buffer.append(String.format("%.3f", (lastValue - firstValue)*1000.0/(lastTimestamp - firstTimestamp)));
+                buffer.append("/s");
+            }
+        }
+    }
+    
+    private final MetricRegistryImpl registry;
+    private final long interval;
+    private final int size;
+    private Timer timer;
+    
+    // The following fields are only accessed by the thread that takes the samples
+    private long[] values = new long[2];
+    private long[] sampledValues = new long[16];
+    private boolean[] failed = new boolean[16];
+    
+    // The following fields are protected by the lock on this object
+    private final long[] timestamps;
+    private long sampleCount;
+    private Map<MetricSample,Series[]> series = new IdentityHashMap<MetricSample,Series[]>();
+    
+    /**
+     * Constructor.
+     * 
+     * @param registry
+     *            the registry to sample
+     * @param interval
+     *            the interval in milliseconds between two samples
+     * @param size
+     *            the number of samples kept for each series
+     * @throws IllegalArgumentException
+     *             if the interval or the size is not positive
+     */
+    MetricHistory(MetricRegistryImpl registry, long interval, int size) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        this.registry = registry;
+        this.interval = interval;
+        this.size = size;
+        timestamps = new long[size];
+    }
+    
+    void start() {
+        timer = new Timer("XM4WAS Metric History", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    takeSample();
+                } catch (Throwable ex) {
+                    LOGGER.log(Level.SEVERE, Messages._0023E, ex);
+                }
+            }
+        }, interval, interval);
+    }
+    
+    void stop() {
+        timer.cancel();
+    }
+    
+    /**
+     * Take a sample of all metrics. This method must not be called concurrently; it is called by
+     * the timer thread (and directly by unit tests).
+     */
+    void takeSample() {
+        long timestamp = System.currentTimeMillis();
+        List<MetricSample> samples = registry.getSamples();
+        // First read the values of all metrics without holding the lock; the values of sample k
+        // are stored in sampledValues starting at the offset given by the sum of the number of
+        // series of the previous samples
+        if (failed.length < samples.size()) {
+            failed = new boolean[samples.size()*2];
+        }
+        int offset = 0;
+        for (int k=0; k<samples.size(); k++) {
+            MetricSample sample = samples.get(k);
+            int seriesCount = sample.getSeriesNames().length;
+            if (values.length < seriesCount) {
+                values = new long[seriesCount];
+            }
+            if (sampledValues.length < offset + seriesCount) {
+                long[] newSampledValues = new long[(offset + seriesCount)*2];
+                System.arraycopy(sampledValues, 0, newSampledValues, 0, offset);
+                sampledValues = newSampledValues;
+            }
+            try {
+                sample.readValues(values);
+                System.arraycopy(values, 0, sampledValues, offset, seriesCount);
+                failed[k] = false;
+            } catch (Exception ex) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Failed to sample " + sample.getSeriesNames()[0], ex);
+                }
+                failed[k] = true;
+            }
+            offset += seriesCount;
+        }
+        // Now store the values
+        synchronized (this) {
+            int pos = (int)(sampleCount % size);
+            timestamps[pos] = timestamp;
+            Map<MetricSample,Series[]> newSeries = new IdentityHashMap<MetricSample,Series[]>(series.size()*2);
+            offset = 0;
+            for (int k=0; k<samples.size(); k++) {
+                MetricSample sample = samples.get(k);
+                Series[] sampleSeries = series.get(sample);
+                if (sampleSeries == null) {
+                    String[] names = sample.getSeriesNames();
+                    sampleSeries = new Series[names.length];
+                    for (int i=0; i<names.length; i++) {
+                        sampleSeries[i] = new Series(names[i], size, sampleCount);
+                    }
+                }
+                newSeries.put(sample, sampleSeries);
+                for (int i=0; i<sampleSeries.length; i++) {
+                    sampleSeries[i].values[pos] = failed[k] ? MISSING : sampledValues[offset+i];
+                }
+                offset += sampleSeries.length;
+            }
+            // Replacing the map also discards the series of unregistered metrics
+            series = newSeries;
+            sampleCount++;
+        }
+    }
+    
+    private Map<String,Series> getSeriesByName() {
+        Map<String,Series> result = new TreeMap<String,Series>();
+        for (Series[] sampleSeries : series.values()) {
+            for (Series s : sampleSeries) {
+                result.put(s.name, s);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Get the index of the oldest sample available for a series.
+     */
+    private long getFirstAvailableSample(Series s) {
+        return Math.max(s.firstSample, sampleCount - size);
+    }
+    
+    /**
+     * Get the index of the oldest sample within a time window.
+     */
+    private long getFirstSampleInWindow(Series s, int window) {
+        long start = System.currentTimeMillis() - window*1000L;
+        long index = getFirstAvailableSample(s);
+        while (index < sampleCount && timestamps[(int)(index % size)] < start) {
+            index++;
+        }
+        return index;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public synchronized String dumpSeries() {
+        StringBuilder buffer = new StringBuilder();
+        for (Series s : getSeriesByName().values()) {
+            if (buffer.length() > 0) {
+                buffer.append('\n');
+            }
+            buffer.append(s.name);
+            buffer.append(": ");
+            buffer.append(sampleCount - getFirstAvailableSample(s));
+            buffer.append(" samples");
+        }
+        return buffer.toString();
+    }
+
+    public synchronized String dumpHistory(String seriesName, int window) {
+        Series s = getSeriesByName().get(seriesName);
+        if (s == null) {
+            return "No history available for " + seriesName;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        StringBuilder buffer = new StringBuilder();
+        WindowStats stats = new WindowStats();
+        for (long index = getFirstSampleInWindow(s, window); index < sampleCount; index++) {
+            int pos = (int)(index % size);
+            buffer.append(format.format(new Date(timestamps[pos])));
+            buffer.append(' ');
+            long value = s.values[pos];
+            if (value == MISSING) {
+                buffer.append('-');
+            } else {
+                buffer.append(value);
+                stats.add(timestamps[pos], value);
+            }
+            buffer.append('\n');
+        }
+        stats.append(buffer);
+        return buffer.toString();
+    }
+
+    public synchronized String dumpStatistics(int window) {
+        StringBuilder buffer = new StringBuilder();
+        for (Series s : getSeriesByName().values()) {
+            WindowStats stats = new WindowStats();
+            for (long index = getFirstSampleInWindow(s, window); index < sampleCount; index++) {
+                int pos = (int)(index % size);
+                long value = s.values[pos];
+                if (value != MISSING) {
+                    stats.add(timestamps[pos], value);
+                }
+            }
+            if (buffer.length() > 0) {
+                buffer.append('\n');
+            }
+            buffer.append(s.name);
+            buffer.append(": ");
+            stats.append(buffer);
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import javax.management.MBeanOperationInfo;
+
+import com.googlecode.xm4was.commons.jmx.annotations.Attribute;
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.Operation;
+import com.googlecode.xm4was.commons.jmx.annotations.Parameter;
+
+@MBean(type="MetricHistory", description="Periodically samples all registered metrics and keeps their recent history")
+public interface MetricHistoryMBean {
+    @Attribute(description="The interval (in milliseconds) between two samples", readRole="monitor")
+    long getInterval();
+    
+    @Attribute(description="The number of samples kept for each series", readRole="monitor")
+    int getSize();
+    
+    @Operation(description="Displays the names of the series for which history is available, together with the number of samples kept",
+            impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpSeries();
+    
+    @Operation(description="Displays the samples of a given series recorded during a given time window, followed by the minimum, maximum, delta and rate over that window",
+            impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpHistory(
+            @Parameter(name="series", description="The name of the series, including the labels, as displayed by dumpSeries")
+            String series,
+            @Parameter(name="window", description="The length of the time window in seconds")
+            int window);
+    
+    @Operation(description="Displays the minimum, maximum, delta and rate (per second) of all series over a given time window",
+            impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpStatistics(
+            @Parameter(name="window", description="The length of the time window in seconds")
+            int window);
+}
@@ -0,0 +1,213 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.googlecode.xm4was.commons.metrics.MetricRegistry;
+import com.googlecode.xm4was.commons.osgi.Lifecycle;
+import com.googlecode.xm4was.commons.osgi.annotations.Init;
+import com.googlecode.xm4was.commons.osgi.annotations.Services;
+import com.googlecode.xm4was.commons.resources.Messages;
+
+/**
+ * Default {@link MetricRegistry} implementation. If a port is configured, the metrics are exposed
+ * by an {@link OpenMetricsServer}. Unless disabled, the history of the metrics is recorded by a
+ * {@link MetricHistory}.
+ */
+@Services(MetricRegistry.class)
+public class MetricRegistryImpl implements MetricRegistry {
+    private static final Logger LOGGER = Logger.getLogger(MetricRegistryImpl.class.getName(), Messages.class.getName());
+    
+    /**
+     * The port of the OpenMetrics endpoint. If not set, the endpoint is disabled.
+     */
+    private static final String PORT = System.getProperty("com.googlecode.xm4was.commons.MetricRegistry.PORT");
+    
+    /**
+     * The address the OpenMetrics endpoint binds to. By default, the endpoint only accepts local
+     * connections.
+     */
+    private static final String BIND_ADDRESS = System.getProperty(
+            "com.googlecode.xm4was.commons.MetricRegistry.BIND_ADDRESS", "127.0.0.1");
+    
+    /**
+     * The time (in milliseconds) after which the OpenMetrics endpoint closes a connection if the
+     * request has not been processed completely.
+     */
+    private static final long REQUEST_TIMEOUT = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.commons.MetricRegistry.REQUEST_TIMEOUT", "30000"));
+    
+    /**
+     * The maximum number of concurrent connections accepted by the OpenMetrics endpoint.
+     */
+    private static final int MAX_CONNECTIONS = Integer.parseInt(System.getProperty(
+            "com.googlecode.xm4was.commons.MetricRegistry.MAX_CONNECTIONS", "16"));
+    
+    /**
+     * The interval (in milliseconds) at which metrics are sampled by {@link MetricHistory}. A value
+     * of 0 disables the history.
+     */
+    private static final long HISTORY_INTERVAL = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.commons.MetricRegistry.HISTORY_INTERVAL", "10000"));
+    
+    private static final String HISTORY_SIZE_PROPERTY = "com.googlecode.xm4was.commons.MetricRegistry.HISTORY_SIZE";
+    
+    /**
+     * The number of samples kept per series by {@link MetricHistory}. The default keeps one hour
+     * of history with the default interval. Must be positive.
+     */
+    private static final int HISTORY_SIZE = Integer.parseInt(System.getProperty(HISTORY_SIZE_PROPERTY, "360"));
+    
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    
+    private static final byte[] EOF = "# EOF\n".getBytes(MetricWriter.UTF_8);
+    
+    /**
+     * The metric families by name. The families are sorted so that the output is stable. Access is
+     * synchronized when families are added or removed, but not when rendering the metrics.
+     */
+    private final ConcurrentNavigableMap<String,MetricFamily> families = new ConcurrentSkipListMap<String,MetricFamily>();
+    
+    @Init
+    public void init(Lifecycle lifecycle) {
+        if (HISTORY_INTERVAL > 0 && HISTORY_SIZE <= 0) {
+            LOGGER.log(Level.WARNING, Messages._0033W, new Object[] { HISTORY_SIZE_PROPERTY, String.valueOf(HISTORY_SIZE) });
+        } else if (HISTORY_INTERVAL > 0) {
+            final MetricHistory history = new MetricHistory(this, HISTORY_INTERVAL, HISTORY_SIZE);
+            history.start();
+            lifecycle.addStopAction(new Runnable() {
+                public void run() {
+                    history.stop();
+                }
+            });
+            lifecycle.addService(MetricHistoryMBean.class, history, null);
+        }
+        if (PORT == null) {
+            return;
+        }
+        try {
+            final OpenMetricsServer server = new OpenMetricsServer(this, new InetSocketAddress(BIND_ADDRESS, Integer.parseInt(PORT)),
+                    REQUEST_TIMEOUT, MAX_CONNECTIONS);
+            server.start();
+            lifecycle.addStopAction(new Runnable() {
+                public void run() {
+                    server.stop();
+                }
+            });
+            LOGGER.log(Level.INFO, Messages._0019I, server.getAddress());
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, Messages._0020E, ex);
+        }
+    }
+    
+    /**
+     * Encode the labels of a metric.
+     * 
+     * @param labels
+     *            the labels
+     * @return the labels in OpenMetrics syntax, including the braces, or an empty string if there
+     *         are no labels
+     */
+    static String encodeLabels(Map<String,String> labels) {
+        if (labels.isEmpty()) {
+            return "";
+        }
+        StringBuilder buffer = new StringBuilder("{");
+        for (Map.Entry<String,String> entry : new TreeMap<String,String>(labels).entrySet()) {
+            String name = entry.getKey();
+            if (!NAME_PATTERN.matcher(name).matches() || name.indexOf(':') != -1) {
+                throw new IllegalArgumentException("Invalid label name " + name);
+            }
+            if (buffer.length() > 1) {
+                buffer.append(',');
+            }
+            buffer.append(name);
+            buffer.append("=\"");
+            buffer.append(entry.getValue().replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+            buffer.append('"');
+        }
+        buffer.append('}');
+        return buffer.toString();
+    }
+    
+    private Runnable register(final String name, String type, String help, final MetricSample sample) {
+        MetricFamily family;
+        synchronized (families) {
+            family = families.get(name);
+            if (family == null) {
+                family = new MetricFamily(name, type, help);
+                families.put(name, family);
+            } else if (!family.getType().equals(type)) {
+                throw new IllegalArgumentException("Metric family " + name + " already exists with type " + family.getType());
+            }
+            family.addSample(sample);
+        }
+        final MetricFamily registeredFamily = family;
+        return new Runnable() {
+            public void run() {
+                synchronized (families) {
+                    registeredFamily.removeSample(sample);
+                    if (registeredFamily.isEmpty()) {
+                        families.remove(name, registeredFamily);
+                    }
+                }
+            }
+        };
+    }
+    
+    private static void checkName(String name) {
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name " + name);
+        }
+    }
+
+    public Runnable registerCounter(String name, String help, Map<String,String> labels, LongValue value) {
+        checkName(name);
+        return register(name, "counter", help, new LongSample(name + "_total", encodeLabels(labels), value));
+    }
+
+    public Runnable registerGauge(String name, String help, Map<String,String> labels, LongValue value) {
+        checkName(name);
+        return register(name, "gauge", help, new LongSample(name, encodeLabels(labels), value));
+    }
+
+    public Runnable registerSummary(String name, String help, Map<String,String> labels, AccumulatorValue value) {
+        checkName(name);
+        return register(name, "summary", help, new SummarySample(name, encodeLabels(labels), value));
+    }
+    
+    /**
+     * Get all registered metrics.
+     * 
+     * @return a snapshot of the registered metrics
+     */
+    List<MetricSample> getSamples() {
+        List<MetricSample> samples = new ArrayList<MetricSample>();
+        for (MetricFamily family : families.values()) {
+            samples.addAll(family.getSamples());
+        }
+        return samples;
+    }
+    
+    /**
+     * Render all metrics in OpenMetrics text format.
+     * 
+     * @param writer
+     *            the writer
+     */
+    void writeMetrics(MetricWriter writer) {
+        for (MetricFamily family : families.values()) {
+            family.write(writer);
+        }
+        writer.write(EOF);
+    }
+}
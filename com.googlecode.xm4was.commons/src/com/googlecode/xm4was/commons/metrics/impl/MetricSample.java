@@ -0,0 +1,58 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+/**
+ * A metric in a {@link MetricFamily}. The sample names (including the labels) are encoded at
+ * construction time.
+ */
+abstract class MetricSample {
+    private final String[] seriesNames;
+    
+    /**
+     * Constructor.
+     * 
+     * @param seriesNames
+     *            the names (including the labels) of the series produced by this metric
+     */
+    MetricSample(String... seriesNames) {
+        this.seriesNames = seriesNames;
+    }
+    
+    /**
+     * Encode the part of a sample line that precedes the value.
+     * 
+     * @param name
+     *            the sample name
+     * @param labels
+     *            the labels, as encoded by {@link MetricRegistryImpl#encodeLabels(java.util.Map)}
+     * @return the encoded prefix
+     */
+    static byte[] encodePrefix(String name, String labels) {
+        return (name + labels + " ").getBytes(MetricWriter.UTF_8);
+    }
+    
+    String[] getSeriesNames() {
+        return seriesNames;
+    }
+    
+    /**
+     * Read the current values of the series produced by this metric.
+     * 
+     * @param values
+     *            the array that receives the values, in the order defined by
+     *            {@link #getSeriesNames()}; the array may be larger than the number of series
+     * @throws Exception
+     *             if the value of the metric could not be determined
+     */
+    abstract void readValues(long[] values) throws Exception;
+    
+    /**
+     * Write the sample lines for this metric.
+     * 
+     * @param writer
+     *            the writer
+     * @throws Exception
+     *             if the value of the metric could not be determined; the caller is expected to
+     *             discard any partially written content
+     */
+    abstract void write(MetricWriter writer) throws Exception;
+}
@@ -0,0 +1,89 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import java.nio.charset.Charset;
+
+/**
+ * Growable byte buffer used to render metrics. Numbers are encoded directly into the buffer so
+ * that rendering doesn't create intermediate strings. Instances are not thread safe.
+ */
+final class MetricWriter {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private byte[] buffer;
+    private int size;
+    
+    MetricWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+    
+    private void ensureCapacity(int required) {
+        if (size + required > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(buffer.length*2, size + required)];
+            System.arraycopy(buffer, 0, newBuffer, 0, size);
+            buffer = newBuffer;
+        }
+    }
+    
+    void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+    
+    void write(byte b) {
+        ensureCapacity(1);
+        buffer[size++] = b;
+    }
+    
+    void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(String.valueOf(value).getBytes(UTF_8));
+            return;
+        }
+        // 19 digits and the sign
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+        int end = size + digitCount(value);
+        int pos = end;
+        do {
+            buffer[--pos] = (byte)('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        size = end;
+    }
+    
+    private static int digitCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+    
+    void reset() {
+        size = 0;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Discard the content written after a given position. This is used to roll back a partially
+     * rendered metric.
+     * 
+     * @param size
+     *            the position
+     */
+    void truncate(int size) {
+        this.size = size;
+    }
+    
+    byte[] getBuffer() {
+        return buffer;
+    }
+}
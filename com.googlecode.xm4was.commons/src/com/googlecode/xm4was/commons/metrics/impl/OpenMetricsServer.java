@@ -0,0 +1,394 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.commons.NamedThreadFactory;
+import com.googlecode.xm4was.commons.resources.Messages;
+
+/**
+ * Minimal HTTP server that exposes the content of a {@link MetricRegistryImpl} in OpenMetrics text
+ * format at <tt>/metrics</tt>. All connections are handled by a single I/O thread using
+ * non-blocking I/O, so that slow or misbehaving clients can't tie up resources. Only simple
+ * <tt>GET</tt> requests are supported and each connection is closed after the response has been
+ * sent.
+ * <p>
+ * The metrics are rendered by a separate thread, so that slow metrics don't block the I/O thread.
+ * Requests that arrive while the metrics are being rendered are answered by the next rendering,
+ * i.e. concurrent scrapes don't cause the metrics to be read more than twice. Connections that
+ * don't complete within the request timeout are closed, and connections exceeding the maximum
+ * number of connections are rejected.
+ */
+final class OpenMetricsServer implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(OpenMetricsServer.class.getName(), Messages.class.getName());
+    
+    /**
+     * The maximum size of a request (request line and headers). Requests from scrapers are small.
+     */
+    private static final int MAX_REQUEST_SIZE = 8192;
+    
+    /**
+     * The interval (in milliseconds) at which the I/O thread looks for expired connections.
+     */
+    private static final long EXPIRY_CHECK_INTERVAL = 1000;
+    
+    private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    
+    private static final class Connection {
+        final long deadline;
+        final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+        ByteBuffer response;
+        
+        Connection(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+    
+    private final MetricRegistryImpl registry;
+    private final long requestTimeout;
+    private final int maxConnections;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread thread;
+    private final ExecutorService renderer;
+    
+    /**
+     * The buffer used to render the metrics. Only accessed by the renderer thread, so that it can
+     * be reused across scrapes.
+     */
+    private final MetricWriter writer = new MetricWriter(16384);
+    
+    /**
+     * The keys of the connections waiting for the metrics to be rendered. Access must be
+     * synchronized on the list.
+     */
+    private final List<SelectionKey> pendingRenders = new ArrayList<SelectionKey>();
+    
+    /**
+     * The keys of the connections for which the response is ready. They are handed back to the I/O
+     * thread through this queue because interest operations must be changed by that thread.
+     */
+    private final Queue<SelectionKey> completedRenders = new ConcurrentLinkedQueue<SelectionKey>();
+    
+    /**
+     * The number of open client connections. Only accessed by the I/O thread.
+     */
+    private int connectionCount;
+    
+    private volatile boolean stopped;
+
+    /**
+     * Constructor. Binds the server socket, but doesn't start accepting connections.
+     * 
+     * @param registry
+     *            the registry
+     * @param address
+     *            the address to bind to
+     * @param requestTimeout
+     *            the time (in milliseconds) after which a connection is closed if the response has
+     *            not been sent completely
+     * @param maxConnections
+     *            the maximum number of concurrent connections; additional connections are closed
+     *            immediately
+     * @throws IOException
+     *             if the server socket could not be created
+     */
+    OpenMetricsServer(MetricRegistryImpl registry, InetSocketAddress address, long requestTimeout, int maxConnections) throws IOException {
+        this.registry = registry;
+        this.requestTimeout = requestTimeout;
+        this.maxConnections = maxConnections;
+        selector = Selector.open();
+        ServerSocketChannel serverChannel = null;
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(address);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ex) {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            selector.close();
+            throw ex;
+        }
+        this.serverChannel = serverChannel;
+        thread = new Thread(this, "XM4WAS OpenMetrics Endpoint");
+        thread.setDaemon(true);
+        renderer = Executors.newSingleThreadExecutor(new NamedThreadFactory("XM4WAS OpenMetrics Renderer", LOGGER, Messages._0032E));
+    }
+    
+    InetSocketAddress getAddress() {
+        return (InetSocketAddress)serverChannel.socket().getLocalSocketAddress();
+    }
+    
+    void start() {
+        thread.start();
+    }
+    
+    void stop() {
+        stopped = true;
+        selector.wakeup();
+        renderer.shutdownNow();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void run() {
+        try {
+            long nextExpiryCheck = System.currentTimeMillis() + EXPIRY_CHECK_INTERVAL;
+            while (!stopped) {
+                selector.select(EXPIRY_CHECK_INTERVAL);
+                SelectionKey completedKey;
+                while ((completedKey = completedRenders.poll()) != null) {
+                    if (completedKey.isValid()) {
+                        completedKey.interestOps(SelectionKey.OP_WRITE);
+                    }
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        } else if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        } else if (key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException ex) {
+                        // The client has closed the connection or reset it
+                        if (LOGGER.isLoggable(Level.FINEST)) {
+                            LOGGER.log(Level.FINEST, "I/O error on OpenMetrics connection", ex);
+                        }
+                        close(key);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextExpiryCheck) {
+                    closeExpiredConnections(now);
+                    nextExpiryCheck = now + EXPIRY_CHECK_INTERVAL;
+                }
+            }
+        } catch (Throwable ex) {
+            LOGGER.log(Level.SEVERE, Messages._0021E, ex);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel != null) {
+            if (connectionCount >= maxConnections) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Too many OpenMetrics connections; rejecting connection from {0}", channel.socket().getRemoteSocketAddress());
+                }
+                channel.close();
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new Connection(System.currentTimeMillis() + requestTimeout));
+            connectionCount++;
+        }
+    }
+    
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection)key.attachment();
+        if (((SocketChannel)key.channel()).read(connection.request) == -1) {
+            close(key);
+            return;
+        }
+        String requestLine = getRequestLine(connection.request);
+        if (requestLine != null) {
+            connection.response = createResponse(requestLine);
+        } else if (!connection.request.hasRemaining()) {
+            connection.response = createResponse(400, "Bad Request", null, 0);
+        } else {
+            return;
+        }
+        if (connection.response == null) {
+            // The response will be created by the renderer
+            key.interestOps(0);
+            scheduleRender(key);
+        } else {
+            key.interestOps(SelectionKey.OP_WRITE);
+            // In most cases the response can be written immediately
+            write(key);
+        }
+    }
+    
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection)key.attachment();
+        ((SocketChannel)key.channel()).write(connection.response);
+        if (!connection.response.hasRemaining()) {
+            close(key);
+        }
+    }
+    
+    private void close(SelectionKey key) {
+        if (key.isValid() && key.attachment() instanceof Connection) {
+            connectionCount--;
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ex) {
+            // Ignore
+        }
+    }
+    
+    private void closeExpiredConnections(long now) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (key.isValid() && attachment instanceof Connection && ((Connection)attachment).deadline <= now) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Closing expired OpenMetrics connection from {0}", ((SocketChannel)key.channel()).socket().getRemoteSocketAddress());
+                }
+                close(key);
+            }
+        }
+    }
+    
+    private void scheduleRender(SelectionKey key) {
+        boolean submit;
+        synchronized (pendingRenders) {
+            // If there are already pending connections, a render task has been submitted and
+            // not started yet; it will take care of this connection too
+            submit = pendingRenders.isEmpty();
+            pendingRenders.add(key);
+        }
+        if (submit) {
+            try {
+                renderer.execute(new Runnable() {
+                    public void run() {
+                        render();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // The server is being stopped
+            }
+        }
+    }
+    
+    private void render() {
+        List<SelectionKey> keys;
+        synchronized (pendingRenders) {
+            keys = new ArrayList<SelectionKey>(pendingRenders);
+            pendingRenders.clear();
+        }
+        ByteBuffer response;
+        try {
+            writer.reset();
+            registry.writeMetrics(writer);
+            response = createResponse(200, "OK", writer.getBuffer(), writer.size());
+        } catch (RuntimeException ex) {
+            // Exceptions thrown by individual metrics are handled by MetricFamily; this is unexpected
+            LOGGER.log(Level.SEVERE, Messages._0032E, ex);
+            response = createResponse(500, "Internal Server Error", null, 0);
+        }
+        for (SelectionKey key : keys) {
+            ((Connection)key.attachment()).response = response.duplicate();
+            completedRenders.add(key);
+        }
+        selector.wakeup();
+    }
+    
+    /**
+     * Extract the request line from a request buffer.
+     * 
+     * @param request
+     *            the buffer containing the data received so far
+     * @return the request line, or <code>null</code> if the request headers are not complete yet
+     */
+    private static String getRequestLine(ByteBuffer request) {
+        byte[] data = request.array();
+        int length = request.position();
+        for (int i=3; i<length; i++) {
+            if (data[i-3] == '\r' && data[i-2] == '\n' && data[i-1] == '\r' && data[i] == '\n') {
+                int end = 0;
+                while (data[end] != '\r') {
+                    end++;
+                }
+                return new String(data, 0, end, MetricWriter.UTF_8);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Create the response for a request.
+     * 
+     * @param requestLine
+     *            the request line
+     * @return the response, or <code>null</code> if the request is a valid scrape request and the
+     *         response needs to be created by the renderer
+     */
+    private static ByteBuffer createResponse(String requestLine) {
+        String[] parts = requestLine.split(" ");
+        if (parts.length != 3) {
+            return createResponse(400, "Bad Request", null, 0);
+        }
+        String path = parts[1];
+        if (!path.equals("/metrics") && !path.startsWith("/metrics?")) {
+            return createResponse(404, "Not Found", null, 0);
+        }
+        if (!parts[0].equals("GET")) {
+            return createResponse(405, "Method Not Allowed", null, 0);
+        }
+        return null;
+    }
+    
+    private static ByteBuffer createResponse(int status, String reason, byte[] body, int bodyLength) {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("HTTP/1.1 ");
+        buffer.append(status);
+        buffer.append(' ');
+        buffer.append(reason);
+        buffer.append("\r\n");
+        if (body != null) {
+            buffer.append("Content-Type: ");
+            buffer.append(CONTENT_TYPE);
+            buffer.append("\r\n");
+        }
+        buffer.append("Content-Length: ");
+        buffer.append(bodyLength);
+        buffer.append("\r\nConnection: close\r\n\r\n");
+        byte[] header = buffer.toString().getBytes(MetricWriter.UTF_8);
+        ByteBuffer response = ByteBuffer.allocate(header.length + bodyLength);
+        response.put(header);
+        if (body != null) {
+            response.put(body, 0, bodyLength);
+        }
+        response.flip();
+        return response;
+    }
+}
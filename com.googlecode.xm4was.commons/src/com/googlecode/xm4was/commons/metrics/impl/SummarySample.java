@@ -0,0 +1,38 @@
+package com.googlecode.xm4was.commons.metrics.impl;
+
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.metrics.MetricRegistry.AccumulatorValue;
+
+/**
+ * A summary without quantiles, backed by a {@link StatisticAccumulator}.
+ */
+final class SummarySample extends MetricSample {
+    private final byte[] countPrefix;
+    private final byte[] sumPrefix;
+    private final AccumulatorValue value;
+    
+    SummarySample(String name, String labels, AccumulatorValue value) {
+        super(name + "_count" + labels, name + "_sum" + labels);
+        countPrefix = encodePrefix(name + "_count", labels);
+        sumPrefix = encodePrefix(name + "_sum", labels);
+        this.value = value;
+    }
+
+    @Override
+    void readValues(long[] values) throws Exception {
+        StatisticAccumulator accumulator = value.get();
+        values[0] = accumulator.getCount();
+        values[1] = accumulator.getTotal();
+    }
+
+    @Override
+    void write(MetricWriter writer) throws Exception {
+        StatisticAccumulator accumulator = value.get();
+        writer.write(countPrefix);
+        writer.writeLong(accumulator.getCount());
+        writer.write((byte)'\n');
+        writer.write(sumPrefix);
+        writer.writeLong(accumulator.getTotal());
+        writer.write((byte)'\n');
+    }
+}
@@ -2,4 +2,17 @@ package com.googlecode.xm4was.commons.osgi;
 
 public interface ServiceSet<T> {
     void visit(ServiceVisitor<? super T> visitor);
+    
+    /**
+     * Visit the services asynchronously. The method returns immediately. Each service is visited
+     * on a separate thread, so that a slow service doesn't delay the others. Visits of a given
+     * service are executed in the order in which they have been requested.
+     * 
+     * @param visitor
+     *            the visitor
+     * @param timeout
+     *            the maximum time (in milliseconds) allowed for the visit of a single service; if
+     *            the visit takes longer, the thread executing it is interrupted
+     */
+    void visitAsync(ServiceVisitor<? super T> visitor, long timeout);
 }
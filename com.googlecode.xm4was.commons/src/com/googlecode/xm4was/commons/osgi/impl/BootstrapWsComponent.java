@@ -1,16 +1,30 @@
 package com.googlecode.xm4was.commons.osgi.impl;
 
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.util.tracker.BundleTracker;
 
 import com.googlecode.xm4was.commons.activator.Activator;
+import com.googlecode.xm4was.commons.resources.Messages;
 import com.ibm.ws.exception.RuntimeError;
 import com.ibm.ws.exception.RuntimeWarning;
 import com.ibm.wsspi.runtime.component.WsComponentImpl;
 
 public final class BootstrapWsComponent extends WsComponentImpl {
+    private static final Logger LOGGER = Logger.getLogger(BootstrapWsComponent.class.getName(), Messages.class.getName());
+    
+    /**
+     * The maximum time (in milliseconds) to wait for the initialization of the components during
+     * server startup. If set to 0, server startup continues without waiting.
+     */
+    private static final long INIT_TIMEOUT = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.commons.osgi.impl.BootstrapWsComponent.INIT_TIMEOUT", "10000"));
+    
+    private BundleManagerImpl bundleManager;
     private BundleTracker managedBundleTracker;
     private ServiceRegistration bundleManagerRegistration;
     
@@ -18,18 +32,30 @@ public final class BootstrapWsComponent extends WsComponentImpl {
     public void start() throws RuntimeError, RuntimeWarning {
         super.start();
         BundleContext bundleContext = Activator.getBundleContext();
-        BundleManagerImpl bundleManager = new BundleManagerImpl();
+        bundleManager = new BundleManagerImpl();
         bundleManagerRegistration = bundleContext.registerService(BundleManager.class.getName(), bundleManager, null);
         // Managed bundles are expected to have "Eclipse-AutoStart: true"; if they have not yet
         // been activated, they will be in state RESOLVED on WAS 7.0 and in state STARTING on WAS 8.5
         managedBundleTracker = new BundleTracker(bundleContext, Bundle.RESOLVED | Bundle.STARTING | Bundle.ACTIVE, bundleManager);
         managedBundleTracker.open();
+        // Components are initialized concurrently. Wait for them so that they are available
+        // before applications are started (which is required e.g. for the class loader monitor).
+        if (INIT_TIMEOUT > 0) {
+            try {
+                if (!bundleManager.awaitInitialization(INIT_TIMEOUT)) {
+                    LOGGER.log(Level.WARNING, Messages._0026W, String.valueOf(INIT_TIMEOUT/1000));
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     @Override
     public void stop() {
         bundleManagerRegistration.unregister();
         managedBundleTracker.close();
+        bundleManager.shutdown();
         super.stop();
     }
 }
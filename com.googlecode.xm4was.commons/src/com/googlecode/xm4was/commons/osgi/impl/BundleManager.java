@@ -1,7 +1,11 @@
 package com.googlecode.xm4was.commons.osgi.impl;
 
+import java.util.Map;
+
 import org.osgi.framework.Bundle;
 
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+
 public interface BundleManager {
     /**
      * Determine if the given bundle is managed by XM4WAS. This is the case if the bundle manifest
@@ -12,4 +16,20 @@ public interface BundleManager {
      * @return <code>true</code> if the bundle is managed by XM4WAS; <code>false</code> otherwise
      */
     boolean isManaged(Bundle bundle);
+    
+    /**
+     * Get the time spent in the init methods of the components.
+     * 
+     * @return the durations in microseconds by component class name, in the order in which the
+     *         components have been initialized
+     */
+    Map<String,Long> getComponentInitTimes();
+    
+    /**
+     * Get the latency of the asynchronous visits of
+     * {@link com.googlecode.xm4was.commons.osgi.ServiceSet} instances.
+     * 
+     * @return the latencies in microseconds by service class name
+     */
+    Map<String,StatisticAccumulator> getDispatchLatencies();
 }
@@ -1,8 +1,8 @@
 package com.googlecode.xm4was.commons.osgi.impl;
 
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -10,6 +10,7 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleEvent;
 import org.osgi.util.tracker.BundleTrackerCustomizer;
 
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
 import com.googlecode.xm4was.commons.osgi.annotations.ProcessTypes;
 import com.googlecode.xm4was.commons.osgi.annotations.Services;
 import com.googlecode.xm4was.commons.resources.Messages;
@@ -29,7 +30,17 @@ final class BundleManagerImpl implements BundleManager, BundleTrackerCustomizer
     private static final Logger LOGGER = Logger.getLogger(BundleManagerImpl.class.getName(), Messages.class.getName());
 
     private final String processType;
-    private final List<ManagedBundle> managedBundles = new LinkedList<ManagedBundle>();
+    
+    /**
+     * The managed bundles. {@link #isManaged(Bundle)} is called for every service registered by
+     * a managed bundle and may be called concurrently with bundle events; therefore we use a
+     * concurrent map instead of a list.
+     */
+    private final Map<Bundle,ManagedBundle> managedBundles = new ConcurrentHashMap<Bundle,ManagedBundle>();
+    
+    private final ComponentInitializer initializer = new ComponentInitializer();
+    
+    private final ServiceDispatcher dispatcher = new ServiceDispatcher();
     
     BundleManagerImpl() {
         processType = AdminServiceFactory.getAdminService().getProcessType();
@@ -39,12 +50,33 @@ final class BundleManagerImpl implements BundleManager, BundleTrackerCustomizer
     }
     
     public boolean isManaged(Bundle bundle) {
-        for (ManagedBundle managedBundle : managedBundles) {
-            if (managedBundle.getBundle().equals(bundle)) {
-                return true;
-            }
-        }
-        return false;
+        return managedBundles.containsKey(bundle);
+    }
+
+    public Map<String,Long> getComponentInitTimes() {
+        return initializer.getInitTimes();
+    }
+
+    public Map<String,StatisticAccumulator> getDispatchLatencies() {
+        return dispatcher.getLatencies();
+    }
+    
+    /**
+     * Wait until the components that can be initialized have been initialized.
+     * 
+     * @param timeout
+     *            the maximum time to wait in milliseconds
+     * @return <code>true</code> if the initialization has completed; <code>false</code> if the
+     *         timeout expired
+     * @see ComponentInitializer#awaitCompletion(long)
+     */
+    boolean awaitInitialization(long timeout) throws InterruptedException {
+        return initializer.awaitCompletion(timeout);
+    }
+    
+    void shutdown() {
+        initializer.shutdown();
+        dispatcher.shutdown();
     }
 
     public Object addingBundle(Bundle bundle, BundleEvent event) {
@@ -57,7 +89,7 @@ final class BundleManagerImpl implements BundleManager, BundleTrackerCustomizer
                 LOGGER.log(Level.FINEST, "Discovered managed bundle {0}; state {1}", new Object[] { bundle.getSymbolicName(), state });
             }
             ManagedBundle managedBundle = new ManagedBundle(bundle);
-            managedBundles.add(managedBundle);
+            managedBundles.put(bundle, managedBundle);
             for (String className : header.trim().split("\\s*,\\s*")) {
                 Class<?> clazz;
                 try {
@@ -101,7 +133,7 @@ final class BundleManagerImpl implements BundleManager, BundleTrackerCustomizer
                         serviceClassNames[i] = serviceClasses[i].getName();
                     }
                 }
-                LifecycleManager component = new LifecycleManager(Util.getBundleContext(bundle), serviceClassNames, componentObject, null);
+                LifecycleManager component = new LifecycleManager(Util.getBundleContext(bundle), initializer, dispatcher, serviceClassNames, componentObject, null);
                 if (LOGGER.isLoggable(Level.FINEST)) {
                     LOGGER.log(Level.FINEST, "Adding component {0}", component);
                 }
@@ -121,7 +153,7 @@ final class BundleManagerImpl implements BundleManager, BundleTrackerCustomizer
                 LOGGER.log(Level.FINEST, "Bundle {0} no longer managed; new state is {1}", new Object[] { bundle.getSymbolicName(), bundle.getState()});
             }
             ((ManagedBundle)object).stopComponents();
-            managedBundles.remove(object);
+            managedBundles.remove(bundle);
         }
     }
 }
@@ -0,0 +1,147 @@
+package com.googlecode.xm4was.commons.osgi.impl;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.commons.NamedThreadFactory;
+import com.googlecode.xm4was.commons.resources.Messages;
+
+/**
+ * Executes the {@link com.googlecode.xm4was.commons.osgi.annotations.Init} methods of components.
+ * A component is submitted to the initializer once all its injected services are available. The
+ * services registered by a component only become available after its init method has completed;
+ * components that depend on each other are therefore initialized in order, while independent
+ * components are initialized concurrently on a bounded number of threads.
+ * <p>
+ * If the number of threads is set to 0, init methods are executed synchronously on the thread
+ * that made the last injected service available. This was the behavior of earlier versions.
+ */
+final class ComponentInitializer {
+    private static final Logger LOGGER = Logger.getLogger(ComponentInitializer.class.getName(), Messages.class.getName());
+    
+    private static final int THREADS = Integer.parseInt(System.getProperty(
+            "com.googlecode.xm4was.commons.osgi.impl.ComponentInitializer.THREADS",
+            String.valueOf(Math.min(4, Runtime.getRuntime().availableProcessors()))));
+    
+    private final ThreadPoolExecutor executor;
+    
+    /**
+     * The number of components that have been submitted and whose initialization has not
+     * completed yet. Access must be synchronized on the initializer.
+     */
+    private int pendingCount;
+    
+    /**
+     * The duration (in microseconds) of the init method of each component, in the order in which
+     * the components have been initialized. Access to this map must be synchronized.
+     */
+    private final Map<String,Long> initTimes = new LinkedHashMap<String,Long>();
+    
+    ComponentInitializer() {
+        this(THREADS);
+    }
+    
+    ComponentInitializer(int threads) {
+        if (threads > 0) {
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("XM4WAS Component Initializer", LOGGER, Messages._0025E));
+            // Components are mostly initialized during server startup; don't keep idle threads
+            executor.allowCoreThreadTimeOut(true);
+        } else {
+            executor = null;
+        }
+    }
+    
+    /**
+     * Schedule the initialization of a component.
+     * 
+     * @param component
+     *            the component to initialize
+     */
+    void submit(final LifecycleManager component) {
+        if (executor == null) {
+            component.init();
+            return;
+        }
+        synchronized (this) {
+            pendingCount++;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        component.init();
+                    } finally {
+                        completed();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // The initializer has been shut down
+            completed();
+            component.init();
+        }
+    }
+    
+    private synchronized void completed() {
+        if (--pendingCount == 0) {
+            notifyAll();
+        }
+    }
+    
+    /**
+     * Wait until all submitted components have been initialized. Since the initialization of a
+     * component may make services available to other components, this includes the components
+     * that are submitted while waiting.
+     * 
+     * @param timeout
+     *            the maximum time to wait in milliseconds
+     * @return <code>true</code> if all components have been initialized; <code>false</code> if the
+     *         timeout expired
+     */
+    synchronized boolean awaitCompletion(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (pendingCount > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+    
+    void recordInitTime(LifecycleManager component, long duration) {
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Component {0} initialized in {1} us", new Object[] { component, duration });
+        }
+        synchronized (initTimes) {
+            initTimes.put(component.getName(), duration);
+        }
+    }
+    
+    /**
+     * Get the duration of the init method of each component.
+     * 
+     * @return the durations in microseconds by component class name, in the order in which the
+     *         components have been initialized
+     */
+    Map<String,Long> getInitTimes() {
+        synchronized (initTimes) {
+            return Collections.unmodifiableMap(new LinkedHashMap<String,Long>(initTimes));
+        }
+    }
+    
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
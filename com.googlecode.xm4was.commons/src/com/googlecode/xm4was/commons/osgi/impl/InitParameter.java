@@ -9,15 +9,20 @@ final class InitParameter implements InjectionTarget {
     }
 
     public void setObject(Object object) {
-        manager.performDestroyIfNecessary();
+        manager.setInitParameter(this, object);
+    }
+
+    // Only called with the lock on the manager held
+    void setValue(Object object) {
         this.object = object;
-        manager.performInitIfNecessary();
     }
 
+    // Only called with the lock on the manager held
     boolean isReady() {
         return object != null;
     }
 
+    // Only called with the lock on the manager held
     Object getObject() {
         return object;
     }
@@ -32,7 +32,7 @@ final class LifecycleImpl implements Lifecycle {
     }
     
     public <T> void addService(Class<T> clazz, T service, Dictionary<?, ?> properties) {
-        final ServiceRegistration registration = bundleContext.registerService(clazz.getName(), service, properties);
+        final ServiceRegistration registration = bundleContext.registerService(clazz.getName(), service, Util.createServiceProperties(properties));
         addStopAction(new Runnable() {
             public void run() {
                 registration.unregister();
@@ -1,5 +1,6 @@
 package com.googlecode.xm4was.commons.osgi.impl;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -7,6 +8,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
@@ -15,9 +18,21 @@ import com.googlecode.xm4was.commons.osgi.Lifecycle;
 import com.googlecode.xm4was.commons.osgi.ServiceSet;
 import com.googlecode.xm4was.commons.osgi.annotations.Init;
 import com.googlecode.xm4was.commons.osgi.annotations.Inject;
+import com.googlecode.xm4was.commons.resources.Messages;
 
+/**
+ * Manages the lifecycle of a component. The state of the manager is accessed by the threads that
+ * deliver service events and by the threads of the {@link ComponentInitializer}; access to it
+ * must be synchronized on the manager. The lock is never held while executing the init method of
+ * the component or while registering or unregistering services: these operations call into other
+ * components (and their managers) and holding the lock would expose us to deadlocks.
+ */
 final class LifecycleManager {
+    private static final Logger LOGGER = Logger.getLogger(LifecycleManager.class.getName(), Messages.class.getName());
+    
     private final BundleContext bundleContext;
+    private final ComponentInitializer initializer;
+    private final ServiceDispatcher dispatcher;
     private final String[] clazzes;
     private final Object service;
     private final Dictionary<String,?> properties;
@@ -25,11 +40,32 @@ final class LifecycleManager {
     private final Method initMethod;
     private final InitParameter[] initParameters;
     private boolean initialized;
+    
+    /**
+     * Indicates that the component has been submitted to the {@link ComponentInitializer}, but
+     * that its init method has not been executed yet.
+     */
+    private boolean initPending;
+    
+    /**
+     * Indicates that the init method of the component is being executed.
+     */
+    private boolean initializing;
+    
+    /**
+     * Incremented each time the component is destroyed or one of the parameters of its init method
+     * changes. This allows to detect that the result of an init method executed without holding
+     * the lock is no longer valid.
+     */
+    private long generation;
     private ServiceRegistration registration;
     private LifecycleImpl lifecycle;
     
-    LifecycleManager(BundleContext bundleContext, String[] clazzes, Object service, Dictionary<String,?> properties) {
+    LifecycleManager(BundleContext bundleContext, ComponentInitializer initializer, ServiceDispatcher dispatcher,
+            String[] clazzes, Object service, Dictionary<String,?> properties) {
         this.bundleContext = bundleContext;
+        this.initializer = initializer;
+        this.dispatcher = dispatcher;
         this.clazzes = clazzes;
         this.service = service;
         this.properties = properties;
@@ -59,6 +95,10 @@ final class LifecycleManager {
         }
     }
     
+    String getName() {
+        return service.getClass().getName();
+    }
+    
     public String toString() {
         return service.getClass().getName() + "[bundle=" + bundleContext.getBundle().getSymbolicName()
                 + ", services=" + (clazzes == null ? "<none>" : Arrays.asList(clazzes).toString()) + "]";
@@ -71,7 +111,7 @@ final class LifecycleManager {
         } else if (type == BundleContext.class) {
             injector = new StaticInjector(bundleContext, target);
         } else if (type instanceof ParameterizedType && ((ParameterizedType)type).getRawType() == ServiceSet.class) {
-            injector = new ServiceSetInjector(bundleContext, (Class<?>)((ParameterizedType)type).getActualTypeArguments()[0], target);
+            injector = new ServiceSetInjector(bundleContext, dispatcher, (Class<?>)((ParameterizedType)type).getActualTypeArguments()[0], target);
         } else {
             injector = new ServiceInjector(bundleContext, (Class<?>)type, target);
         }
@@ -94,35 +134,102 @@ final class LifecycleManager {
     }
     
     void performInitIfNecessary() {
-        if (!initialized) {
-            if (initMethod != null) {
+        long generation;
+        synchronized (this) {
+            if (initialized || initPending || initializing) {
+                return;
+            }
+            if (initMethod == null) {
+                initialized = true;
+            } else {
                 for (InitParameter param : initParameters) {
                     if (!param.isReady()) {
                         return;
                     }
                 }
-                Object[] params = new Object[initParameters.length];
-                for (int i=0; i<initParameters.length; i++) {
-                    params[i] = initParameters[i].getObject();
-                }
-                try {
-                    initMethod.invoke(service, params);
-                } catch (Throwable ex) {
-                    // TODO Auto-generated catch block
-                    ex.printStackTrace();
-                }
-                if (lifecycle != null) {
-                    lifecycle.started();
-                }
+                initPending = true;
+            }
+            generation = this.generation;
+        }
+        if (initMethod == null) {
+            registerService(generation);
+        } else {
+            initializer.submit(this);
+        }
+    }
+    
+    /**
+     * Execute the init method of the component and register its services. This method is called
+     * by the {@link ComponentInitializer}.
+     */
+    void init() {
+        Object[] params;
+        LifecycleImpl lifecycle;
+        long generation;
+        synchronized (this) {
+            if (!initPending) {
+                // The component has been stopped or one of the injected services has been removed
+                // after the component was submitted to the initializer
+                return;
+            }
+            initPending = false;
+            initializing = true;
+            params = new Object[initParameters.length];
+            for (int i=0; i<initParameters.length; i++) {
+                params[i] = initParameters[i].getObject();
+            }
+            lifecycle = this.lifecycle;
+            generation = this.generation;
+        }
+        long start = System.nanoTime();
+        try {
+            initMethod.invoke(service, params);
+        } catch (InvocationTargetException ex) {
+            LOGGER.log(Level.SEVERE, Messages._0024E, new Object[] { this, ex.getCause() });
+        } catch (Throwable ex) {
+            LOGGER.log(Level.SEVERE, Messages._0024E, new Object[] { this, ex });
+        }
+        initializer.recordInitTime(this, (System.nanoTime() - start)/1000);
+        if (lifecycle != null) {
+            lifecycle.started();
+        }
+        boolean current;
+        synchronized (this) {
+            initializing = false;
+            current = generation == this.generation;
+            if (current) {
+                initialized = true;
+            } else if (lifecycle != null) {
+                this.lifecycle = null;
             }
-            if (clazzes != null) {
-                registration = bundleContext.registerService(clazzes, service, properties);
+        }
+        if (current) {
+            registerService(generation);
+        } else {
+            // The component has been destroyed while the init method was executing; undo the
+            // initialization and check whether the component needs to be initialized again
+            if (lifecycle != null) {
+                lifecycle.stop();
+            }
+            performInitIfNecessary();
+        }
+    }
+    
+    private void registerService(long generation) {
+        if (clazzes != null) {
+            ServiceRegistration registration = bundleContext.registerService(clazzes, service, Util.createServiceProperties(properties));
+            synchronized (this) {
+                if (generation == this.generation) {
+                    this.registration = registration;
+                    return;
+                }
             }
+            // The component has been destroyed while the service was being registered
+            registration.unregister();
         }
-        initialized = true;
     }
     
-    Lifecycle createLifecycle() {
+    synchronized Lifecycle createLifecycle() {
         if (lifecycle != null) {
             throw new IllegalStateException();
         }
@@ -131,17 +238,48 @@ final class LifecycleManager {
     }
     
     void performDestroyIfNecessary() {
-        if (initialized) {
-            if (registration != null) {
-                registration.unregister();
-                registration = null;
+        destroy(null, null);
+    }
+    
+    /**
+     * Change the value of a parameter of the init method. The component is destroyed if it has
+     * been initialized with the previous value and initialized again if all parameters are
+     * available.
+     * 
+     * @param param
+     *            the parameter
+     * @param object
+     *            the new value, or <code>null</code> if the parameter is no longer available
+     */
+    void setInitParameter(InitParameter param, Object object) {
+        destroy(param, object);
+        performInitIfNecessary();
+    }
+    
+    private void destroy(InitParameter param, Object object) {
+        ServiceRegistration registration;
+        LifecycleImpl lifecycle;
+        synchronized (this) {
+            generation++;
+            initPending = false;
+            if (param != null) {
+                param.setValue(object);
             }
-            if (lifecycle != null) {
-                lifecycle.stop();
-                lifecycle = null;
+            if (!initialized) {
+                return;
             }
+            registration = this.registration;
+            this.registration = null;
+            lifecycle = this.lifecycle;
+            this.lifecycle = null;
             initialized = false;
         }
+        if (registration != null) {
+            registration.unregister();
+        }
+        if (lifecycle != null) {
+            lifecycle.stop();
+        }
     }
     
     BundleContext getBundleContext() {
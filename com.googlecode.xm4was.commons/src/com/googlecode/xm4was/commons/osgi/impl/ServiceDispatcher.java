@@ -0,0 +1,231 @@
+package com.googlecode.xm4was.commons.osgi.impl;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.commons.NamedThreadFactory;
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.osgi.ServiceVisitor;
+import com.googlecode.xm4was.commons.resources.Messages;
+
+/**
+ * Executes the asynchronous visits requested by {@link com.googlecode.xm4was.commons.osgi.ServiceSet#visitAsync(ServiceVisitor, long)}.
+ * Each service has its own {@link Queue}: visits of a given service are executed sequentially and
+ * in the order in which they have been requested, while visits of different services are executed
+ * concurrently on a bounded number of threads. A slow service therefore only delays the visits of
+ * that service. A visit that exceeds its timeout is interrupted.
+ * <p>
+ * The dispatcher records the latency of the visits (i.e. the time between the request and the
+ * completion of the visit) per service class.
+ */
+final class ServiceDispatcher {
+    private static final Logger LOGGER = Logger.getLogger(ServiceDispatcher.class.getName(), Messages.class.getName());
+    
+    private static final int THREADS = Integer.parseInt(System.getProperty(
+            "com.googlecode.xm4was.commons.osgi.impl.ServiceDispatcher.THREADS", "2"));
+    
+    /**
+     * The maximum number of pending visits per service. Further visits are discarded until the
+     * queue has been drained.
+     */
+    private static final int MAX_QUEUED = 1000;
+    
+    private static final class Visit<T> {
+        final ServiceVisitor<? super T> visitor;
+        final long timeout;
+        final long requestTime = System.nanoTime();
+        
+        Visit(ServiceVisitor<? super T> visitor, long timeout) {
+            this.visitor = visitor;
+            this.timeout = timeout;
+        }
+    }
+    
+    /**
+     * Interrupts a visit that exceeds its timeout. The lock on the watchdog ensures that the
+     * thread is not interrupted once the visit has completed.
+     */
+    private static final class Watchdog implements Runnable {
+        private final Thread thread;
+        private final Object service;
+        private final long timeout;
+        private boolean completed;
+        
+        Watchdog(Thread thread, Object service, long timeout) {
+            this.thread = thread;
+            this.service = service;
+            this.timeout = timeout;
+        }
+        
+        public synchronized void run() {
+            if (!completed) {
+                LOGGER.log(Level.WARNING, Messages._0027W, new Object[] { service.getClass().getName(), String.valueOf(timeout) });
+                thread.interrupt();
+            }
+        }
+        
+        synchronized void completed() {
+            completed = true;
+            // Clear the interrupt status so that it doesn't affect the next visit executed by the thread
+            Thread.interrupted();
+        }
+    }
+    
+    /**
+     * The pending visits for a given service.
+     */
+    final class Queue<T> implements Runnable {
+        private final T service;
+        private final StatisticAccumulator latency;
+        private final LinkedList<Visit<T>> visits = new LinkedList<Visit<T>>();
+        private boolean scheduled;
+        private boolean discarding;
+        private boolean closed;
+        
+        Queue(T service, StatisticAccumulator latency) {
+            this.service = service;
+            this.latency = latency;
+        }
+        
+        synchronized void add(ServiceVisitor<? super T> visitor, long timeout) {
+            if (closed) {
+                return;
+            }
+            if (visits.size() >= MAX_QUEUED) {
+                if (!discarding) {
+                    LOGGER.log(Level.WARNING, Messages._0028W, new Object[] { service.getClass().getName(), String.valueOf(MAX_QUEUED) });
+                    discarding = true;
+                }
+                return;
+            }
+            visits.add(new Visit<T>(visitor, timeout));
+            if (!scheduled) {
+                schedule();
+            }
+        }
+        
+        /**
+         * Discard the pending visits. This method is called when the service is unregistered.
+         */
+        synchronized void close() {
+            closed = true;
+            visits.clear();
+        }
+        
+        private void schedule() {
+            try {
+                executor.execute(this);
+                scheduled = true;
+            } catch (RejectedExecutionException ex) {
+                // The dispatcher has been shut down
+                visits.clear();
+                scheduled = false;
+            }
+        }
+        
+        public void run() {
+            Visit<T> visit;
+            synchronized (this) {
+                visit = visits.poll();
+            }
+            if (visit != null) {
+                execute(visit);
+            }
+            synchronized (this) {
+                if (visits.isEmpty()) {
+                    scheduled = false;
+                    discarding = false;
+                } else {
+                    // Reschedule instead of looping so that other queues get a chance to execute
+                    schedule();
+                }
+            }
+        }
+        
+        private void execute(Visit<T> visit) {
+            Watchdog watchdog = new Watchdog(Thread.currentThread(), service, visit.timeout);
+            ScheduledFuture<?> future;
+            try {
+                future = watchdogExecutor.schedule(watchdog, visit.timeout, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                // The dispatcher has been shut down
+                return;
+            }
+            try {
+                visit.visitor.visit(service);
+            } catch (Throwable ex) {
+                LOGGER.log(Level.SEVERE, Messages._0029E, new Object[] { service.getClass().getName(), ex });
+            } finally {
+                watchdog.completed();
+                future.cancel(false);
+            }
+            latency.add((System.nanoTime() - visit.requestTime)/1000);
+        }
+    }
+    
+    private final ThreadPoolExecutor executor;
+    
+    /**
+     * Executes the {@link Watchdog} instances. We use a separate thread so that timeouts are
+     * detected even if all threads of {@link #executor} are blocked.
+     */
+    private final ScheduledThreadPoolExecutor watchdogExecutor;
+    
+    private final ConcurrentMap<String,StatisticAccumulator> latencies = new ConcurrentHashMap<String,StatisticAccumulator>();
+    
+    ServiceDispatcher() {
+        int threads = Math.max(1, THREADS);
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("XM4WAS Service Dispatcher", LOGGER, Messages._0025E));
+        executor.allowCoreThreadTimeOut(true);
+        watchdogExecutor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("XM4WAS Service Dispatcher Watchdog", LOGGER, Messages._0025E));
+        // Remove the watchdogs of completed visits immediately
+        watchdogExecutor.setRemoveOnCancelPolicy(true);
+    }
+    
+    /**
+     * Create the queue for a service.
+     * 
+     * @param service
+     *            the service
+     * @return the queue
+     */
+    <T> Queue<T> createQueue(T service) {
+        String name = service.getClass().getName();
+        StatisticAccumulator latency = latencies.get(name);
+        if (latency == null) {
+            StatisticAccumulator newLatency = new StatisticAccumulator();
+            latency = latencies.putIfAbsent(name, newLatency);
+            if (latency == null) {
+                latency = newLatency;
+            }
+        }
+        return new Queue<T>(service, latency);
+    }
+    
+    /**
+     * Get the latency of the asynchronous visits.
+     * 
+     * @return the latencies in microseconds by service class name
+     */
+    Map<String,StatisticAccumulator> getLatencies() {
+        return Collections.unmodifiableMap(new TreeMap<String,StatisticAccumulator>(latencies));
+    }
+    
+    void shutdown() {
+        executor.shutdownNow();
+        watchdogExecutor.shutdownNow();
+    }
+}
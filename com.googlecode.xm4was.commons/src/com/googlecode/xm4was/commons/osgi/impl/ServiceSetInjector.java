@@ -1,7 +1,7 @@
 package com.googlecode.xm4was.commons.osgi.impl;
 
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -11,14 +11,32 @@ import com.googlecode.xm4was.commons.osgi.ServiceSet;
 import com.googlecode.xm4was.commons.osgi.ServiceVisitor;
 
 final class ServiceSetInjector<T> extends ServiceTracker implements Injector, ServiceSet<T> {
+    private static final class Entry<T> {
+        final T service;
+        final ServiceDispatcher.Queue<T> queue;
+        
+        Entry(T service, ServiceDispatcher.Queue<T> queue) {
+            this.service = service;
+            this.queue = queue;
+        }
+    }
+    
     private final BundleContext bundleContext;
+    private final ServiceDispatcher dispatcher;
     private final Class<T> clazz;
     private final InjectionTarget target;
-    private final List<T> services = new LinkedList<T>();
     
-    ServiceSetInjector(BundleContext bundleContext, Class<T> clazz, InjectionTarget target) {
+    /**
+     * The services. Visits are much more frequent than changes to the set of services; we use a
+     * copy-on-write list so that visits don't need to acquire a lock and don't block service
+     * registrations.
+     */
+    private final List<Entry<T>> services = new CopyOnWriteArrayList<Entry<T>>();
+    
+    ServiceSetInjector(BundleContext bundleContext, ServiceDispatcher dispatcher, Class<T> clazz, InjectionTarget target) {
         super(bundleContext, clazz.getName(), null);
         this.bundleContext = bundleContext;
+        this.dispatcher = dispatcher;
         this.clazz = clazz;
         this.target = target;
     }
@@ -32,25 +50,28 @@ final class ServiceSetInjector<T> extends ServiceTracker implements Injector, Se
     @Override
     public Object addingService(ServiceReference reference) {
         T service = clazz.cast(bundleContext.getService(reference));
-        synchronized (services) {
-            services.add(service);
-        }
-        return service;
+        Entry<T> entry = new Entry<T>(service, dispatcher.createQueue(service));
+        services.add(entry);
+        return entry;
     }
 
     @Override
-    public void removedService(ServiceReference reference, Object service) {
-        synchronized (services) {
-            services.remove(service);
-        }
+    public void removedService(ServiceReference reference, Object object) {
+        Entry<?> entry = (Entry<?>)object;
+        services.remove(entry);
+        entry.queue.close();
         bundleContext.ungetService(reference);
     }
 
     public void visit(ServiceVisitor<? super T> visitor) {
-        synchronized (services) {
-            for (T service : services) {
-                visitor.visit(service);
-            }
+        for (Entry<T> entry : services) {
+            visitor.visit(entry.service);
+        }
+    }
+
+    public void visitAsync(ServiceVisitor<? super T> visitor, long timeout) {
+        for (Entry<T> entry : services) {
+            entry.queue.add(visitor, timeout);
         }
     }
 }
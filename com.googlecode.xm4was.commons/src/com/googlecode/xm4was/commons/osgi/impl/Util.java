@@ -1,10 +1,15 @@
 package com.googlecode.xm4was.commons.osgi.impl;
 
 import java.lang.reflect.Method;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Hashtable;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 
+import com.googlecode.xm4was.commons.JmxConstants;
+
 final class Util {
     private Util() {}
     
@@ -19,4 +24,24 @@ final class Util {
             throw new RuntimeException(ex);
         }
     }
+    
+    /**
+     * Create the properties for a service registered by a component. This adds
+     * {@link JmxConstants#EXPORT_PROPERTY} to the given properties.
+     * 
+     * @param properties
+     *            the properties specified by the component; may be <code>null</code>
+     * @return the service properties
+     */
+    static Dictionary<Object,Object> createServiceProperties(Dictionary<?,?> properties) {
+        Hashtable<Object,Object> result = new Hashtable<Object,Object>();
+        if (properties != null) {
+            for (Enumeration<?> keys = properties.keys(); keys.hasMoreElements(); ) {
+                Object key = keys.nextElement();
+                result.put(key, properties.get(key));
+            }
+        }
+        result.put(JmxConstants.EXPORT_PROPERTY, "true");
+        return result;
+    }
 }
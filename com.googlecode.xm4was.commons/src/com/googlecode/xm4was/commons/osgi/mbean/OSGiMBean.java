@@ -25,4 +25,10 @@ public interface OSGiMBean {
     
     @Operation(description="Display installed bundles", impact=MBeanOperationInfo.INFO, role="monitor")
     String shortStatus();
+    
+    @Operation(description="Display the time spent in the initialization of each XM4WAS component", impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpComponentInitTimes();
+    
+    @Operation(description="Display the latency of asynchronous event dispatching to services", impact=MBeanOperationInfo.INFO, role="monitor")
+    String dumpDispatchLatencies();
 }
@@ -2,12 +2,15 @@ package com.googlecode.xm4was.commons.osgi.mbean;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
 import com.googlecode.xm4was.commons.osgi.annotations.Init;
+import com.googlecode.xm4was.commons.osgi.impl.BundleManager;
 import com.googlecode.xm4was.commons.osgi.annotations.Services;
 
 @Services(OSGiMBean.class)
@@ -25,10 +28,12 @@ public class OSGiMBeanImpl implements OSGiMBean {
     }
     
     private BundleContext bundleContext;
+    private BundleManager bundleManager;
     
     @Init
-    public void init(BundleContext bundleContext) {
+    public void init(BundleContext bundleContext, BundleManager bundleManager) {
         this.bundleContext = bundleContext;
+        this.bundleManager = bundleManager;
     }
     
     public String getOSName() {
@@ -69,4 +74,37 @@ public class OSGiMBeanImpl implements OSGiMBean {
         }
         return buffer.toString();
     }
+    
+    public String dumpComponentInitTimes() {
+        StringBuilder buffer = new StringBuilder();
+        long total = 0;
+        for (Map.Entry<String,Long> entry : bundleManager.getComponentInitTimes().entrySet()) {
+            long duration = entry.getValue();
+            pad(String.valueOf(TimeUnit.MICROSECONDS.toMillis(duration)) + " ms", buffer, 12);
+            buffer.append(entry.getKey());
+            buffer.append('\n');
+            total += duration;
+        }
+        buffer.append("Total: ");
+        buffer.append(TimeUnit.MICROSECONDS.toMillis(total));
+        buffer.append(" ms (components are initialized concurrently; this is not the elapsed time)\n");
+        return buffer.toString();
+    }
+    
+    public String dumpDispatchLatencies() {
+        StringBuilder buffer = new StringBuilder();
+        for (Map.Entry<String,StatisticAccumulator> entry : bundleManager.getDispatchLatencies().entrySet()) {
+            StatisticAccumulator latency = entry.getValue();
+            long count = latency.getCount();
+            buffer.append(entry.getKey());
+            buffer.append(": count=");
+            buffer.append(count);
+            buffer.append(", average=");
+            buffer.append(count == 0 ? 0 : latency.getTotal()/count);
+            buffer.append(" us, max=");
+            buffer.append(latency.getMax());
+            buffer.append(" us\n");
+        }
+        return buffer.toString();
+    }
 }
@@ -11,4 +11,18 @@ import com.github.veithen.rbeans.TargetClass;
 public interface HashMapRBean<K,V> extends Map<K,V>, RBean {
     @Accessor(name="modCount")
     int getModCount();
+    
+    /**
+     * Get the number of entries by reading the internal field directly. Contrary to
+     * {@link #size()}, this method doesn't go through the map's own methods and can therefore be
+     * used without synchronization if an approximate value is acceptable.
+     */
+    @Accessor(name="size")
+    int getSize();
+    
+    /**
+     * Get the internal hash table. The elements are the heads of the bucket chains.
+     */
+    @Accessor(name="table")
+    Object[] getTable();
 }
@@ -0,0 +1,102 @@
+package com.googlecode.xm4was.commons.rbeans;
+
+import java.lang.reflect.Field;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Samples the entries of a {@link java.util.HashMap} without acquiring the lock that protects it.
+ * The sampler reads the internal table and follows the bucket chains. Since the map may be modified
+ * concurrently, the result is only an approximation: entries may be missing or be reported
+ * although they have been removed. The number of entries examined is bounded, so that the sampler
+ * terminates even if it observes an inconsistent state.
+ */
+public final class HashMapSampler {
+    private static final class EntryFields {
+        final Field key;
+        final Field value;
+        final Field next;
+
+        EntryFields(Field key, Field value, Field next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Cache of the fields of the entry classes. These are JRE classes, so that the cache doesn't
+     * cause class loader leaks.
+     */
+    private static final Map<Class<?>,EntryFields> entryFields = new ConcurrentHashMap<Class<?>,EntryFields>();
+
+    private HashMapSampler() {}
+
+    /**
+     * Sample the entries of a hash map.
+     *
+     * @param map
+     *            the map
+     * @param maxEntries
+     *            the maximum number of entries to return
+     * @return the sampled entries; these are snapshots and are not backed by the map
+     */
+    public static List<Map.Entry<Object,Object>> sampleEntries(HashMapRBean<?,?> map, int maxEntries) {
+        List<Map.Entry<Object,Object>> entries = new ArrayList<Map.Entry<Object,Object>>();
+        Object[] table = map.getTable();
+        if (table == null || table.length == 0) {
+            return entries;
+        }
+        // Start at a random position so that repeated samples of large maps cover different buckets
+        int start = (int)(Math.random()*table.length);
+        for (int i=0; i<table.length && entries.size() < maxEntries; i++) {
+            Object entry = table[(start+i) % table.length];
+            while (entry != null && entries.size() < maxEntries) {
+                EntryFields fields = getEntryFields(entry.getClass());
+                if (fields == null) {
+                    return entries;
+                }
+                try {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<Object,Object>(fields.key.get(entry), fields.value.get(entry)));
+                    entry = fields.next.get(entry);
+                } catch (IllegalAccessException ex) {
+                    return entries;
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static EntryFields getEntryFields(Class<?> clazz) {
+        EntryFields fields = entryFields.get(clazz);
+        if (fields == null) {
+            Field key = findField(clazz, "key");
+            Field value = findField(clazz, "value");
+            Field next = findField(clazz, "next");
+            if (key == null || value == null || next == null) {
+                return null;
+            }
+            fields = new EntryFields(key, value, next);
+            entryFields.put(clazz, fields);
+        }
+        return fields;
+    }
+
+    private static Field findField(Class<?> clazz, String name) {
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            try {
+                Field field = current.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException ex) {
+                // Continue with superclass
+            } catch (RuntimeException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -17,6 +17,25 @@ public class Messages extends ListResourceBundle {
     public static final String _0014E = "0014E";
     public static final String _0015E = "0015E";
     public static final String _0016E = "0016E";
+    public static final String _0017E = "0017E";
+    public static final String _0018E = "0018E";
+    public static final String _0019I = "0019I";
+    public static final String _0020E = "0020E";
+    public static final String _0021E = "0021E";
+    public static final String _0022E = "0022E";
+    public static final String _0023E = "0023E";
+    public static final String _0024E = "0024E";
+    public static final String _0025E = "0025E";
+    public static final String _0026W = "0026W";
+    public static final String _0027W = "0027W";
+    public static final String _0028W = "0028W";
+    public static final String _0029E = "0029E";
+    public static final String _0030E = "0030E";
+    public static final String _0031W = "0031W";
+    public static final String _0032E = "0032E";
+    public static final String _0033W = "0033W";
+    public static final String _0034E = "0034E";
+    public static final String _0035W = "0035W";
     
     private static final Object[][] contents = {
         { _0001E, "XMCMN0001E: Failed to execute stop action\n{0}" },
@@ -33,6 +52,25 @@ public class Messages extends ListResourceBundle {
         { _0014E, "XMCMN0014E: Failed to update statistic {0}" },
         { _0015E, "XMCMN0015E: Failed to register PMI statistics\n{0}" },
         { _0016E, "XMCMN0016E: Unknown PMI statistic type {0}" },
+        { _0017E, "XMCMN0017E: {0} declares notifications, but {1} doesn't implement NotificationBroadcaster" },
+        { _0018E, "XMCMN0018E: Statistic {0} is an average or time statistic, but {1} doesn't return a StatisticAccumulator" },
+        { _0019I, "XMCMN0019I: OpenMetrics endpoint listening on {0}" },
+        { _0020E, "XMCMN0020E: Failed to start the OpenMetrics endpoint:\n{0}" },
+        { _0021E, "XMCMN0021E: The OpenMetrics endpoint stopped unexpectedly:\n{0}" },
+        { _0022E, "XMCMN0022E: Failed to register the metrics for {0}:\n{1}" },
+        { _0023E, "XMCMN0023E: Unexpected exception while sampling metrics:\n{0}" },
+        { _0024E, "XMCMN0024E: The XM4WAS component {0} could not be initialized:\n{1}" },
+        { _0025E, "XMCMN0025E: Unexpected exception during component initialization\n{0}" },
+        { _0026W, "XMCMN0026W: The initialization of the XM4WAS components has not completed after {0} seconds; continuing server startup" },
+        { _0027W, "XMCMN0027W: The service {0} did not complete an asynchronous visit within {1} ms; interrupting the visit" },
+        { _0028W, "XMCMN0028W: The service {0} has more than {1} pending asynchronous visits; discarding further visits" },
+        { _0029E, "XMCMN0029E: Unexpected exception during the asynchronous visit of service {0}:\n{1}" },
+        { _0030E, "XMCMN0030E: Unexpected exception while delivering an event of type {0}:\n{1}" },
+        { _0031W, "XMCMN0031W: The event queue is full (capacity {1}); discarding events of type {0}" },
+        { _0032E, "XMCMN0032E: Unexpected exception while rendering the metrics for the OpenMetrics endpoint:\n{0}" },
+        { _0033W, "XMCMN0033W: Invalid value {1} for {0}; the value must be positive. The metric history is disabled." },
+        { _0034E, "XMCMN0034E: No method found for statistic {0}; the statistic will not be updated" },
+        { _0035W, "XMCMN0035W: Invalid value {1} for system property {0}; the value must be a non negative integer. Using the default value." },
     };
 
     @Override
@@ -17,6 +17,7 @@ import javax.management.JMException;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import com.googlecode.xm4was.commons.NamedThreadFactory;
 import com.googlecode.xm4was.commons.jmx.ManagementService;
 import com.googlecode.xm4was.commons.osgi.Lifecycle;
 import com.googlecode.xm4was.commons.osgi.annotations.Init;
@@ -78,7 +79,7 @@ public class EJBMonitor implements EJBMonitorMBean {
             // core pool size to 0
             corePoolSize = 0;
         }
-        executor = new ThreadPoolExecutor(corePoolSize, 10, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("EJBMonitor"));
+        executor = new ThreadPoolExecutor(corePoolSize, 10, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("EJBMonitor", LOGGER, Messages._0003E));
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.log(Level.FINEST, "Created ThreadPoolExecutor with corePoolSize={0} and keepAliveTime={1}", new Object[] { executor.getCorePoolSize(), executor.getKeepAliveTime(TimeUnit.SECONDS) });
         }
@@ -1,11 +1,14 @@
 package com.googlecode.xm4was.pmi.proc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -21,8 +24,30 @@ public class ProcUtilsTest {
                 out.close();
             }
             assertEquals(1089028096, ProcUtils.getLongValue(file, 22));
+            long[] values = ProcUtils.getLongValues(file, 9, 11);
+            assertEquals(155825, values[0]);
+            assertEquals(20, values[1]);
         } finally {
             file.delete();
         }
     }
+    
+    @Test
+    public void testGetFileDescriptorTargets() throws Exception {
+        File dir = File.createTempFile("xm4was", "fd");
+        dir.delete();
+        dir.mkdir();
+        File target = File.createTempFile("xm4was", ".jar");
+        File link = new File(dir, "3");
+        try {
+            Files.createSymbolicLink(link.toPath(), target.toPath());
+            List<String> targets = ProcUtils.getFileDescriptorTargets(dir);
+            assertEquals(1, targets.size());
+            assertTrue(targets.contains(target.getCanonicalPath()));
+        } finally {
+            link.delete();
+            target.delete();
+            dir.delete();
+        }
+    }
 }
@@ -1,5 +1,12 @@
 package com.googlecode.xm4was.pmi.zfc;
 
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
 import org.junit.Test;
 
 public class ZipFileCacheMonitorTest {
@@ -7,4 +14,56 @@ public class ZipFileCacheMonitorTest {
     public void test() throws Exception {
         new ZipFileCacheMonitor().getModCount();
     }
+
+    private static void testGetCentralDirectorySize(String comment) throws Exception {
+        File file = File.createTempFile("xm4was", ".zip");
+        try {
+            String[] names = { "a.txt", "dir/b.txt", "dir/subdir/c.txt" };
+            long expected = 0;
+            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+            try {
+                for (String name : names) {
+                    out.putNextEntry(new ZipEntry(name));
+                    out.write(name.getBytes("ascii"));
+                    out.closeEntry();
+                    // Size of the central directory file header without extra field and comment
+                    expected += 46 + name.length();
+                }
+                if (comment != null) {
+                    out.setComment(comment);
+                }
+            } finally {
+                out.close();
+            }
+            assertEquals(expected, ZipFileCacheMonitor.getCentralDirectorySize(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testGetCentralDirectorySize() throws Exception {
+        testGetCentralDirectorySize(null);
+    }
+
+    @Test
+    public void testGetCentralDirectorySizeWithComment() throws Exception {
+        testGetCentralDirectorySize("Archive with a comment");
+    }
+
+    @Test
+    public void testGetCentralDirectorySizeNotAZipFile() throws Exception {
+        File file = File.createTempFile("xm4was", ".zip");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(new byte[100]);
+            } finally {
+                out.close();
+            }
+            assertEquals(0, ZipFileCacheMonitor.getCentralDirectorySize(file));
+        } finally {
+            file.delete();
+        }
+    }
 }
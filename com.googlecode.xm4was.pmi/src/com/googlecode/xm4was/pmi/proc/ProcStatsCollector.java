@@ -3,9 +3,10 @@ package com.googlecode.xm4was.pmi.proc;
 import java.io.File;
 import java.io.IOException;
 
+import com.googlecode.xm4was.commons.jmx.StatisticsSnapshotProvider;
 import com.ibm.wsspi.pmi.factory.StatisticActions;
 
-public class ProcStatsCollector extends StatisticActions implements ProcStatsCollectorMBean {
+public class ProcStatsCollector extends StatisticActions implements ProcStatsCollectorMBean, StatisticsSnapshotProvider<ProcStatsCollectorMBean> {
     private final File fdDir;
     private final File statmFile;
     private final File statFile;
@@ -37,4 +38,13 @@ public class ProcStatsCollector extends StatisticActions implements ProcStatsCol
     public long getMajorFaults() throws IOException {
         return ProcUtils.getLongValue(statFile, 11);
     }
+
+    /**
+     * Create a snapshot of the statistics. Each file in <tt>/proc</tt> is read only once.
+     */
+    public ProcStatsCollectorMBean createStatisticsSnapshot() throws IOException {
+        long[] statm = ProcUtils.getLongValues(statmFile, 0, 1);
+        long[] stat = ProcUtils.getLongValues(statFile, 9, 11);
+        return new ProcStatsSnapshot(getFileDescriptors(), statm[0]*pageSize, statm[1]*pageSize, stat[0], stat[1]);
+    }
 }
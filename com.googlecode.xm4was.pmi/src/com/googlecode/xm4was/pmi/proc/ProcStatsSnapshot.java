@@ -0,0 +1,40 @@
+package com.googlecode.xm4was.pmi.proc;
+
+/**
+ * Snapshot of the statistics collected by {@link ProcStatsCollector}.
+ */
+final class ProcStatsSnapshot implements ProcStatsCollectorMBean {
+    private final int fileDescriptors;
+    private final long vmSize;
+    private final long vmRSS;
+    private final long minorFaults;
+    private final long majorFaults;
+
+    ProcStatsSnapshot(int fileDescriptors, long vmSize, long vmRSS, long minorFaults, long majorFaults) {
+        this.fileDescriptors = fileDescriptors;
+        this.vmSize = vmSize;
+        this.vmRSS = vmRSS;
+        this.minorFaults = minorFaults;
+        this.majorFaults = majorFaults;
+    }
+
+    public int getFileDescriptors() {
+        return fileDescriptors;
+    }
+
+    public long getVmSize() {
+        return vmSize;
+    }
+
+    public long getVmRSS() {
+        return vmRSS;
+    }
+
+    public long getMinorFaults() {
+        return minorFaults;
+    }
+
+    public long getMajorFaults() {
+        return majorFaults;
+    }
+}
@@ -5,17 +5,63 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 
 public final class ProcUtils {
     private ProcUtils() {}
     
     public static long getLongValue(File file, int position) throws IOException {
+        return getLongValues(file, position)[0];
+    }
+    
+    /**
+     * Read several values from the first line of a file. The file is read only once, so that the
+     * values are consistent with each other.
+     * 
+     * @param file
+     *            the file to read
+     * @param positions
+     *            the positions of the values in the line
+     * @return the values, in the same order as the positions
+     * @throws IOException
+     *             if the file could not be read
+     */
+    public static long[] getLongValues(File file, int... positions) throws IOException {
         BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "ascii"));
         try {
-            String line = in.readLine();
-            return Long.parseLong(line.split("\\s+")[position]);
+            String[] fields = in.readLine().split("\\s+");
+            long[] values = new long[positions.length];
+            for (int i=0; i<positions.length; i++) {
+                values[i] = Long.parseLong(fields[positions[i]]);
+            }
+            return values;
         } finally {
             in.close();
         }
     }
+    
+    /**
+     * Get the files referenced by the entries of a <tt>/proc/&lt;pid&gt;/fd</tt> directory.
+     * Descriptors that are closed while the directory is being read are skipped.
+     * 
+     * @param fdDir
+     *            the directory
+     * @return the canonical paths of the referenced files; for descriptors that don't refer to
+     *         files (such as sockets or pipes), the link target is returned as is
+     */
+    public static List<String> getFileDescriptorTargets(File fdDir) {
+        List<String> result = new ArrayList<String>();
+        File[] links = fdDir.listFiles();
+        if (links != null) {
+            for (File link : links) {
+                try {
+                    result.add(link.getCanonicalPath());
+                } catch (IOException ex) {
+                    // The descriptor has been closed in the meantime
+                }
+            }
+        }
+        return result;
+    }
 }
@@ -1,12 +1,124 @@
 package com.googlecode.xm4was.pmi.zfc;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipFile;
+
 import com.github.veithen.rbeans.RBeanFactory;
 import com.googlecode.xm4was.commons.osgi.annotations.Services;
 import com.googlecode.xm4was.commons.rbeans.HashMapRBean;
+import com.googlecode.xm4was.commons.rbeans.HashMapSampler;
+import com.googlecode.xm4was.pmi.proc.ProcUtils;
+import com.googlecode.xm4was.pmi.resources.Messages;
 
+/**
+ * Monitors the ZIP file cache of {@link com.ibm.ws.classloader.SinglePathClassProvider}. The
+ * statistics are computed from a snapshot of the cache that is refreshed on request, but at most
+ * once per {@link #REFRESH_INTERVAL}. The cache is read without acquiring its lock (see
+ * {@link HashMapSampler}), so that the values are approximate. Refreshing the snapshot may require
+ * reading the central directories of many archives; while a refresh is in progress, other callers
+ * get the previous snapshot.
+ * <p>
+ * The number of file descriptors is determined using the same <tt>/proc/&lt;pid&gt;/fd</tt>
+ * directory as {@link com.googlecode.xm4was.pmi.proc.ProcStatsCollector}. This allows to determine
+ * how many of the file descriptors reported by that collector are used by archives and in
+ * particular by archives in the cache.
+ */
 @Services(ZipFileCacheMonitorMBean.class)
 public class ZipFileCacheMonitor implements ZipFileCacheMonitorMBean {
+    private static final Logger LOGGER = Logger.getLogger(ZipFileCacheMonitor.class.getName(), Messages.class.getName());
+    
+    /**
+     * The minimum interval (in milliseconds) between two refreshes of the snapshot.
+     */
+    private static final long REFRESH_INTERVAL = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.pmi.ZipFileCacheMonitor.REFRESH_INTERVAL", "10000"));
+    
+    /**
+     * The maximum number of cache entries examined during a refresh.
+     */
+    private static final int MAX_ENTRIES = 10000;
+    
+    /**
+     * The number of archives included in the report produced by {@link #dumpLargestArchives()}.
+     */
+    private static final int MAX_LARGEST = 20;
+    
+    /**
+     * The maximum size of the end of central directory record, including the ZIP file comment.
+     */
+    private static final int MAX_EOCD_SIZE = 22 + 0xFFFF;
+    
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    
+    private static final File fdDir = new File("/proc/self/fd");
+    
+    private static final class Archive {
+        final String path;
+        final long size;
+        final long lastModified;
+        final long centralDirectorySize;
+        
+        Archive(String path, long size, long lastModified, long centralDirectorySize) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.centralDirectorySize = centralDirectorySize;
+        }
+    }
+    
+    private static final class Snapshot {
+        final long time;
+        final int modCount;
+        final int cachedArchiveCount;
+        final List<Archive> archives;
+        final long totalSize;
+        final long totalCentralDirectorySize;
+        final int archiveFileDescriptors;
+        final int cachedArchiveFileDescriptors;
+        final Set<String> openArchives;
+        final int churnRate;
+        
+        Snapshot(long time, int modCount, int cachedArchiveCount, List<Archive> archives,
+                long totalSize, long totalCentralDirectorySize, int archiveFileDescriptors,
+                int cachedArchiveFileDescriptors, Set<String> openArchives, int churnRate) {
+            this.time = time;
+            this.modCount = modCount;
+            this.cachedArchiveCount = cachedArchiveCount;
+            this.archives = archives;
+            this.totalSize = totalSize;
+            this.totalCentralDirectorySize = totalCentralDirectorySize;
+            this.archiveFileDescriptors = archiveFileDescriptors;
+            this.cachedArchiveFileDescriptors = cachedArchiveFileDescriptors;
+            this.openArchives = openArchives;
+            this.churnRate = churnRate;
+        }
+    }
+    
     private final HashMapRBean<?,?> zipFileCache;
+    
+    /**
+     * Archive metadata by canonical path. Entries are reused as long as the size and last
+     * modification time of the file don't change, so that the central directory is only read
+     * once per archive. The map is only accessed by the thread that refreshes the snapshot.
+     */
+    private volatile Map<String,Archive> archiveCache = new HashMap<String,Archive>();
+    
+    private volatile Snapshot snapshot;
+    
+    private final AtomicBoolean refreshing = new AtomicBoolean();
 
     public ZipFileCacheMonitor() throws Exception {
         zipFileCache = (HashMapRBean<?,?>)new RBeanFactory(SinglePathClassProviderRBean.class).createRBean(SinglePathClassProviderRBean.class).getZipFileCache();
@@ -15,4 +127,224 @@ public class ZipFileCacheMonitor implements ZipFileCacheMonitorMBean {
     public int getModCount() {
         return zipFileCache.getModCount();
     }
+    
+    public int getCachedArchiveCount() {
+        return getSnapshot().cachedArchiveCount;
+    }
+    
+    public long getTotalArchiveSize() {
+        return getSnapshot().totalSize;
+    }
+    
+    public long getTotalCentralDirectorySize() {
+        return getSnapshot().totalCentralDirectorySize;
+    }
+    
+    public int getArchiveFileDescriptors() {
+        return getSnapshot().archiveFileDescriptors;
+    }
+    
+    public int getCachedArchiveFileDescriptors() {
+        return getSnapshot().cachedArchiveFileDescriptors;
+    }
+    
+    public int getChurnRate() {
+        return getSnapshot().churnRate;
+    }
+    
+    public String dumpLargestArchives() {
+        Snapshot snapshot = getSnapshot();
+        List<Archive> archives = new ArrayList<Archive>(snapshot.archives);
+        Collections.sort(archives, new Comparator<Archive>() {
+            public int compare(Archive o1, Archive o2) {
+                return o1.size < o2.size ? 1 : (o1.size == o2.size ? 0 : -1);
+            }
+        });
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("Cached archives: ");
+        buffer.append(snapshot.cachedArchiveCount);
+        buffer.append("\nTotal size: ");
+        buffer.append(snapshot.totalSize);
+        buffer.append(" bytes\nTotal central directory size: ");
+        buffer.append(snapshot.totalCentralDirectorySize);
+        buffer.append(" bytes\nFile descriptors (archives/cached archives): ");
+        buffer.append(snapshot.archiveFileDescriptors);
+        buffer.append("/");
+        buffer.append(snapshot.cachedArchiveFileDescriptors);
+        buffer.append("\nChurn rate: ");
+        buffer.append(snapshot.churnRate);
+        buffer.append(" modifications/min");
+        for (Archive archive : archives.subList(0, Math.min(MAX_LARGEST, archives.size()))) {
+            buffer.append("\n  ");
+            buffer.append(archive.size);
+            buffer.append(" bytes (central directory ");
+            buffer.append(archive.centralDirectorySize);
+            buffer.append(" bytes");
+            if (snapshot.openArchives.contains(archive.path)) {
+                buffer.append(", open");
+            }
+            buffer.append(") ");
+            buffer.append(archive.path);
+        }
+        return buffer.toString();
+    }
+    
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            // There is nothing we could return yet; wait for the initial snapshot
+            synchronized (this) {
+                snapshot = this.snapshot;
+                if (snapshot == null) {
+                    snapshot = refresh(null);
+                    this.snapshot = snapshot;
+                }
+            }
+        } else if (System.currentTimeMillis() - snapshot.time >= REFRESH_INTERVAL
+                && refreshing.compareAndSet(false, true)) {
+            try {
+                snapshot = refresh(snapshot);
+                this.snapshot = snapshot;
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return snapshot;
+    }
+    
+    private Snapshot refresh(Snapshot previous) {
+        long time = System.currentTimeMillis();
+        int modCount = zipFileCache.getModCount();
+        int cachedArchiveCount = zipFileCache.getSize();
+        Map<String,Archive> newArchiveCache = new HashMap<String,Archive>();
+        List<Archive> archives = new ArrayList<Archive>();
+        long totalSize = 0;
+        long totalCentralDirectorySize = 0;
+        for (Map.Entry<Object,Object> entry : HashMapSampler.sampleEntries(zipFileCache, MAX_ENTRIES)) {
+            String path = getArchivePath(entry);
+            if (path == null || newArchiveCache.containsKey(path)) {
+                continue;
+            }
+            Archive archive = getArchive(path);
+            if (archive != null) {
+                newArchiveCache.put(path, archive);
+                archives.add(archive);
+                totalSize += archive.size;
+                totalCentralDirectorySize += archive.centralDirectorySize;
+            }
+        }
+        archiveCache = newArchiveCache;
+        int archiveFileDescriptors = 0;
+        int cachedArchiveFileDescriptors = 0;
+        Set<String> openArchives = new HashSet<String>();
+        if (fdDir.exists()) {
+            for (String target : ProcUtils.getFileDescriptorTargets(fdDir)) {
+                if (isArchive(target)) {
+                    archiveFileDescriptors++;
+                    if (newArchiveCache.containsKey(target)) {
+                        cachedArchiveFileDescriptors++;
+                        openArchives.add(target);
+                    }
+                }
+            }
+        }
+        int churnRate;
+        if (previous == null || time == previous.time) {
+            churnRate = 0;
+        } else {
+            // modCount is an int that may wrap around; the difference is still correct
+            churnRate = (int)((modCount - previous.modCount)*60000L/(time - previous.time));
+        }
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Refreshed ZIP file cache snapshot in {0} ms; {1} archives examined",
+                    new Object[] { System.currentTimeMillis() - time, archives.size() });
+        }
+        return new Snapshot(time, modCount, cachedArchiveCount, archives, totalSize, totalCentralDirectorySize,
+                archiveFileDescriptors, cachedArchiveFileDescriptors, openArchives, churnRate);
+    }
+    
+    /**
+     * Determine the canonical path of the archive referenced by an entry of the ZIP file cache.
+     * Since the structure of the cache is internal to WebSphere, we support the cases where the
+     * key is the path or a {@link File} and the case where the value is a {@link ZipFile}.
+     */
+    private static String getArchivePath(Map.Entry<Object,Object> entry) {
+        Object key = entry.getKey();
+        Object value = entry.getValue();
+        String path;
+        if (value instanceof ZipFile) {
+            path = ((ZipFile)value).getName();
+        } else if (key instanceof File) {
+            path = ((File)key).getPath();
+        } else if (key instanceof String) {
+            path = (String)key;
+        } else {
+            return null;
+        }
+        try {
+            return new File(path).getCanonicalPath();
+        } catch (IOException ex) {
+            return path;
+        }
+    }
+    
+    private Archive getArchive(String path) {
+        File file = new File(path);
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (size == 0) {
+            // The file doesn't exist (anymore)
+            return null;
+        }
+        Archive archive = archiveCache.get(path);
+        if (archive == null || archive.size != size || archive.lastModified != lastModified) {
+            archive = new Archive(path, size, lastModified, getCentralDirectorySize(file));
+        }
+        return archive;
+    }
+    
+    /**
+     * Determine the size of the central directory of a ZIP file by reading the end of central
+     * directory record. This is the part of the archive that the ZIP implementation keeps in
+     * memory (or maps) while the file is open.
+     * 
+     * @param file
+     *            the ZIP file
+     * @return the size in bytes, or 0 if the end of central directory record couldn't be found
+     */
+    static long getCentralDirectorySize(File file) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                long length = raf.length();
+                int bufferSize = (int)Math.min(length, MAX_EOCD_SIZE);
+                byte[] buffer = new byte[bufferSize];
+                raf.seek(length - bufferSize);
+                raf.readFully(buffer);
+                for (int i=bufferSize-22; i>=0; i--) {
+                    if (getInt(buffer, i) == EOCD_SIGNATURE) {
+                        return getInt(buffer, i+12) & 0xFFFFFFFFL;
+                    }
+                }
+                return 0;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ex) {
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "Unable to read central directory of " + file, ex);
+            }
+            return 0;
+        }
+    }
+    
+    private static int getInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset+1] & 0xFF) << 8
+                | (buffer[offset+2] & 0xFF) << 16 | (buffer[offset+3] & 0xFF) << 24;
+    }
+    
+    private static boolean isArchive(String path) {
+        String lowerCasePath = path.toLowerCase();
+        return lowerCasePath.endsWith(".jar") || lowerCasePath.endsWith(".zip") || lowerCasePath.endsWith(".rar");
+    }
 }
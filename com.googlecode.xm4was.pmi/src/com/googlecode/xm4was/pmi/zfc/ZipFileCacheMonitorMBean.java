@@ -1,10 +1,37 @@
 package com.googlecode.xm4was.pmi.zfc;
 
+import javax.management.MBeanOperationInfo;
+
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.Operation;
 import com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled;
 import com.googlecode.xm4was.commons.jmx.annotations.Statistic;
 
 @PMIEnabled(instanceName="ZipFileCacheStats", statsTemplate="/com/googlecode/xm4was/pmi/ZipFileCacheStats.xml")
+@MBean(type="ZipFileCacheMonitor", description="Monitors the ZIP file cache used by the WebSphere class loaders")
 public interface ZipFileCacheMonitorMBean {
     @Statistic(id=1)
     int getModCount();
+    
+    @Statistic(id=2)
+    int getCachedArchiveCount();
+    
+    @Statistic(id=3)
+    long getTotalArchiveSize();
+    
+    @Statistic(id=4)
+    long getTotalCentralDirectorySize();
+    
+    @Statistic(id=5)
+    int getArchiveFileDescriptors();
+    
+    @Statistic(id=6)
+    int getCachedArchiveFileDescriptors();
+    
+    @Statistic(id=7)
+    int getChurnRate();
+    
+    @Operation(description="Produces a report of the largest archives in the ZIP file cache",
+            role="monitor", impact=MBeanOperationInfo.INFO)
+    String dumpLargestArchives();
 }
@@ -0,0 +1,88 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the time needed to capture the stack traces of a 400 thread pool with one
+ * {@link Thread#getStackTrace()} call per thread (the approach used by earlier versions of
+ * {@link ThreadMonitor}) and with a single {@link ThreadMXBean#getThreadInfo(long[], int)} call.
+ * Each call brings the target threads to a safepoint, so the total capture time is a good measure
+ * of the pauses imposed on the application. This is not part of the unit tests because the
+ * results depend on the environment; run it manually using its <code>main</code> method.
+ */
+public final class ThreadCaptureBenchmark {
+    private static final int THREADS = 400;
+    private static final int STACK_DEPTH = 50;
+    private static final int ITERATIONS = 50;
+    
+    private ThreadCaptureBenchmark() {}
+    
+    static void recurse(int depth, CountDownLatch started, CountDownLatch release) throws InterruptedException {
+        if (depth == 0) {
+            started.countDown();
+            release.await();
+        } else {
+            recurse(depth-1, started, release);
+        }
+    }
+    
+    private static long measurePerThread(Thread[] threads) {
+        long start = System.nanoTime();
+        for (int i=0; i<ITERATIONS; i++) {
+            for (Thread thread : threads) {
+                thread.getStackTrace();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static long measureBulk(ThreadMXBean threadMXBean, long[] ids, int maxDepth) {
+        long start = System.nanoTime();
+        for (int i=0; i<ITERATIONS; i++) {
+            ThreadInfo[] infos = threadMXBean.getThreadInfo(ids, maxDepth);
+            if (infos.length != ids.length) {
+                throw new IllegalStateException();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        final CountDownLatch started = new CountDownLatch(THREADS);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        long[] ids = new long[THREADS];
+        for (int i=0; i<THREADS; i++) {
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        recurse(STACK_DEPTH, started, release);
+                    } catch (InterruptedException ex) {
+                        // Just exit
+                    }
+                }
+            }, "Benchmark-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+            ids[i] = threads[i].getId();
+        }
+        started.await();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        try {
+            // Warm up
+            for (int i=0; i<3; i++) {
+                measurePerThread(threads);
+                measureBulk(threadMXBean, ids, Integer.MAX_VALUE);
+                measureBulk(threadMXBean, ids, 20);
+            }
+            System.out.println("Capture of " + THREADS + " threads (us/dump): per thread " + measurePerThread(threads)/ITERATIONS/1000
+                    + ", bulk " + measureBulk(threadMXBean, ids, Integer.MAX_VALUE)/ITERATIONS/1000
+                    + ", bulk with max depth 20 " + measureBulk(threadMXBean, ids, 20)/ITERATIONS/1000);
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ThreadMonitorTest {
+    @Test
+    public void testParseMaxStackDepth() {
+        assertEquals(50, ThreadMonitor.parseMaxStackDepth("50"));
+    }
+    
+    @Test
+    public void testParseMaxStackDepthNotSet() {
+        assertEquals(Integer.MAX_VALUE, ThreadMonitor.parseMaxStackDepth(null));
+    }
+    
+    @Test
+    public void testParseMaxStackDepthNotPositive() {
+        assertEquals(Integer.MAX_VALUE, ThreadMonitor.parseMaxStackDepth("0"));
+        assertEquals(Integer.MAX_VALUE, ThreadMonitor.parseMaxStackDepth("-1"));
+    }
+    
+    @Test
+    public void testParseMaxStackDepthInvalid() {
+        assertEquals(Integer.MAX_VALUE, ThreadMonitor.parseMaxStackDepth("abc"));
+    }
+}
@@ -3,4 +3,11 @@ package com.googlecode.xm4was.threadmon;
 public interface ThreadInfo {
     public abstract String getName();
     public abstract ModuleInfo getModuleInfo();
+    
+    /**
+     * Get the thread.
+     * 
+     * @return the thread, or <code>null</code> if it has been garbage collected
+     */
+    public abstract Thread getThread();
 }
\ No newline at end of file
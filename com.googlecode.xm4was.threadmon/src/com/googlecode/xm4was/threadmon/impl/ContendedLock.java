@@ -0,0 +1,75 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+/**
+ * Contention statistics for a single lock. Instances of this class are only accessed while holding
+ * the lock on the {@link ContentionMonitor}.
+ */
+final class ContendedLock {
+    /**
+     * The factor applied to the score of every lock after each sample, so that locks that are no
+     * longer contended eventually disappear from the report.
+     */
+    static final double DECAY = 0.98;
+    
+    private final String lockName;
+    private double score;
+    private long blockedSamples;
+    private int maxBlockedThreads;
+    private String ownerName;
+    private StackTraceElement ownerFrame;
+    
+    ContendedLock(String lockName) {
+        this.lockName = lockName;
+    }
+
+    String getLockName() {
+        return lockName;
+    }
+
+    void decay() {
+        score *= DECAY;
+    }
+
+    /**
+     * Record a sample in which threads were blocked on this lock.
+     * 
+     * @param blockedThreads
+     *            the number of threads blocked on the lock
+     * @param ownerName
+     *            the name of the thread owning the lock, or <code>null</code> if unknown
+     */
+    void addSample(int blockedThreads, String ownerName) {
+        score += blockedThreads;
+        blockedSamples += blockedThreads;
+        if (blockedThreads > maxBlockedThreads) {
+            maxBlockedThreads = blockedThreads;
+        }
+        if (ownerName != null) {
+            this.ownerName = ownerName;
+        }
+    }
+
+    void setOwnerFrame(StackTraceElement ownerFrame) {
+        this.ownerFrame = ownerFrame;
+    }
+
+    double getScore() {
+        return score;
+    }
+
+    long getBlockedSamples() {
+        return blockedSamples;
+    }
+
+    int getMaxBlockedThreads() {
+        return maxBlockedThreads;
+    }
+
+    String getOwnerName() {
+        return ownerName;
+    }
+
+    StackTraceElement getOwnerFrame() {
+        return ownerFrame;
+    }
+}
@@ -0,0 +1,360 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.osgi.Lifecycle;
+import com.googlecode.xm4was.commons.osgi.annotations.Init;
+import com.googlecode.xm4was.commons.osgi.annotations.Inject;
+import com.googlecode.xm4was.commons.osgi.annotations.Services;
+import com.googlecode.xm4was.threadmon.UnmanagedThreadMonitor;
+import com.googlecode.xm4was.threadmon.resources.Messages;
+import com.ibm.ws.util.ThreadPool;
+
+/**
+ * Periodically samples contention data for WebSphere thread pool workers and unmanaged threads.
+ * To make sure that the monitor can be left enabled permanently, the sampling interval is adjusted
+ * dynamically: it decreases when contention is observed, increases when there is no contention
+ * and is always large enough to keep the sampling overhead below {@link #MAX_OVERHEAD}. The amount
+ * of data collected is bounded by {@link #MAX_LOCKS}.
+ */
+@Services(ContentionMonitorMBean.class)
+public class ContentionMonitor implements ContentionMonitorMBean {
+    private static final Logger LOGGER = Logger.getLogger(ContentionMonitor.class.getName(), Messages.class.getName());
+
+    private static final long MIN_INTERVAL = Long.parseLong(
+            System.getProperty("com.googlecode.xm4was.threadmon.ContentionMonitor.MIN_INTERVAL", "1000"));
+
+    private static final long MAX_INTERVAL = Long.parseLong(
+            System.getProperty("com.googlecode.xm4was.threadmon.ContentionMonitor.MAX_INTERVAL", "30000"));
+
+    /**
+     * Specifies if thread contention monitoring should be enabled in the JVM. This is required to get
+     * the blocked time statistic, but has a cost for every contended monitor enter in the JVM.
+     */
+    private static final boolean ENABLE_CONTENTION_MONITORING = Boolean.parseBoolean(
+            System.getProperty("com.googlecode.xm4was.threadmon.ContentionMonitor.ENABLE_CONTENTION_MONITORING", "false"));
+
+    /**
+     * The maximum number of locks for which statistics are kept.
+     */
+    private static final int MAX_LOCKS = 100;
+
+    /**
+     * The maximum fraction of time the monitor is allowed to spend sampling.
+     */
+    private static final double MAX_OVERHEAD = 0.01;
+
+    /**
+     * The maximum interval (in milliseconds) between two deadlock checks. Deadlock detection is
+     * performed on every sample if blocked threads are detected, but at least at this interval.
+     */
+    private static final long DEADLOCK_CHECK_INTERVAL = 60000;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private boolean blockedTimeSupported;
+    private Timer timer;
+    private UnmanagedThreadMonitor unmanagedThreadMonitor;
+
+    // The following fields are only accessed by the timer thread
+    private Map<Long,long[]> lastBlockedStats = new HashMap<Long,long[]>();
+    private long lastDeadlockCheck;
+    private final StatisticAccumulator samplingTime = new StatisticAccumulator();
+    private long[] lastDeadlockedThreads = new long[0];
+
+    // The following fields are protected by the lock on this object
+    private long samplingInterval = MIN_INTERVAL;
+    private final Map<String,ContendedLock> locks = new HashMap<String,ContendedLock>();
+    private int blockedThreadCount;
+    private long blockedCount;
+    private long blockedTime;
+    private int deadlockedThreadCount;
+
+    @Init
+    public void init(Lifecycle lifecycle) {
+        if (ENABLE_CONTENTION_MONITORING && threadMXBean.isThreadContentionMonitoringSupported()) {
+            threadMXBean.setThreadContentionMonitoringEnabled(true);
+        }
+        blockedTimeSupported = threadMXBean.isThreadContentionMonitoringSupported() && threadMXBean.isThreadContentionMonitoringEnabled();
+        timer = new Timer("Contention Monitor");
+        scheduleSample(MIN_INTERVAL);
+        lifecycle.addStopAction(new Runnable() {
+            public void run() {
+                synchronized (ContentionMonitor.this) {
+                    timer.cancel();
+                    timer = null;
+                }
+            }
+        });
+    }
+
+    @Inject
+    public synchronized void setUnmanagedThreadMonitor(UnmanagedThreadMonitor unmanagedThreadMonitor) {
+        this.unmanagedThreadMonitor = unmanagedThreadMonitor;
+    }
+
+    private synchronized void scheduleSample(long delay) {
+        // timer is null if the component has been stopped in the meantime
+        if (timer != null) {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    long delay;
+                    try {
+                        delay = sample();
+                    } catch (Throwable ex) {
+                        LOGGER.log(Level.SEVERE, Messages._0006E, ex);
+                        delay = MAX_INTERVAL;
+                    }
+                    scheduleSample(delay);
+                }
+            }, delay);
+        }
+    }
+
+    private long[] getMonitoredThreadIds() {
+        UnmanagedThreadMonitor unmanagedThreadMonitor;
+        synchronized (this) {
+            unmanagedThreadMonitor = this.unmanagedThreadMonitor;
+        }
+        List<Thread> threads = new ArrayList<Thread>();
+        for (Thread thread : ThreadUtils.getAllThreads()) {
+            if (thread instanceof ThreadPool.WorkerThread
+                    || (unmanagedThreadMonitor != null && unmanagedThreadMonitor.getModuleInfoForUnmanagedThread(thread) != null)) {
+                threads.add(thread);
+            }
+        }
+        long[] ids = new long[threads.size()];
+        for (int i=0; i<ids.length; i++) {
+            ids[i] = threads.get(i).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Take a sample.
+     *
+     * @return the delay before the next sample should be taken
+     */
+    long sample() {
+        long start = System.nanoTime();
+
+        // Stack traces are not needed here: a depth of 0 avoids walking the stacks
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(getMonitoredThreadIds(), 0);
+
+        Map<Long,long[]> blockedStats = new HashMap<Long,long[]>();
+        long blockedCountDelta = 0;
+        long blockedTimeDelta = 0;
+        int blockedThreadCount = 0;
+        Map<String,Integer> blockedThreadsByLock = new HashMap<String,Integer>();
+        Map<String,Long> ownerIdByLock = new HashMap<String,Long>();
+        Map<String,String> ownerNameByLock = new HashMap<String,String>();
+        for (ThreadInfo info : infos) {
+            // info is null if the thread has stopped in the meantime
+            if (info == null) {
+                continue;
+            }
+            long[] stats = { info.getBlockedCount(), info.getBlockedTime() };
+            long[] lastStats = lastBlockedStats.get(info.getThreadId());
+            if (lastStats != null) {
+                blockedCountDelta += stats[0] - lastStats[0];
+                if (blockedTimeSupported && stats[1] != -1 && lastStats[1] != -1) {
+                    blockedTimeDelta += stats[1] - lastStats[1];
+                }
+            }
+            blockedStats.put(info.getThreadId(), stats);
+            if (info.getThreadState() == Thread.State.BLOCKED && info.getLockName() != null) {
+                blockedThreadCount++;
+                String lockName = info.getLockName();
+                Integer count = blockedThreadsByLock.get(lockName);
+                blockedThreadsByLock.put(lockName, count == null ? 1 : count+1);
+                if (info.getLockOwnerId() != -1) {
+                    ownerIdByLock.put(lockName, info.getLockOwnerId());
+                    ownerNameByLock.put(lockName, info.getLockOwnerName());
+                }
+            }
+        }
+        // Replacing the map also removes the entries for stopped threads
+        lastBlockedStats = blockedStats;
+
+        // Get the top frames of the lock owners (which are not necessarily monitored threads)
+        Map<String,StackTraceElement> ownerFrameByLock = new HashMap<String,StackTraceElement>();
+        if (!ownerIdByLock.isEmpty()) {
+            List<String> lockNames = new ArrayList<String>(ownerIdByLock.keySet());
+            long[] ownerIds = new long[lockNames.size()];
+            for (int i=0; i<ownerIds.length; i++) {
+                ownerIds[i] = ownerIdByLock.get(lockNames.get(i));
+            }
+            ThreadInfo[] ownerInfos = threadMXBean.getThreadInfo(ownerIds, 1);
+            for (int i=0; i<ownerInfos.length; i++) {
+                if (ownerInfos[i] != null && ownerInfos[i].getStackTrace().length > 0) {
+                    ownerFrameByLock.put(lockNames.get(i), ownerInfos[i].getStackTrace()[0]);
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        int deadlockedThreadCount = -1;
+        if (blockedThreadCount > 0 || now - lastDeadlockCheck > DEADLOCK_CHECK_INTERVAL) {
+            lastDeadlockCheck = now;
+            long[] deadlockedThreads = findDeadlockedThreads();
+            if (deadlockedThreads == null) {
+                deadlockedThreads = new long[0];
+            }
+            Arrays.sort(deadlockedThreads);
+            if (deadlockedThreads.length > 0 && !Arrays.equals(deadlockedThreads, lastDeadlockedThreads)) {
+                LOGGER.log(Level.WARNING, Messages._0008W, formatThreadInfos(deadlockedThreads));
+            }
+            lastDeadlockedThreads = deadlockedThreads;
+            deadlockedThreadCount = deadlockedThreads.length;
+        }
+
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        samplingTime.add(elapsed);
+        synchronized (this) {
+            this.blockedThreadCount = blockedThreadCount;
+            blockedCount += blockedCountDelta;
+            blockedTime += blockedTimeDelta;
+            if (deadlockedThreadCount != -1) {
+                this.deadlockedThreadCount = deadlockedThreadCount;
+            }
+            for (ContendedLock lock : locks.values()) {
+                lock.decay();
+            }
+            for (Map.Entry<String,Integer> entry : blockedThreadsByLock.entrySet()) {
+                String lockName = entry.getKey();
+                ContendedLock lock = locks.get(lockName);
+                if (lock == null) {
+                    if (locks.size() == MAX_LOCKS) {
+                        evictColdestLock();
+                    }
+                    lock = new ContendedLock(lockName);
+                    locks.put(lockName, lock);
+                }
+                lock.addSample(entry.getValue(), ownerNameByLock.get(lockName));
+                StackTraceElement ownerFrame = ownerFrameByLock.get(lockName);
+                if (ownerFrame != null) {
+                    lock.setOwnerFrame(ownerFrame);
+                }
+            }
+            // Sample more frequently if there is contention; otherwise progressively reduce the frequency
+            if (blockedThreadCount > 0) {
+                samplingInterval = MIN_INTERVAL;
+            } else {
+                samplingInterval = Math.min(samplingInterval*2, MAX_INTERVAL);
+            }
+            // Make sure that the overhead stays within the limit, even if this means that
+            // we exceed MAX_INTERVAL
+            samplingInterval = Math.max(samplingInterval, (long)(elapsed / MAX_OVERHEAD));
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "Sampled {0} threads in {1} ms; {2} blocked; next sample in {3} ms",
+                        new Object[] { infos.length, elapsed, blockedThreadCount, samplingInterval });
+            }
+            return samplingInterval;
+        }
+    }
+
+    private void evictColdestLock() {
+        Iterator<ContendedLock> it = locks.values().iterator();
+        ContendedLock coldest = it.next();
+        while (it.hasNext()) {
+            ContendedLock lock = it.next();
+            if (lock.getScore() < coldest.getScore()) {
+                coldest = lock;
+            }
+        }
+        locks.remove(coldest.getLockName());
+    }
+
+    private long[] findDeadlockedThreads() {
+        return threadMXBean.isSynchronizerUsageSupported() ? threadMXBean.findDeadlockedThreads() : threadMXBean.findMonitorDeadlockedThreads();
+    }
+
+    private String formatThreadInfos(long[] ids) {
+        StringBuilder buffer = new StringBuilder();
+        for (ThreadInfo info : threadMXBean.getThreadInfo(ids, threadMXBean.isObjectMonitorUsageSupported(), threadMXBean.isSynchronizerUsageSupported())) {
+            if (info != null) {
+                buffer.append(info);
+            }
+        }
+        return buffer.toString();
+    }
+
+    public synchronized long getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    public synchronized int getBlockedThreadCount() {
+        return blockedThreadCount;
+    }
+
+    public synchronized long getBlockedCount() {
+        return blockedCount;
+    }
+
+    public synchronized long getBlockedTime() {
+        return blockedTimeSupported ? blockedTime : -1;
+    }
+
+    public synchronized int getDeadlockedThreadCount() {
+        return deadlockedThreadCount;
+    }
+
+    public StatisticAccumulator getSamplingTime() {
+        return samplingTime;
+    }
+
+    public String dumpContendedLocks() {
+        List<ContendedLock> locks;
+        synchronized (this) {
+            locks = new ArrayList<ContendedLock>(this.locks.values());
+            // Sort by descending score
+            Collections.sort(locks, new Comparator<ContendedLock>() {
+                public int compare(ContendedLock o1, ContendedLock o2) {
+                    return Double.compare(o2.getScore(), o1.getScore());
+                }
+            });
+            StringBuilder buffer = new StringBuilder();
+            for (ContendedLock lock : locks) {
+                buffer.append(lock.getLockName());
+                buffer.append(": score=");
+                buffer.append(Math.round(lock.getScore()*100)/100.0);
+                buffer.append(", blockedSamples=");
+                buffer.append(lock.getBlockedSamples());
+                buffer.append(", maxBlockedThreads=");
+                buffer.append(lock.getMaxBlockedThreads());
+                String ownerName = lock.getOwnerName();
+                if (ownerName != null) {
+                    buffer.append(", lastOwner=");
+                    buffer.append(ownerName);
+                }
+                StackTraceElement ownerFrame = lock.getOwnerFrame();
+                if (ownerFrame != null) {
+                    buffer.append("\n    at ");
+                    buffer.append(ownerFrame);
+                }
+                buffer.append("\n");
+            }
+            return buffer.toString();
+        }
+    }
+
+    public String dumpDeadlocks() {
+        long[] ids = findDeadlockedThreads();
+        return ids == null ? "" : formatThreadInfos(ids);
+    }
+}
@@ -0,0 +1,40 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import javax.management.MBeanOperationInfo;
+
+import com.googlecode.xm4was.commons.jmx.StatisticAccumulator;
+import com.googlecode.xm4was.commons.jmx.annotations.Attribute;
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.Operation;
+import com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled;
+import com.googlecode.xm4was.commons.jmx.annotations.Statistic;
+
+@PMIEnabled(instanceName="ContentionStats", statsTemplate="/com/googlecode/xm4was/threadmon/pmi/ContentionStats.xml")
+@MBean(type="ContentionMonitor", description="Monitors lock contention and deadlocks in WebSphere thread pools and unmanaged threads")
+public interface ContentionMonitorMBean {
+    @Attribute(description="The current interval (in milliseconds) between two samples; the interval is adjusted automatically depending on the observed contention and the sampling cost", readRole="monitor")
+    long getSamplingInterval();
+    
+    @Statistic(id=1)
+    int getBlockedThreadCount();
+    
+    @Statistic(id=2)
+    long getBlockedCount();
+    
+    @Statistic(id=3)
+    long getBlockedTime();
+    
+    @Statistic(id=4)
+    int getDeadlockedThreadCount();
+    
+    @Statistic(id=5)
+    StatisticAccumulator getSamplingTime();
+    
+    @Operation(description="Produces a report of the most contended locks, together with the threads that owned them and the stack frames where they were owned",
+            role="monitor", impact=MBeanOperationInfo.INFO)
+    String dumpContendedLocks();
+    
+    @Operation(description="Checks for deadlocks and produces a report of the deadlocked threads",
+            role="monitor", impact=MBeanOperationInfo.INFO)
+    String dumpDeadlocks();
+}
@@ -6,17 +6,15 @@ public class ModuleInfoImpl implements ModuleInfo {
     private final String applicationName;
     private final String moduleName;
     private final String name;
+    private final ModuleThreadStats stats;
     private final FrequencyEstimator threadDestructionFrequency = new FrequencyEstimator(1200.0);
     private boolean threadLoggingEnabled = true;
     
-    public ModuleInfoImpl(String applicationName, String moduleName) {
+    public ModuleInfoImpl(String applicationName, String moduleName, ModuleThreadStats stats) {
         this.applicationName = applicationName;
         this.moduleName = moduleName;
-        if (moduleName == null) {
-            name = applicationName;
-        } else {
-            name = applicationName + "#" + moduleName;
-        }
+        this.stats = stats;
+        name = stats.getName();
     }
 
     public String getApplicationName() {
@@ -31,6 +29,10 @@ public class ModuleInfoImpl implements ModuleInfo {
         return name;
     }
 
+    public ModuleThreadStats getStats() {
+        return stats;
+    }
+
     public void threadDestroyed() {
         threadDestructionFrequency.addEvent();
     }
@@ -0,0 +1,49 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates the resources consumed by the unmanaged threads of a given application or module.
+ * There is a single instance per application/module name, so that the statistics remain
+ * consistent across restarts of the application.
+ * <p>
+ * The values are computed from the differences between successive samples of the live threads
+ * (taken every second). The JVM no longer reports the CPU time and allocated bytes of a thread
+ * once it has terminated; the resources a thread consumed after the last sample (including the
+ * whole lifetime of threads that terminate before being sampled) are therefore not included.
+ */
+public class ModuleThreadStats implements ModuleThreadStatsMBean {
+    private final String name;
+    private final AtomicLong cpuTime = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    
+    public ModuleThreadStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Add CPU time consumed by a thread.
+     * 
+     * @param nanos
+     *            the CPU time in nanoseconds
+     */
+    public void addCpuTime(long nanos) {
+        cpuTime.addAndGet(nanos);
+    }
+    
+    public void addAllocatedBytes(long bytes) {
+        allocatedBytes.addAndGet(bytes);
+    }
+    
+    public long getCpuTime() {
+        return cpuTime.get() / 1000000;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+}
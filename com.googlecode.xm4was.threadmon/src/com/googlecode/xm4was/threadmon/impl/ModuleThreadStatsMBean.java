@@ -0,0 +1,15 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import com.googlecode.xm4was.commons.jmx.annotations.PMIEnabled;
+import com.googlecode.xm4was.commons.jmx.annotations.Statistic;
+
+@PMIEnabled(groupName="UnmanagedThreadStats", statsTemplate="/com/googlecode/xm4was/threadmon/pmi/UnmanagedThreadStats.xml")
+public interface ModuleThreadStatsMBean {
+    String getName();
+    
+    @Statistic(id=1)
+    long getCpuTime();
+    
+    @Statistic(id=2)
+    long getAllocatedBytes();
+}
@@ -0,0 +1,53 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import java.util.Properties;
+
+import org.osgi.framework.BundleContext;
+
+import com.googlecode.xm4was.commons.JmxConstants;
+import com.googlecode.xm4was.commons.event.Event;
+
+/**
+ * Event that registers a {@link ModuleThreadStats} instance as an OSGi service. Registering the
+ * service synchronously triggers the export of the MBean and PMI module. This is done on the
+ * thread of the event bus so that it doesn't delay the startup of the application for which the
+ * statistics have been created.
+ */
+final class ModuleThreadStatsRegistrationEvent extends Event {
+    private final BundleContext bundleContext;
+    private final String name;
+    private final ModuleThreadStats stats;
+
+    /**
+     * Constructor.
+     *
+     * @param bundleContext
+     *            the bundle context used to register the service
+     * @param name
+     *            the name of the application or module
+     * @param stats
+     *            the statistics to register
+     */
+    ModuleThreadStatsRegistrationEvent(BundleContext bundleContext, String name, ModuleThreadStats stats) {
+        this.bundleContext = bundleContext;
+        this.name = name;
+        this.stats = stats;
+    }
+
+    @Override
+    public String getType() {
+        return "ModuleThreadStatsRegistration";
+    }
+
+    @Override
+    public void dispatch() {
+        Properties props = new Properties();
+        props.setProperty("name", name);
+        props.setProperty(JmxConstants.EXPORT_PROPERTY, "true");
+        try {
+            bundleContext.registerService(ModuleThreadStatsMBean.class.getName(), stats, props);
+        } catch (IllegalStateException ex) {
+            // The bundle has been stopped in the meantime
+        }
+    }
+}
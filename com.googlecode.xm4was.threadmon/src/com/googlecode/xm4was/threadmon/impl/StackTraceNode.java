@@ -1,12 +1,20 @@
 package com.googlecode.xm4was.threadmon.impl;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 class StackTraceNode {
     private final List<StackTraceNode> children = new ArrayList<StackTraceNode>();
     private final Object content;
     private int count;
+    private int totalCount;
+    private Map<Thread.State,Integer> threadStates;
+    private Set<String> blockedOn;
+    private Set<String> lockedMonitors;
     
     StackTraceNode(Object content) {
         this.content = content;
@@ -31,11 +39,66 @@ class StackTraceNode {
         return children;
     }
 
-    void incrementCount() {
+    /**
+     * Add a thread whose stack trace ends at this node.
+     * 
+     * @param state
+     *            the state of the thread
+     * @param blockedOn
+     *            a description of the lock the thread is blocked on or waiting for, or
+     *            <code>null</code> if the thread is not blocked
+     */
+    void addThread(Thread.State state, String blockedOn) {
         count++;
+        if (threadStates == null) {
+            threadStates = new EnumMap<Thread.State,Integer>(Thread.State.class);
+        }
+        Integer stateCount = threadStates.get(state);
+        threadStates.put(state, stateCount == null ? 1 : stateCount+1);
+        if (blockedOn != null) {
+            if (this.blockedOn == null) {
+                this.blockedOn = new LinkedHashSet<String>();
+            }
+            this.blockedOn.add(blockedOn);
+        }
+    }
+
+    /**
+     * Increment the number of threads whose stack trace contains this node.
+     */
+    void incrementTotalCount() {
+        totalCount++;
+    }
+    
+    void addLockedMonitor(String monitor) {
+        if (lockedMonitors == null) {
+            lockedMonitors = new LinkedHashSet<String>();
+        }
+        lockedMonitors.add(monitor);
     }
 
+    /**
+     * Get the number of threads whose stack trace ends at this node.
+     * 
+     * @return the number of threads
+     */
     int getCount() {
         return count;
     }
+
+    int getTotalCount() {
+        return totalCount;
+    }
+
+    Map<Thread.State,Integer> getThreadStates() {
+        return threadStates;
+    }
+
+    Set<String> getBlockedOn() {
+        return blockedOn;
+    }
+
+    Set<String> getLockedMonitors() {
+        return lockedMonitors;
+    }
 }
@@ -0,0 +1,139 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+/**
+ * Converts {@link StackTraceNode} trees to open data. Since open types can't be recursive, the
+ * tree is flattened: each node is represented by a row that contains the identifier of its parent.
+ */
+final class StackTraceTreeData {
+    private static final String[] NODE_ITEM_NAMES = {
+        "id", "parentId", "frame", "count", "totalCount", "threadStates", "blockedOn", "lockedMonitors" };
+
+    private static final String[] DIFF_ITEM_NAMES = { "path", "previousCount", "currentCount" };
+
+    private static final TabularType NODE_TABLE_TYPE;
+    private static final TabularType DIFF_TABLE_TYPE;
+
+    static {
+        try {
+            ArrayType<String[]> stringArrayType = new ArrayType<String[]>(1, SimpleType.STRING);
+            CompositeType nodeType = new CompositeType("StackTraceNode", "A node in a stack trace tree",
+                    NODE_ITEM_NAMES,
+                    new String[] {
+                        "The identifier of the node",
+                        "The identifier of the parent node, or -1 for the root node",
+                        "The stack frame or trace group represented by the node",
+                        "The number of threads whose stack trace ends at this node",
+                        "The number of threads whose stack trace contains this node",
+                        "The states of the threads whose stack trace ends at this node, together with the number of threads in each state",
+                        "The locks the threads ending at this node are blocked on or waiting for, together with their owners",
+                        "The monitors locked by the stack frame(s) represented by the node" },
+                    new OpenType<?>[] { SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.STRING,
+                        SimpleType.INTEGER, SimpleType.INTEGER, stringArrayType, stringArrayType, stringArrayType });
+            NODE_TABLE_TYPE = new TabularType("StackTraceTree", "A stack trace tree", nodeType, new String[] { "id" });
+            CompositeType diffType = new CompositeType("StackTraceDiff", "A stack trace with a changed thread count",
+                    DIFF_ITEM_NAMES,
+                    new String[] {
+                        "The stack trace path from the root of the tree, one frame per line",
+                        "The number of threads whose stack trace contained the path in the previous dump",
+                        "The number of threads whose stack trace contains the path in the current dump" },
+                    new OpenType<?>[] { SimpleType.STRING, SimpleType.INTEGER, SimpleType.INTEGER });
+            DIFF_TABLE_TYPE = new TabularType("StackTraceDiffs", "The stack traces with an increased thread count", diffType, new String[] { "path" });
+        } catch (OpenDataException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private StackTraceTreeData() {}
+
+    static TabularData toTabularData(StackTraceNode root) throws OpenDataException {
+        TabularData table = new TabularDataSupport(NODE_TABLE_TYPE);
+        addRows(table, root, -1);
+        return table;
+    }
+
+    private static void addRows(TabularData table, StackTraceNode node, int parentId) throws OpenDataException {
+        int id = table.size();
+        Object content = node.getContent();
+        Map<Thread.State,Integer> threadStates = node.getThreadStates();
+        String[] threadStateArray;
+        if (threadStates == null) {
+            threadStateArray = new String[0];
+        } else {
+            threadStateArray = new String[threadStates.size()];
+            int i = 0;
+            for (Map.Entry<Thread.State,Integer> entry : threadStates.entrySet()) {
+                threadStateArray[i++] = entry.getKey() + "=" + entry.getValue();
+            }
+        }
+        table.put(new CompositeDataSupport(NODE_TABLE_TYPE.getRowType(), NODE_ITEM_NAMES, new Object[] {
+                id, parentId, content == null ? "*" : content.toString(), node.getCount(), node.getTotalCount(),
+                threadStateArray, toArray(node.getBlockedOn()), toArray(node.getLockedMonitors()) }));
+        for (StackTraceNode child : node.getChildren()) {
+            addRows(table, child, id);
+        }
+    }
+
+    private static String[] toArray(Collection<String> collection) {
+        return collection == null ? new String[0] : collection.toArray(new String[collection.size()]);
+    }
+
+    /**
+     * Compute the thread count for every path in the tree.
+     *
+     * @param root
+     *            the root of the tree
+     * @return a map with the paths (one frame per line) as keys and thread counts as values
+     */
+    static Map<String,Integer> getTotalCounts(StackTraceNode root) {
+        Map<String,Integer> counts = new LinkedHashMap<String,Integer>();
+        for (StackTraceNode child : root.getChildren()) {
+            collectTotalCounts(child, "", counts);
+        }
+        return counts;
+    }
+
+    private static void collectTotalCounts(StackTraceNode node, String parentPath, Map<String,Integer> counts) {
+        String path = parentPath + node.getContent() + "\n";
+        counts.put(path, node.getTotalCount());
+        for (StackTraceNode child : node.getChildren()) {
+            collectTotalCounts(child, path, counts);
+        }
+    }
+
+    /**
+     * Compare two dumps and return the paths with an increased thread count.
+     *
+     * @param previousCounts
+     *            the counts for the previous dump, as returned by {@link #getTotalCounts(StackTraceNode)}
+     * @param counts
+     *            the counts for the current dump
+     * @return the paths with an increased thread count
+     * @throws OpenDataException
+     */
+    static TabularData diff(Map<String,Integer> previousCounts, Map<String,Integer> counts) throws OpenDataException {
+        TabularData table = new TabularDataSupport(DIFF_TABLE_TYPE);
+        for (Map.Entry<String,Integer> entry : counts.entrySet()) {
+            Integer previousCount = previousCounts.get(entry.getKey());
+            int count = entry.getValue();
+            if (previousCount == null || count > previousCount) {
+                table.put(new CompositeDataSupport(DIFF_TABLE_TYPE.getRowType(), DIFF_ITEM_NAMES, new Object[] {
+                        entry.getKey(), previousCount == null ? 0 : previousCount, count }));
+            }
+        }
+        return table;
+    }
+}
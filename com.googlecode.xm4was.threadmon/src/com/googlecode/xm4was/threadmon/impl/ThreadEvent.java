@@ -0,0 +1,68 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import com.googlecode.xm4was.commons.event.Event;
+import com.googlecode.xm4was.commons.osgi.ServiceSet;
+import com.googlecode.xm4was.commons.osgi.ServiceVisitor;
+import com.googlecode.xm4was.threadmon.ModuleInfo;
+import com.googlecode.xm4was.threadmon.UnmanagedThreadListener;
+
+/**
+ * Event that notifies the {@link UnmanagedThreadListener} services about an unmanaged thread that
+ * has been started or stopped. The listeners are visited asynchronously, so that a slow listener
+ * delays neither the other listeners nor the delivery of other events by the bus. These events
+ * are only informational and may be discarded if the bus is overloaded.
+ */
+final class ThreadEvent extends Event {
+    /**
+     * The maximum time (in milliseconds) a listener may take to process an event.
+     */
+    private static final long LISTENER_TIMEOUT = 10000;
+    
+    private final ServiceSet<UnmanagedThreadListener> listeners;
+    private final Thread thread;
+    private final String name;
+    private final ModuleInfo moduleInfo;
+    
+    /**
+     * Constructor.
+     * 
+     * @param listeners
+     *            the listeners to notify
+     * @param thread
+     *            the thread that has been started, or <code>null</code> if the event is about a
+     *            thread that has been stopped
+     * @param name
+     *            the name of the thread
+     * @param moduleInfo
+     *            the module the thread is linked to
+     */
+    ThreadEvent(ServiceSet<UnmanagedThreadListener> listeners, Thread thread, String name, ModuleInfo moduleInfo) {
+        this.listeners = listeners;
+        this.thread = thread;
+        this.name = name;
+        this.moduleInfo = moduleInfo;
+    }
+
+    @Override
+    public String getType() {
+        return thread == null ? "UnmanagedThreadStopped" : "UnmanagedThreadStarted";
+    }
+
+    @Override
+    public boolean isDiscardable() {
+        return true;
+    }
+
+    @Override
+    public void dispatch() {
+        listeners.visitAsync(new ServiceVisitor<UnmanagedThreadListener>() {
+            public void visit(UnmanagedThreadListener listener) {
+                if (thread == null) {
+                    listener.threadStopped(name, moduleInfo);
+                } else {
+                    listener.threadStarted(thread, moduleInfo);
+                }
+            }
+        }, LISTENER_TIMEOUT);
+    }
+}
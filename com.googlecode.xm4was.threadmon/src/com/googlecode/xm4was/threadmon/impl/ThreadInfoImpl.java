@@ -6,15 +6,25 @@ import java.lang.ref.WeakReference;
 import com.googlecode.xm4was.threadmon.ThreadInfo;
 
 public class ThreadInfoImpl extends WeakReference<Thread> implements ThreadInfo {
+    private final long id;
     private final String name;
     private final ModuleInfoImpl moduleInfo;
     
+    // The following fields are only accessed by the monitor thread
+    private long lastCpuTime;
+    private long lastAllocatedBytes;
+    
     public ThreadInfoImpl(Thread thread, ModuleInfoImpl moduleInfo, ReferenceQueue<Thread> queue) {
         super(thread, queue);
+        this.id = thread.getId();
         this.name = thread.getName();
         this.moduleInfo = moduleInfo;
     }
     
+    public long getId() {
+        return id;
+    }
+    
     public String getName() {
         return name;
     }
@@ -26,4 +36,32 @@ public class ThreadInfoImpl extends WeakReference<Thread> implements ThreadInfo
     public ModuleInfoImpl getModuleInfo() {
         return moduleInfo;
     }
+
+    /**
+     * Update the CPU time consumed by the thread and add the difference with respect to the
+     * previous sample to the statistics of the application or module.
+     * 
+     * @param cpuTime
+     *            the CPU time of the thread (in nanoseconds), or -1 if it is not available
+     */
+    void updateCpuTime(long cpuTime) {
+        if (cpuTime > lastCpuTime) {
+            moduleInfo.getStats().addCpuTime(cpuTime - lastCpuTime);
+            lastCpuTime = cpuTime;
+        }
+    }
+
+    /**
+     * Update the number of bytes allocated by the thread and add the difference with respect to the
+     * previous sample to the statistics of the application or module.
+     * 
+     * @param allocatedBytes
+     *            the number of bytes allocated by the thread, or -1 if it is not available
+     */
+    void updateAllocatedBytes(long allocatedBytes) {
+        if (allocatedBytes > lastAllocatedBytes) {
+            moduleInfo.getStats().addAllocatedBytes(allocatedBytes - lastAllocatedBytes);
+            lastAllocatedBytes = allocatedBytes;
+        }
+    }
 }
@@ -1,14 +1,28 @@
 package com.googlecode.xm4was.threadmon.impl;
 
 import java.io.InputStream;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadMXBean;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Properties;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.openmbean.TabularData;
+
+import com.googlecode.xm4was.commons.osgi.ServiceSet;
+import com.googlecode.xm4was.commons.osgi.ServiceVisitor;
 import com.googlecode.xm4was.commons.osgi.annotations.Inject;
 import com.googlecode.xm4was.commons.osgi.annotations.Services;
 import com.googlecode.xm4was.commons.utils.jvm.StackTraceUtil;
@@ -16,19 +30,74 @@ import com.googlecode.xm4was.threadmon.ModuleInfo;
 import com.googlecode.xm4was.threadmon.ThreadInfo;
 import com.googlecode.xm4was.threadmon.UnmanagedThreadMonitor;
 import com.googlecode.xm4was.threadmon.resources.Messages;
-import com.ibm.ejs.ras.ManagerAdmin;
 import com.ibm.websphere.security.auth.WSSubject;
 import com.ibm.ws.util.ThreadPool;
 
 @Services(ThreadMonitorMBean.class)
 public class ThreadMonitor implements ThreadMonitorMBean {
+    /**
+     * Snapshot of a {@link ModuleThreadStatsMBean}. We need this because the statistics are
+     * updated concurrently and we want to sort them.
+     */
+    private static class ResourceUsage {
+        final String name;
+        final long cpuTime;
+        final long allocatedBytes;
+        
+        ResourceUsage(ModuleThreadStatsMBean stats) {
+            name = stats.getName();
+            cpuTime = stats.getCpuTime();
+            allocatedBytes = stats.getAllocatedBytes();
+        }
+    }
+    
     private static final Logger LOGGER = Logger.getLogger(ThreadMonitor.class.getName(), Messages.class.getName());
     
+    private static final String MAX_STACK_DEPTH_PROPERTY = "com.googlecode.xm4was.threadmon.ThreadMonitor.MAX_STACK_DEPTH";
+    
+    private static final int DEFAULT_MAX_STACK_DEPTH = parseMaxStackDepth(System.getProperty(MAX_STACK_DEPTH_PROPERTY));
+    
+    /**
+     * The root node under which stack traces truncated to {@link #maxStackDepth} are placed.
+     */
+    private static final String TRUNCATED = "<truncated>";
+    
+    /**
+     * The maximum number of dumps kept for {@link #diffThreads(String, boolean)}.
+     */
+    private static final int MAX_PREVIOUS_DUMPS = 16;
+    
     private final Class<?> workerClass;
     private final Field outerField;
-    private final Map<String,String> groups = new HashMap<String,String>();
+    private final TraceGroupResolver traceGroupResolver;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    
+    /**
+     * Caches the thread pool names of worker threads so that we don't need to use reflection on every
+     * thread dump. A worker thread never changes its thread pool.
+     */
+    private final Map<Thread,String> threadPoolNames = new WeakHashMap<Thread,String>();
+    
+    private volatile int maxStackDepth = DEFAULT_MAX_STACK_DEPTH;
+    
+    /**
+     * The result of the last structured dump for each thread pool. This is used by
+     * {@link #diffThreads(String, boolean)}. The keys are the thread pool names (with a suffix if
+     * the stack traces are shortened) and the values map stack trace paths to thread counts. Since
+     * the keys are supplied by the caller, the map is limited to {@link #MAX_PREVIOUS_DUMPS}
+     * entries; the least recently used entry is evicted first.
+     */
+    private final Map<String,Map<String,Integer>> previousDumps = new LinkedHashMap<String,Map<String,Integer>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Map<String,Integer>> eldest) {
+            return size() > MAX_PREVIOUS_DUMPS;
+        }
+    };
     
     private UnmanagedThreadMonitor unmanagedThreadMonitor;
+    private ServiceSet<ModuleThreadStatsMBean> moduleThreadStats;
 
     public ThreadMonitor() throws Exception {
         workerClass = Class.forName("com.ibm.ws.util.ThreadPool$Worker");
@@ -45,16 +114,18 @@ public class ThreadMonitor implements ThreadMonitorMBean {
         }
         this.outerField = outerField;
         
-        Properties groups = new Properties();
+        Properties props = new Properties();
         InputStream in = ThreadMonitor.class.getResourceAsStream("groups.properties");
         try {
-            groups.load(in);
+            props.load(in);
         } finally {
             in.close();
         }
-        for (Map.Entry<Object,Object> entry : groups.entrySet()) {
-            this.groups.put((String)entry.getKey(), (String)entry.getValue());
+        Map<String,String> groups = new HashMap<String,String>();
+        for (Map.Entry<Object,Object> entry : props.entrySet()) {
+            groups.put((String)entry.getKey(), (String)entry.getValue());
         }
+        traceGroupResolver = new TraceGroupResolver(groups);
     }
     
     @Inject
@@ -62,6 +133,11 @@ public class ThreadMonitor implements ThreadMonitorMBean {
         this.unmanagedThreadMonitor = unmanagedThreadMonitor;
     }
 
+    @Inject
+    public synchronized void setModuleThreadStats(ServiceSet<ModuleThreadStatsMBean> moduleThreadStats) {
+        this.moduleThreadStats = moduleThreadStats;
+    }
+
     public String dumpUnmanagedThreads() {
         ThreadInfo[] threads;
         synchronized (this) {
@@ -84,24 +160,173 @@ public class ThreadMonitor implements ThreadMonitorMBean {
         return buffer.toString();
     }
     
-    private static String getPackageName(String className) {
-        int idx = className.lastIndexOf('.');
-        return idx == -1 ? null : className.substring(0, idx);
+    public String dumpUnmanagedThreadResourceUsage() {
+        final List<ResourceUsage> usages = new ArrayList<ResourceUsage>();
+        ServiceSet<ModuleThreadStatsMBean> moduleThreadStats;
+        synchronized (this) {
+            moduleThreadStats = this.moduleThreadStats;
+        }
+        if (moduleThreadStats != null) {
+            moduleThreadStats.visit(new ServiceVisitor<ModuleThreadStatsMBean>() {
+                public void visit(ModuleThreadStatsMBean stats) {
+                    usages.add(new ResourceUsage(stats));
+                }
+            });
+        }
+        // Sort by descending CPU time so that the applications that consume the most resources appear first
+        Collections.sort(usages, new Comparator<ResourceUsage>() {
+            public int compare(ResourceUsage o1, ResourceUsage o2) {
+                return o1.cpuTime < o2.cpuTime ? 1 : (o1.cpuTime == o2.cpuTime ? 0 : -1);
+            }
+        });
+        StringBuilder buffer = new StringBuilder();
+        for (ResourceUsage usage : usages) {
+            buffer.append(usage.name);
+            buffer.append(": cpuTime=");
+            buffer.append(usage.cpuTime);
+            buffer.append("ms, allocatedBytes=");
+            buffer.append(usage.allocatedBytes);
+            buffer.append("\n");
+        }
+        return buffer.toString();
     }
     
-    public String dumpThreads(String threadPoolName, boolean log, boolean shorten) throws Exception {
-        Map<String,String> groupByComponent = shorten ? buildComponentToGroupMap() : null;
-        StackTraceNode root = new StackTraceNode(null);
+    /**
+     * Parse the value of the <tt>MAX_STACK_DEPTH</tt> system property.
+     * 
+     * @param value
+     *            the value of the property, or <code>null</code> if it is not set
+     * @return the maximum stack depth; if the value is not set or invalid (in particular if it is
+     *         not positive), the stack traces are not truncated
+     */
+    static int parseMaxStackDepth(String value) {
+        if (value != null) {
+            try {
+                int depth = Integer.parseInt(value);
+                if (depth > 0) {
+                    return depth;
+                }
+            } catch (NumberFormatException ex) {
+                // Fall through
+            }
+            LOGGER.log(Level.WARNING, Messages._0010W, new Object[] { MAX_STACK_DEPTH_PROPERTY, value });
+        }
+        return Integer.MAX_VALUE;
+    }
+    
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    public void setMaxStackDepth(int maxStackDepth) {
+        if (maxStackDepth <= 0) {
+            throw new IllegalArgumentException("maxStackDepth must be positive");
+        }
+        this.maxStackDepth = maxStackDepth;
+    }
+
+    private String getThreadPoolName(Thread thread) throws IllegalAccessException {
+        synchronized (threadPoolNames) {
+            String name = threadPoolNames.get(thread);
+            if (name == null) {
+                name = ((ThreadPool)outerField.get(thread)).getName();
+                threadPoolNames.put(thread, name);
+            }
+            return name;
+        }
+    }
+    
+    /**
+     * Get the IDs of all threads of a given thread pool.
+     * 
+     * @param threadPoolName
+     *            the name of the thread pool
+     * @return the thread IDs
+     * @throws Exception
+     */
+    private long[] getThreadIds(String threadPoolName) throws Exception {
+        List<Thread> threads = new ArrayList<Thread>();
         for (Thread thread : ThreadUtils.getAllThreads()) {
-            if (workerClass.isInstance(thread) && ((ThreadPool)outerField.get(thread)).getName().equals(threadPoolName)) {
-                StackTraceElement[] frames = thread.getStackTrace();
-                StackTraceNode node = root;
-                String lastGroup = null;
-                for (int i=frames.length-1; i>=0; i--) {
-                    StackTraceElement frame = frames[i];
-                    if (shorten && StackTraceUtil.isReflectiveInvocationFrame(frame)) {
-                        continue;
-                    }
+            if (workerClass.isInstance(thread) && getThreadPoolName(thread).equals(threadPoolName)) {
+                threads.add(thread);
+            }
+        }
+        long[] ids = new long[threads.size()];
+        for (int i=0; i<ids.length; i++) {
+            ids[i] = threads.get(i).getId();
+        }
+        return ids;
+    }
+    
+    /**
+     * Get information about all threads of a given thread pool. The stack traces are captured in a
+     * single call to the {@link ThreadMXBean} so that the result is a consistent snapshot and the
+     * JVM only needs to bring the threads to a safepoint once.
+     * 
+     * @param threadPoolName
+     *            the name of the thread pool
+     * @param lockInfo
+     *            specifies if information about locked monitors is required; if this is
+     *            <code>true</code>, then the full stack traces are captured, even if
+     *            {@link #getMaxStackDepth()} is set
+     * @param maxStackDepth
+     *            the maximum number of frames to capture; ignored if <code>lockInfo</code> is
+     *            <code>true</code>
+     * @return the thread information
+     * @throws Exception
+     */
+    private java.lang.management.ThreadInfo[] captureThreads(String threadPoolName, boolean lockInfo, int maxStackDepth) throws Exception {
+        long[] ids = getThreadIds(threadPoolName);
+        java.lang.management.ThreadInfo[] infos;
+        if (ids.length == 0) {
+            infos = new java.lang.management.ThreadInfo[0];
+        } else if (lockInfo) {
+            infos = threadMXBean.getThreadInfo(ids, threadMXBean.isObjectMonitorUsageSupported(), false);
+        } else {
+            infos = threadMXBean.getThreadInfo(ids, maxStackDepth);
+        }
+        // The array contains null elements for threads that have stopped in the meantime
+        List<java.lang.management.ThreadInfo> result = new ArrayList<java.lang.management.ThreadInfo>(infos.length);
+        for (java.lang.management.ThreadInfo info : infos) {
+            if (info != null) {
+                result.add(info);
+            }
+        }
+        return result.toArray(new java.lang.management.ThreadInfo[result.size()]);
+    }
+    
+    /**
+     * Build the stack trace tree for a set of threads.
+     * 
+     * @param threads
+     *            the threads
+     * @param shorten
+     *            specifies if the stack traces should be shortened using trace groups
+     * @param maxStackDepth
+     *            the maximum depth used to capture the stack traces; stack traces that have this
+     *            depth may have been truncated and are placed below a {@link #TRUNCATED} node so
+     *            that they are not merged with complete stack traces
+     * @return the root node of the tree
+     */
+    private StackTraceNode buildTree(java.lang.management.ThreadInfo[] threads, boolean shorten, int maxStackDepth) {
+        if (shorten) {
+            traceGroupResolver.refreshIfNecessary();
+        }
+        StackTraceNode root = new StackTraceNode(null);
+        for (java.lang.management.ThreadInfo thread : threads) {
+            StackTraceElement[] frames = thread.getStackTrace();
+            MonitorInfo[] lockedMonitors = thread.getLockedMonitors();
+            StackTraceNode node = root;
+            node.incrementTotalCount();
+            if (frames.length >= maxStackDepth) {
+                // The bottom frames are missing; the deepest captured frame is not the real root
+                node = node.addOrCreateChild(TRUNCATED);
+                node.incrementTotalCount();
+            }
+            String lastGroup = null;
+            for (int i=frames.length-1; i>=0; i--) {
+                StackTraceElement frame = frames[i];
+                if (!shorten || !StackTraceUtil.isReflectiveInvocationFrame(frame)) {
                     String className = frame.getClassName();
                     String displayClassName = StackTraceUtil.getDisplayClassName(className);
                     String group;
@@ -109,30 +334,43 @@ public class ThreadMonitor implements ThreadMonitorMBean {
                         frame = new StackTraceElement(displayClassName, frame.getMethodName(), null, -1);
                         group = null;
                     } else if (shorten) {
-                        String comp = className;
-                        // Inner classes usually don't have their own logger, but use the logger of the outer class
-                        int idx = comp.indexOf('$');
-                        if (idx != -1) {
-                            comp = comp.substring(0, idx);
-                        }
-                        group = groupByComponent.get(comp);
-                        while (group == null && comp != null) {
-                            group = groups.get(comp);
-                            comp = getPackageName(comp);
-                        }
+                        group = traceGroupResolver.getGroup(className);
                     } else {
                         group = null;
                     }
                     if (group == null) {
                         node = node.addOrCreateChild(frame);
+                        node.incrementTotalCount();
                     } else if (!group.equals(lastGroup)) {
                         node = node.addOrCreateChild("<" + group + ">");
+                        node.incrementTotalCount();
                     }
                     lastGroup = group;
                 }
-                node.incrementCount();
+                // Monitors locked by skipped or collapsed frames are attributed to the current node
+                for (MonitorInfo monitor : lockedMonitors) {
+                    if (monitor.getLockedStackDepth() == i) {
+                        node.addLockedMonitor(monitor.toString());
+                    }
+                }
             }
+            node.addThread(thread.getThreadState(), getBlockedOn(thread));
+        }
+        return root;
+    }
+    
+    private static String getBlockedOn(java.lang.management.ThreadInfo thread) {
+        LockInfo lock = thread.getLockInfo();
+        if (lock == null) {
+            return null;
         }
+        String ownerName = thread.getLockOwnerName();
+        return ownerName == null ? lock.toString() : lock + " owned by " + ownerName;
+    }
+    
+    public String dumpThreads(String threadPoolName, boolean log, boolean shorten) throws Exception {
+        int maxStackDepth = this.maxStackDepth;
+        StackTraceNode root = buildTree(captureThreads(threadPoolName, false, maxStackDepth), shorten, maxStackDepth);
         StringBuilder buffer = new StringBuilder();
         dump(root, "", buffer);
         String result = buffer.toString();
@@ -142,6 +380,24 @@ public class ThreadMonitor implements ThreadMonitorMBean {
         return result;
     }
     
+    public TabularData dumpThreadTree(String threadPoolName, boolean shorten) throws Exception {
+        // Locked monitors are only available with full stack traces
+        return StackTraceTreeData.toTabularData(buildTree(captureThreads(threadPoolName, true, Integer.MAX_VALUE), shorten, Integer.MAX_VALUE));
+    }
+
+    public TabularData diffThreads(String threadPoolName, boolean shorten) throws Exception {
+        int maxStackDepth = this.maxStackDepth;
+        Map<String,Integer> counts = StackTraceTreeData.getTotalCounts(buildTree(captureThreads(threadPoolName, false, maxStackDepth), shorten, maxStackDepth));
+        Map<String,Integer> previousCounts;
+        synchronized (previousDumps) {
+            previousCounts = previousDumps.put(threadPoolName + (shorten ? "|shortened" : ""), counts);
+        }
+        if (previousCounts == null) {
+            previousCounts = Collections.emptyMap();
+        }
+        return StackTraceTreeData.diff(previousCounts, counts);
+    }
+    
     private static void dump(StackTraceNode node, String childPrefix, StringBuilder buffer) {
         Object content = node.getContent();
         buffer.append(content != null ? content.toString() : "*");
@@ -158,14 +414,4 @@ public class ThreadMonitor implements ThreadMonitorMBean {
             dump(child, it.hasNext() ? childPrefix + "| " : childPrefix + "  ", buffer);
         }
     }
-    
-    private static Map<String,String> buildComponentToGroupMap() {
-        Map<String,String> map = new HashMap<String,String>();
-        for (String group : ManagerAdmin.listAllRegisteredGroups()) {
-            for (String component : ManagerAdmin.listComponentsInGroup(group)) {
-                map.put(component, group);
-            }
-        }
-        return map;
-    }
 }
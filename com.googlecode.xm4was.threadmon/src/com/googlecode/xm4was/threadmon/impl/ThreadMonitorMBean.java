@@ -1,21 +1,44 @@
 package com.googlecode.xm4was.threadmon.impl;
 
 import javax.management.MBeanOperationInfo;
+import javax.management.openmbean.TabularData;
 
+import com.googlecode.xm4was.commons.jmx.annotations.Attribute;
 import com.googlecode.xm4was.commons.jmx.annotations.MBean;
 import com.googlecode.xm4was.commons.jmx.annotations.Operation;
 import com.googlecode.xm4was.commons.jmx.annotations.Parameter;
 
 @MBean(type="ThreadMonitor", description="Thread Monitor")
 public interface ThreadMonitorMBean {
+    @Attribute(description="The maximum number of stack frames captured per thread by the thread dump operations", readRole="monitor", writeRole="operator")
+    int getMaxStackDepth();
+    
+    void setMaxStackDepth(int maxStackDepth);
+    
     @Operation(description="Produces a list of the unmanaged threads that have been detected together with the identifiers of the applications that created these threads",
             role="monitor", impact=MBeanOperationInfo.INFO)
     String dumpUnmanagedThreads();
     
+    @Operation(description="Produces a report of the CPU time consumed and the memory allocated by unmanaged threads, aggregated by application/module; resources consumed by a thread after the last sample before it terminated are not included",
+            role="monitor", impact=MBeanOperationInfo.INFO)
+    String dumpUnmanagedThreadResourceUsage();
+    
     @Operation(description="Dump the threads of a given thread pool and summarize the information in tree form",
             role="monitor", impact=MBeanOperationInfo.INFO)
     String dumpThreads(
             @Parameter(name="threadPoolName", description="The name of the thread pool") String threadPoolName,
             @Parameter(name="log", description="Specifies if the dump should also be written to SystemOut.log") boolean log,
             @Parameter(name="shorten", description="Specifies if the stack traces should be shortened using trace groups for WebSphere components") boolean shorten) throws Exception;
+    
+    @Operation(description="Dump the threads of a given thread pool and return the aggregated stack trace tree as tabular data, with thread states and lock information for each node",
+            role="monitor", impact=MBeanOperationInfo.INFO)
+    TabularData dumpThreadTree(
+            @Parameter(name="threadPoolName", description="The name of the thread pool") String threadPoolName,
+            @Parameter(name="shorten", description="Specifies if the stack traces should be shortened using trace groups for WebSphere components") boolean shorten) throws Exception;
+    
+    @Operation(description="Dump the threads of a given thread pool and compare the result with the previous invocation of this operation; returns the stack traces whose thread count has increased",
+            role="monitor", impact=MBeanOperationInfo.INFO)
+    TabularData diffThreads(
+            @Parameter(name="threadPoolName", description="The name of the thread pool") String threadPoolName,
+            @Parameter(name="shorten", description="Specifies if the stack traces should be shortened using trace groups for WebSphere components") boolean shorten) throws Exception;
 }
@@ -0,0 +1,113 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.threadmon.resources.Messages;
+
+/**
+ * Samples the CPU time and the number of allocated bytes for a set of threads. If the JVM supports
+ * it, the values for all threads are retrieved in a single call (see the
+ * <tt>com.sun.management.ThreadMXBean</tt> extension interface). Otherwise the sampler falls back
+ * to the standard {@link ThreadMXBean#getThreadCpuTime(long)} method and allocated bytes are not
+ * reported.
+ */
+final class ThreadResourceSampler {
+    private static final Logger LOGGER = Logger.getLogger(ThreadResourceSampler.class.getName(), Messages.class.getName());
+
+    private final ThreadMXBean threadMXBean;
+    private final boolean cpuTimeSupported;
+    private final Method getThreadCpuTimeMethod;
+    private final Method getThreadAllocatedBytesMethod;
+
+    ThreadResourceSampler() {
+        threadMXBean = ManagementFactory.getThreadMXBean();
+        cpuTimeSupported = threadMXBean.isThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+        if (!cpuTimeSupported) {
+            LOGGER.log(Level.WARNING, Messages._0007W);
+        }
+        getThreadCpuTimeMethod = findBulkMethod(threadMXBean, "getThreadCpuTime");
+        getThreadAllocatedBytesMethod = findBulkMethod(threadMXBean, "getThreadAllocatedBytes");
+    }
+
+    /**
+     * Look up a vendor specific method that takes an array of thread IDs and returns an array of
+     * values. We look up the method on the public interfaces implemented by the MXBean (and not on
+     * the implementation class) because the implementation class is generally not accessible.
+     */
+    private static Method findBulkMethod(ThreadMXBean threadMXBean, String name) {
+        for (Class<?> iface : threadMXBean.getClass().getInterfaces()) {
+            if (ThreadMXBean.class.isAssignableFrom(iface)) {
+                try {
+                    Method method = iface.getMethod(name, long[].class);
+                    if (method.getReturnType() == long[].class) {
+                        if (LOGGER.isLoggable(Level.FINEST)) {
+                            LOGGER.log(Level.FINEST, "Using {0}#{1}(long[])", new Object[] { iface.getName(), name });
+                        }
+                        return method;
+                    }
+                } catch (NoSuchMethodException ex) {
+                    // Continue with next interface
+                }
+            }
+        }
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "No bulk {0} method available", name);
+        }
+        return null;
+    }
+
+    /**
+     * Get the CPU time of a set of threads.
+     *
+     * @param ids
+     *            the thread IDs
+     * @return the CPU time (in nanoseconds) of each thread, or -1 if the thread is no longer alive;
+     *         <code>null</code> if CPU time measurement is not supported
+     */
+    long[] getThreadCpuTime(long[] ids) {
+        if (!cpuTimeSupported) {
+            return null;
+        }
+        if (getThreadCpuTimeMethod != null) {
+            long[] result = invokeBulkMethod(getThreadCpuTimeMethod, ids);
+            if (result != null) {
+                return result;
+            }
+        }
+        long[] result = new long[ids.length];
+        for (int i=0; i<ids.length; i++) {
+            result[i] = threadMXBean.getThreadCpuTime(ids[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of bytes allocated by a set of threads.
+     *
+     * @param ids
+     *            the thread IDs
+     * @return the number of bytes allocated by each thread, or -1 if the thread is no longer alive;
+     *         <code>null</code> if the JVM doesn't support this type of measurement
+     */
+    long[] getThreadAllocatedBytes(long[] ids) {
+        return getThreadAllocatedBytesMethod == null ? null : invokeBulkMethod(getThreadAllocatedBytesMethod, ids);
+    }
+
+    private long[] invokeBulkMethod(Method method, long[] ids) {
+        try {
+            return (long[])method.invoke(threadMXBean, (Object)ids);
+        } catch (IllegalAccessException ex) {
+            LOGGER.log(Level.FINEST, "Failed to invoke bulk method", ex);
+            return null;
+        } catch (InvocationTargetException ex) {
+            // This happens e.g. if the measurement has been disabled by the administrator
+            LOGGER.log(Level.FINEST, "Failed to invoke bulk method", ex.getCause());
+            return null;
+        }
+    }
+}
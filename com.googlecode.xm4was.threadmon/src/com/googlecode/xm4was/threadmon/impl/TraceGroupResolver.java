@@ -0,0 +1,185 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.threadmon.resources.Messages;
+import com.ibm.ejs.ras.ManagerAdmin;
+
+/**
+ * Determines the trace group for a given class name. The resolver combines two sources of
+ * information:
+ * <ol>
+ * <li>The trace components registered with {@link ManagerAdmin}. They are matched against the
+ * class name (without inner class suffix).
+ * <li>A static mapping of package names to group names (<tt>groups.properties</tt>). It is
+ * compiled into a trie of package segments and the longest matching prefix is used.
+ * </ol>
+ * The component map is rebuilt when the number of registered groups changes or when it is older
+ * than {@link #REFRESH_INTERVAL}. Results are memoized per class name. Instances of this class
+ * are thread safe.
+ */
+final class TraceGroupResolver {
+    private static final Logger LOGGER = Logger.getLogger(TraceGroupResolver.class.getName(), Messages.class.getName());
+
+    /**
+     * The maximum age (in milliseconds) of the component map. This ensures that we eventually
+     * see trace components that are registered in existing groups.
+     */
+    private static final long REFRESH_INTERVAL = 300000;
+
+    /**
+     * The maximum number of memoized results. The cache is cleared when this limit is reached.
+     */
+    private static final int MAX_CACHE_SIZE = 20000;
+
+    /**
+     * Marker used in the cache for classes that don't belong to any group. This must be a distinct
+     * instance because it is compared by identity.
+     */
+    private static final String NO_GROUP = new String("");
+
+    private static final class TrieNode {
+        private Map<String,TrieNode> children;
+        private String group;
+
+        TrieNode getOrCreateChild(String segment) {
+            if (children == null) {
+                children = new HashMap<String,TrieNode>();
+            }
+            TrieNode child = children.get(segment);
+            if (child == null) {
+                child = new TrieNode();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        TrieNode getChild(String segment) {
+            return children == null ? null : children.get(segment);
+        }
+    }
+
+    private static final class ComponentMap {
+        final Map<String,String> groupByComponent;
+        final int groupCount;
+        final long timestamp;
+        final ConcurrentMap<String,String> cache = new ConcurrentHashMap<String,String>();
+
+        ComponentMap(Map<String,String> groupByComponent, int groupCount, long timestamp) {
+            this.groupByComponent = groupByComponent;
+            this.groupCount = groupCount;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final TrieNode root = new TrieNode();
+    private volatile ComponentMap componentMap;
+
+    /**
+     * Constructor.
+     *
+     * @param groups
+     *            maps package or class names to group names
+     */
+    TraceGroupResolver(Map<String,String> groups) {
+        for (Map.Entry<String,String> entry : groups.entrySet()) {
+            TrieNode node = root;
+            String name = entry.getKey();
+            int start = 0;
+            while (true) {
+                int idx = name.indexOf('.', start);
+                node = node.getOrCreateChild(idx == -1 ? name.substring(start) : name.substring(start, idx));
+                if (idx == -1) {
+                    break;
+                }
+                start = idx+1;
+            }
+            node.group = entry.getValue();
+        }
+    }
+
+    /**
+     * Rebuild the component map if the set of trace groups has changed or if the map is too
+     * old. This method should be called once before a series of calls to
+     * {@link #getGroup(String)}.
+     */
+    void refreshIfNecessary() {
+        ComponentMap componentMap = this.componentMap;
+        String[] groups = ManagerAdmin.listAllRegisteredGroups();
+        long now = System.currentTimeMillis();
+        if (componentMap == null || componentMap.groupCount != groups.length || now - componentMap.timestamp > REFRESH_INTERVAL) {
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST, "Rebuilding component map for {0} groups", groups.length);
+            }
+            Map<String,String> groupByComponent = new HashMap<String,String>();
+            for (String group : groups) {
+                for (String component : ManagerAdmin.listComponentsInGroup(group)) {
+                    groupByComponent.put(component, group);
+                }
+            }
+            this.componentMap = new ComponentMap(groupByComponent, groups.length, now);
+        }
+    }
+
+    /**
+     * Get the trace group for a given class.
+     *
+     * @param className
+     *            the class name
+     * @return the group name, or <code>null</code> if the class doesn't belong to any known group
+     */
+    String getGroup(String className) {
+        ComponentMap componentMap = this.componentMap;
+        if (componentMap == null) {
+            refreshIfNecessary();
+            componentMap = this.componentMap;
+        }
+        String group = componentMap.cache.get(className);
+        if (group == null) {
+            group = computeGroup(componentMap, className);
+            if (componentMap.cache.size() >= MAX_CACHE_SIZE) {
+                componentMap.cache.clear();
+            }
+            componentMap.cache.put(className, group == null ? NO_GROUP : group);
+            return group;
+        } else {
+            return group == NO_GROUP ? null : group;
+        }
+    }
+
+    private String computeGroup(ComponentMap componentMap, String className) {
+        String comp = className;
+        // Inner classes usually don't have their own logger, but use the logger of the outer class
+        int idx = comp.indexOf('$');
+        if (idx != -1) {
+            comp = comp.substring(0, idx);
+        }
+        String group = componentMap.groupByComponent.get(comp);
+        if (group != null) {
+            return group;
+        }
+        // Find the longest matching prefix
+        TrieNode node = root;
+        int start = 0;
+        while (true) {
+            idx = comp.indexOf('.', start);
+            node = node.getChild(idx == -1 ? comp.substring(start) : comp.substring(start, idx));
+            if (node == null) {
+                break;
+            }
+            if (node.group != null) {
+                group = node.group;
+            }
+            if (idx == -1) {
+                break;
+            }
+            start = idx+1;
+        }
+        return group;
+    }
+}
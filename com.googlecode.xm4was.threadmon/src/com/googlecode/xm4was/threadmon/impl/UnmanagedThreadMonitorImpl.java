@@ -16,11 +16,14 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.osgi.framework.BundleContext;
+
 import com.github.veithen.rbeans.RBeanFactory;
 import com.googlecode.xm4was.commons.deploy.ClassLoaderListener;
+import com.googlecode.xm4was.commons.deploy.SynchronousClassLoaderListener;
+import com.googlecode.xm4was.commons.event.EventBus;
 import com.googlecode.xm4was.commons.osgi.Lifecycle;
 import com.googlecode.xm4was.commons.osgi.ServiceSet;
-import com.googlecode.xm4was.commons.osgi.ServiceVisitor;
 import com.googlecode.xm4was.commons.osgi.annotations.Init;
 import com.googlecode.xm4was.commons.osgi.annotations.ProcessTypes;
 import com.googlecode.xm4was.commons.osgi.annotations.Services;
@@ -34,13 +37,19 @@ import com.ibm.ws.util.ThreadPool;
 
 @ProcessTypes({AdminConstants.MANAGED_PROCESS, AdminConstants.STANDALONE_PROCESS})
 @Services({ClassLoaderListener.class, UnmanagedThreadMonitor.class})
-public class UnmanagedThreadMonitorImpl implements ClassLoaderListener, UnmanagedThreadMonitor {
+public class UnmanagedThreadMonitorImpl implements SynchronousClassLoaderListener, UnmanagedThreadMonitor {
     private static final Logger LOGGER = Logger.getLogger(UnmanagedThreadMonitorImpl.class.getName(), Messages.class.getName());
     
     private Timer timer;
     
     private final Map<ClassLoader,ModuleInfoImpl> moduleInfos = new HashMap<ClassLoader,ModuleInfoImpl>();
     
+    /**
+     * Maps application/module names to {@link ModuleThreadStats} instances. Entries are never
+     * removed from this map so that the statistics survive restarts of the application.
+     */
+    private final Map<String,ModuleThreadStats> moduleStats = new HashMap<String,ModuleThreadStats>();
+    
     /**
      * Maps {@link Thread} objects to {@link ThreadInfoImpl} instances. If a thread is not linked to an
      * application or module and has no associated {@link ThreadInfoImpl} object, then the map contains
@@ -54,11 +63,19 @@ public class UnmanagedThreadMonitorImpl implements ClassLoaderListener, Unmanage
     
     private RBeanFactory rbf;
     
+    private BundleContext bundleContext;
+    
     private ServiceSet<UnmanagedThreadListener> listeners;
     
+    private EventBus eventBus;
+    
+    private ThreadResourceSampler resourceSampler;
+    
     @Init
-    public void init(Lifecycle lifecycle, ServiceSet<UnmanagedThreadListener> listeners) throws Exception {
+    public void init(Lifecycle lifecycle, BundleContext bundleContext, ServiceSet<UnmanagedThreadListener> listeners, EventBus eventBus) throws Exception {
         rbf = new RBeanFactory(ThreadRBean.class);
+        this.bundleContext = bundleContext;
+        resourceSampler = new ThreadResourceSampler();
         
         lifecycle.addStopAction(new Runnable() {
             public void run() {
@@ -67,6 +84,7 @@ public class UnmanagedThreadMonitorImpl implements ClassLoaderListener, Unmanage
         });
         
         this.listeners = listeners;
+        this.eventBus = eventBus;
         
         timer = new Timer("Thread Monitor");
         timer.schedule(new TimerTask() {
@@ -89,9 +107,33 @@ public class UnmanagedThreadMonitorImpl implements ClassLoaderListener, Unmanage
         LOGGER.log(Level.INFO, Messages._0001I);
     }
     
+    private ModuleThreadStats getModuleStats(String applicationName, String moduleName) {
+        String name;
+        if (moduleName == null) {
+            name = applicationName;
+        } else {
+            name = applicationName + "#" + moduleName;
+        }
+        synchronized (moduleStats) {
+            ModuleThreadStats stats = moduleStats.get(name);
+            if (stats == null) {
+                stats = new ModuleThreadStats(name);
+                moduleStats.put(name, stats);
+                // Registering the service exports the MBean and PMI module; don't do this on the
+                // thread that starts the application
+                eventBus.publish(new ModuleThreadStatsRegistrationEvent(bundleContext, name, stats));
+            }
+            return stats;
+        }
+    }
+    
+    // This listener is notified synchronously: the module info must be available before the
+    // application starts its first thread, and a delayed classLoaderReleased would keep the class
+    // loader reachable for longer than necessary
     public void classLoaderCreated(ClassLoader classLoader, String applicationName, String moduleName) {
+        ModuleInfoImpl moduleInfo = new ModuleInfoImpl(applicationName, moduleName, getModuleStats(applicationName, moduleName));
         synchronized (moduleInfos) {
-            moduleInfos.put(classLoader, new ModuleInfoImpl(applicationName, moduleName));
+            moduleInfos.put(classLoader, moduleInfo);
         }
     }
 
@@ -102,10 +144,14 @@ public class UnmanagedThreadMonitorImpl implements ClassLoaderListener, Unmanage
     }
 
     void updateThreads() {
+        List<ThreadInfoImpl> activeThreads = new ArrayList<ThreadInfoImpl>();
         synchronized (threadInfos) {
             Set<Thread> stoppedThreads = new HashSet<Thread>(threadInfos.keySet());
             for (Thread thread : ThreadUtils.getAllThreads()) {
-                getThreadInfo(thread);
+                ThreadInfoImpl threadInfo = getThreadInfo(thread);
+                if (threadInfo != null) {
+                    activeThreads.add(threadInfo);
+                }
                 stoppedThreads.remove(thread);
             }
             for (Thread thread : stoppedThreads) {
@@ -116,20 +162,19 @@ public class UnmanagedThreadMonitorImpl implements ClassLoaderListener, Unmanage
                 }
             }
         }
+        
+        // Sample resource usage outside of the synchronized block; the ThreadMXBean calls may be
+        // relatively expensive
+        updateResourceUsage(activeThreads);
 
         ThreadInfoImpl threadInfo;
         while ((threadInfo = (ThreadInfoImpl)threadInfoQueue.poll()) != null) {
             if (LOGGER.isLoggable(Level.FINEST)) {
                 LOGGER.log(Level.FINEST, "Detected thread that has been stopped: {0}", threadInfo.getName());
             }
-            final ModuleInfoImpl moduleInfo = threadInfo.getModuleInfo();
+            ModuleInfoImpl moduleInfo = threadInfo.getModuleInfo();
             moduleInfo.threadDestroyed();
-            final ThreadInfoImpl _threadInfo = threadInfo;
-            listeners.visit(new ServiceVisitor<UnmanagedThreadListener>() {
-                public void visit(UnmanagedThreadListener listener) {
-                    listener.threadStopped(_threadInfo.getName(), moduleInfo);
-                }
-            });
+            eventBus.publish(new ThreadEvent(listeners, null, threadInfo.getName(), moduleInfo));
         }
         
         while ((threadInfo = logQueue.poll()) != null) {
@@ -144,6 +189,27 @@ public class UnmanagedThreadMonitorImpl implements ClassLoaderListener, Unmanage
         }
     }
 
+    private void updateResourceUsage(List<ThreadInfoImpl> threads) {
+        if (threads.isEmpty()) {
+            return;
+        }
+        long[] ids = new long[threads.size()];
+        for (int i=0; i<ids.length; i++) {
+            ids[i] = threads.get(i).getId();
+        }
+        long[] cpuTimes = resourceSampler.getThreadCpuTime(ids);
+        long[] allocatedBytes = resourceSampler.getThreadAllocatedBytes(ids);
+        for (int i=0; i<ids.length; i++) {
+            ThreadInfoImpl threadInfo = threads.get(i);
+            if (cpuTimes != null) {
+                threadInfo.updateCpuTime(cpuTimes[i]);
+            }
+            if (allocatedBytes != null) {
+                threadInfo.updateAllocatedBytes(allocatedBytes[i]);
+            }
+        }
+    }
+
     private ThreadInfoImpl getThreadInfo(final Thread thread) {
         synchronized (threadInfos) {
             if (!threadInfos.containsKey(thread)) {
@@ -177,12 +243,9 @@ public class UnmanagedThreadMonitorImpl implements ClassLoaderListener, Unmanage
                                     }
                                     threadInfo = new ThreadInfoImpl(thread, moduleInfo, threadInfoQueue);
                                     // TODO: implement logging as a listener as well
-                                    // TODO: replace logQueue by an event queue and dispatch events asynchronously
-                                    listeners.visit(new ServiceVisitor<UnmanagedThreadListener>() {
-                                        public void visit(UnmanagedThreadListener listener) {
-                                            listener.threadStarted(thread, moduleInfo);
-                                        }
-                                    });
+                                    // Listeners are notified asynchronously so that they are not
+                                    // invoked while we hold the lock on threadInfos
+                                    eventBus.publish(new ThreadEvent(listeners, thread, thread.getName(), moduleInfo));
                                     // getThreadInfo may be called by the monitor thread or via the UnmanagedThreadMonitor
                                     // service, but we want all logging to happen inside the monitor thread
                                     logQueue.add(threadInfo);
@@ -0,0 +1,243 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.xm4was.commons.deploy.ClassLoaderListener;
+import com.googlecode.xm4was.commons.deploy.SynchronousClassLoaderListener;
+import com.googlecode.xm4was.commons.osgi.Lifecycle;
+import com.googlecode.xm4was.commons.osgi.annotations.Init;
+import com.googlecode.xm4was.commons.osgi.annotations.ProcessTypes;
+import com.googlecode.xm4was.commons.osgi.annotations.Services;
+import com.googlecode.xm4was.threadmon.ThreadInfo;
+import com.googlecode.xm4was.threadmon.UnmanagedThreadMonitor;
+import com.googlecode.xm4was.threadmon.resources.Messages;
+import com.ibm.websphere.management.AdminConstants;
+
+/**
+ * Terminates unmanaged threads that are still running after the application that created them has
+ * been stopped. Such threads waste CPU and usually prevent the class loader of the application
+ * from being garbage collected. The policy is opt-in: it only applies to the applications listed
+ * in the {@link #APPLICATIONS} system property (<tt>*</tt> enables it for all applications).
+ * <p>
+ * When an application is stopped, the unmanaged threads linked to it (as determined by
+ * {@link UnmanagedThreadMonitor}) are recorded. After {@link #GRACE_PERIOD}, the threads that are
+ * still alive are interrupted. If a thread is still alive {@link #INTERRUPT_TIMEOUT} later and
+ * {@link #CLEAR_THREAD_STATE} is enabled, its context class loader and thread locals are cleared
+ * so that it no longer references the application class loader. Note that thread locals are
+ * cleared without the cooperation of the thread; this is safe for threads blocked in a wait, but
+ * may cause errors in a thread that is still executing application code. The outcome for each
+ * thread is logged.
+ * <p>
+ * The threads are recorded synchronously when the application is stopped (the listener is a
+ * {@link SynchronousClassLoaderListener}), so that threads created by a new instance of the
+ * application are never affected, even if it is restarted immediately.
+ * <p>
+ * The threads are never stopped forcibly, since {@link Thread#stop()} may leave shared objects in
+ * an inconsistent state.
+ */
+@ProcessTypes({AdminConstants.MANAGED_PROCESS, AdminConstants.STANDALONE_PROCESS})
+@Services({ ClassLoaderListener.class, UnmanagedThreadTerminatorMBean.class })
+public class UnmanagedThreadTerminator implements SynchronousClassLoaderListener, UnmanagedThreadTerminatorMBean {
+    private static final Logger LOGGER = Logger.getLogger(UnmanagedThreadTerminator.class.getName(), Messages.class.getName());
+    
+    /**
+     * Comma separated list of the names of the applications to which the policy applies.
+     */
+    private static final Set<String> APPLICATIONS = new HashSet<String>(Arrays.asList(System.getProperty(
+            "com.googlecode.xm4was.threadmon.UnmanagedThreadTerminator.APPLICATIONS", "").split("\\s*,\\s*")));
+    
+    /**
+     * The time (in milliseconds) after the application is stopped before unmanaged threads are
+     * interrupted.
+     */
+    private static final long GRACE_PERIOD = Long.parseLong(System.getProperty(
+            "com.googlecode.xm4was.threadmon.UnmanagedThreadTerminator.GRACE_PERIOD", "30000"));
+    
+    /**
+     * The time (in milliseconds) given to interrupted threads to terminate.
+     */
+    private static final long INTERRUPT_TIMEOUT = 5000;
+    
+    /**
+     * Determines if the context class loader and the thread locals of threads that didn't react to
+     * the interrupt are cleared.
+     */
+    private static final boolean CLEAR_THREAD_STATE = "true".equals(System.getProperty(
+            "com.googlecode.xm4was.threadmon.UnmanagedThreadTerminator.CLEAR_THREAD_STATE"));
+    
+    /**
+     * The number of results kept for {@link #dumpTerminationResults()}.
+     */
+    private static final int MAX_RESULTS = 100;
+    
+    private static final Field[] threadLocalFields;
+    
+    static {
+        List<Field> fields = new ArrayList<Field>();
+        for (String name : new String[] { "threadLocals", "inheritableThreadLocals" }) {
+            try {
+                Field field = Thread.class.getDeclaredField(name);
+                field.setAccessible(true);
+                fields.add(field);
+            } catch (Exception ex) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "Field " + name + " not available", ex);
+                }
+            }
+        }
+        threadLocalFields = fields.toArray(new Field[fields.size()]);
+    }
+    
+    private Timer timer;
+    private UnmanagedThreadMonitor monitor;
+    
+    /**
+     * The most recent results. Access to this list must be synchronized.
+     */
+    private final LinkedList<String> results = new LinkedList<String>();
+    
+    @Init
+    public void init(Lifecycle lifecycle, UnmanagedThreadMonitor monitor) {
+        this.monitor = monitor;
+        timer = new Timer("Unmanaged Thread Terminator", true);
+        lifecycle.addStopAction(new Runnable() {
+            public void run() {
+                timer.cancel();
+            }
+        });
+    }
+    
+    public void classLoaderCreated(ClassLoader classLoader, String applicationName, String moduleName) {
+    }
+
+    public void classLoaderReleased(ClassLoader classLoader, String applicationName, String moduleName) {
+        if (moduleName != null || !(APPLICATIONS.contains(applicationName) || APPLICATIONS.contains("*"))) {
+            return;
+        }
+        // Record the threads now; if the application is restarted before the end of the grace period,
+        // threads created by the new instance must not be affected. ThreadInfo objects only hold weak
+        // references to the threads.
+        final List<ThreadInfo> threads = new ArrayList<ThreadInfo>();
+        for (ThreadInfo threadInfo : monitor.getThreadInfos()) {
+            if (threadInfo.getModuleInfo().getApplicationName().equals(applicationName)) {
+                threads.add(threadInfo);
+            }
+        }
+        if (threads.isEmpty()) {
+            return;
+        }
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.log(Level.FINEST, "Application {0} stopped with {1} unmanaged threads; scheduling termination",
+                    new Object[] { applicationName, threads.size() });
+        }
+        final String _applicationName = applicationName;
+        try {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        interruptThreads(_applicationName, threads);
+                    } catch (Throwable ex) {
+                        LOGGER.log(Level.SEVERE, Messages._0006E, ex);
+                    }
+                }
+            }, GRACE_PERIOD);
+        } catch (IllegalStateException ex) {
+            // The timer has been cancelled
+        }
+    }
+    
+    void interruptThreads(final String applicationName, List<ThreadInfo> threads) {
+        final List<ThreadInfo> interrupted = new ArrayList<ThreadInfo>();
+        for (ThreadInfo threadInfo : threads) {
+            Thread thread = threadInfo.getThread();
+            if (thread == null || !thread.isAlive()) {
+                addResult(applicationName, threadInfo.getName(), "terminated before the end of the grace period");
+            } else {
+                thread.interrupt();
+                interrupted.add(threadInfo);
+            }
+        }
+        if (!interrupted.isEmpty()) {
+            try {
+                timer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        try {
+                            checkThreads(applicationName, interrupted);
+                        } catch (Throwable ex) {
+                            LOGGER.log(Level.SEVERE, Messages._0006E, ex);
+                        }
+                    }
+                }, INTERRUPT_TIMEOUT);
+            } catch (IllegalStateException ex) {
+                // The timer has been cancelled because the server is stopping
+            }
+        }
+    }
+    
+    void checkThreads(String applicationName, List<ThreadInfo> threads) {
+        for (ThreadInfo threadInfo : threads) {
+            Thread thread = threadInfo.getThread();
+            if (thread == null || !thread.isAlive()) {
+                addResult(applicationName, threadInfo.getName(), "terminated after interrupt");
+            } else if (CLEAR_THREAD_STATE) {
+                thread.setContextClassLoader(null);
+                int cleared = clearThreadLocals(thread);
+                addResult(applicationName, threadInfo.getName(), "still alive after interrupt; context class loader cleared; "
+                        + cleared + " thread local maps cleared");
+            } else {
+                addResult(applicationName, threadInfo.getName(), "still alive after interrupt");
+            }
+        }
+    }
+    
+    private static int clearThreadLocals(Thread thread) {
+        int count = 0;
+        for (Field field : threadLocalFields) {
+            try {
+                if (field.get(thread) != null) {
+                    field.set(thread, null);
+                    count++;
+                }
+            } catch (IllegalAccessException ex) {
+                // We called setAccessible, so this should never happen
+            }
+        }
+        return count;
+    }
+    
+    private void addResult(String applicationName, String threadName, String result) {
+        LOGGER.log(Level.INFO, Messages._0009I, new Object[] { applicationName, threadName, result });
+        synchronized (results) {
+            results.addFirst(new Date() + " " + applicationName + ": " + threadName + ": " + result);
+            if (results.size() > MAX_RESULTS) {
+                results.removeLast();
+            }
+        }
+    }
+
+    public String dumpTerminationResults() {
+        StringBuilder buffer = new StringBuilder();
+        synchronized (results) {
+            for (String result : results) {
+                if (buffer.length() > 0) {
+                    buffer.append("\n");
+                }
+                buffer.append(result);
+            }
+        }
+        return buffer.length() == 0 ? "No unmanaged threads have been terminated" : buffer.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.googlecode.xm4was.threadmon.impl;
+
+import javax.management.MBeanOperationInfo;
+
+import com.googlecode.xm4was.commons.jmx.annotations.MBean;
+import com.googlecode.xm4was.commons.jmx.annotations.Operation;
+
+@MBean(type="UnmanagedThreadTerminator", description="Terminates unmanaged threads that are still running after the application that created them has been stopped")
+public interface UnmanagedThreadTerminatorMBean {
+    @Operation(description="Displays the outcome of the most recent attempts to terminate unmanaged threads of stopped applications",
+            role="monitor", impact=MBeanOperationInfo.INFO)
+    String dumpTerminationResults();
+}
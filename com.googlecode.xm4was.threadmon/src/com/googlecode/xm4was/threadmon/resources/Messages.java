@@ -9,6 +9,10 @@ public class Messages extends ListResourceBundle {
     public static final String _0004W = "0004W";
     public static final String _0005I = "0005I";
     public static final String _0006E = "0006E";
+    public static final String _0007W = "0007W";
+    public static final String _0008W = "0008W";
+    public static final String _0009I = "0009I";
+    public static final String _0010W = "0010W";
     
     private static final Object[][] contents = {
         { _0001I, "XMTMN0001I: Thread monitor started" },
@@ -17,6 +21,10 @@ public class Messages extends ListResourceBundle {
         { _0004W, "XMTMN0004W: Logging of unmanaged threads for application/module {0} has been disabled because the thread creation/destruction frequency is too high" },
         { _0005I, "XMTMN0005I: Thread dump requested by user {0} for thread pool {1}\n{2}" },
         { _0006E, "XMTMN0006E: An internal error occurred:\n{0}" },
+        { _0007W, "XMTMN0007W: Thread CPU time measurement is not supported or not enabled in this JVM; the CPU usage of unmanaged threads will not be tracked" },
+        { _0008W, "XMTMN0008W: Deadlock detected between the following threads:\n{0}" },
+        { _0009I, "XMTMN0009I: Unmanaged thread {1} of stopped application {0}: {2}" },
+        { _0010W, "XMTMN0010W: Invalid value {1} for system property {0}; the value must be a positive integer. Using the default value." },
     };
 
     @Override
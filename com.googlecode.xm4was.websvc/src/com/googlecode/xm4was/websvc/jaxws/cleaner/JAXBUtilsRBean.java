@@ -15,12 +15,15 @@ public interface JAXBUtilsRBean extends StaticRBean {
     @Accessor(name="jaxbMap")
     Map<String,SoftReference<ConcurrentHashMap<ClassLoader,?>>> getJAXBContextMap();
     
+    // The pools are returned as plain objects because we need to synchronize on them; use
+    // PoolRBean to access their content.
+    
     @Accessor(name="ipool")
-    PoolRBean getIPool();
+    Object getIPool();
 
     @Accessor(name="mpool")
-    PoolRBean getMPool();
+    Object getMPool();
 
     @Accessor(name="upool")
-    PoolRBean getUPool();
+    Object getUPool();
 }
@@ -1,7 +1,13 @@
 package com.googlecode.xm4was.websvc.jaxws.cleaner;
 
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -10,6 +16,7 @@ import javax.xml.bind.JAXBContext;
 import com.github.veithen.rbeans.RBeanFactory;
 import com.github.veithen.rbeans.RBeanFactoryException;
 import com.googlecode.xm4was.clmon.CacheCleaner;
+import com.googlecode.xm4was.clmon.ClassLoaderAssociations;
 import com.googlecode.xm4was.commons.osgi.annotations.Init;
 import com.googlecode.xm4was.commons.osgi.annotations.Services;
 import com.googlecode.xm4was.websvc.resources.Messages;
@@ -18,11 +25,13 @@ import com.googlecode.xm4was.websvc.resources.Messages;
 public class JAXWSCacheCleaner implements CacheCleaner {
     private static final Logger LOGGER = Logger.getLogger(JAXWSCacheCleaner.class.getName(), Messages.class.getName());
     
+    private RBeanFactory rbf;
     private JAXBUtilsRBean jaxbUtils;
     
     @Init
     public void init() throws RBeanFactoryException {
-        jaxbUtils = new RBeanFactory(JAXWSCacheCleaner.class.getClassLoader(), JAXBUtilsRBean.class).createRBean(JAXBUtilsRBean.class);
+        rbf = new RBeanFactory(JAXWSCacheCleaner.class.getClassLoader(), JAXBUtilsRBean.class, PoolRBean.class);
+        jaxbUtils = rbf.createRBean(JAXBUtilsRBean.class);
     }
 
     public void clearCache() {
@@ -33,10 +42,78 @@ public class JAXWSCacheCleaner implements CacheCleaner {
         clearPool(jaxbUtils.getUPool());
     }
     
-    private void clearPool(PoolRBean pool) {
-        Map<JAXBContext,List<?>> map = pool.getSoftMap().get();
+    private void clearPool(Object pool) {
+        Map<JAXBContext,List<?>> map = rbf.createRBean(PoolRBean.class, pool).getSoftMap().get();
         if (map != null) {
             map.clear();
         }
     }
+
+    public void clearCache(ClassLoader classLoader) {
+        // The JAXBContext cache maps package lists to per class loader maps. Remove the entries
+        // for the class loader and collect the corresponding JAXBContexts so that we can remove
+        // the marshallers and unmarshallers created from them from the pools.
+        Set<JAXBContext> contexts = new HashSet<JAXBContext>();
+        int count = 0;
+        for (SoftReference<ConcurrentHashMap<ClassLoader,?>> ref : jaxbUtils.getJAXBContextMap().values()) {
+            ConcurrentHashMap<ClassLoader,?> map = ref.get();
+            if (map == null) {
+                continue;
+            }
+            for (Iterator<? extends Map.Entry<ClassLoader,?>> it = map.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<ClassLoader,?> entry = it.next();
+                if (ClassLoaderAssociations.isAssociated(entry.getKey(), classLoader)) {
+                    JAXBContext context = getJAXBContext(entry.getValue());
+                    if (context != null) {
+                        contexts.add(context);
+                    }
+                    it.remove();
+                    count++;
+                }
+            }
+        }
+        count += removeFromPool(jaxbUtils.getIPool(), contexts);
+        count += removeFromPool(jaxbUtils.getMPool(), contexts);
+        count += removeFromPool(jaxbUtils.getUPool(), contexts);
+        LOGGER.log(Level.INFO, Messages._0002I, String.valueOf(count));
+    }
+
+    private int removeFromPool(Object pool, Set<JAXBContext> contexts) {
+        int count = 0;
+        // The pool synchronizes on itself when it (re)creates the map or adds entries to it; use
+        // the same lock so that we don't interfere with these updates.
+        synchronized (pool) {
+            Map<JAXBContext,List<?>> map = rbf.createRBean(PoolRBean.class, pool).getSoftMap().get();
+            if (map != null) {
+                for (JAXBContext context : contexts) {
+                    if (map.remove(context) != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Extract the {@link JAXBContext} from a value in the JAXBContext cache. The class of these
+     * values is internal to Axis2 and its name varies between versions; therefore we look for a
+     * field of type {@link JAXBContext} instead of using an RBean.
+     */
+    private static JAXBContext getJAXBContext(Object value) {
+        if (value == null) {
+            return null;
+        }
+        for (Field field : value.getClass().getDeclaredFields()) {
+            if (field.getType() == JAXBContext.class) {
+                try {
+                    field.setAccessible(true);
+                    return (JAXBContext)field.get(value);
+                } catch (IllegalAccessException ex) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
 }
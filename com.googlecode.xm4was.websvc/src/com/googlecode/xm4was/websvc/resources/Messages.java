@@ -4,9 +4,11 @@ import java.util.ListResourceBundle;
 
 public class Messages extends ListResourceBundle {
     public static final String _0001I = "0001I";
+    public static final String _0002I = "0002I";
     
     private static final Object[][] contents = {
         { _0001I, "XMWSV0001I: Clearing JAX-WS caches" },
+        { _0002I, "XMWSV0002I: Removed {0} JAX-WS cache entries associated with the stopped application" },
     };
 
     @Override